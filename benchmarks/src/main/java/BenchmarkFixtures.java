@@ -0,0 +1,218 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * The {@code BenchmarkFixtures} class builds the objects measured by the JMH benchmarks in the {@code benchmarks}
+ * package. JMH rejects benchmark classes in the unnamed package, and classes in a named package cannot refer to
+ * the chat classes, so the benchmarks look these factories up reflectively once during setup and only call JDK
+ * interfaces ({@link Runnable}, {@link ToIntFunction}) on the measured path.
+ */
+public final class BenchmarkFixtures {
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Creates a server with the given number of connected recipients and returns a task broadcasting one chat line.
+     *
+     * @param recipients The number of connected clients.
+     * @return A fixture whose {@code run()} performs one broadcast and whose {@code close()} shuts the server down.
+     */
+    public static Fixture broadcast(int recipients) {
+        TCPMultiServer server = new TCPMultiServer(8080);
+        server.setOutboundQueueCapacity(4096);
+        for (int i = 0; i < recipients; i++) {
+            server.addClient("User" + i, new NullSocket());
+        }
+        String message = "sender: a chat line of a typical length, with a few words in it";
+        return new Fixture(() -> server.broadcast(message, "sender"), server::shutdown);
+    }
+
+    /**
+     * Creates a server with the given number of connected clients and returns a task in which one more client joins
+     * and leaves again.
+     *
+     * @param population The number of clients connected for the whole benchmark.
+     * @return A fixture whose {@code run()} performs one join/leave cycle.
+     */
+    public static Fixture registryChurn(int population) {
+        TCPMultiServer server = new TCPMultiServer(8080);
+        for (int i = 0; i < population; i++) {
+            server.addClient("Resident" + i, new NullSocket());
+        }
+        String[] nicknames = new String[1024];
+        for (int i = 0; i < nicknames.length; i++) {
+            nicknames[i] = "Churn" + i;
+        }
+        int[] next = {0};
+        return new Fixture(() -> {
+            String nickname = nicknames[next[0]++ & (nicknames.length - 1)];
+            if (!server.isNicknameTaken(nickname)) {
+                server.addClient(nickname, new NullSocket());
+            }
+            server.removeClient(nickname);
+        }, server::shutdown);
+    }
+
+    /**
+     * Creates a server with the given number of connected clients and returns a task, safe to run from many threads
+     * at once, in which the calling thread's own client joins and leaves, with a chat line broadcast to the lobby,
+     * which every client joins, instead of every {@code broadcastEvery}-th cycle. Nicknames are reserved and lines
+     * broadcast through the server as {@link ConnectionThread} does.
+     *
+     * @param population     The number of clients connected for the whole benchmark.
+     * @param broadcastEvery How many operations make up one broadcast and the remaining join/leave cycles.
+     * @return A fixture whose {@code run()} performs one operation for the calling thread.
+     */
+    public static Fixture registryContention(int population, int broadcastEvery) {
+        TCPMultiServer server = new TCPMultiServer(8080);
+        server.setOutboundQueueCapacity(4096);
+        for (int i = 0; i < population; i++) {
+            server.addClient("Resident" + i, new NullSocket());
+        }
+        String message = "sender: a chat line of a typical length, with a few words in it";
+        ThreadLocal<int[]> operations = ThreadLocal.withInitial(() -> new int[1]);
+        ThreadLocal<String> nicknames = ThreadLocal.withInitial(() -> "Churn" + Thread.currentThread().getId());
+        return new Fixture(() -> {
+            if (++operations.get()[0] % broadcastEvery == 0) {
+                server.broadcastToRoom(ChatRoom.DEFAULT_ROOM, message, null);
+                return;
+            }
+            String nickname = server.reserveNickname(nicknames.get());
+            server.addClient(nickname, new NullSocket());
+            server.removeClient(nickname);
+        }, server::shutdown);
+    }
+
+    /**
+     * Registers the given number of clients and returns a task queuing one encoded message for all of them but one,
+     * routed either the way rooms used to route it, over a {@link ConcurrentHashMap} keyed by nickname with a string
+     * comparison per member, or through {@link ClientRegistry#broadcast(EncodedMessage, int)} with the sender
+     * resolved to its client ID once. The excluded nickname has the same length as the others, so every string
+     * comparison reads the characters. The writers discard their output.
+     *
+     * @param recipients The number of registered clients.
+     * @param keying     {@code "nickname"} for the map keyed by nickname, {@code "id"} for the client ID registry.
+     * @return A fixture whose {@code run()} routes one message.
+     */
+    public static Fixture recipientRouting(int recipients, String keying) {
+        ClientRegistry registry = new ClientRegistry();
+        ConcurrentHashMap<String, ClientWriter> members = new ConcurrentHashMap<>();
+        for (int i = 0; i < recipients; i++) {
+            ClientWriter writer = new ClientWriter(String.format("User%06d", i), new NullSocket(), 4096);
+            writer.start();
+            registry.register(writer);
+            members.put(writer.getNickname(), writer);
+        }
+        String sender = String.format("User%06d", recipients / 2);
+        EncodedMessage message = EncodedMessage.of(sender + ": a chat line of a typical length, with a few words in it");
+        Runnable teardown = () -> {
+            for (ClientWriter writer : registry.snapshot()) {
+                writer.close();
+            }
+        };
+        switch (keying) {
+            case "nickname":
+                return new Fixture(() -> members.forEach((nickname, writer) -> {
+                    if (!nickname.equals(sender)) {
+                        writer.send(message);
+                    }
+                }), teardown);
+            case "id":
+                return new Fixture(() -> registry.broadcast(message, registry.idOf(sender)), teardown);
+            default:
+                throw new IllegalArgumentException("Unknown keying: " + keying);
+        }
+    }
+
+    /**
+     * Returns a decoder splitting a UTF-8 payload into lines with {@link LineDecoder}, as {@link NioConnection} does.
+     *
+     * @return A function returning the total number of characters decoded from the payload.
+     */
+    public static ToIntFunction<byte[]> lineDecoder() {
+        LineDecoder decoder = new LineDecoder(64 * 1024);
+        return payload -> {
+            ByteBuffer input = ByteBuffer.wrap(payload);
+            int characters = 0;
+            try {
+                String line;
+                while ((line = decoder.next(input)) != null) {
+                    characters += line.length();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return characters;
+        };
+    }
+
+    /**
+     * Returns a decoder splitting a UTF-8 payload into lines with a {@link BufferedReader}, as
+     * {@link ConnectionThread} does.
+     *
+     * @return A function returning the total number of characters decoded from the payload.
+     */
+    public static ToIntFunction<byte[]> readerLineDecoder() {
+        return payload -> {
+            int characters = 0;
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(payload), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    characters += line.length();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return characters;
+        };
+    }
+
+    /**
+     * A measured task together with the action releasing its resources. While a fixture is open, standard output
+     * is discarded so the servers' console logging does not dominate the measurements.
+     */
+    public static final class Fixture implements Runnable, AutoCloseable {
+        private final Runnable task;
+        private final Runnable teardown;
+        private final PrintStream originalOut;
+
+        private Fixture(Runnable task, Runnable teardown) {
+            this.task = task;
+            this.teardown = teardown;
+            this.originalOut = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        @Override
+        public void close() {
+            teardown.run();
+            System.setOut(originalOut);
+        }
+    }
+
+    /**
+     * An unconnected socket whose output is discarded, standing in for a client that reads instantly.
+     */
+    private static final class NullSocket extends Socket {
+        @Override
+        public OutputStream getOutputStream() {
+            return OutputStream.nullOutputStream();
+        }
+    }
+}
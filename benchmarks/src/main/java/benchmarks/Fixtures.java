@@ -0,0 +1,30 @@
+package benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Looks up the factories of the unnamed-package {@code BenchmarkFixtures} class. Reflection is only used during
+ * benchmark setup; the returned objects are called through JDK interfaces on the measured path.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static <T> T create(Class<T> type, String factory, Object... args) {
+        try {
+            Class<?> fixtures = Class.forName("BenchmarkFixtures");
+            for (Method method : fixtures.getMethods()) {
+                if (method.getName().equals(factory) && method.getParameterCount() == args.length) {
+                    return type.cast(method.invoke(null, args));
+                }
+            }
+            throw new IllegalArgumentException("No fixture named " + factory + " taking " + args.length + " arguments");
+        } catch (ClassNotFoundException | IllegalAccessException e) {
+            throw new IllegalStateException("Benchmark fixtures are not available: " + e.getMessage(), e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Fixture " + factory + " failed: " + e.getCause(), e.getCause());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+/**
+ * Compares the two UTF-8 line decoding paths of the servers on a 64 KiB payload: the {@code BufferedReader} used by
+ * {@code ConnectionThread} and the {@code LineDecoder} used by {@code NioConnection}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class LineDecodingBenchmark {
+    private static final int PAYLOAD_SIZE = 64 * 1024;
+
+    @Param({"16", "256"})
+    public int lineLength;
+
+    @Param({"ascii", "multibyte"})
+    public String text;
+
+    private byte[] payload;
+    private ToIntFunction<byte[]> lineDecoder;
+    private ToIntFunction<byte[]> readerLineDecoder;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        String unit = "ascii".equals(text) ? "a" : "é";
+        String line = unit.repeat(lineLength) + "\r\n";
+        StringBuilder builder = new StringBuilder(PAYLOAD_SIZE);
+        while (builder.length() + line.length() <= PAYLOAD_SIZE) {
+            builder.append(line);
+        }
+        payload = builder.toString().getBytes(StandardCharsets.UTF_8);
+
+        lineDecoder = Fixtures.create(ToIntFunction.class, "lineDecoder");
+        readerLineDecoder = Fixtures.create(ToIntFunction.class, "readerLineDecoder");
+    }
+
+    @Benchmark
+    public int lineDecoder() {
+        return lineDecoder.applyAsInt(payload);
+    }
+
+    @Benchmark
+    public int bufferedReader() {
+        return readerLineDecoder.applyAsInt(payload);
+    }
+}
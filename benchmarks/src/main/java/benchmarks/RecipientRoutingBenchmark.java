@@ -0,0 +1,54 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares routing one message to every client but the sender over a map keyed by nickname, with a string
+ * comparison per recipient, against the registry's dense session slots, with one lookup of the sender's client ID
+ * and an {@code int} comparison per recipient.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class RecipientRoutingBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int recipients;
+
+    @Param({"nickname", "id"})
+    public String keying;
+
+    private Runnable routing;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        routing = Fixtures.create(Runnable.class, "recipientRouting", recipients, keying);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        ((AutoCloseable) routing).close();
+    }
+
+    @Benchmark
+    public void route() {
+        routing.run();
+    }
+}
@@ -0,0 +1,56 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of the client registry and the lobby of {@code TCPMultiServer} under contention: every
+ * thread reserves a nickname, joins and leaves, with one chat line broadcast to the lobby every
+ * {@code broadcastEvery} operations. Runs on all cores by default; compare with {@code -t 1} to see how it scales.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Threads(Threads.MAX)
+public class RegistryContentionBenchmark {
+
+    @Param({"100"})
+    public int population;
+
+    @Param({"10"})
+    public int broadcastEvery;
+
+    private Runnable operation;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        operation = Fixtures.create(Runnable.class, "registryContention", population, broadcastEvery);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        ((AutoCloseable) operation).close();
+    }
+
+    @Benchmark
+    public void joinLeaveAndBroadcast() {
+        operation.run();
+    }
+}
@@ -0,0 +1,252 @@
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * The {@code AsyncLogger} class takes log output off the threads that produce it. Entries are placed in a bounded,
+ * preallocated ring buffer without locks or blocking and a background daemon thread drains them, writing each batch
+ * to the console with a single {@code print} and {@code flush}. When the buffer is full, new entries are dropped
+ * and counted rather than slowing the caller down.
+ * Entries at {@link LogLevel#WARN} and above go to standard error, the others to standard output. The streams are
+ * looked up for every batch, so {@link System#setOut(PrintStream)} takes effect immediately.
+ * Per-message entries, one per chat line or datagram, have their own switch so that they can be turned off while
+ * keeping the rest of the log.
+ */
+public class AsyncLogger {
+    public static final int DEFAULT_CAPACITY = 8192;
+    private static final int MAX_BATCH = 256;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final int mask;
+    private final String[] messages;
+    private final LogLevel[] levels;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final Supplier<PrintStream> out;
+    private final Supplier<PrintStream> err;
+    private final Thread drainer;
+    private long head;
+    private volatile long drained;
+    private volatile boolean drainerParked;
+    private volatile boolean isRunning = true;
+    private volatile LogLevel level = LogLevel.INFO;
+    private volatile boolean messageLogging = true;
+
+    /**
+     * Constructs a new {@code AsyncLogger} writing to {@link System#out} and {@link System#err} and starts its
+     * drainer thread.
+     *
+     * @param capacity The number of entries the ring buffer holds, rounded up to a power of two.
+     * @throws IllegalArgumentException If the capacity is not positive.
+     */
+    public AsyncLogger(int capacity) {
+        this(capacity, () -> System.out, () -> System.err);
+    }
+
+    /**
+     * Constructs a new {@code AsyncLogger} and starts its drainer thread.
+     *
+     * @param capacity The number of entries the ring buffer holds, rounded up to a power of two.
+     * @param out      Supplies the stream for entries below {@link LogLevel#WARN}.
+     * @param err      Supplies the stream for warnings and errors.
+     * @throws IllegalArgumentException If the capacity is not positive.
+     */
+    public AsyncLogger(int capacity, Supplier<PrintStream> out, Supplier<PrintStream> err) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        size = Math.max(size, 1);
+        this.mask = size - 1;
+        this.messages = new String[size];
+        this.levels = new LogLevel[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.out = out;
+        this.err = err;
+        this.drainer = ExecutionMode.PLATFORM.threadFactory("log-drainer-", true).newThread(this::drain);
+        drainer.start();
+    }
+
+    /**
+     * Logs an entry if its level is enabled. Never blocks.
+     *
+     * @param entryLevel The severity of the entry.
+     * @param message    The text of the entry.
+     * @return {@code true} if the entry was queued, {@code false} if it was filtered out or dropped.
+     */
+    public boolean log(LogLevel entryLevel, String message) {
+        if (!isEnabled(entryLevel)) {
+            return false;
+        }
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    messages[index] = message;
+                    levels[index] = entryLevel;
+                    sequences.set(index, position + 1);
+                    if (drainerParked) {
+                        LockSupport.unpark(drainer);
+                    }
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                droppedCount.incrementAndGet();
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Logs a per-message entry, such as a broadcast chat line, at {@link LogLevel#INFO} unless per-message logging
+     * is switched off.
+     *
+     * @param message The text of the entry.
+     * @return {@code true} if the entry was queued, {@code false} if it was filtered out or dropped.
+     */
+    public boolean message(String message) {
+        return messageLogging && log(LogLevel.INFO, message);
+    }
+
+    /**
+     * Checks whether entries of a level are currently logged.
+     *
+     * @param entryLevel The level to check.
+     * @return {@code true} if the level is enabled, {@code false} otherwise.
+     */
+    public boolean isEnabled(LogLevel entryLevel) {
+        return entryLevel != LogLevel.OFF && entryLevel.compareTo(level) >= 0;
+    }
+
+    /**
+     * Checks whether per-message entries are currently logged. Callers building an expensive message can check
+     * this first.
+     *
+     * @return {@code true} if per-message entries are logged, {@code false} otherwise.
+     */
+    public boolean isMessageLoggingEnabled() {
+        return messageLogging && isEnabled(LogLevel.INFO);
+    }
+
+    /**
+     * Sets the minimum level of the entries that are logged.
+     *
+     * @param level The new level; {@link LogLevel#OFF} disables logging.
+     */
+    public void setLevel(LogLevel level) {
+        this.level = level;
+    }
+
+    /**
+     * Returns the minimum level of the entries that are logged.
+     *
+     * @return The current level.
+     */
+    public LogLevel getLevel() {
+        return level;
+    }
+
+    /**
+     * Switches per-message logging on or off.
+     *
+     * @param enabled {@code true} to log one entry per message, {@code false} to skip them.
+     */
+    public void setMessageLogging(boolean enabled) {
+        this.messageLogging = enabled;
+    }
+
+    /**
+     * Returns the number of entries dropped because the ring buffer was full.
+     *
+     * @return The number of dropped entries.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Waits until every entry queued before this call has been written, for at most the given time.
+     *
+     * @param timeout The maximum time to wait.
+     * @param unit    The unit of the timeout.
+     * @return {@code true} if the entries were written, {@code false} if the timeout elapsed first.
+     */
+    public boolean flush(long timeout, TimeUnit unit) {
+        long target = tail.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (drained < target) {
+            if (System.nanoTime() >= deadline || !drainer.isAlive()) {
+                return false;
+            }
+            LockSupport.unpark(drainer);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return true;
+    }
+
+    /**
+     * Writes the remaining entries and stops the drainer thread.
+     */
+    public void close() {
+        isRunning = false;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        StringBuilder outBatch = new StringBuilder();
+        StringBuilder errBatch = new StringBuilder();
+        while (isRunning || head < tail.get()) {
+            int batched = 0;
+            while (batched < MAX_BATCH) {
+                int index = (int) head & mask;
+                if (sequences.get(index) != head + 1) {
+                    break;
+                }
+                StringBuilder batch = levels[index].compareTo(LogLevel.WARN) >= 0 ? errBatch : outBatch;
+                batch.append(messages[index]).append(System.lineSeparator());
+                messages[index] = null;
+                levels[index] = null;
+                sequences.set(index, head + mask + 1);
+                head++;
+                batched++;
+            }
+
+            if (batched > 0) {
+                write(out.get(), outBatch);
+                write(err.get(), errBatch);
+                drained = head;
+            } else if (isRunning) {
+                drainerParked = true;
+                if (sequences.get((int) head & mask) != head + 1) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                drainerParked = false;
+            }
+        }
+    }
+
+    private static void write(PrintStream stream, StringBuilder batch) {
+        if (batch.length() > 0) {
+            stream.print(batch);
+            stream.flush();
+            batch.setLength(0);
+        }
+    }
+}
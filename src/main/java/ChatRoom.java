@@ -0,0 +1,237 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code ChatRoom} class is a named conversation inside a {@link TCPMultiServer}.
+ * It keeps its own index of members and their writers, so a message sent to the room is delivered by iterating
+ * the room's members only: the cost of a broadcast grows with the size of the room, not with the number of
+ * clients connected to the server. Like the {@link ClientRegistry}, the room keeps its members in an immutable
+ * snapshot, replaced by compare-and-set on every join and part, holding the writers packed into an array alongside
+ * their client IDs; a broadcast walks it comparing IDs to skip the sender, without locking out joins, parts or
+ * other broadcasts.
+ * A room may keep a {@link MessageHistory}: a member who joins receives the room's recent messages in a single
+ * queued write. Only the handoff between the history and the membership is locked: a broadcast appends to the
+ * history and takes its snapshot of the members, and a join adds the member and queues the replay, under one lock,
+ * so that a new member sees every message exactly once, either in the replayed history or live. Queuing a message
+ * for the members happens outside the lock.
+ */
+public class ChatRoom {
+    public static final String DEFAULT_ROOM = "lobby";
+
+    private final String name;
+    private final AtomicReference<Members> members = new AtomicReference<>(Members.EMPTY);
+    private final Object historyLock = new Object();
+    private final LongAdder messageCount = new LongAdder();
+    private final MessageHistory history;
+
+    /**
+     * Constructs a new, empty {@code ChatRoom} without history.
+     *
+     * @param name The name of the room.
+     */
+    public ChatRoom(String name) {
+        this(name, null);
+    }
+
+    /**
+     * Constructs a new, empty {@code ChatRoom}.
+     *
+     * @param name    The name of the room.
+     * @param history The history replayed to new members, or {@code null} for none.
+     */
+    public ChatRoom(String name, MessageHistory history) {
+        this.name = name;
+        this.history = history;
+    }
+
+    /**
+     * Adds a member to the room and queues the room's history for it. A member already in the room under the same
+     * nickname is replaced.
+     *
+     * @param nickname The nickname of the member.
+     * @param writer   The member's writer, registered in the server's {@link ClientRegistry}.
+     */
+    public void join(String nickname, ClientWriter writer) {
+        if (history == null) {
+            add(nickname, writer);
+            return;
+        }
+        synchronized (historyLock) {
+            add(nickname, writer);
+            EncodedMessage backlog = history.replay(history.getMaxMessages());
+            if (backlog != null) {
+                writer.send(backlog);
+            }
+        }
+    }
+
+    private void add(String nickname, ClientWriter writer) {
+        Members current;
+        do {
+            current = members.get();
+        } while (!members.compareAndSet(current, current.without(nickname).with(nickname, writer)));
+    }
+
+    /**
+     * Removes a member from the room.
+     *
+     * @param nickname The nickname of the member.
+     */
+    public void part(String nickname) {
+        Members current;
+        Members next;
+        do {
+            current = members.get();
+            next = current.without(nickname);
+        } while (next != current && !members.compareAndSet(current, next));
+    }
+
+    /**
+     * Records an encoded message in the history and queues it for every member except the specified one.
+     *
+     * @param message   The encoded message.
+     * @param excludeId The client ID of the member who should not receive the message, or
+     *                  {@link ClientRegistry#NO_ID}.
+     * @return The number of members the message was queued for.
+     */
+    public int broadcast(EncodedMessage message, int excludeId) {
+        messageCount.increment();
+        Members recipients;
+        if (history == null) {
+            recipients = members.get();
+        } else {
+            synchronized (historyLock) {
+                history.append(message);
+                recipients = members.get();
+            }
+        }
+        ClientWriter[] writers = recipients.writers;
+        int[] ids = recipients.ids;
+        int delivered = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != excludeId && writers[i].send(message)) {
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * Checks whether a client is a member of the room.
+     *
+     * @param nickname The nickname to check.
+     * @return {@code true} if the client is a member, {@code false} otherwise.
+     */
+    public boolean contains(String nickname) {
+        return members.get().indexOf(nickname) >= 0;
+    }
+
+    /**
+     * Returns the name of the room.
+     *
+     * @return The room name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of members currently in the room.
+     *
+     * @return The member count.
+     */
+    public int getMemberCount() {
+        return members.get().ids.length;
+    }
+
+    /**
+     * Returns the number of messages broadcast to the room since it was created.
+     *
+     * @return The message count.
+     */
+    public long getMessageCount() {
+        return messageCount.sum();
+    }
+
+    /**
+     * Returns the history of the room.
+     *
+     * @return The history, or {@code null} if the room keeps none.
+     */
+    public MessageHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Checks whether the room has no members.
+     *
+     * @return {@code true} if the room is empty, {@code false} otherwise.
+     */
+    public boolean isEmpty() {
+        return members.get().ids.length == 0;
+    }
+
+    /**
+     * Returns a one-line summary of the room, as listed by the {@code /rooms} command.
+     *
+     * @return The room name with its member and message counts.
+     */
+    @Override
+    public String toString() {
+        return "#" + name + " (" + getMemberCount() + " members, " + getMessageCount() + " messages)";
+    }
+
+    /**
+     * One immutable membership of the room: the members' nicknames, writers and client IDs in parallel arrays.
+     */
+    private static final class Members {
+        private static final Members EMPTY = new Members(new String[0], new ClientWriter[0], new int[0]);
+
+        private final String[] nicknames;
+        private final ClientWriter[] writers;
+        private final int[] ids;
+
+        private Members(String[] nicknames, ClientWriter[] writers, int[] ids) {
+            this.nicknames = nicknames;
+            this.writers = writers;
+            this.ids = ids;
+        }
+
+        private int indexOf(String nickname) {
+            for (int i = 0; i < nicknames.length; i++) {
+                if (nicknames[i].equals(nickname)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private Members with(String nickname, ClientWriter writer) {
+            String[] nextNicknames = Arrays.copyOf(nicknames, nicknames.length + 1);
+            nextNicknames[nicknames.length] = nickname;
+            ClientWriter[] nextWriters = Arrays.copyOf(writers, writers.length + 1);
+            nextWriters[writers.length] = writer;
+            int[] nextIds = Arrays.copyOf(ids, ids.length + 1);
+            nextIds[ids.length] = writer.getClientId();
+            return new Members(nextNicknames, nextWriters, nextIds);
+        }
+
+        private Members without(String nickname) {
+            int index = indexOf(nickname);
+            if (index < 0) {
+                return this;
+            }
+            String[] nextNicknames = new String[nicknames.length - 1];
+            System.arraycopy(nicknames, 0, nextNicknames, 0, index);
+            System.arraycopy(nicknames, index + 1, nextNicknames, index, nextNicknames.length - index);
+            ClientWriter[] nextWriters = new ClientWriter[writers.length - 1];
+            System.arraycopy(writers, 0, nextWriters, 0, index);
+            System.arraycopy(writers, index + 1, nextWriters, index, nextWriters.length - index);
+            int[] nextIds = new int[ids.length - 1];
+            System.arraycopy(ids, 0, nextIds, 0, index);
+            System.arraycopy(ids, index + 1, nextIds, index, nextIds.length - index);
+            return new Members(nextNicknames, nextWriters, nextIds);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The {@code ClientRegistry} class keeps the connected clients of a {@link TCPMultiServer} without any lock.
+ * <ul>
+ *   <li>A nickname is first reserved with {@link #reserve(String)}, which claims the requested name or, if it is
+ *   taken, the first free {@code name-2}, {@code name-3}, ... in a single atomic step, so two clients can never end
+ *   up with the same name.</li>
+ *   <li>A registered client is given a compact {@code int} ID, the lowest one free, which indexes a dense array of
+ *   session slots. The nickname is an attribute of the session: it is looked up in a {@link ConcurrentHashMap}
+ *   once per command, while routing and exclusion within a broadcast compare IDs.</li>
+ *   <li>Broadcasts iterate an immutable array of all writers and a parallel {@code int[]} of their IDs, replaced
+ *   together by compare-and-set whenever a client registers or leaves. A broadcast therefore sees a consistent set
+ *   of recipients, skips the excluded one without touching any writer or string, and never waits for, nor delays,
+ *   a join or a leave.</li>
+ * </ul>
+ */
+public class ClientRegistry {
+    public static final int NO_ID = -1;
+    static final int MAX_SUFFIX = 10_000;
+
+    private final Set<String> reserved = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, ClientWriter> writers = new ConcurrentHashMap<>();
+    private final AtomicReference<Sessions> sessions = new AtomicReference<>(Sessions.EMPTY);
+
+    /**
+     * Reserves a nickname. The requested name is used if it is free; otherwise a numeric suffix is appended.
+     *
+     * @param requested The nickname the client asked for.
+     * @return The nickname reserved for the client.
+     * @throws IllegalStateException If neither the name nor any of its suffixed variants is free.
+     */
+    public String reserve(String requested) {
+        if (reserved.add(requested)) {
+            return requested;
+        }
+        for (int suffix = 2; suffix <= MAX_SUFFIX; suffix++) {
+            String candidate = requested + "-" + suffix;
+            if (reserved.add(candidate)) {
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("No free nickname left for " + requested);
+    }
+
+    /**
+     * Reserves exactly the given nickname, without trying suffixed variants.
+     *
+     * @param nickname The nickname.
+     * @return {@code true} if the nickname was free and is now reserved, {@code false} if it is taken.
+     */
+    public boolean reserveExactly(String nickname) {
+        return reserved.add(nickname);
+    }
+
+    /**
+     * Registers the writer of a client, reserving its nickname if that has not been done yet, and assigns the
+     * client the lowest free ID. If the client is released while the writer is being published, the writer is taken
+     * out again, so it never lingers as a recipient that nothing can remove.
+     *
+     * @param writer The writer of the client.
+     * @throws IllegalStateException If another writer is already registered under the nickname.
+     */
+    public void register(ClientWriter writer) {
+        String nickname = writer.getNickname();
+        reserved.add(nickname);
+        if (writers.putIfAbsent(nickname, writer) != null) {
+            throw new IllegalStateException("A client is already registered as " + nickname);
+        }
+        Sessions current;
+        do {
+            current = sessions.get();
+        } while (!sessions.compareAndSet(current, current.with(writer)));
+        if (writers.get(nickname) != writer) {
+            remove(writer);
+        }
+    }
+
+    /**
+     * Unregisters a client and releases its nickname.
+     *
+     * @param nickname The nickname of the client.
+     * @return The writer of the client, or {@code null} if it was not registered.
+     */
+    public ClientWriter release(String nickname) {
+        ClientWriter writer = writers.remove(nickname);
+        if (writer != null) {
+            remove(writer);
+        }
+        reserved.remove(nickname);
+        return writer;
+    }
+
+    private void remove(ClientWriter writer) {
+        Sessions current;
+        do {
+            current = sessions.get();
+        } while (!sessions.compareAndSet(current, current.without(writer)));
+    }
+
+    /**
+     * Returns the writer of a client.
+     *
+     * @param nickname The nickname of the client.
+     * @return The writer, or {@code null} if no such client is registered.
+     */
+    public ClientWriter get(String nickname) {
+        return writers.get(nickname);
+    }
+
+    /**
+     * Returns the writer of a client.
+     *
+     * @param clientId The ID of the client.
+     * @return The writer, or {@code null} if no client is registered under the ID.
+     */
+    public ClientWriter get(int clientId) {
+        ClientWriter[] slots = sessions.get().slots;
+        return clientId >= 0 && clientId < slots.length ? slots[clientId] : null;
+    }
+
+    /**
+     * Returns the ID of a client.
+     *
+     * @param nickname The nickname of the client, or {@code null}.
+     * @return The client ID, or {@link #NO_ID} if no such client is registered.
+     */
+    public int idOf(String nickname) {
+        ClientWriter writer = nickname != null ? writers.get(nickname) : null;
+        return writer != null ? writer.getClientId() : NO_ID;
+    }
+
+    /**
+     * Queues an encoded message for every registered client except one.
+     *
+     * @param message   The encoded message.
+     * @param excludeId The ID of the client who should not receive the message, or {@link #NO_ID}.
+     * @return The number of clients the message was queued for.
+     */
+    public int broadcast(EncodedMessage message, int excludeId) {
+        Sessions current = sessions.get();
+        ClientWriter[] recipients = current.writers;
+        int[] ids = current.ids;
+        int delivered = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != excludeId && recipients[i].send(message)) {
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * Checks whether a nickname is reserved or in use.
+     *
+     * @param nickname The nickname to check.
+     * @return {@code true} if the nickname is taken, {@code false} otherwise.
+     */
+    public boolean isTaken(String nickname) {
+        return reserved.contains(nickname);
+    }
+
+    /**
+     * Returns the writers of all registered clients at one point in time. The array must not be modified.
+     *
+     * @return The current writers.
+     */
+    public ClientWriter[] snapshot() {
+        return sessions.get().writers;
+    }
+
+    /**
+     * Returns the number of registered clients.
+     *
+     * @return The client count.
+     */
+    public int size() {
+        return sessions.get().writers.length;
+    }
+
+    /**
+     * Unregisters every client and releases every nickname.
+     */
+    public void clear() {
+        sessions.set(Sessions.EMPTY);
+        writers.clear();
+        reserved.clear();
+    }
+
+    /**
+     * One immutable state of the registry: the session slots indexed by client ID, with {@code null} for a free ID,
+     * and the registered writers packed into an array alongside their IDs for iteration.
+     */
+    private static final class Sessions {
+        private static final Sessions EMPTY = new Sessions(new ClientWriter[0], new ClientWriter[0], new int[0]);
+
+        private final ClientWriter[] slots;
+        private final ClientWriter[] writers;
+        private final int[] ids;
+
+        private Sessions(ClientWriter[] slots, ClientWriter[] writers, int[] ids) {
+            this.slots = slots;
+            this.writers = writers;
+            this.ids = ids;
+        }
+
+        private Sessions with(ClientWriter writer) {
+            int id = 0;
+            while (id < slots.length && slots[id] != null) {
+                id++;
+            }
+            ClientWriter[] nextSlots = Arrays.copyOf(slots, Math.max(slots.length, id + 1));
+            nextSlots[id] = writer;
+            ClientWriter[] nextWriters = Arrays.copyOf(writers, writers.length + 1);
+            nextWriters[writers.length] = writer;
+            int[] nextIds = Arrays.copyOf(ids, ids.length + 1);
+            nextIds[ids.length] = id;
+            // Set on every attempt: the writer is only published once one of them wins the compare-and-set.
+            writer.setClientId(id);
+            return new Sessions(nextSlots, nextWriters, nextIds);
+        }
+
+        private Sessions without(ClientWriter removed) {
+            if (removed == null) {
+                return this;
+            }
+            int id = removed.getClientId();
+            if (id < 0 || id >= slots.length || slots[id] != removed) {
+                return this;
+            }
+            int length = id == slots.length - 1 ? id : slots.length;
+            while (length > 0 && slots[length - 1] == null) {
+                length--;
+            }
+            ClientWriter[] nextSlots = Arrays.copyOf(slots, length);
+            if (id < length) {
+                nextSlots[id] = null;
+            }
+            int index = 0;
+            while (writers[index] != removed) {
+                index++;
+            }
+            ClientWriter[] nextWriters = new ClientWriter[writers.length - 1];
+            System.arraycopy(writers, 0, nextWriters, 0, index);
+            System.arraycopy(writers, index + 1, nextWriters, index, nextWriters.length - index);
+            int[] nextIds = new int[ids.length - 1];
+            System.arraycopy(ids, 0, nextIds, 0, index);
+            System.arraycopy(ids, index + 1, nextIds, index, nextIds.length - index);
+            return new Sessions(nextSlots, nextWriters, nextIds);
+        }
+    }
+}
@@ -0,0 +1,428 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code ClientWriter} class owns the outbound side of one client connection of a {@link TCPMultiServer}.
+ * Messages are placed in a bounded queue by any thread and written to the socket by the writer's own thread,
+ * so a client that stops reading only fills its own queue and never blocks the senders.
+ * The queue is bounded both in messages and in pending bytes. A message that would exceed either limit (the
+ * high-water mark) is handled by the writer's {@link SlowConsumerPolicy}: the new message or the oldest ones are
+ * dropped, or the client is sent a notice and disconnected. Every action is counted in a {@link SlowConsumerStats};
+ * the first one after the client last caught up is logged as a warning, later ones at debug level.
+ * Messages arrive already encoded, so the writer only copies bytes to the socket in the client's
+ * {@link WireProtocol}. Everything queued when the writer wakes up is coalesced into one buffer and flushed with a
+ * single write; with a maximum hold time the writer also waits up to that long for more messages to join the batch.
+ * For a binary client that negotiated compression, the writer sends each message's compressed frames, built once
+ * per message with the first recipient's {@link FrameCompressor}. Queue limits still count uncompressed sizes, so
+ * they do not depend on which writer compressed a message first.
+ */
+public class ClientWriter implements Runnable {
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    public static final long DEFAULT_HIGH_WATER_BYTES = 1024 * 1024;
+    static final long DISCONNECT_GRACE_MILLIS = 1000;
+    static final String DISCONNECT_NOTICE = "Disconnected: you are too far behind on messages.";
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_BATCH_MESSAGES = 256;
+
+    private final String nickname;
+    private final Socket socket;
+    private final BlockingQueue<EncodedMessage> queue;
+    private final ThreadFactory threadFactory;
+    private final WireProtocol protocol;
+    private final long maxHoldNanos;
+    private final WriteBatchStats batchStats;
+    private final SlowConsumerPolicy slowConsumerPolicy;
+    private final long highWaterBytes;
+    private final SlowConsumerStats slowConsumerStats;
+    private FrameCompressor compressor;
+    private CompressionStats compressionStats;
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicBoolean disconnecting = new AtomicBoolean();
+    private volatile int clientId = ClientRegistry.NO_ID;
+    private volatile boolean behind;
+    private volatile boolean isRunning = true;
+    private Thread thread;
+
+    /**
+     * Constructs a new {@code ClientWriter} for the given client, running on a platform daemon thread.
+     *
+     * @param nickname      The nickname of the client, used for the thread name and log messages.
+     * @param socket        The client's socket.
+     * @param queueCapacity The maximum number of messages waiting to be written.
+     * @throws IllegalArgumentException If the queue capacity is not positive.
+     */
+    public ClientWriter(String nickname, Socket socket, int queueCapacity) {
+        this(nickname, socket, queueCapacity, ExecutionMode.PLATFORM.threadFactory("writer-", true));
+    }
+
+    /**
+     * Constructs a new {@code ClientWriter} for a text client.
+     *
+     * @param nickname      The nickname of the client, used for the thread name and log messages.
+     * @param socket        The client's socket.
+     * @param queueCapacity The maximum number of messages waiting to be written.
+     * @param threadFactory The factory creating the writer thread.
+     * @throws IllegalArgumentException If the queue capacity is not positive.
+     */
+    public ClientWriter(String nickname, Socket socket, int queueCapacity, ThreadFactory threadFactory) {
+        this(nickname, socket, queueCapacity, threadFactory, WireProtocol.TEXT);
+    }
+
+    /**
+     * Constructs a new {@code ClientWriter} for the given client.
+     *
+     * @param nickname      The nickname of the client, used for the thread name and log messages.
+     * @param socket        The client's socket.
+     * @param queueCapacity The maximum number of messages waiting to be written.
+     * @param threadFactory The factory creating the writer thread.
+     * @param protocol      The protocol the client speaks.
+     * @throws IllegalArgumentException If the queue capacity is not positive.
+     */
+    public ClientWriter(String nickname, Socket socket, int queueCapacity, ThreadFactory threadFactory, WireProtocol protocol) {
+        this(nickname, socket, queueCapacity, threadFactory, protocol, 0, new WriteBatchStats());
+    }
+
+    /**
+     * Constructs a new {@code ClientWriter} for the given client.
+     *
+     * @param nickname      The nickname of the client, used for the thread name and log messages.
+     * @param socket        The client's socket.
+     * @param queueCapacity The maximum number of messages waiting to be written.
+     * @param threadFactory The factory creating the writer thread.
+     * @param protocol      The protocol the client speaks.
+     * @param maxHoldNanos  How long the first message of a batch may wait for more messages, or {@code 0} to flush
+     *                      as soon as the queue is empty.
+     * @param batchStats    The statistics every flush is recorded in.
+     * @throws IllegalArgumentException If the queue capacity is not positive or the hold time is negative.
+     */
+    public ClientWriter(String nickname, Socket socket, int queueCapacity, ThreadFactory threadFactory, WireProtocol protocol,
+                        long maxHoldNanos, WriteBatchStats batchStats) {
+        this(nickname, socket, queueCapacity, threadFactory, protocol, maxHoldNanos, batchStats,
+                SlowConsumerPolicy.DROP_NEWEST, DEFAULT_HIGH_WATER_BYTES, new SlowConsumerStats());
+    }
+
+    /**
+     * Constructs a new {@code ClientWriter} for the given client.
+     *
+     * @param nickname           The nickname of the client, used for the thread name and log messages.
+     * @param socket             The client's socket.
+     * @param queueCapacity      The maximum number of messages waiting to be written.
+     * @param threadFactory      The factory creating the writer thread.
+     * @param protocol           The protocol the client speaks.
+     * @param maxHoldNanos       How long the first message of a batch may wait for more messages, or {@code 0} to
+     *                           flush as soon as the queue is empty.
+     * @param batchStats         The statistics every flush is recorded in.
+     * @param slowConsumerPolicy What to do with a message that would exceed the high-water mark.
+     * @param highWaterBytes     The maximum number of bytes waiting to be written.
+     * @param slowConsumerStats  The statistics every slow-consumer action is recorded in.
+     * @throws IllegalArgumentException If the queue capacity or high-water mark is not positive or the hold time is
+     *                                  negative.
+     */
+    public ClientWriter(String nickname, Socket socket, int queueCapacity, ThreadFactory threadFactory, WireProtocol protocol,
+                        long maxHoldNanos, WriteBatchStats batchStats, SlowConsumerPolicy slowConsumerPolicy,
+                        long highWaterBytes, SlowConsumerStats slowConsumerStats) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + queueCapacity);
+        }
+        if (maxHoldNanos < 0) {
+            throw new IllegalArgumentException("Maximum hold time cannot be negative: " + maxHoldNanos);
+        }
+        if (highWaterBytes <= 0) {
+            throw new IllegalArgumentException("High-water mark must be positive: " + highWaterBytes);
+        }
+        this.nickname = nickname;
+        this.socket = socket;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.threadFactory = threadFactory;
+        this.protocol = protocol;
+        this.maxHoldNanos = maxHoldNanos;
+        this.batchStats = batchStats;
+        this.slowConsumerPolicy = slowConsumerPolicy;
+        this.highWaterBytes = highWaterBytes;
+        this.slowConsumerStats = slowConsumerStats;
+    }
+
+    /**
+     * Makes the writer send compressed frames. Call this before {@link #start()}; the writer closes the compressor
+     * when it stops.
+     *
+     * @param compressor The compressor owned by this client's connection.
+     * @param stats      The statistics the bytes saved are recorded in.
+     * @throws IllegalArgumentException If the client does not speak the binary protocol.
+     */
+    public void setCompression(FrameCompressor compressor, CompressionStats stats) {
+        if (protocol != WireProtocol.BINARY) {
+            throw new IllegalArgumentException("Compression needs binary framing");
+        }
+        this.compressor = compressor;
+        this.compressionStats = stats;
+    }
+
+    /**
+     * Starts the writer thread.
+     */
+    public void start() {
+        thread = threadFactory.newThread(this);
+        thread.setName("writer-" + nickname);
+        thread.start();
+    }
+
+    /**
+     * Queues a message for the client without blocking. A message is always accepted when nothing else is pending,
+     * even if it is larger than the high-water mark.
+     *
+     * @param message The encoded message to send. The same instance may be queued for many clients.
+     * @return {@code true} if the message was queued, {@code false} if it was dropped or the client is being
+     *         disconnected.
+     */
+    public boolean send(EncodedMessage message) {
+        if (disconnecting.get()) {
+            return false;
+        }
+        long size = protocol.length(message);
+        if (tryQueue(message, size)) {
+            return true;
+        }
+
+        switch (slowConsumerPolicy) {
+            case DROP_OLDEST:
+                EncodedMessage oldest;
+                while ((pendingBytes.get() + size > highWaterBytes || queue.remainingCapacity() == 0)
+                        && (oldest = queue.poll()) != null) {
+                    pendingBytes.addAndGet(-protocol.length(oldest));
+                    fellBehind(SlowConsumerPolicy.DROP_OLDEST);
+                }
+                if (tryQueue(message, size)) {
+                    return true;
+                }
+                fellBehind(SlowConsumerPolicy.DROP_NEWEST);
+                return false;
+            case DISCONNECT:
+                disconnect();
+                return false;
+            default:
+                fellBehind(SlowConsumerPolicy.DROP_NEWEST);
+                return false;
+        }
+    }
+
+    private boolean tryQueue(EncodedMessage message, long size) {
+        long pending = pendingBytes.addAndGet(size);
+        if ((pending <= highWaterBytes || pending == size) && queue.offer(message)) {
+            return true;
+        }
+        pendingBytes.addAndGet(-size);
+        return false;
+    }
+
+    private void fellBehind(SlowConsumerPolicy action) {
+        droppedCount.incrementAndGet();
+        slowConsumerStats.record(action);
+        if (!behind) {
+            behind = true;
+            Log.warn(nickname + " is falling behind with " + pendingBytes.get() + " bytes pending, applying "
+                    + action.name().toLowerCase(Locale.ROOT).replace('_', ' ') + ".");
+        } else if (Log.logger().isEnabled(LogLevel.DEBUG)) {
+            Log.debug("Slow consumer " + nickname + ": " + action.name().toLowerCase(Locale.ROOT).replace('_', ' ') + ".");
+        }
+    }
+
+    /**
+     * Discards the pending messages, queues the disconnect notice and closes the socket once the notice is written
+     * or, if the client does not read it, after a grace period.
+     */
+    private void disconnect() {
+        if (!disconnecting.compareAndSet(false, true)) {
+            return;
+        }
+        long pending = pendingBytes.get();
+        EncodedMessage discarded;
+        while ((discarded = queue.poll()) != null) {
+            pendingBytes.addAndGet(-protocol.length(discarded));
+        }
+        queue.offer(EncodedMessage.of(DISCONNECT_NOTICE));
+        slowConsumerStats.record(SlowConsumerPolicy.DISCONNECT);
+        Log.warn("Disconnecting " + nickname + ": " + pending + " bytes pending exceeded the high-water mark of "
+                + highWaterBytes + " bytes.");
+        CompletableFuture.delayedExecutor(DISCONNECT_GRACE_MILLIS, TimeUnit.MILLISECONDS).execute(this::closeSocket);
+    }
+
+    private void closeSocket() {
+        isRunning = false;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            Log.error("Failed to close socket for " + nickname + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Drains the queue to the socket until the writer is closed or the connection fails. If a message cannot be
+     * written at all, the socket is closed so the client is disconnected rather than left without a writer.
+     * Each batch starts with the next queued message and is flushed once, after the last message that was queued
+     * before the batch's hold time ran out.
+     */
+    @Override
+    public void run() {
+        try {
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream(), WRITE_BUFFER_SIZE);
+            while (isRunning) {
+                EncodedMessage message = queue.take();
+                long deadline = System.nanoTime() + maxHoldNanos;
+                int batched = 0;
+                long bytes = 0;
+                long written = 0;
+                do {
+                    bytes += protocol.length(message);
+                    written += write(message, out);
+                    batched++;
+                } while (batched < MAX_BATCH_MESSAGES && (message = nextInBatch(deadline)) != null);
+                out.flush();
+                pendingBytes.addAndGet(-bytes);
+                batchStats.record(batched, written);
+                if (compressor != null) {
+                    compressionStats.recordSaved(bytes - written);
+                }
+                if (queue.isEmpty()) {
+                    if (disconnecting.get()) {
+                        closeSocket();
+                        return;
+                    }
+                    if (behind) {
+                        behind = false;
+                        Log.info(nickname + " caught up.");
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            if (isRunning) {
+                Log.error("Failed to send message to " + nickname + ": " + e.getMessage());
+            }
+        } catch (RuntimeException e) {
+            Log.error("Failed to encode message for " + nickname + ", closing the connection: " + e);
+            closeSocket();
+        } finally {
+            queue.clear();
+            pendingBytes.set(0);
+            if (compressor != null) {
+                compressor.close();
+            }
+        }
+    }
+
+    private long write(EncodedMessage message, OutputStream out) throws IOException {
+        if (compressor != null) {
+            return message.writeCompressedFrameTo(out, compressor);
+        }
+        protocol.write(message, out);
+        return protocol.length(message);
+    }
+
+    private EncodedMessage nextInBatch(long deadline) throws InterruptedException {
+        EncodedMessage next = queue.poll();
+        if (next != null || maxHoldNanos == 0) {
+            return next;
+        }
+        long remaining = deadline - System.nanoTime();
+        return remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+    }
+
+    /**
+     * Stops the writer thread. Messages still in the queue are discarded.
+     */
+    public void close() {
+        isRunning = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Returns the number of messages waiting to be written.
+     *
+     * @return The current queue depth.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the number of bytes waiting to be written.
+     *
+     * @return The pending outbound bytes.
+     */
+    public long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    /**
+     * Checks whether the writer is disconnecting its client for falling behind.
+     *
+     * @return {@code true} once the disconnect notice has been queued.
+     */
+    public boolean isDisconnecting() {
+        return disconnecting.get();
+    }
+
+    /**
+     * Returns the number of messages dropped because the queue was full.
+     *
+     * @return The number of dropped messages.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Returns the protocol the client speaks.
+     *
+     * @return The client's wire protocol.
+     */
+    public WireProtocol getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * Returns the socket this writer sends to.
+     *
+     * @return The client's socket.
+     */
+    public Socket getSocket() {
+        return socket;
+    }
+
+    /**
+     * Returns the nickname of the client this writer sends to.
+     *
+     * @return The client's nickname.
+     */
+    public String getNickname() {
+        return nickname;
+    }
+
+    /**
+     * Returns the session ID the {@link ClientRegistry} assigned to the client when it registered.
+     *
+     * @return The client ID, or {@link ClientRegistry#NO_ID} if the writer is not registered.
+     */
+    public int getClientId() {
+        return clientId;
+    }
+
+    void setClientId(int clientId) {
+        this.clientId = clientId;
+    }
+}
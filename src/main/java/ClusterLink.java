@@ -0,0 +1,235 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code ClusterLink} class is the persistent outbound connection from a {@link ClusterNode} to one peer.
+ * The link connects, exchanges {@link ClusterProtocol#TYPE_HELLO} greetings and then writes the frames queued by
+ * the node; if the connection fails it reconnects with exponential backoff until the link is closed.
+ * Like a {@link ClientWriter}, the link never blocks the thread queuing a frame: a single writer thread drains
+ * everything queued into one buffer and flushes it with a single write, so the inter-node traffic of a busy node
+ * travels in batches. Frames are only accepted while the link is connected; a node that is unreachable misses the
+ * messages broadcast in the meantime. Claim answers sent back by the peer are read by a second thread.
+ */
+public class ClusterLink implements Runnable {
+    public static final int DEFAULT_QUEUE_CAPACITY = 16 * 1024;
+    static final long MIN_BACKOFF_MILLIS = 50;
+    static final long MAX_BACKOFF_MILLIS = 5000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_BATCH_FRAMES = 256;
+
+    private final ClusterNode node;
+    private final InetSocketAddress address;
+    private final ThreadFactory threadFactory;
+    private final WriteBatchStats batchStats;
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(DEFAULT_QUEUE_CAPACITY);
+    private final LongAdder droppedCount = new LongAdder();
+    private volatile boolean isRunning = true;
+    private volatile boolean connected;
+    private volatile String peerNodeId;
+    private volatile Socket socket;
+    private Thread thread;
+
+    /**
+     * Constructs a new {@code ClusterLink}. The link does not connect before {@link #start()}.
+     *
+     * @param node          The node owning the link.
+     * @param address       The cluster address of the peer.
+     * @param threadFactory The factory creating the writer and reader threads.
+     * @param batchStats    The statistics every flush is recorded in.
+     */
+    public ClusterLink(ClusterNode node, InetSocketAddress address, ThreadFactory threadFactory, WriteBatchStats batchStats) {
+        this.node = node;
+        this.address = address;
+        this.threadFactory = threadFactory;
+        this.batchStats = batchStats;
+    }
+
+    /**
+     * Starts the writer thread, which connects to the peer.
+     */
+    public void start() {
+        thread = threadFactory.newThread(this);
+        thread.setName("cluster-link-" + address.getHostString() + ":" + address.getPort());
+        thread.start();
+    }
+
+    /**
+     * Queues a frame for the peer without blocking.
+     *
+     * @param frame The encoded frame. The same array may be queued on many links.
+     * @return {@code true} if the frame was queued, {@code false} if the link is down or its queue is full.
+     */
+    public boolean send(byte[] frame) {
+        if (connected && queue.offer(frame)) {
+            return true;
+        }
+        droppedCount.increment();
+        return false;
+    }
+
+    /**
+     * Connects to the peer and writes queued frames until the link is closed, reconnecting whenever the
+     * connection fails.
+     */
+    @Override
+    public void run() {
+        long backoffMillis = MIN_BACKOFF_MILLIS;
+        while (isRunning) {
+            try (Socket connection = new Socket()) {
+                // Resolve on every attempt, so a peer that moved is found again.
+                connection.connect(new InetSocketAddress(address.getHostString(), address.getPort()), CONNECT_TIMEOUT_MILLIS);
+                connection.setTcpNoDelay(true);
+                socket = connection;
+                OutputStream out = new BufferedOutputStream(connection.getOutputStream(), WRITE_BUFFER_SIZE);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+                out.write(ClusterProtocol.hello(node.getNodeId()));
+                out.flush();
+                ClusterProtocol.Frame hello = ClusterProtocol.read(in);
+                if (hello == null || hello.getType() != ClusterProtocol.TYPE_HELLO) {
+                    throw new IOException("Peer did not answer with a greeting");
+                }
+                peerNodeId = hello.nextString();
+                backoffMillis = MIN_BACKOFF_MILLIS;
+
+                threadFactory.newThread(() -> readAnswers(connection, in)).start();
+                connected = true;
+                Log.info("Cluster link to " + peerNodeId + " at " + describeAddress() + " is up.");
+                node.linkUp(this);
+                writeFrames(connection, out);
+            } catch (IOException e) {
+                if (isRunning && connected) {
+                    Log.warn("Cluster link to " + describeAddress() + " lost: " + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                if (connected) {
+                    connected = false;
+                    queue.clear();
+                }
+            }
+
+            try {
+                TimeUnit.MILLISECONDS.sleep(backoffMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+        }
+    }
+
+    private void writeFrames(Socket connection, OutputStream out) throws IOException, InterruptedException {
+        List<byte[]> batch = new ArrayList<>(MAX_BATCH_FRAMES);
+        while (isRunning && !connection.isClosed()) {
+            byte[] first = queue.poll(100, TimeUnit.MILLISECONDS);
+            if (first == null) {
+                continue;
+            }
+            batch.add(first);
+            queue.drainTo(batch, MAX_BATCH_FRAMES - 1);
+            long bytes = 0;
+            for (byte[] frame : batch) {
+                out.write(frame);
+                bytes += frame.length;
+            }
+            out.flush();
+            batchStats.record(batch.size(), bytes);
+            batch.clear();
+        }
+    }
+
+    private void readAnswers(Socket connection, DataInputStream in) {
+        try {
+            ClusterProtocol.Frame frame;
+            while ((frame = ClusterProtocol.read(in)) != null) {
+                byte type = frame.getType();
+                if (type == ClusterProtocol.TYPE_GRANT || type == ClusterProtocol.TYPE_DENY) {
+                    node.onAnswer(frame.nextLong(), type == ClusterProtocol.TYPE_GRANT);
+                } else {
+                    Log.warn("Ignoring cluster frame of type " + type + " from " + peerNodeId);
+                }
+            }
+        } catch (IOException e) {
+            // The writer notices the closed socket and reconnects.
+        } finally {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                Log.error("Failed to close cluster link to " + describeAddress() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Closes the link and stops reconnecting.
+     */
+    public void close() {
+        isRunning = false;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                Log.error("Failed to close cluster link to " + describeAddress() + ": " + e.getMessage());
+            }
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Checks whether the link is connected and accepts frames.
+     *
+     * @return {@code true} once the greetings have been exchanged, until the connection fails.
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Returns the ID of the peer, as sent in its greeting.
+     *
+     * @return The peer's node ID, or {@code null} if the link never connected.
+     */
+    public String getPeerNodeId() {
+        return peerNodeId;
+    }
+
+    /**
+     * Returns the cluster address of the peer.
+     *
+     * @return The address the link connects to.
+     */
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Returns the number of frames not sent because the link was down or its queue was full.
+     *
+     * @return The number of dropped frames.
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    private String describeAddress() {
+        return address.getHostString() + ":" + address.getPort();
+    }
+}
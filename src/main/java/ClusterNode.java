@@ -0,0 +1,528 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code ClusterNode} class links a {@link TCPMultiServer} to other servers, so that clients connected to
+ * different nodes chat as if they shared one server. Nodes form a full mesh: every node is given the cluster
+ * addresses of all the others, keeps a persistent {@link ClusterLink} to each of them and accepts their links on
+ * its own cluster port.
+ * <ul>
+ *   <li>A broadcast made on a node is delivered to its local clients and forwarded exactly once to every peer, in
+ *   a {@link ClusterProtocol#TYPE_MESSAGE} frame carrying the origin node ID, the origin's incarnation and a
+ *   sequence number. Peers deliver it to their own clients and never forward it again. A frame from the node
+ *   itself or with a message ID already seen is dropped, so a misconfigured peer list cannot make a message loop
+ *   or arrive twice, while a message that arrives after a later one from the same origin is still delivered.</li>
+ *   <li>Nicknames are unique across the cluster: before a client gets a name, the node claims it from every
+ *   connected peer and uses it only if none of them denies it; a peer that grants a claim holds the name for the
+ *   claiming node until that node releases it or its link goes down. When two nodes claim the same name at the
+ *   same time, the node with the lower ID wins. Peers that do not answer in time are ignored, so a partitioned
+ *   node keeps accepting clients.</li>
+ *   <li>Frames to a peer are queued and written in batches by the link's own thread.</li>
+ * </ul>
+ */
+public class ClusterNode {
+    public static final long DEFAULT_CLAIM_TIMEOUT_MILLIS = 2000;
+
+    private final TCPMultiServer server;
+    private final String nodeId;
+    private final int port;
+    private final List<InetSocketAddress> peers;
+    private final long incarnation = System.currentTimeMillis();
+    private final Object forwardLock = new Object();
+    private long sequence;
+    private final AtomicLong claimIds = new AtomicLong();
+    private final ThreadFactory threads = ExecutionMode.PLATFORM.threadFactory("cluster-", true);
+    private final List<ClusterLink> links = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<String, String> remoteNicknames = new ConcurrentHashMap<>();
+    private final Set<String> pendingClaims = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<Long, Claim> claims = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, SeenMessages> seen = new ConcurrentHashMap<>();
+    private final Set<Socket> inbound = ConcurrentHashMap.newKeySet();
+    private final WriteBatchStats batches = new WriteBatchStats();
+    private final LongAdder forwarded;
+    private final LongAdder received;
+    private final LongAdder duplicates;
+    private final LongAdder loops;
+    private final LongAdder claimsDenied;
+    private volatile long claimTimeoutMillis = DEFAULT_CLAIM_TIMEOUT_MILLIS;
+    private volatile boolean isRunning;
+    private ServerSocket serverSocket;
+
+    /**
+     * Constructs a new {@code ClusterNode} for a server and registers its metrics with the server's registry.
+     * The node does not listen or connect before {@link #start()}.
+     *
+     * @param server The server whose broadcasts and nicknames are shared with the cluster.
+     * @param nodeId The ID of this node, unique in the cluster.
+     * @param port   The port on which peers connect to this node.
+     * @param peers  The cluster addresses of the other nodes.
+     * @throws IllegalArgumentException If the node ID is empty or the port is not in the valid range (1-65535).
+     */
+    public ClusterNode(TCPMultiServer server, String nodeId, int port, List<InetSocketAddress> peers) {
+        if (nodeId == null || nodeId.isEmpty()) {
+            throw new IllegalArgumentException("Node ID must not be empty");
+        }
+        if (port < 1 || port > 65535) {
+            throw new IllegalArgumentException("Port number must be between 1 and 65535: " + port);
+        }
+        this.server = server;
+        this.nodeId = nodeId;
+        this.port = port;
+        this.peers = List.copyOf(peers);
+
+        MetricsRegistry metrics = server.getMetrics();
+        this.forwarded = metrics.counter("cluster.forwarded");
+        this.received = metrics.counter("cluster.received");
+        this.duplicates = metrics.counter("cluster.duplicates");
+        this.loops = metrics.counter("cluster.loops");
+        this.claimsDenied = metrics.counter("cluster.claims.denied");
+        metrics.gauge("cluster.links", this::getConnectedLinkCount);
+        metrics.gauge("cluster.nicknames.remote", remoteNicknames::size);
+        metrics.gauge("messages.out.cluster", batches::getMessageCount);
+        metrics.gauge("bytes.out.cluster", batches::getByteCount);
+        metrics.gauge("flushes.cluster", batches::getFlushCount);
+    }
+
+    /**
+     * Starts listening for peers and connects to every peer of the list.
+     *
+     * @throws IOException If the cluster port cannot be bound.
+     */
+    public synchronized void start() throws IOException {
+        if (isRunning) {
+            return;
+        }
+        serverSocket = new ServerSocket(port);
+        isRunning = true;
+        Thread acceptor = threads.newThread(this::acceptPeers);
+        acceptor.setName("cluster-acceptor-" + port);
+        acceptor.start();
+        for (InetSocketAddress peer : peers) {
+            ClusterLink link = new ClusterLink(this, peer, threads, batches);
+            links.add(link);
+            link.start();
+        }
+        Log.info("Cluster node " + nodeId + " listening on port " + port + " with " + peers.size() + " peers");
+    }
+
+    /**
+     * Forwards a message broadcast on this node to every connected peer. The sequence number is taken and the frame
+     * queued on every link under one lock, so concurrent broadcasts reach each peer in sequence order. Queuing never
+     * blocks, so the lock is only held for as long as it takes to encode the frame.
+     *
+     * @param room    The room the message was broadcast to, or {@code ""} for all clients.
+     * @param message The message.
+     */
+    public void forward(String room, String message) {
+        if (!isRunning || links.isEmpty()) {
+            return;
+        }
+        synchronized (forwardLock) {
+            byte[] frame = ClusterProtocol.message(nodeId, incarnation, ++sequence, room, message);
+            for (ClusterLink link : links) {
+                if (link.send(frame)) {
+                    forwarded.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Claims a nickname, already reserved on this node, from every connected peer and waits for their answers.
+     * If the claim fails, the peers that granted it are told to release the name again.
+     *
+     * @param nickname The nickname.
+     * @return {@code true} unless a peer denied the claim.
+     * @throws InterruptedException If the thread is interrupted while waiting for answers.
+     */
+    public boolean claim(String nickname) throws InterruptedException {
+        List<ClusterLink> connected = new ArrayList<>();
+        for (ClusterLink link : links) {
+            if (link.isConnected()) {
+                connected.add(link);
+            }
+        }
+        if (connected.isEmpty()) {
+            return true;
+        }
+
+        long claimId = claimIds.incrementAndGet();
+        Claim claim = new Claim(connected.size());
+        pendingClaims.add(nickname);
+        claims.put(claimId, claim);
+        try {
+            byte[] frame = ClusterProtocol.claim(claimId, nickname);
+            for (ClusterLink link : connected) {
+                if (!link.send(frame)) {
+                    claim.answers.countDown();
+                }
+            }
+            if (!claim.answers.await(claimTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                Log.warn("Cluster peers did not answer the claim for " + nickname + " in time.");
+            }
+        } finally {
+            claims.remove(claimId);
+            pendingClaims.remove(nickname);
+        }
+        if (claim.denied) {
+            claimsDenied.increment();
+            release(nickname);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Tells every peer that a nickname is no longer used on this node.
+     *
+     * @param nickname The nickname.
+     */
+    public void release(String nickname) {
+        byte[] frame = ClusterProtocol.release(nickname);
+        for (ClusterLink link : links) {
+            link.send(frame);
+        }
+    }
+
+    /**
+     * Checks whether a nickname is held for a client of another node.
+     *
+     * @param nickname The nickname.
+     * @return {@code true} if a peer holds the nickname.
+     */
+    public boolean isRemoteNickname(String nickname) {
+        return remoteNicknames.containsKey(nickname);
+    }
+
+    /**
+     * Called by a link once it is connected: announces the nicknames of this node's clients to the peer.
+     *
+     * @param link The link.
+     */
+    void linkUp(ClusterLink link) {
+        for (String nickname : server.getNicknames()) {
+            link.send(ClusterProtocol.announce(nickname));
+        }
+    }
+
+    /**
+     * Called by a link when a peer answers a claim.
+     *
+     * @param claimId The ID of the claim.
+     * @param granted {@code true} if the peer granted the nickname.
+     */
+    void onAnswer(long claimId, boolean granted) {
+        Claim claim = claims.get(claimId);
+        if (claim != null) {
+            if (!granted) {
+                claim.denied = true;
+            }
+            claim.answers.countDown();
+        }
+    }
+
+    private void acceptPeers() {
+        while (isRunning) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                threads.newThread(() -> servePeer(socket)).start();
+            } catch (IOException e) {
+                if (isRunning) {
+                    Log.error("Error accepting cluster connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the frames sent by a peer's link until the connection ends. Nicknames held for the peer through this
+     * connection are released when it does.
+     *
+     * @param socket The accepted connection.
+     */
+    private void servePeer(Socket socket) {
+        inbound.add(socket);
+        String peerId = null;
+        Set<String> held = new HashSet<>();
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            OutputStream out = socket.getOutputStream();
+            ClusterProtocol.Frame hello = ClusterProtocol.read(in);
+            if (hello == null || hello.getType() != ClusterProtocol.TYPE_HELLO) {
+                Log.warn("Closing cluster connection from " + socket.getRemoteSocketAddress() + " without a greeting.");
+                return;
+            }
+            peerId = hello.nextString();
+            out.write(ClusterProtocol.hello(nodeId));
+            out.flush();
+
+            ClusterProtocol.Frame frame;
+            while ((frame = ClusterProtocol.read(in)) != null) {
+                switch (frame.getType()) {
+                    case ClusterProtocol.TYPE_MESSAGE:
+                        receiveMessage(frame);
+                        break;
+                    case ClusterProtocol.TYPE_CLAIM:
+                        long claimId = frame.nextLong();
+                        String claimed = frame.nextString();
+                        boolean granted = grant(peerId, claimed);
+                        if (granted) {
+                            held.add(claimed);
+                        }
+                        out.write(ClusterProtocol.answer(claimId, granted));
+                        out.flush();
+                        break;
+                    case ClusterProtocol.TYPE_ANNOUNCE:
+                        String announced = frame.nextString();
+                        if (hold(peerId, announced)) {
+                            held.add(announced);
+                        } else if (!peerId.equals(remoteNicknames.get(announced))) {
+                            Log.warn("Nickname " + announced + " is used on both " + nodeId + " and " + peerId + ".");
+                        }
+                        break;
+                    case ClusterProtocol.TYPE_RELEASE:
+                        String released = frame.nextString();
+                        if (remoteNicknames.remove(released, peerId)) {
+                            server.releaseNickname(released);
+                        }
+                        held.remove(released);
+                        break;
+                    default:
+                        Log.warn("Ignoring cluster frame of type " + frame.getType() + " from " + peerId);
+                }
+            }
+        } catch (IOException e) {
+            if (isRunning) {
+                Log.warn("Cluster connection from " + (peerId != null ? peerId : socket.getRemoteSocketAddress()) + " lost: " + e.getMessage());
+            }
+        } finally {
+            inbound.remove(socket);
+            for (String nickname : held) {
+                if (remoteNicknames.remove(nickname, peerId)) {
+                    server.releaseNickname(nickname);
+                }
+            }
+        }
+    }
+
+    private void receiveMessage(ClusterProtocol.Frame frame) throws IOException {
+        String origin = frame.nextString();
+        long originIncarnation = frame.nextLong();
+        long messageSequence = frame.nextLong();
+        String room = frame.nextString();
+        String message = frame.nextString();
+        if (origin.equals(nodeId)) {
+            loops.increment();
+            return;
+        }
+        if (!seen.computeIfAbsent(origin, id -> new SeenMessages()).accept(originIncarnation, messageSequence)) {
+            duplicates.increment();
+            return;
+        }
+        received.increment();
+        server.deliverFromCluster(room, message);
+    }
+
+    /**
+     * Decides on a peer's claim. A name free on this node is held for the peer. A name this node is claiming
+     * itself goes to the node with the lower ID.
+     */
+    private boolean grant(String peerId, String nickname) {
+        if (hold(peerId, nickname)) {
+            return true;
+        }
+        if (pendingClaims.contains(nickname) && peerId.compareTo(nodeId) < 0) {
+            remoteNicknames.put(nickname, peerId);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean hold(String peerId, String nickname) {
+        if (server.holdNickname(nickname)) {
+            remoteNicknames.put(nickname, peerId);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Closes every link and peer connection and stops listening.
+     */
+    public synchronized void close() {
+        isRunning = false;
+        for (ClusterLink link : links) {
+            link.close();
+        }
+        links.clear();
+        for (Socket socket : inbound) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Log.error("Failed to close cluster connection: " + e.getMessage());
+            }
+        }
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                Log.error("Failed to close the cluster port: " + e.getMessage());
+            }
+        }
+        Log.info("Cluster node " + nodeId + ": " + batches + ".");
+    }
+
+    /**
+     * Sets how long a claim waits for the answers of the peers.
+     *
+     * @param claimTimeoutMillis The timeout in milliseconds.
+     * @throws IllegalArgumentException If the timeout is not positive.
+     */
+    public void setClaimTimeoutMillis(long claimTimeoutMillis) {
+        if (claimTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("Claim timeout must be positive: " + claimTimeoutMillis);
+        }
+        this.claimTimeoutMillis = claimTimeoutMillis;
+    }
+
+    /**
+     * Returns the ID of this node.
+     *
+     * @return The node ID.
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Returns the number of links currently connected.
+     *
+     * @return The number of connected peers.
+     */
+    public int getConnectedLinkCount() {
+        int count = 0;
+        for (ClusterLink link : links) {
+            if (link.isConnected()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the batching statistics of the frames written to peers.
+     *
+     * @return The number of flushes and the frames and bytes they carried.
+     */
+    public WriteBatchStats getWriteBatches() {
+        return batches;
+    }
+
+    /**
+     * Parses a cluster address given as {@code host:port}.
+     *
+     * @param address The address.
+     * @return The unresolved socket address.
+     * @throws IllegalArgumentException If the address has no port or the port is not a valid number.
+     */
+    public static InetSocketAddress parseAddress(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0 || colon == address.length() - 1) {
+            throw new IllegalArgumentException("Cluster address must be host:port: " + address);
+        }
+        int peerPort;
+        try {
+            peerPort = Integer.parseInt(address.substring(colon + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid port in cluster address: " + address);
+        }
+        if (peerPort < 1 || peerPort > 65535) {
+            throw new IllegalArgumentException("Port number must be between 1 and 65535: " + address);
+        }
+        return InetSocketAddress.createUnresolved(address.substring(0, colon), peerPort);
+    }
+
+    /**
+     * Returns the node ID used when none is configured: the host name and the client port of the server.
+     *
+     * @param port The client port of the server.
+     * @return The default node ID.
+     */
+    public static String defaultNodeId(int port) {
+        try {
+            return InetAddress.getLocalHost().getHostName() + ":" + port;
+        } catch (UnknownHostException e) {
+            return "localhost:" + port;
+        }
+    }
+
+    /**
+     * A claim waiting for the answers of the peers.
+     */
+    private static final class Claim {
+        private final CountDownLatch answers;
+        private volatile boolean denied;
+
+        private Claim(int peers) {
+            this.answers = new CountDownLatch(peers);
+        }
+    }
+
+    /**
+     * The message sequence numbers seen from one origin node: the highest one and a bitmap of the
+     * {@value #WINDOW} before it, so a message overtaken by a later one, as can happen when frames sent before and
+     * after a reconnect are read on two connections, is still accepted once. Messages older than the window are
+     * dropped. A node numbers its messages from one again when it restarts, so a higher incarnation starts a new
+     * sequence.
+     */
+    private static final class SeenMessages {
+        private static final int WINDOW = 64;
+
+        private long incarnation = Long.MIN_VALUE;
+        private long highest;
+        private long window;
+
+        private synchronized boolean accept(long messageIncarnation, long messageSequence) {
+            if (messageIncarnation > incarnation) {
+                incarnation = messageIncarnation;
+                highest = messageSequence;
+                window = 1;
+                return true;
+            }
+            if (messageIncarnation < incarnation) {
+                return false;
+            }
+            if (messageSequence > highest) {
+                long shift = messageSequence - highest;
+                window = shift >= WINDOW ? 1 : window << shift | 1;
+                highest = messageSequence;
+                return true;
+            }
+            long age = highest - messageSequence;
+            if (age >= WINDOW || (window & 1L << age) != 0) {
+                return false;
+            }
+            window |= 1L << age;
+            return true;
+        }
+    }
+}
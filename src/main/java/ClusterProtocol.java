@@ -0,0 +1,217 @@
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The {@code ClusterProtocol} class defines the frames exchanged between the nodes of a {@link ClusterNode}.
+ * Every frame is a 5-byte header followed by a body made of big-endian {@code long}s and length-prefixed UTF-8
+ * strings:
+ * <pre>
+ * +----------------+--------+------------------------------------------+
+ * | length (4, BE) | type   | body                                     |
+ * +----------------+--------+------------------------------------------+
+ * HELLO    node ID
+ * MESSAGE  origin node ID, incarnation, sequence, room ("" for everyone), text
+ * CLAIM    claim ID, nickname
+ * GRANT    claim ID
+ * DENY     claim ID
+ * ANNOUNCE nickname
+ * RELEASE  nickname
+ * </pre>
+ * {@code length} counts the type byte and the body. A string is a 4-byte length followed by its UTF-8 bytes.
+ * A link starts with the connecting node sending HELLO and the accepting node answering with its own HELLO; the
+ * accepting node then only writes GRANT and DENY answers back on the link.
+ */
+public final class ClusterProtocol {
+    public static final byte TYPE_HELLO = 1;
+    public static final byte TYPE_MESSAGE = 2;
+    public static final byte TYPE_CLAIM = 3;
+    public static final byte TYPE_GRANT = 4;
+    public static final byte TYPE_DENY = 5;
+    public static final byte TYPE_ANNOUNCE = 6;
+    public static final byte TYPE_RELEASE = 7;
+    public static final int HEADER_LENGTH = 5;
+    public static final int MAX_FRAME_LENGTH = FrameCodec.MAX_PAYLOAD_LENGTH + 4096;
+
+    private ClusterProtocol() {
+    }
+
+    /**
+     * Encodes the greeting opening a link.
+     *
+     * @param nodeId The ID of the sending node.
+     * @return The encoded frame.
+     */
+    public static byte[] hello(String nodeId) {
+        return stringFrame(TYPE_HELLO, nodeId);
+    }
+
+    /**
+     * Encodes a chat message forwarded to another node.
+     *
+     * @param origin      The ID of the node the message was broadcast on.
+     * @param incarnation The start time of the origin node, distinguishing its restarts.
+     * @param sequence    The number of the message on the origin node.
+     * @param room        The room the message was broadcast to, or {@code ""} for all clients.
+     * @param text        The message.
+     * @return The encoded frame.
+     */
+    public static byte[] message(String origin, long incarnation, long sequence, String room, String text) {
+        byte[] originBytes = origin.getBytes(StandardCharsets.UTF_8);
+        byte[] roomBytes = room.getBytes(StandardCharsets.UTF_8);
+        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = allocate(TYPE_MESSAGE, 4 + originBytes.length + 16 + 4 + roomBytes.length + 4 + textBytes.length);
+        putString(frame, originBytes);
+        frame.putLong(incarnation).putLong(sequence);
+        putString(frame, roomBytes);
+        putString(frame, textBytes);
+        return frame.array();
+    }
+
+    /**
+     * Encodes a request for a nickname.
+     *
+     * @param claimId  The ID of the claim, echoed by the answer.
+     * @param nickname The nickname.
+     * @return The encoded frame.
+     */
+    public static byte[] claim(long claimId, String nickname) {
+        byte[] nicknameBytes = nickname.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = allocate(TYPE_CLAIM, 8 + 4 + nicknameBytes.length);
+        frame.putLong(claimId);
+        putString(frame, nicknameBytes);
+        return frame.array();
+    }
+
+    /**
+     * Encodes the answer to a claim.
+     *
+     * @param claimId The ID of the claim.
+     * @param granted {@code true} if the nickname is free on the answering node.
+     * @return The encoded frame.
+     */
+    public static byte[] answer(long claimId, boolean granted) {
+        ByteBuffer frame = allocate(granted ? TYPE_GRANT : TYPE_DENY, 8);
+        frame.putLong(claimId);
+        return frame.array();
+    }
+
+    /**
+     * Encodes the announcement of a nickname already in use on the sending node.
+     *
+     * @param nickname The nickname.
+     * @return The encoded frame.
+     */
+    public static byte[] announce(String nickname) {
+        return stringFrame(TYPE_ANNOUNCE, nickname);
+    }
+
+    /**
+     * Encodes the release of a nickname no longer in use on the sending node.
+     *
+     * @param nickname The nickname.
+     * @return The encoded frame.
+     */
+    public static byte[] release(String nickname) {
+        return stringFrame(TYPE_RELEASE, nickname);
+    }
+
+    /**
+     * Reads the next frame from a stream.
+     *
+     * @param in The stream to read from.
+     * @return The frame, or {@code null} if the stream ended between frames.
+     * @throws IOException If the stream fails, ends inside a frame or the frame is malformed.
+     */
+    public static Frame read(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 1 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid cluster frame length: " + length);
+        }
+        byte type = in.readByte();
+        byte[] body = new byte[length - 1];
+        in.readFully(body);
+        return new Frame(type, ByteBuffer.wrap(body));
+    }
+
+    private static byte[] stringFrame(byte type, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = allocate(type, 4 + bytes.length);
+        putString(frame, bytes);
+        return frame.array();
+    }
+
+    private static ByteBuffer allocate(byte type, int bodyLength) {
+        if (bodyLength + 1 > MAX_FRAME_LENGTH) {
+            throw new IllegalArgumentException("Cluster frame exceeds " + MAX_FRAME_LENGTH + " bytes: " + (bodyLength + 1));
+        }
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_LENGTH + bodyLength);
+        frame.putInt(bodyLength + 1).put(type);
+        return frame;
+    }
+
+    private static void putString(ByteBuffer frame, byte[] bytes) {
+        frame.putInt(bytes.length).put(bytes);
+    }
+
+    /**
+     * A received frame, whose body fields are read in order.
+     */
+    public static final class Frame {
+        private final byte type;
+        private final ByteBuffer body;
+
+        private Frame(byte type, ByteBuffer body) {
+            this.type = type;
+            this.body = body;
+        }
+
+        /**
+         * Returns the type of the frame.
+         *
+         * @return One of the {@code TYPE_} constants, or an unknown value sent by a newer node.
+         */
+        public byte getType() {
+            return type;
+        }
+
+        /**
+         * Reads the next {@code long} field.
+         *
+         * @return The value.
+         * @throws IOException If the body has no more fields.
+         */
+        public long nextLong() throws IOException {
+            if (body.remaining() < 8) {
+                throw new IOException("Truncated cluster frame of type " + type);
+            }
+            return body.getLong();
+        }
+
+        /**
+         * Reads the next string field.
+         *
+         * @return The value.
+         * @throws IOException If the body has no more fields or the length is invalid.
+         */
+        public String nextString() throws IOException {
+            if (body.remaining() < 4) {
+                throw new IOException("Truncated cluster frame of type " + type);
+            }
+            int length = body.getInt();
+            if (length < 0 || length > body.remaining()) {
+                throw new IOException("Invalid string length in cluster frame of type " + type + ": " + length);
+            }
+            String value = new String(body.array(), body.position(), length, StandardCharsets.UTF_8);
+            body.position(body.position() + length);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,616 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * The {@code CommitLog} class persists received messages in an append-only log split into segments.
+ * Each segment is a fixed-size, memory-mapped file covering one time window and named after the offset of its first
+ * record; a new segment is started when the window has passed or the current one is full. Every record is
+ * <pre>
+ * +------------------+-------------+------------------+---------+
+ * | record size (4)  | CRC-32 (4)  | timestamp ms (8) | payload |
+ * +------------------+-------------+------------------+---------+
+ * </pre>
+ * and the record size is written last, so a record only becomes visible once it is complete. Next to each segment,
+ * a sparse index maps the offset of roughly every 4 KiB of records to its position in the file, so reads only scan
+ * a few records.
+ * <p>
+ * Appends only copy bytes into the mapping. A background thread forces the active segment to disk at the configured
+ * fsync interval, so many appends share one flush (group commit); with an interval of {@code 0} every append is
+ * flushed before it returns. A flush only holds the log's lock to pick the segments written since the last one;
+ * the {@code force} itself runs outside it, so appends carry on into the mapping while the disk catches up.
+ * On startup the last segment is scanned and the log resumes after the last record whose
+ * checksum is valid, discarding a record torn by a crash. Segments whose whole time window is older than the
+ * retention period are deleted.
+ * <p>
+ * The log drops its reference to a segment as soon as the segment is deleted or the log is closed, but the JDK only
+ * unmaps a {@link MappedByteBuffer} when it is garbage collected. Until then the mapping, and the disk space of a
+ * deleted segment file, stay in use. With hourly segments a node retires about one segment per window, so only the
+ * few retired since the last collection are held.
+ */
+public class CommitLog implements Closeable {
+    public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+    public static final long DEFAULT_SEGMENT_WINDOW_MILLIS = TimeUnit.HOURS.toMillis(1);
+    public static final long DEFAULT_FSYNC_INTERVAL_MILLIS = 1000;
+    public static final long DEFAULT_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    private static final String LOG_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".index";
+    private static final int MAGIC = 0x52545343;
+    private static final int VERSION = 1;
+    private static final int SEGMENT_HEADER_BYTES = 16;
+    private static final int RECORD_HEADER_BYTES = 16;
+    private static final int INDEX_INTERVAL_BYTES = 4096;
+    private static final int INDEX_ENTRY_BYTES = 8;
+    private static final int MIN_SEGMENT_BYTES = 1024;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long segmentWindowMillis;
+    private final long fsyncIntervalMillis;
+    private final long retentionMillis;
+    private final LongSupplier clock;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final CRC32 crc = new CRC32();
+    private final ScheduledExecutorService syncer;
+    private final Object flushLock = new Object();
+    private final List<Segment> rolled = new ArrayList<>();
+    private Segment active;
+    private long nextOffset;
+    private boolean closed;
+
+    /**
+     * Opens the log in a directory with the default segment size, window, fsync interval and retention.
+     *
+     * @param directory The directory holding the segment files; created if missing.
+     * @throws IOException If the directory or a segment cannot be read or created.
+     */
+    public CommitLog(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_SEGMENT_WINDOW_MILLIS, DEFAULT_FSYNC_INTERVAL_MILLIS, DEFAULT_RETENTION_MILLIS);
+    }
+
+    /**
+     * Opens the log in a directory, recovering any segments already there, or starts a new one.
+     *
+     * @param directory           The directory holding the segment files; created if missing.
+     * @param segmentBytes        The size of each segment file.
+     * @param segmentWindowMillis The time span covered by one segment.
+     * @param fsyncIntervalMillis The interval between flushes to disk, or {@code 0} to flush on every append.
+     * @param retentionMillis     How long segments are kept after their window ends, or {@code 0} to keep them all.
+     * @throws IOException              If the directory or a segment cannot be read or created.
+     * @throws IllegalArgumentException If a size or duration is out of range.
+     */
+    public CommitLog(Path directory, int segmentBytes, long segmentWindowMillis, long fsyncIntervalMillis, long retentionMillis) throws IOException {
+        this(directory, segmentBytes, segmentWindowMillis, fsyncIntervalMillis, retentionMillis, System::currentTimeMillis);
+    }
+
+    CommitLog(Path directory, int segmentBytes, long segmentWindowMillis, long fsyncIntervalMillis, long retentionMillis,
+              LongSupplier clock) throws IOException {
+        if (segmentBytes < MIN_SEGMENT_BYTES) {
+            throw new IllegalArgumentException("Segment size must be at least " + MIN_SEGMENT_BYTES + " bytes: " + segmentBytes);
+        }
+        if (segmentWindowMillis <= 0) {
+            throw new IllegalArgumentException("Segment window must be positive: " + segmentWindowMillis);
+        }
+        if (fsyncIntervalMillis < 0 || retentionMillis < 0) {
+            throw new IllegalArgumentException("Fsync interval and retention cannot be negative.");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.segmentWindowMillis = segmentWindowMillis;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.retentionMillis = retentionMillis;
+        this.clock = clock;
+
+        Files.createDirectories(directory);
+        recover();
+
+        if (fsyncIntervalMillis > 0) {
+            syncer = Executors.newSingleThreadScheduledExecutor(ExecutionMode.PLATFORM.threadFactory("commit-log-sync-", true));
+            syncer.scheduleWithFixedDelay(this::syncQuietly, fsyncIntervalMillis, fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            syncer = null;
+        }
+    }
+
+    /**
+     * Appends a message as UTF-8 text.
+     *
+     * @param text The message.
+     * @return The offset of the new record.
+     * @throws IOException If a new segment cannot be created or the record cannot be flushed.
+     */
+    public long append(String text) throws IOException {
+        return append(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Appends a record. The payload's remaining bytes are copied into the log; its position is not changed.
+     *
+     * @param payload The record payload.
+     * @return The offset of the new record.
+     * @throws IOException              If a new segment cannot be created or the record cannot be flushed.
+     * @throws IllegalArgumentException If the record is larger than a segment.
+     * @throws IllegalStateException    If the log is closed.
+     */
+    public long append(ByteBuffer payload) throws IOException {
+        Segment segment;
+        long offset;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Commit log is closed.");
+            }
+            int recordSize = RECORD_HEADER_BYTES + payload.remaining();
+            if (recordSize > segmentBytes - SEGMENT_HEADER_BYTES) {
+                throw new IllegalArgumentException("Record of " + recordSize + " bytes does not fit in a segment of " + segmentBytes + " bytes");
+            }
+            long now = clock.getAsLong();
+            if (active.recordCount > 0
+                    && (now - active.createdMillis >= segmentWindowMillis || active.position + recordSize > segmentBytes)) {
+                roll(now);
+            }
+
+            segment = active;
+            offset = nextOffset++;
+            segment.write(offset, now, payload, crc);
+            if (fsyncIntervalMillis == 0) {
+                segment.dirty = false;
+            }
+        }
+        if (fsyncIntervalMillis == 0) {
+            segment.flush();
+        }
+        return offset;
+    }
+
+    /**
+     * Reads records starting at an offset.
+     *
+     * @param fromOffset The offset of the first record to read; offsets before the oldest retained record start
+     *                   at the oldest one.
+     * @param maxRecords The maximum number of records to return.
+     * @return The records, in offset order.
+     */
+    public synchronized List<LogRecord> read(long fromOffset, int maxRecords) {
+        List<LogRecord> records = new ArrayList<>();
+        Map.Entry<Long, Segment> entry = segments.floorEntry(fromOffset);
+        if (entry == null) {
+            entry = segments.firstEntry();
+        }
+        while (entry != null && records.size() < maxRecords) {
+            entry.getValue().read(Math.max(fromOffset, entry.getKey()), maxRecords - records.size(), records);
+            entry = segments.higherEntry(entry.getKey());
+        }
+        return records;
+    }
+
+    /**
+     * Forces every appended record to disk and deletes the segments past the retention period. Appends are only
+     * blocked while the segments to flush are picked, not during the flush.
+     *
+     * @throws IOException If a retired segment cannot be deleted.
+     */
+    public void sync() throws IOException {
+        synchronized (flushLock) {
+            List<Segment> dirty;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                dirty = takeDirtySegments();
+                deleteExpiredSegments(clock.getAsLong());
+            }
+            for (Segment segment : dirty) {
+                segment.flush();
+            }
+        }
+    }
+
+    /**
+     * Returns the offset the next appended record will get.
+     *
+     * @return The next offset.
+     */
+    public synchronized long getNextOffset() {
+        return nextOffset;
+    }
+
+    /**
+     * Returns the offset of the oldest retained record.
+     *
+     * @return The first offset.
+     */
+    public synchronized long getFirstOffset() {
+        return segments.firstKey();
+    }
+
+    /**
+     * Returns the number of segment files.
+     *
+     * @return The segment count.
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Stops the background flush and forces every appended record to disk.
+     *
+     * @throws IOException If the final flush fails.
+     */
+    @Override
+    public void close() throws IOException {
+        if (syncer != null) {
+            syncer.shutdownNow();
+        }
+        synchronized (flushLock) {
+            List<Segment> dirty;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                dirty = takeDirtySegments();
+                closed = true;
+                segments.clear();
+                active = null;
+            }
+            for (Segment segment : dirty) {
+                segment.flush();
+            }
+        }
+    }
+
+    /**
+     * Collects the segments written since the last flush and marks them clean, so records appended from now on make
+     * them dirty again and are left for the next flush.
+     *
+     * @return The segments to force to disk.
+     */
+    private List<Segment> takeDirtySegments() {
+        List<Segment> dirty = new ArrayList<>(rolled);
+        rolled.clear();
+        if (active.dirty) {
+            active.dirty = false;
+            dirty.add(active);
+        }
+        return dirty;
+    }
+
+    private void recover() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + LOG_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long baseOffset = Long.parseLong(name.substring(0, name.length() - LOG_SUFFIX.length()));
+                segments.put(baseOffset, Segment.open(file, indexFileFor(baseOffset), segmentBytes));
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Unexpected file in commit log directory " + directory + ": " + e.getMessage(), e);
+        }
+
+        if (segments.isEmpty()) {
+            active = createSegment(0, clock.getAsLong());
+            nextOffset = 0;
+            return;
+        }
+        Segment previous = null;
+        for (Segment segment : segments.values()) {
+            if (previous != null) {
+                previous.recordCount = (int) (segment.baseOffset - previous.baseOffset);
+            }
+            previous = segment;
+        }
+        active = segments.lastEntry().getValue();
+        int discarded = active.recover(crc);
+        nextOffset = active.baseOffset + active.recordCount;
+        Log.info("Recovered commit log in " + directory + ": " + segments.size() + " segment(s), next offset " + nextOffset
+                + (discarded > 0 ? ", discarded " + discarded + " bytes of an incomplete record" : ""));
+    }
+
+    private void roll(long now) throws IOException {
+        if (active.dirty) {
+            active.dirty = false;
+            rolled.add(active);
+        }
+        active = createSegment(nextOffset, now);
+        deleteExpiredSegments(now);
+    }
+
+    private Segment createSegment(long baseOffset, long createdMillis) throws IOException {
+        Segment segment = Segment.create(directory.resolve(String.format("%020d", baseOffset) + LOG_SUFFIX),
+                indexFileFor(baseOffset), segmentBytes, baseOffset, createdMillis);
+        segments.put(baseOffset, segment);
+        return segment;
+    }
+
+    private Path indexFileFor(long baseOffset) {
+        return directory.resolve(String.format("%020d", baseOffset) + INDEX_SUFFIX);
+    }
+
+    private void deleteExpiredSegments(long now) throws IOException {
+        if (retentionMillis == 0) {
+            return;
+        }
+        while (segments.size() > 1) {
+            Map.Entry<Long, Segment> oldest = segments.firstEntry();
+            Segment successor = segments.higherEntry(oldest.getKey()).getValue();
+            if (successor.createdMillis > now - retentionMillis) {
+                return;
+            }
+            segments.pollFirstEntry();
+            Files.deleteIfExists(oldest.getValue().file);
+            Files.deleteIfExists(oldest.getValue().indexFile);
+            Log.info("Deleted commit log segment " + oldest.getValue().file.getFileName() + " past retention");
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException | RuntimeException e) {
+            Log.error("Failed to sync commit log in " + directory + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * A record read back from the log.
+     */
+    public static final class LogRecord {
+        private final long offset;
+        private final long timestamp;
+        private final byte[] payload;
+
+        LogRecord(long offset, long timestamp, byte[] payload) {
+            this.offset = offset;
+            this.timestamp = timestamp;
+            this.payload = payload;
+        }
+
+        /**
+         * Returns the offset of the record.
+         *
+         * @return The record offset.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * Returns the time the record was appended.
+         *
+         * @return The append time in milliseconds since the epoch.
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Returns a copy of the payload.
+         *
+         * @return The payload bytes.
+         */
+        public byte[] getPayload() {
+            return payload.clone();
+        }
+
+        /**
+         * Decodes the payload as UTF-8 text.
+         *
+         * @return The payload text.
+         */
+        public String text() {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * One segment file and its sparse index, both memory-mapped. Only used while holding the log's lock, except for
+     * {@link #flush()}, which may run while records are written to the same mappings.
+     */
+    private static final class Segment {
+        private final Path file;
+        private final Path indexFile;
+        private final MappedByteBuffer data;
+        private final MappedByteBuffer index;
+        private final long baseOffset;
+        private final long createdMillis;
+        private int position = SEGMENT_HEADER_BYTES;
+        private int recordCount;
+        private int indexEntries;
+        private int bytesSinceIndexEntry;
+        private boolean dirty;
+
+        private Segment(Path file, Path indexFile, MappedByteBuffer data, MappedByteBuffer index, long baseOffset, long createdMillis) {
+            this.file = file;
+            this.indexFile = indexFile;
+            this.data = data;
+            this.index = index;
+            this.baseOffset = baseOffset;
+            this.createdMillis = createdMillis;
+        }
+
+        static Segment create(Path file, Path indexFile, int size, long baseOffset, long createdMillis) throws IOException {
+            MappedByteBuffer data = map(file, size);
+            data.putInt(0, MAGIC);
+            data.putInt(4, VERSION);
+            data.putLong(8, createdMillis);
+            data.force();
+            return new Segment(file, indexFile, data, map(indexFile, indexSize(size)), baseOffset, createdMillis);
+        }
+
+        static Segment open(Path file, Path indexFile, int size) throws IOException {
+            int existingSize = (int) Math.max(size, Files.size(file));
+            MappedByteBuffer data = map(file, existingSize);
+            if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+                throw new IOException("Not a commit log segment: " + file);
+            }
+            String name = file.getFileName().toString();
+            long baseOffset = Long.parseLong(name.substring(0, name.length() - LOG_SUFFIX.length()));
+            Segment segment = new Segment(file, indexFile, data, map(indexFile, indexSize(existingSize)), baseOffset, data.getLong(8));
+            segment.loadIndex();
+            return segment;
+        }
+
+        private static int indexSize(int segmentSize) {
+            return (segmentSize / INDEX_INTERVAL_BYTES + 1) * INDEX_ENTRY_BYTES;
+        }
+
+        private static MappedByteBuffer map(Path file, int size) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                if (raf.length() < size) {
+                    raf.setLength(size);
+                }
+                return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+
+        void write(long offset, long timestamp, ByteBuffer payload, CRC32 crc) {
+            int recordPosition = position;
+            int recordSize = RECORD_HEADER_BYTES + payload.remaining();
+            ByteBuffer target = data.duplicate();
+            target.position(recordPosition + RECORD_HEADER_BYTES);
+            target.put(payload.duplicate());
+            data.putLong(recordPosition + 8, timestamp);
+            data.putInt(recordPosition + 4, checksum(recordPosition, recordSize, crc));
+            data.putInt(recordPosition, recordSize);
+
+            if (recordCount == 0 || bytesSinceIndexEntry >= INDEX_INTERVAL_BYTES) {
+                addIndexEntry((int) (offset - baseOffset), recordPosition);
+            }
+            bytesSinceIndexEntry += recordSize;
+            position += recordSize;
+            recordCount++;
+            dirty = true;
+        }
+
+        void read(long fromOffset, int maxRecords, List<LogRecord> records) {
+            int relative = (int) (fromOffset - baseOffset);
+            int entry = floorIndexEntry(relative);
+            int current = entry < 0 ? 0 : index.getInt(entry * INDEX_ENTRY_BYTES);
+            int readPosition = entry < 0 ? SEGMENT_HEADER_BYTES : index.getInt(entry * INDEX_ENTRY_BYTES + 4);
+            int added = 0;
+            while (current < recordCount && added < maxRecords) {
+                int recordSize = data.getInt(readPosition);
+                if (recordSize < RECORD_HEADER_BYTES) {
+                    break;
+                }
+                if (current >= relative) {
+                    byte[] payload = new byte[recordSize - RECORD_HEADER_BYTES];
+                    ByteBuffer source = data.duplicate();
+                    source.position(readPosition + RECORD_HEADER_BYTES);
+                    source.get(payload);
+                    records.add(new LogRecord(baseOffset + current, data.getLong(readPosition + 8), payload));
+                    added++;
+                }
+                readPosition += recordSize;
+                current++;
+            }
+        }
+
+        /**
+         * Scans the records from the start, keeps those with a valid size and checksum, rebuilds the index and
+         * clears whatever follows the last valid record.
+         *
+         * @return The number of bytes cleared after the last valid record.
+         */
+        int recover(CRC32 crc) {
+            position = SEGMENT_HEADER_BYTES;
+            recordCount = 0;
+            indexEntries = 0;
+            bytesSinceIndexEntry = 0;
+            while (position + RECORD_HEADER_BYTES <= data.capacity()) {
+                int recordSize = data.getInt(position);
+                if (recordSize < RECORD_HEADER_BYTES || position + recordSize > data.capacity()
+                        || data.getInt(position + 4) != checksum(position, recordSize, crc)) {
+                    break;
+                }
+                if (recordCount == 0 || bytesSinceIndexEntry >= INDEX_INTERVAL_BYTES) {
+                    addIndexEntry(recordCount, position);
+                }
+                bytesSinceIndexEntry += recordSize;
+                position += recordSize;
+                recordCount++;
+            }
+
+            int cleared = 0;
+            for (int i = position; i < data.capacity() && data.get(i) != 0; i++) {
+                cleared = i - position + 1;
+            }
+            for (int i = position; i < position + cleared; i++) {
+                data.put(i, (byte) 0);
+            }
+            for (int i = indexEntries * INDEX_ENTRY_BYTES; i < index.capacity(); i++) {
+                index.put(i, (byte) 0);
+            }
+            dirty = true;
+            force();
+            return cleared;
+        }
+
+        void force() {
+            if (dirty) {
+                flush();
+                dirty = false;
+            }
+        }
+
+        void flush() {
+            data.force();
+            index.force();
+        }
+
+        private void loadIndex() {
+            indexEntries = 0;
+            while ((indexEntries + 1) * INDEX_ENTRY_BYTES <= index.capacity()
+                    && index.getInt(indexEntries * INDEX_ENTRY_BYTES + 4) >= SEGMENT_HEADER_BYTES) {
+                indexEntries++;
+            }
+        }
+
+        private void addIndexEntry(int relativeOffset, int recordPosition) {
+            index.putInt(indexEntries * INDEX_ENTRY_BYTES, relativeOffset);
+            index.putInt(indexEntries * INDEX_ENTRY_BYTES + 4, recordPosition);
+            indexEntries++;
+            bytesSinceIndexEntry = 0;
+        }
+
+        private int floorIndexEntry(int relativeOffset) {
+            int low = 0;
+            int high = indexEntries - 1;
+            int found = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (index.getInt(middle * INDEX_ENTRY_BYTES) <= relativeOffset) {
+                    found = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return found;
+        }
+
+        private int checksum(int recordPosition, int recordSize, CRC32 crc) {
+            ByteBuffer covered = data.duplicate();
+            covered.position(recordPosition + 8).limit(recordPosition + recordSize);
+            crc.reset();
+            crc.update(covered);
+            return (int) crc.getValue();
+        }
+    }
+}
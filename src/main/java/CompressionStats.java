@@ -0,0 +1,71 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code CompressionStats} class counts the work and the savings of frame compression: how many payloads were
+ * deflated and how large they were before and after, and how many bytes compressed frames saved on the wire across
+ * all their recipients. One instance is shared by all connections of a server; recording is lock-free.
+ */
+public class CompressionStats {
+    private final LongAdder deflateCount = new LongAdder();
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder savedBytes = new LongAdder();
+
+    /**
+     * Records one payload run through the deflater.
+     *
+     * @param rawLength        The payload size before compression.
+     * @param compressedLength The payload size after compression.
+     */
+    public void recordDeflate(int rawLength, int compressedLength) {
+        deflateCount.increment();
+        rawBytes.add(rawLength);
+        compressedBytes.add(compressedLength);
+    }
+
+    /**
+     * Records the bytes saved by sending compressed frames to one recipient.
+     *
+     * @param bytes The uncompressed size on the wire minus the size actually written.
+     */
+    public void recordSaved(long bytes) {
+        savedBytes.add(bytes);
+    }
+
+    /**
+     * Returns the number of payloads deflated. With compressed frames cached per message, this is at most one per
+     * broadcast line, whatever the number of recipients.
+     *
+     * @return The deflate count.
+     */
+    public long getDeflateCount() {
+        return deflateCount.sum();
+    }
+
+    /**
+     * Returns the total size of the deflated payloads before compression.
+     *
+     * @return The raw byte count.
+     */
+    public long getRawBytes() {
+        return rawBytes.sum();
+    }
+
+    /**
+     * Returns the total size of the deflated payloads after compression.
+     *
+     * @return The compressed byte count.
+     */
+    public long getCompressedBytes() {
+        return compressedBytes.sum();
+    }
+
+    /**
+     * Returns the number of bytes compression kept off the wire.
+     *
+     * @return The saved byte count.
+     */
+    public long getSavedBytes() {
+        return savedBytes.sum();
+    }
+}
@@ -1,17 +1,62 @@
 import java.io.*;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The {@code ConnectionThread} class is responsible for managing the communication between the server and a client.
- * Each client connection is handled by a separate thread to allow multiple clients to interact simultaneously.
- * This thread reads messages from the client, broadcasts them to other clients, and handles client disconnections.
+ * Each client connection is run on its own thread, created by the server's {@link ExecutionMode} thread factory,
+ * to allow multiple clients to interact simultaneously. The task only implements {@link Runnable}, so a connection
+ * run on a virtual thread allocates no platform {@link Thread} object. It reads messages from the client,
+ * broadcasts them to the other members of the client's room, and handles client disconnections. A client
+ * answering the nickname prompt with {@link FrameCodec#UPGRADE_REQUEST} switches the connection to binary frames,
+ * and one answering with {@link FrameCodec#UPGRADE_REQUEST_DEFLATE} also gets compressed frames if the server
+ * accepts compression; otherwise it stays in line-based text mode. Compressed frames from the client are inflated
+ * by the connection's {@link FrameDecoder}. Messages starting with {@code /} are commands:
+ * <ul>
+ *   <li>{@code /join <room>} moves the client to another room, creating it if needed.</li>
+ *   <li>{@code /part} returns the client to the lobby.</li>
+ *   <li>{@code /rooms} lists the rooms with their member and message counts.</li>
+ *   <li>{@code /msg <nickname> <text>} sends a private message to one client, looked up in the server's registry
+ *   rather than broadcast. The sender gets the message back as confirmation once it is queued for the recipient,
+ *   or an error if the recipient is not connected to this server, which includes users of other cluster nodes.
+ *   Binary clients may send the same as a {@link FrameCodec#TYPE_DIRECT} frame, which can also address nicknames
+ *   containing spaces.</li>
+ *   <li>{@code /ping} is answered with {@code /pong}, and a {@code /pong} is accepted silently.</li>
+ * </ul>
+ * When the server has heartbeats enabled, it sends an idle client {@code /ping} and disconnects a client that has
+ * sent nothing, not even the {@code /pong} answer, for the idle timeout.
+ * A text line or binary frame longer than {@link #MAX_MESSAGE_LENGTH} bytes drops the connection, as an overlong
+ * line does on the {@link NioChatServer}, so every broadcast built from a message fits in a single frame.
+ * When the server limits the message or byte rate of its clients, the thread checks every message against its own
+ * {@link TokenBucket}s and, once the client is over a limit, pauses before reading on. The client's messages are
+ * delayed rather than dropped, and TCP flow control slows the client down while its data waits unread.
  */
-public class ConnectionThread extends Thread {
+public class ConnectionThread implements Runnable {
+    public static final String PING = "/ping";
+    public static final String PONG = "/pong";
+    public static final String DIRECT_MESSAGE = "/msg";
+    public static final int MAX_MESSAGE_LENGTH = 64 * 1024;
+    private static final int READ_BUFFER_SIZE = 8192;
+
     private final Socket clientSocket;
     private final TCPMultiServer server;
     private String nickname;
+    private String room = ChatRoom.DEFAULT_ROOM;
+    private WireProtocol protocol = WireProtocol.TEXT;
+    private boolean compressed;
+    private InputStream lineInput;
+    private LineDecoder lineDecoder;
+    private ByteBuffer lineBuffer;
+    private InputStream frameInput;
+    private FrameDecoder frameDecoder;
+    private int lastMessageLength;
+    private String directRecipient;
+    private volatile long lastActivityNanos = System.nanoTime();
+    private IdleMonitor idleMonitor;
+    private final TokenBucket messageBucket;
+    private final TokenBucket byteBucket;
 
     /**
      * Constructs a new {@code ConnectionThread} with the specified client socket and server reference.
@@ -22,10 +67,12 @@ public class ConnectionThread extends Thread {
     public ConnectionThread(Socket clientSocket, TCPMultiServer server) {
         this.clientSocket = clientSocket;
         this.server = server;
+        this.messageBucket = server.newMessageBucket();
+        this.byteBucket = server.newByteBucket();
     }
 
     /**
-     * Runs the thread to handle communication between the server and the client.
+     * Handles the communication between the server and the client until the client disconnects.
      * This includes:
      * <ul>
      *   <li>Requesting and setting the client's nickname.</li>
@@ -37,52 +84,268 @@ public class ConnectionThread extends Thread {
     @Override
     public void run() {
         try (
-                BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream(), StandardCharsets.UTF_8));
+                InputStream input = clientSocket.getInputStream();
                 PrintWriter out = new PrintWriter(new OutputStreamWriter(clientSocket.getOutputStream(), StandardCharsets.UTF_8), true)
         ) {
             out.println("Enter your nickname (leave blank for a random one): ");
             out.flush();
-            nickname = in.readLine();
+            String requested = FrameCodec.readLine(input);
 
-            if (nickname == null || nickname.trim().isEmpty()) {
-                nickname = "User-" + clientSocket.getInetAddress().getHostAddress();
+            if (FrameCodec.UPGRADE_REQUEST.equals(requested) || FrameCodec.UPGRADE_REQUEST_DEFLATE.equals(requested)) {
+                compressed = FrameCodec.UPGRADE_REQUEST_DEFLATE.equals(requested) && server.isCompressionEnabled();
+                out.println(compressed ? FrameCodec.UPGRADE_ACCEPTED_DEFLATE : FrameCodec.UPGRADE_ACCEPTED);
+                out.flush();
+                protocol = WireProtocol.BINARY;
+                frameInput = new BufferedInputStream(input);
+                frameDecoder = new FrameDecoder(MAX_MESSAGE_LENGTH);
+                requested = readMessage();
+            } else {
+                lineInput = input;
+                lineDecoder = new LineDecoder(MAX_MESSAGE_LENGTH);
+                lineBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+                lineBuffer.limit(0);
             }
 
-            if (server.isNicknameTaken(nickname)) {
-                Random rand = new Random();
-                final int rndVal = rand.nextInt(100);
-                nickname = nickname + "-" + rndVal;
+            if (requested == null || requested.trim().isEmpty()) {
+                requested = "User-" + clientSocket.getInetAddress().getHostAddress();
             }
 
-            server.addClient(nickname, clientSocket);
-            server.broadcast(nickname + " joined the chat.", nickname);
+            nickname = server.reserveNickname(requested);
 
-            out.println("Connected as " + nickname + ". Type your message and press Enter to send. Press CTRL+D to exit.");
-            out.flush();
+            String greeting = "Connected as " + nickname + ". Type your message and press Enter to send. Press CTRL+D to exit.";
+            if (protocol == WireProtocol.BINARY) {
+                OutputStream rawOut = clientSocket.getOutputStream();
+                FrameCodec.writeText(rawOut, greeting);
+                rawOut.flush();
+            } else {
+                out.println(greeting);
+                out.flush();
+            }
 
-            System.out.println(nickname + " has connected.");
+            // From here on the client's ClientWriter owns the output stream.
+            server.addClient(nickname, clientSocket, protocol, compressed);
+            server.broadcast(nickname + " joined the chat.", nickname);
+            idleMonitor = server.monitorIdle(nickname, () -> lastActivityNanos);
+
+            Log.info(nickname + " has connected.");
 
             String message;
-            while ((message = in.readLine()) != null) {
-                server.broadcast(nickname + ": " + message, nickname);
+            while ((message = readMessage()) != null) {
+                lastActivityNanos = System.nanoTime();
+                server.recordInbound(protocol, lastMessageLength);
+                throttle();
+                if (directRecipient != null) {
+                    sendDirect(directRecipient, message);
+                } else if (message.startsWith("/")) {
+                    handleCommand(message);
+                } else {
+                    server.broadcastToRoom(room, nickname + ": " + message, nickname);
+                }
             }
         } catch (IOException e) {
-            System.err.println("Connection with " + (nickname != null ? nickname : "unknown user") + " lost: " + e.getMessage());
+            Log.warn("Connection with " + (nickname != null ? nickname : "unknown user") + " lost: " + e.getMessage());
         } finally {
+            if (idleMonitor != null) {
+                idleMonitor.cancel();
+            }
+            if (frameDecoder != null) {
+                frameDecoder.close();
+            }
+            server.connectionClosed(clientSocket);
             if (nickname != null) {
                 server.removeClient(nickname);
                 server.broadcast(nickname + " has left the chat.", nickname);
-                System.out.println(nickname + " has disconnected.");
+                Log.info(nickname + " has disconnected.");
             }
 
             try {
                 clientSocket.close();
             } catch (IOException e) {
-                System.err.println("Error closing client socket for " + (nickname != null ? nickname : "unknown user") + ": " + e.getMessage());
+                Log.error("Error closing client socket for " + (nickname != null ? nickname : "unknown user") + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads the next message in the negotiated protocol and remembers its size on the wire, and the recipient if it
+     * is a {@link FrameCodec#TYPE_DIRECT} frame. Binary frames of an unknown type and malformed direct frames are
+     * skipped.
+     *
+     * @return The message, or {@code null} once the client has disconnected.
+     * @throws IOException If the connection fails or a frame is malformed.
+     */
+    private String readMessage() throws IOException {
+        if (protocol == WireProtocol.TEXT) {
+            String line;
+            while ((line = lineDecoder.next(lineBuffer)) == null) {
+                int read = lineInput.read(lineBuffer.array());
+                if (read < 0) {
+                    line = lineDecoder.finish();
+                    break;
+                }
+                lineBuffer.clear();
+                lineBuffer.limit(read);
+            }
+            lastMessageLength = line != null ? utf8Length(line) + 1 : 0;
+            return line;
+        }
+        directRecipient = null;
+        while (frameDecoder.read(frameInput)) {
+            if (frameDecoder.getType() == FrameCodec.TYPE_TEXT) {
+                lastMessageLength = frameDecoder.getFrameLength();
+                return frameDecoder.text();
+            }
+            if (frameDecoder.getType() == FrameCodec.TYPE_DIRECT) {
+                String payload = frameDecoder.text();
+                int separator = payload.indexOf('\n');
+                if (separator > 0) {
+                    lastMessageLength = frameDecoder.getFrameLength();
+                    directRecipient = payload.substring(0, separator);
+                    return payload.substring(separator + 1);
+                }
+                Log.warn("Ignoring direct message frame without recipient from " + (nickname != null ? nickname : "unknown user"));
+                continue;
+            }
+            Log.warn("Ignoring frame of unknown type " + frameDecoder.getType() + " from " + (nickname != null ? nickname : "unknown user"));
+        }
+        return null;
+    }
+
+    /**
+     * Charges the message just read to the client's rate limits and, if the client is over one of them, waits
+     * until the buckets are refilled.
+     *
+     * @throws InterruptedIOException If the thread is interrupted while waiting.
+     */
+    private void throttle() throws InterruptedIOException {
+        long now = System.nanoTime();
+        long wait = 0;
+        if (messageBucket != null) {
+            wait = messageBucket.reserve(1, now);
+        }
+        if (byteBucket != null) {
+            wait = Math.max(wait, byteBucket.reserve(lastMessageLength, now));
+        }
+        if (wait <= 0) {
+            return;
+        }
+        server.recordThrottle(wait);
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while throttled");
+        }
+    }
+
+    private static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800 || Character.isSurrogate(c)) {
+                length += 2;
+            } else {
+                length += 3;
             }
         }
+        return length;
+    }
+
+    /**
+     * Executes a command line sent by the client. Replies go to the client only.
+     *
+     * @param line The command line, starting with {@code /}.
+     */
+    private void handleCommand(String line) {
+        String[] parts = line.trim().split("\\s+", 2);
+        switch (parts[0]) {
+            case "/join":
+                String target = parts.length > 1 ? parts[1].replaceFirst("^#", "") : "";
+                if (!TCPMultiServer.isValidRoomName(target)) {
+                    server.sendTo(nickname, "Usage: /join <room> (1-32 letters, digits, '_' or '-')");
+                } else {
+                    switchRoom(target);
+                }
+                break;
+            case "/part":
+                switchRoom(ChatRoom.DEFAULT_ROOM);
+                break;
+            case "/rooms":
+                for (ChatRoom chatRoom : server.getRooms()) {
+                    server.sendTo(nickname, chatRoom.toString());
+                }
+                break;
+            case DIRECT_MESSAGE:
+                String[] arguments = parts.length > 1 ? parts[1].split("\\s+", 2) : new String[0];
+                if (arguments.length < 2) {
+                    server.sendTo(nickname, "Usage: /msg <nickname> <message>");
+                } else {
+                    sendDirect(arguments[0], arguments[1]);
+                }
+                break;
+            case PING:
+                server.sendTo(nickname, PONG);
+                break;
+            case PONG:
+                break;
+            default:
+                server.sendTo(nickname, "Unknown command: " + parts[0]);
+        }
+    }
+
+    private void sendDirect(String recipient, String text) {
+        if (server.sendDirect(nickname, recipient, text)) {
+            server.sendTo(nickname, "[to " + recipient + "] " + text);
+        } else if (server.isConnected(recipient)) {
+            server.sendTo(nickname, "Message to " + recipient + " not delivered: " + recipient + " is not keeping up.");
+        } else {
+            server.sendTo(nickname, "Message to " + recipient + " not delivered: " + recipient + " is not connected to this server.");
+        }
+    }
+
+    private void switchRoom(String target) {
+        if (target.equals(room)) {
+            server.sendTo(nickname, "You are already in #" + room + ".");
+            return;
+        }
+        server.broadcastToRoom(room, nickname + " left #" + room + ".", nickname);
+        ChatRoom joined = server.joinRoom(nickname, target);
+        if (joined == null) {
+            return;
+        }
+        room = target;
+        server.broadcastToRoom(room, nickname + " joined #" + room + ".", nickname);
+        server.sendTo(nickname, "You are now in #" + room + " (" + joined.getMemberCount() + " members).");
     }
 
+    /**
+     * Returns the room the client is currently in.
+     *
+     * @return The room name.
+     */
+    public String getRoom() {
+        return room;
+    }
+
+    /**
+     * Checks whether the client negotiated compressed frames.
+     *
+     * @return {@code true} if frames sent to the client may be compressed.
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Returns the protocol negotiated with the client.
+     *
+     * @return The client's wire protocol.
+     */
+    public WireProtocol getProtocol() {
+        return protocol;
+    }
 
     /**
      * Returns the nickname of the client.
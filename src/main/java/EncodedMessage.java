@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The {@code EncodedMessage} class holds a chat line that has been encoded to UTF-8 exactly once.
+ * Instances are immutable and shared by every recipient of a broadcast: blocking writers copy the backing array
+ * straight to their stream and non-blocking connections write a read-only view of the same bytes.
+ * The binary {@link FrameCodec} encoding is built on first use and likewise shared by all binary recipients, and
+ * so is the compressed encoding sent to clients that negotiated compression: a broadcast is deflated once, by the
+ * first writer that needs it, whatever the number of recipients.
+ * A message can also carry several lines that are sent together, such as a room's history: text recipients get
+ * all lines in one write and binary recipients get one frame per line.
+ */
+public final class EncodedMessage {
+    private final String text;
+    private final byte[] line;
+    private final int[] lineEnds;
+    private volatile byte[] frame;
+    private volatile byte[] compressedFrame;
+
+    private EncodedMessage(String text, byte[] line, int[] lineEnds) {
+        this.text = text;
+        this.line = line;
+        this.lineEnds = lineEnds;
+    }
+
+    /**
+     * Encodes a message as a UTF-8, newline-terminated line.
+     *
+     * @param text The message to encode, without line terminator.
+     * @return The encoded message.
+     */
+    public static EncodedMessage of(String text) {
+        return new EncodedMessage(text, (text + "\n").getBytes(StandardCharsets.UTF_8), null);
+    }
+
+    /**
+     * Wraps lines that are already encoded as UTF-8 and newline-terminated, to be sent together.
+     *
+     * @param lines    The encoded lines, back to back.
+     * @param lineEnds For each line, the index just past its terminating {@code '\n'}, in increasing order; the
+     *                 last entry must be {@code lines.length}.
+     * @return The encoded message.
+     * @throws IllegalArgumentException If there are no lines or the last line does not end the array.
+     */
+    public static EncodedMessage ofLines(byte[] lines, int[] lineEnds) {
+        if (lineEnds.length == 0 || lineEnds[lineEnds.length - 1] != lines.length) {
+            throw new IllegalArgumentException("Line ends must be non-empty and end at " + lines.length);
+        }
+        String text = new String(lines, 0, lines.length - 1, StandardCharsets.UTF_8);
+        return new EncodedMessage(text, lines, lineEnds.length == 1 ? null : lineEnds);
+    }
+
+    /**
+     * Writes the encoded line to an output stream. No bytes are copied or allocated.
+     *
+     * @param out The stream to write to.
+     * @throws IOException If the stream fails.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(line);
+    }
+
+    /**
+     * Writes the message as a {@link FrameCodec#TYPE_TEXT} frame to an output stream. The frame is encoded by the
+     * first call and reused by every later one.
+     *
+     * @param out The stream to write to.
+     * @throws IOException If the stream fails.
+     */
+    public void writeFrameTo(OutputStream out) throws IOException {
+        byte[] encoded = frame;
+        if (encoded == null) {
+            encoded = encodeFrames();
+            frame = encoded;
+        }
+        out.write(encoded);
+    }
+
+    /**
+     * Writes the message as {@link FrameCodec#TYPE_TEXT} frames compressed by a {@link FrameCompressor} to an
+     * output stream. The frames are built by the first call and reused by every later one, whichever compressor it
+     * is given, so every recipient gets the bytes compressed once for all.
+     *
+     * @param out        The stream to write to.
+     * @param compressor The compressor of the calling connection, used if the frames are not built yet.
+     * @return The number of bytes written.
+     * @throws IOException If the stream fails.
+     */
+    public int writeCompressedFrameTo(OutputStream out, FrameCompressor compressor) throws IOException {
+        byte[] encoded = compressedFrame;
+        if (encoded == null) {
+            // Unlike the plain frame, deflating is worth a lock to make sure it happens once.
+            synchronized (this) {
+                encoded = compressedFrame;
+                if (encoded == null) {
+                    encoded = compressFrames(compressor);
+                    compressedFrame = encoded;
+                }
+            }
+        }
+        out.write(encoded);
+        return encoded.length;
+    }
+
+    private byte[] compressFrames(FrameCompressor compressor) {
+        if (lineEnds == null) {
+            return compressor.encode(FrameCodec.TYPE_TEXT, line, 0, line.length - 1);
+        }
+        byte[][] frames = new byte[lineEnds.length][];
+        int total = 0;
+        int start = 0;
+        for (int i = 0; i < lineEnds.length; i++) {
+            frames[i] = compressor.encode(FrameCodec.TYPE_TEXT, line, start, lineEnds[i] - start - 1);
+            total += frames[i].length;
+            start = lineEnds[i];
+        }
+        byte[] joined = new byte[total];
+        int position = 0;
+        for (byte[] frameBytes : frames) {
+            System.arraycopy(frameBytes, 0, joined, position, frameBytes.length);
+            position += frameBytes.length;
+        }
+        return joined;
+    }
+
+    private byte[] encodeFrames() {
+        if (lineEnds == null) {
+            return FrameCodec.encode(FrameCodec.TYPE_TEXT, (byte) 0, line, 0, line.length - 1);
+        }
+        byte[] frames = new byte[frameLength()];
+        int start = 0;
+        int position = 0;
+        for (int end : lineEnds) {
+            byte[] frameBytes = FrameCodec.encode(FrameCodec.TYPE_TEXT, (byte) 0, line, start, end - start - 1);
+            System.arraycopy(frameBytes, 0, frames, position, frameBytes.length);
+            position += frameBytes.length;
+            start = end;
+        }
+        return frames;
+    }
+
+    /**
+     * Returns a read-only view of the encoded line positioned at its first byte. Every call returns an independent
+     * view over the same bytes, so each recipient can track its own write progress.
+     *
+     * @return A read-only buffer over the encoded line.
+     */
+    public ByteBuffer buffer() {
+        return ByteBuffer.wrap(line).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the number of encoded bytes, including the line terminators.
+     *
+     * @return The encoded length in bytes.
+     */
+    public int length() {
+        return line.length;
+    }
+
+    /**
+     * Returns the number of bytes of the binary encoding, including the frame headers.
+     *
+     * @return The frame length in bytes.
+     */
+    public int frameLength() {
+        int lines = lineCount();
+        return lines * FrameCodec.HEADER_LENGTH + line.length - lines;
+    }
+
+    /**
+     * Returns the number of lines in the message.
+     *
+     * @return The line count, {@code 1} unless the message was built with {@link #ofLines(byte[], int[])}.
+     */
+    public int lineCount() {
+        return lineEnds == null ? 1 : lineEnds.length;
+    }
+
+    /**
+     * Returns the original message text.
+     *
+     * @return The message text, without the final line terminator.
+     */
+    public String text() {
+        return text;
+    }
+}
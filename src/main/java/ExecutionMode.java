@@ -0,0 +1,66 @@
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code ExecutionMode} enum selects the kind of thread that runs connection handlers and client writers.
+ * {@link #PLATFORM} uses one operating-system thread per task, as the server always did.
+ * {@link #VIRTUAL} uses virtual threads, which keeps the blocking {@code readLine()} code while letting one node
+ * hold tens of thousands of sessions. Virtual threads need Java 21; they are looked up reflectively so the project
+ * still compiles for Java 11 (build with {@code -Pvirtual-threads} to target Java 21).
+ */
+public enum ExecutionMode {
+    PLATFORM,
+    VIRTUAL;
+
+    /**
+     * Creates a thread factory for this mode. Threads are named {@code prefix0}, {@code prefix1}, ...
+     *
+     * @param prefix The thread name prefix.
+     * @param daemon Whether platform threads are daemon threads. Virtual threads are always daemon threads.
+     * @return A thread factory producing unstarted threads.
+     * @throws UnsupportedOperationException If virtual threads are requested on a JVM without them.
+     */
+    public ThreadFactory threadFactory(String prefix, boolean daemon) {
+        if (this == VIRTUAL) {
+            return virtualThreadFactory(prefix);
+        }
+
+        AtomicLong counter = new AtomicLong();
+        return task -> {
+            Thread thread = new Thread(task, prefix + counter.getAndIncrement());
+            thread.setDaemon(daemon);
+            return thread;
+        };
+    }
+
+    /**
+     * Checks whether the running JVM supports virtual threads.
+     *
+     * @return {@code true} if {@link #VIRTUAL} can be used, {@code false} otherwise.
+     */
+    public static boolean isVirtualThreadSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Method name = builderType.getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (NoSuchMethodException | ClassNotFoundException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer, running on Java "
+                    + System.getProperty("java.version"));
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("Virtual threads are not available: " + e.getMessage(), e);
+        }
+    }
+}
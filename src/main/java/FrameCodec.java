@@ -0,0 +1,120 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The {@code FrameCodec} class defines the length-prefixed binary protocol spoken by {@link TCPMultiServer} next to
+ * the newline-terminated text protocol. Every frame is a 6-byte header followed by the payload:
+ * <pre>
+ * +----------------+--------+--------+-----------------+
+ * | length (4, BE) | type   | flags  | payload         |
+ * +----------------+--------+--------+-----------------+
+ * </pre>
+ * {@code length} counts the payload bytes only. A {@link #TYPE_TEXT} payload is a UTF-8 chat line or command and
+ * may contain line breaks. A {@link #TYPE_DIRECT} payload is a private message: the UTF-8 nickname of the recipient,
+ * a line feed and the message text, built by {@link #directPayload(String, String)}. The only flag defined is
+ * {@link #FLAG_DEFLATE}: the payload is a zlib stream that inflates to the actual payload. Other flags are reserved
+ * and sent as zero.
+ * <p>
+ * A connection starts in text mode. A client asks for binary framing by answering the nickname prompt with the
+ * line {@link #UPGRADE_REQUEST}; the server confirms with the line {@link #UPGRADE_ACCEPTED} and from then on both
+ * sides exchange frames only, starting with the client's nickname. A client asking with
+ * {@link #UPGRADE_REQUEST_DEFLATE} also offers compression; a server that supports it confirms with
+ * {@link #UPGRADE_ACCEPTED_DEFLATE}, after which either side may send compressed frames. A server answering with
+ * {@link #UPGRADE_ACCEPTED} has enabled binary framing only.
+ */
+public final class FrameCodec {
+    public static final int HEADER_LENGTH = 6;
+    public static final int MAX_PAYLOAD_LENGTH = 1 << 20;
+    public static final byte TYPE_TEXT = 1;
+    public static final byte TYPE_DIRECT = 2;
+    public static final byte FLAG_DEFLATE = 0x01;
+    public static final String UPGRADE_REQUEST = "/binary";
+    public static final String UPGRADE_ACCEPTED = "Binary framing enabled.";
+    public static final String UPGRADE_REQUEST_DEFLATE = "/binary deflate";
+    public static final String UPGRADE_ACCEPTED_DEFLATE = "Binary framing enabled with deflate compression.";
+
+    private static final int MAX_HANDSHAKE_LINE_LENGTH = 1024;
+
+    private FrameCodec() {
+    }
+
+    /**
+     * Encodes a frame into a new array holding the header and a copy of the payload.
+     *
+     * @param type    The frame type.
+     * @param flags   The frame flags.
+     * @param payload The array holding the payload.
+     * @param offset  The index of the first payload byte.
+     * @param length  The number of payload bytes.
+     * @return The encoded frame.
+     * @throws IllegalArgumentException If the payload is longer than {@link #MAX_PAYLOAD_LENGTH}.
+     */
+    public static byte[] encode(byte type, byte flags, byte[] payload, int offset, int length) {
+        if (length > MAX_PAYLOAD_LENGTH) {
+            throw new IllegalArgumentException("Frame payload exceeds " + MAX_PAYLOAD_LENGTH + " bytes: " + length);
+        }
+        byte[] frame = new byte[HEADER_LENGTH + length];
+        frame[0] = (byte) (length >>> 24);
+        frame[1] = (byte) (length >>> 16);
+        frame[2] = (byte) (length >>> 8);
+        frame[3] = (byte) length;
+        frame[4] = type;
+        frame[5] = flags;
+        System.arraycopy(payload, offset, frame, HEADER_LENGTH, length);
+        return frame;
+    }
+
+    /**
+     * Writes a text frame to a stream. The stream is not flushed.
+     *
+     * @param out  The stream to write to.
+     * @param text The text to send.
+     * @throws IOException If the stream fails.
+     */
+    public static void writeText(OutputStream out, String text) throws IOException {
+        byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+        out.write(encode(TYPE_TEXT, (byte) 0, payload, 0, payload.length));
+    }
+
+    /**
+     * Builds the payload of a {@link #TYPE_DIRECT} frame.
+     *
+     * @param recipient The nickname of the recipient, which must not contain a line feed.
+     * @param text      The message.
+     * @return The UTF-8 payload.
+     * @throws IllegalArgumentException If the nickname contains a line feed.
+     */
+    public static byte[] directPayload(String recipient, String text) {
+        if (recipient.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("Recipient nickname contains a line feed");
+        }
+        return (recipient + '\n' + text).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads one handshake line without reading ahead, so the bytes that follow it stay in the stream whether the
+     * connection continues in text or in binary mode. A trailing {@code '\r'} is dropped.
+     *
+     * @param in The stream to read from.
+     * @return The line, or {@code null} if the stream ended before any byte was read.
+     * @throws IOException If the stream fails or the line is longer than 1024 bytes.
+     */
+    public static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (line.size() == MAX_HANDSHAKE_LINE_LENGTH) {
+                throw new IOException("handshake line exceeds " + MAX_HANDSHAKE_LINE_LENGTH + " bytes");
+            }
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        String text = line.toString(StandardCharsets.UTF_8);
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * The {@code FrameCompressor} class builds {@link FrameCodec} frames whose payload is deflated when that pays off.
+ * Payloads shorter than the threshold are sent raw, since the deflate header and CPU time would outweigh the
+ * savings on a short chat line; a payload that does not shrink, such as one already compressed, is sent raw too.
+ * A compressed frame carries {@link FrameCodec#FLAG_DEFLATE} and a self-contained zlib stream, so it can be decoded
+ * on its own and the same bytes can be sent to any number of recipients.
+ * The {@link Deflater} and the output buffer are reused for every frame. Instances are not thread-safe; each
+ * connection owns one and must {@link #close()} it to release the deflater's native memory.
+ */
+public class FrameCompressor implements AutoCloseable {
+    public static final int DEFAULT_THRESHOLD = 256;
+
+    private final int threshold;
+    private final CompressionStats stats;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private byte[] buffer = new byte[8 * 1024];
+
+    /**
+     * Constructs a new {@code FrameCompressor} that keeps no statistics.
+     *
+     * @param threshold The smallest payload, in bytes, worth compressing.
+     * @throws IllegalArgumentException If the threshold is negative.
+     */
+    public FrameCompressor(int threshold) {
+        this(threshold, new CompressionStats());
+    }
+
+    /**
+     * Constructs a new {@code FrameCompressor}.
+     *
+     * @param threshold The smallest payload, in bytes, worth compressing.
+     * @param stats     The statistics every deflated payload is recorded in.
+     * @throws IllegalArgumentException If the threshold is negative.
+     */
+    public FrameCompressor(int threshold, CompressionStats stats) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Compression threshold cannot be negative: " + threshold);
+        }
+        this.threshold = threshold;
+        this.stats = stats;
+    }
+
+    /**
+     * Encodes a frame, compressing its payload if it reaches the threshold and shrinks.
+     *
+     * @param type    The frame type.
+     * @param payload The array holding the payload.
+     * @param offset  The index of the first payload byte.
+     * @param length  The number of payload bytes.
+     * @return The encoded frame.
+     * @throws IllegalArgumentException If the payload is longer than {@link FrameCodec#MAX_PAYLOAD_LENGTH}.
+     */
+    public byte[] encode(byte type, byte[] payload, int offset, int length) {
+        if (length < threshold || length > FrameCodec.MAX_PAYLOAD_LENGTH) {
+            return FrameCodec.encode(type, (byte) 0, payload, offset, length);
+        }
+        int compressed = deflate(payload, offset, length);
+        stats.recordDeflate(length, compressed);
+        if (compressed >= length) {
+            return FrameCodec.encode(type, (byte) 0, payload, offset, length);
+        }
+        return FrameCodec.encode(type, FrameCodec.FLAG_DEFLATE, buffer, 0, compressed);
+    }
+
+    private int deflate(byte[] payload, int offset, int length) {
+        deflater.reset();
+        deflater.setInput(payload, offset, length);
+        deflater.finish();
+        int size = 0;
+        while (!deflater.finished()) {
+            if (size == buffer.length) {
+                if (size > length) {
+                    // Already larger than the payload: it will be sent raw.
+                    return size;
+                }
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            size += deflater.deflate(buffer, size, buffer.length - size);
+        }
+        return size;
+    }
+
+    /**
+     * Returns the smallest payload this compressor deflates.
+     *
+     * @return The threshold in bytes.
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Releases the deflater. The compressor cannot be used afterwards.
+     */
+    @Override
+    public void close() {
+        deflater.end();
+    }
+}
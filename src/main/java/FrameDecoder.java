@@ -0,0 +1,193 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The {@code FrameDecoder} class reads {@link FrameCodec} frames from a stream. The payload is read straight into a
+ * buffer that is reused for every frame and only grows when a larger frame arrives, so decoding a frame copies no
+ * bytes and allocates nothing but the final {@code String}.
+ * A frame flagged {@link FrameCodec#FLAG_DEFLATE} is inflated, into a second reusable buffer, with an
+ * {@link Inflater} created on first use and reused for every later frame; the decompressed payload is bounded by the
+ * same maximum length as a raw one, so a small frame cannot inflate into an unbounded allocation.
+ * Instances are not thread-safe; each connection owns one and must {@link #close()} it once done.
+ */
+public class FrameDecoder implements AutoCloseable {
+    private final int maxPayloadLength;
+    private final byte[] header = new byte[FrameCodec.HEADER_LENGTH];
+    private byte[] payload = new byte[256];
+    private byte[] spare = new byte[256];
+    private Inflater inflater;
+    private int payloadLength;
+    private int frameLength;
+    private byte type;
+    private byte flags;
+
+    /**
+     * Constructs a new {@code FrameDecoder} accepting payloads of up to {@link FrameCodec#MAX_PAYLOAD_LENGTH} bytes.
+     */
+    public FrameDecoder() {
+        this(FrameCodec.MAX_PAYLOAD_LENGTH);
+    }
+
+    /**
+     * Constructs a new {@code FrameDecoder}.
+     *
+     * @param maxPayloadLength The maximum number of payload bytes in a frame.
+     * @throws IllegalArgumentException If the maximum payload length is not positive.
+     */
+    public FrameDecoder(int maxPayloadLength) {
+        if (maxPayloadLength <= 0) {
+            throw new IllegalArgumentException("Maximum payload length must be positive: " + maxPayloadLength);
+        }
+        this.maxPayloadLength = maxPayloadLength;
+    }
+
+    /**
+     * Reads the next frame. Its type, flags and payload are available until the next call.
+     *
+     * @param in The stream to read from.
+     * @return {@code true} if a frame was read, {@code false} if the stream ended cleanly between frames.
+     * @throws IOException If the stream fails, ends inside a frame, the payload exceeds the maximum length, or a
+     *                     compressed payload is corrupt.
+     */
+    public boolean read(InputStream in) throws IOException {
+        if (!readFully(in, header, header.length, true)) {
+            return false;
+        }
+        int length = (header[0] & 0xFF) << 24 | (header[1] & 0xFF) << 16 | (header[2] & 0xFF) << 8 | (header[3] & 0xFF);
+        if (length < 0 || length > maxPayloadLength) {
+            throw new IOException("frame payload of " + Integer.toUnsignedString(length) + " bytes exceeds " + maxPayloadLength + " bytes");
+        }
+        if (length > payload.length) {
+            payload = new byte[Math.min(maxPayloadLength, Math.max(length, payload.length * 2))];
+        }
+        readFully(in, payload, length, false);
+        type = header[4];
+        flags = header[5];
+        frameLength = FrameCodec.HEADER_LENGTH + length;
+        payloadLength = (flags & FrameCodec.FLAG_DEFLATE) != 0 ? inflate(length) : length;
+        return true;
+    }
+
+    /**
+     * Inflates the compressed payload into the spare buffer, which then becomes the payload buffer.
+     *
+     * @param length The compressed length.
+     * @return The decompressed length.
+     */
+    private int inflate(int length) throws IOException {
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        inflater.reset();
+        inflater.setInput(payload, 0, length);
+        int size = 0;
+        try {
+            while (!inflater.finished()) {
+                if (size == spare.length) {
+                    if (size >= maxPayloadLength) {
+                        throw new IOException("decompressed frame payload exceeds " + maxPayloadLength + " bytes");
+                    }
+                    byte[] larger = new byte[Math.min(maxPayloadLength, spare.length * 2)];
+                    System.arraycopy(spare, 0, larger, 0, size);
+                    spare = larger;
+                }
+                int inflated = inflater.inflate(spare, size, spare.length - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("truncated compressed frame payload");
+                }
+                size += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt compressed frame payload: " + e.getMessage());
+        }
+        byte[] compressed = payload;
+        payload = spare;
+        spare = compressed;
+        return size;
+    }
+
+    /**
+     * Returns the type of the last frame read.
+     *
+     * @return The frame type.
+     */
+    public byte getType() {
+        return type;
+    }
+
+    /**
+     * Returns the flags of the last frame read.
+     *
+     * @return The frame flags.
+     */
+    public byte getFlags() {
+        return flags;
+    }
+
+    /**
+     * Returns the reusable buffer holding the payload of the last frame read, starting at index 0.
+     * Its contents are overwritten by the next call to {@link #read(InputStream)}.
+     *
+     * @return The payload buffer.
+     */
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    /**
+     * Returns the number of payload bytes of the last frame read, after decompression.
+     *
+     * @return The payload length.
+     */
+    public int getPayloadLength() {
+        return payloadLength;
+    }
+
+    /**
+     * Returns the size of the last frame read as it was on the wire, header included.
+     *
+     * @return The frame length in bytes.
+     */
+    public int getFrameLength() {
+        return frameLength;
+    }
+
+    /**
+     * Decodes the payload of the last frame read as UTF-8 text.
+     *
+     * @return The payload text.
+     */
+    public String text() {
+        return new String(payload, 0, payloadLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Releases the inflater, if a compressed frame was ever read.
+     */
+    @Override
+    public void close() {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+    private static boolean readFully(InputStream in, byte[] buffer, int length, boolean endAllowed) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int read = in.read(buffer, offset, length - offset);
+            if (read < 0) {
+                if (offset == 0 && endAllowed) {
+                    return false;
+                }
+                throw new EOFException("connection closed in the middle of a frame");
+            }
+            offset += read;
+        }
+        return true;
+    }
+}
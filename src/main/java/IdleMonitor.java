@@ -0,0 +1,100 @@
+import java.util.function.LongSupplier;
+
+/**
+ * The {@code IdleMonitor} class watches one connection for inactivity with a single {@link TimingWheel} timeout
+ * at a time. Traffic does not touch the wheel: the owner of the connection only records when it last heard from
+ * the peer, and when the timeout fires the monitor compares that time with the limits and schedules its next
+ * check. Once the connection has been idle for the heartbeat interval the heartbeat task runs, and again every
+ * interval while the silence lasts; once it has been idle for the idle timeout the expiry task runs and the
+ * monitor stops.
+ */
+public class IdleMonitor implements Runnable {
+    private final TimingWheel wheel;
+    private final LongSupplier lastActivity;
+    private final long idleTimeoutNanos;
+    private final long heartbeatNanos;
+    private final Runnable heartbeat;
+    private final Runnable expiry;
+    private volatile TimingWheel.Timeout timeout;
+    private volatile boolean cancelled;
+
+    /**
+     * Constructs a new {@code IdleMonitor}. Nothing is scheduled before {@link #start()}.
+     *
+     * @param wheel            The wheel scheduling the checks.
+     * @param lastActivity     Returns when the peer was last heard from, on the wheel's clock.
+     * @param idleTimeoutNanos How long the peer may stay silent before the connection expires.
+     * @param heartbeatNanos   How long the peer may stay silent before it is sent a heartbeat, or {@code 0} for no
+     *                         heartbeats.
+     * @param heartbeat        The task sending a heartbeat, or {@code null} for no heartbeats.
+     * @param expiry           The task closing the connection.
+     * @throws IllegalArgumentException If the idle timeout is not positive or the heartbeat interval is negative.
+     */
+    public IdleMonitor(TimingWheel wheel, LongSupplier lastActivity, long idleTimeoutNanos, long heartbeatNanos,
+                       Runnable heartbeat, Runnable expiry) {
+        if (idleTimeoutNanos <= 0) {
+            throw new IllegalArgumentException("Idle timeout must be positive: " + idleTimeoutNanos);
+        }
+        if (heartbeatNanos < 0) {
+            throw new IllegalArgumentException("Heartbeat interval cannot be negative: " + heartbeatNanos);
+        }
+        this.wheel = wheel;
+        this.lastActivity = lastActivity;
+        this.idleTimeoutNanos = idleTimeoutNanos;
+        this.heartbeatNanos = heartbeat != null ? heartbeatNanos : 0;
+        this.heartbeat = heartbeat;
+        this.expiry = expiry;
+    }
+
+    /**
+     * Schedules the first check.
+     */
+    public void start() {
+        reschedule(heartbeatNanos > 0 ? Math.min(heartbeatNanos, idleTimeoutNanos) : idleTimeoutNanos);
+    }
+
+    /**
+     * Checks the connection; called by the wheel.
+     */
+    @Override
+    public void run() {
+        if (cancelled) {
+            return;
+        }
+        long idle = wheel.now() - lastActivity.getAsLong();
+        if (idle >= idleTimeoutNanos) {
+            cancelled = true;
+            expiry.run();
+            return;
+        }
+
+        long next = idleTimeoutNanos - idle;
+        if (heartbeatNanos > 0) {
+            if (idle >= heartbeatNanos) {
+                heartbeat.run();
+                next = Math.min(next, heartbeatNanos);
+            } else {
+                next = Math.min(next, heartbeatNanos - idle);
+            }
+        }
+        reschedule(next);
+    }
+
+    /**
+     * Stops watching the connection.
+     */
+    public void cancel() {
+        cancelled = true;
+        TimingWheel.Timeout current = timeout;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    private void reschedule(long delayNanos) {
+        timeout = wheel.schedule(this, delayNanos);
+        if (cancelled) {
+            timeout.cancel();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The {@code LineDecoder} class splits a stream of UTF-8 bytes into lines without going through a
+ * {@link java.io.Reader}. Bytes are accumulated in a reusable buffer until a {@code '\n'} is seen; a trailing
+ * {@code '\r'} is dropped, so both Unix and telnet-style line endings are accepted.
+ * Instances are not thread-safe; each connection owns one.
+ */
+public class LineDecoder {
+    private final int maxLineLength;
+    private byte[] line = new byte[256];
+    private int length;
+
+    /**
+     * Constructs a new {@code LineDecoder}.
+     *
+     * @param maxLineLength The maximum number of bytes in a line, excluding the terminator.
+     * @throws IllegalArgumentException If the maximum line length is not positive.
+     */
+    public LineDecoder(int maxLineLength) {
+        if (maxLineLength <= 0) {
+            throw new IllegalArgumentException("Maximum line length must be positive: " + maxLineLength);
+        }
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * Consumes bytes from the input until a complete line is found.
+     *
+     * @param input The bytes to decode; its position is advanced past the consumed bytes.
+     * @return The next complete line, or {@code null} if the input ended in the middle of a line.
+     * @throws IOException If a line exceeds the maximum line length.
+     */
+    public String next(ByteBuffer input) throws IOException {
+        while (input.hasRemaining()) {
+            byte b = input.get();
+            if (b == '\n') {
+                return takeLine();
+            }
+            append(b);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the incomplete line left over when the input has ended, so a last line without terminator is not
+     * lost, and resets the decoder.
+     *
+     * @return The buffered bytes as a line, or {@code null} if none are buffered.
+     */
+    public String finish() {
+        return length > 0 ? takeLine() : null;
+    }
+
+    /**
+     * Returns the number of bytes of the current, incomplete line.
+     *
+     * @return The number of buffered bytes.
+     */
+    public int getBufferedLength() {
+        return length;
+    }
+
+    private void append(byte b) throws IOException {
+        if (length == maxLineLength) {
+            throw new IOException("line exceeds " + maxLineLength + " bytes");
+        }
+        if (length == line.length) {
+            line = Arrays.copyOf(line, Math.min(line.length * 2, maxLineLength));
+        }
+        line[length++] = b;
+    }
+
+    private String takeLine() {
+        int end = length;
+        if (end > 0 && line[end - 1] == '\r') {
+            end--;
+        }
+        length = 0;
+        return new String(line, 0, end, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,240 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code LoadGenerator} class drives a chat server with simulated users, for capacity planning.
+ * Every user connects, completes the nickname handshake and sends messages at a fixed rate. Each message carries
+ * the run ID, the sender and the send time, so every other user can measure the fan-out latency of the broadcast
+ * echo it receives. Latencies go into a {@link LatencyHistogram}; at the end of the run a summary with throughput
+ * and p50/p99/p99.9 latencies is printed and written as JSON.
+ */
+public class LoadGenerator {
+    private static final String MARKER = "LOAD";
+    private static final long DRAIN_MILLIS = 2000;
+
+    private final String serverAddress;
+    private final int serverPort;
+    private final int users;
+    private final double messagesPerSecond;
+    private final int durationSeconds;
+    private final Path summaryPath;
+    private final String runId = Long.toString(System.nanoTime() & 0xFFFFFF, 36);
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final List<Socket> sockets = new ArrayList<>();
+    private volatile long startNanos;
+    private volatile long stopNanos;
+    private volatile boolean summaryWritten;
+
+    /**
+     * Constructs a new {@code LoadGenerator}.
+     *
+     * @param serverAddress     The address of the server under test.
+     * @param serverPort        The port of the server under test.
+     * @param users             The number of simulated users.
+     * @param messagesPerSecond The rate at which each user sends messages.
+     * @param durationSeconds   How long users keep sending.
+     * @param summaryPath       The file the JSON summary is written to, or {@code null} for no file.
+     * @throws IllegalArgumentException If the number of users, rate or duration is not positive.
+     */
+    public LoadGenerator(String serverAddress, int serverPort, int users, double messagesPerSecond, int durationSeconds, Path summaryPath) {
+        if (users <= 0) {
+            throw new IllegalArgumentException("Number of users must be positive: " + users);
+        }
+        if (messagesPerSecond <= 0) {
+            throw new IllegalArgumentException("Message rate must be positive: " + messagesPerSecond);
+        }
+        if (durationSeconds <= 0) {
+            throw new IllegalArgumentException("Duration must be positive: " + durationSeconds);
+        }
+        this.serverAddress = serverAddress;
+        this.serverPort = serverPort;
+        this.users = users;
+        this.messagesPerSecond = messagesPerSecond;
+        this.durationSeconds = durationSeconds;
+        this.summaryPath = summaryPath;
+    }
+
+    /**
+     * Connects all users, runs the load for the configured duration, waits for the last echoes and reports.
+     *
+     * @return The JSON summary of the run.
+     * @throws IOException If a user cannot connect or the summary cannot be written.
+     * @throws InterruptedException If the run is interrupted.
+     */
+    public String run() throws IOException, InterruptedException {
+        Thread summaryOnExit = new Thread(this::writeSummaryQuietly);
+        Runtime.getRuntime().addShutdownHook(summaryOnExit);
+
+        ThreadFactory readerThreads = ExecutionMode.PLATFORM.threadFactory("load-reader-", true);
+        List<PrintWriter> writers = new ArrayList<>();
+        try {
+            System.out.println("Connecting " + users + " users to " + serverAddress + ":" + serverPort + "...");
+            for (int i = 0; i < users; i++) {
+                writers.add(connect(i, readerThreads));
+            }
+
+            long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / messagesPerSecond);
+            ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+                    Math.min(users, 2 * Runtime.getRuntime().availableProcessors()),
+                    ExecutionMode.PLATFORM.threadFactory("load-sender-", true));
+            System.out.println("Sending " + messagesPerSecond + " messages/s per user for " + durationSeconds + " s...");
+            startNanos = System.nanoTime();
+            for (int i = 0; i < users; i++) {
+                int user = i;
+                PrintWriter out = writers.get(i);
+                long[] sequence = {0};
+                scheduler.scheduleAtFixedRate(() -> {
+                    out.println(MARKER + " " + runId + " " + user + " " + sequence[0]++ + " " + System.nanoTime());
+                    sent.increment();
+                }, periodNanos * i / users, periodNanos, TimeUnit.NANOSECONDS);
+            }
+
+            TimeUnit.SECONDS.sleep(durationSeconds);
+            scheduler.shutdownNow();
+            stopNanos = System.nanoTime();
+            Thread.sleep(DRAIN_MILLIS);
+
+            String summary = summary(elapsedSeconds());
+            System.out.println(summary);
+            writeSummary(summary);
+            return summary;
+        } finally {
+            closeSockets();
+            try {
+                Runtime.getRuntime().removeShutdownHook(summaryOnExit);
+            } catch (IllegalStateException e) {
+                // The JVM is already shutting down and the hook writes the summary.
+            }
+        }
+    }
+
+    /**
+     * Returns the histogram of fan-out latencies in nanoseconds.
+     *
+     * @return The latency histogram.
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    private PrintWriter connect(int user, ThreadFactory readerThreads) throws IOException {
+        Socket socket = new Socket(serverAddress, serverPort);
+        socket.setTcpNoDelay(true);
+        synchronized (sockets) {
+            sockets.add(socket);
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+
+        in.readLine();
+        out.println("load-" + runId + "-" + user);
+        in.readLine();
+
+        readerThreads.newThread(() -> readEchoes(in, out)).start();
+        return out;
+    }
+
+    private void readEchoes(BufferedReader in, PrintWriter out) {
+        String prefix = MARKER + " " + runId + " ";
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                long receivedAt = System.nanoTime();
+                if (ConnectionThread.PING.equals(line)) {
+                    out.println(ConnectionThread.PONG);
+                    continue;
+                }
+                if (!line.contains(prefix)) {
+                    continue;
+                }
+                int timestamp = line.lastIndexOf(' ');
+                try {
+                    latencies.record(receivedAt - Long.parseLong(line.substring(timestamp + 1)));
+                    received.increment();
+                } catch (NumberFormatException e) {
+                    // Not one of our messages after all.
+                }
+            }
+        } catch (IOException e) {
+            // The socket was closed at the end of the run.
+        }
+    }
+
+    private String summary(double elapsedSeconds) {
+        long sentCount = sent.sum();
+        long receivedCount = received.sum();
+        long expected = sentCount * (users - 1);
+        return String.format(Locale.ROOT,
+                "{\"users\":%d,\"messagesPerSecondPerUser\":%.2f,\"durationSeconds\":%.3f,"
+                        + "\"sent\":%d,\"received\":%d,\"expectedDeliveries\":%d,\"deliveryRatio\":%.4f,"
+                        + "\"sendThroughput\":%.1f,\"deliveryThroughput\":%.1f,"
+                        + "\"latencyMicros\":{\"p50\":%.1f,\"p99\":%.1f,\"p999\":%.1f,\"max\":%.1f,\"mean\":%.1f}}",
+                users, messagesPerSecond, elapsedSeconds,
+                sentCount, receivedCount, expected, expected == 0 ? 0.0 : (double) receivedCount / expected,
+                elapsedSeconds > 0 ? sentCount / elapsedSeconds : 0.0,
+                elapsedSeconds > 0 ? receivedCount / elapsedSeconds : 0.0,
+                latencies.getValueAtPercentile(50) / 1e3, latencies.getValueAtPercentile(99) / 1e3,
+                latencies.getValueAtPercentile(99.9) / 1e3, latencies.getMax() / 1e3, latencies.getMean() / 1e3);
+    }
+
+    private synchronized void writeSummary(String summary) throws IOException {
+        if (summaryPath != null && !summaryWritten) {
+            Files.writeString(summaryPath, summary + System.lineSeparator(), StandardCharsets.UTF_8);
+            System.out.println("Summary written to " + summaryPath);
+        }
+        summaryWritten = true;
+    }
+
+    /**
+     * Returns how long users have been sending: from the first scheduled message until the senders were stopped
+     * or, for a run that is still going or was cut short, until now.
+     *
+     * @return The measured sending time in seconds, or {@code 0} if sending has not started.
+     */
+    double elapsedSeconds() {
+        long start = startNanos;
+        if (start == 0) {
+            return 0;
+        }
+        long stop = stopNanos;
+        return ((stop != 0 ? stop : System.nanoTime()) - start) / 1e9;
+    }
+
+    private void writeSummaryQuietly() {
+        try {
+            writeSummary(summary(elapsedSeconds()));
+        } catch (IOException e) {
+            System.err.println("Failed to write summary: " + e.getMessage());
+        }
+    }
+
+    private void closeSockets() {
+        synchronized (sockets) {
+            for (Socket socket : sockets) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    System.err.println("Failed to close load socket: " + e.getMessage());
+                }
+            }
+            sockets.clear();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code Log} class is the process-wide entry point to logging for the chat servers. It forwards to one shared
+ * {@link AsyncLogger}, so logging never blocks the thread delivering messages, and flushes it when the JVM exits.
+ */
+public final class Log {
+    private static final AsyncLogger LOGGER = new AsyncLogger(AsyncLogger.DEFAULT_CAPACITY);
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> LOGGER.flush(1, TimeUnit.SECONDS)));
+    }
+
+    private Log() {
+    }
+
+    /**
+     * Returns the shared logger, to change its level, switch per-message logging or read its drop counter.
+     *
+     * @return The shared logger.
+     */
+    public static AsyncLogger logger() {
+        return LOGGER;
+    }
+
+    /**
+     * Logs a debug entry.
+     *
+     * @param message The text of the entry.
+     */
+    public static void debug(String message) {
+        LOGGER.log(LogLevel.DEBUG, message);
+    }
+
+    /**
+     * Logs an informational entry.
+     *
+     * @param message The text of the entry.
+     */
+    public static void info(String message) {
+        LOGGER.log(LogLevel.INFO, message);
+    }
+
+    /**
+     * Logs a warning.
+     *
+     * @param message The text of the entry.
+     */
+    public static void warn(String message) {
+        LOGGER.log(LogLevel.WARN, message);
+    }
+
+    /**
+     * Logs an error.
+     *
+     * @param message The text of the entry.
+     */
+    public static void error(String message) {
+        LOGGER.log(LogLevel.ERROR, message);
+    }
+
+    /**
+     * Logs a per-message entry, such as a broadcast chat line.
+     *
+     * @param message The text of the entry.
+     * @see AsyncLogger#message(String)
+     */
+    public static void message(String message) {
+        LOGGER.message(message);
+    }
+
+    /**
+     * Checks whether per-message entries are logged, so that callers can skip building them.
+     *
+     * @return {@code true} if per-message entries are logged, {@code false} otherwise.
+     */
+    public static boolean isMessageLoggingEnabled() {
+        return LOGGER.isMessageLoggingEnabled();
+    }
+
+    /**
+     * Waits up to one second for every entry logged so far to be written.
+     */
+    public static void flush() {
+        LOGGER.flush(1, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * The {@code LogLevel} enum lists the severities understood by {@link AsyncLogger}, from the most to the least
+ * verbose. A logger set to a level discards every entry below it; {@link #OFF} discards everything.
+ */
+public enum LogLevel {
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR,
+    OFF
+}
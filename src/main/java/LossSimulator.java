@@ -0,0 +1,61 @@
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code LossSimulator} class drops a fixed fraction of outgoing datagrams, to test the reliable UDP mode on a
+ * loopback interface that never loses anything. Decisions come from a seeded generator, so a test sees the same
+ * losses on every run.
+ */
+public class LossSimulator {
+    /**
+     * A simulator that never drops anything.
+     */
+    public static final LossSimulator NONE = new LossSimulator(0, 0);
+
+    private final double lossRate;
+    private final Random random;
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Constructs a new {@code LossSimulator}.
+     *
+     * @param lossRate The fraction of datagrams to drop, between 0 and 1.
+     * @param seed     The seed of the generator deciding which datagrams are dropped.
+     * @throws IllegalArgumentException If the rate is outside [0, 1).
+     */
+    public LossSimulator(double lossRate, long seed) {
+        if (lossRate < 0 || lossRate >= 1) {
+            throw new IllegalArgumentException("Loss rate must be at least 0 and below 1: " + lossRate);
+        }
+        this.lossRate = lossRate;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Decides whether the next datagram is lost.
+     *
+     * @return {@code true} if the datagram should not be sent.
+     */
+    public boolean drop() {
+        if (lossRate == 0) {
+            return false;
+        }
+        boolean drop;
+        synchronized (random) {
+            drop = random.nextDouble() < lossRate;
+        }
+        if (drop) {
+            dropped.increment();
+        }
+        return drop;
+    }
+
+    /**
+     * Returns the number of datagrams dropped so far.
+     *
+     * @return The drop count.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+}
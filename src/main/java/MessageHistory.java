@@ -0,0 +1,147 @@
+import java.nio.ByteBuffer;
+
+/**
+ * The {@code MessageHistory} class keeps the most recent messages of a room so that clients who join later can
+ * catch up. The encoded bytes live in a ring buffer allocated once, outside the Java heap, so even a large history
+ * adds nothing for the garbage collector to trace or copy; only the offsets and lengths of the retained messages are
+ * kept on the heap. When the message limit or the byte capacity is reached, the oldest messages are overwritten.
+ * All methods are synchronized on the history itself, so readers and writers of different rooms never contend.
+ */
+public class MessageHistory {
+    private final int capacityBytes;
+    private final ByteBuffer writeView;
+    private final ByteBuffer readView;
+    private final long[] offsets;
+    private final int[] lengths;
+    private long oldest;
+    private long next;
+    private long bytePosition;
+
+    /**
+     * Constructs a new, empty {@code MessageHistory} and allocates its buffer.
+     *
+     * @param maxMessages   The maximum number of messages kept.
+     * @param capacityBytes The size of the off-heap buffer holding the encoded messages.
+     * @throws IllegalArgumentException If either limit is not positive.
+     */
+    public MessageHistory(int maxMessages, int capacityBytes) {
+        if (maxMessages <= 0) {
+            throw new IllegalArgumentException("Maximum number of messages must be positive: " + maxMessages);
+        }
+        if (capacityBytes <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacityBytes);
+        }
+        this.capacityBytes = capacityBytes;
+        ByteBuffer data = ByteBuffer.allocateDirect(capacityBytes);
+        this.writeView = data.duplicate();
+        this.readView = data.duplicate();
+        this.offsets = new long[maxMessages];
+        this.lengths = new int[maxMessages];
+    }
+
+    /**
+     * Appends a message, evicting the oldest ones if needed. A message larger than the whole buffer is not kept.
+     *
+     * @param message The encoded message.
+     */
+    public synchronized void append(EncodedMessage message) {
+        int length = message.length();
+        if (length > capacityBytes) {
+            return;
+        }
+        while (next - oldest == offsets.length || usedBytes() + length > capacityBytes) {
+            oldest++;
+        }
+        int slot = (int) (next % offsets.length);
+        offsets[slot] = bytePosition;
+        lengths[slot] = length;
+        copyIn(message.buffer(), bytePosition, length);
+        bytePosition += length;
+        next++;
+    }
+
+    /**
+     * Copies the most recent messages, oldest first, into a single message that can be queued for a client and
+     * written in one go.
+     *
+     * @param count The maximum number of messages to return.
+     * @return The messages, or {@code null} if the history is empty or the count is not positive.
+     */
+    public synchronized EncodedMessage replay(int count) {
+        int retained = size();
+        int replayed = Math.min(count, retained);
+        if (replayed <= 0) {
+            return null;
+        }
+        long first = next - replayed;
+        long start = offsets[(int) (first % offsets.length)];
+        byte[] lines = new byte[(int) (bytePosition - start)];
+        int[] lineEnds = new int[replayed];
+        copyOut(start, lines);
+        for (int i = 0; i < replayed; i++) {
+            int slot = (int) ((first + i) % offsets.length);
+            lineEnds[i] = (int) (offsets[slot] - start) + lengths[slot];
+        }
+        return EncodedMessage.ofLines(lines, lineEnds);
+    }
+
+    /**
+     * Returns the number of messages currently kept.
+     *
+     * @return The message count.
+     */
+    public synchronized int size() {
+        return (int) (next - oldest);
+    }
+
+    /**
+     * Returns the number of bytes used by the messages currently kept.
+     *
+     * @return The used byte count.
+     */
+    public synchronized long usedBytes() {
+        return next == oldest ? 0 : bytePosition - offsets[(int) (oldest % offsets.length)];
+    }
+
+    /**
+     * Returns the maximum number of messages kept.
+     *
+     * @return The message limit.
+     */
+    public int getMaxMessages() {
+        return offsets.length;
+    }
+
+    /**
+     * Returns the size of the off-heap buffer.
+     *
+     * @return The capacity in bytes.
+     */
+    public int getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    private void copyIn(ByteBuffer source, long position, int length) {
+        int start = (int) (position % capacityBytes);
+        int firstPart = Math.min(length, capacityBytes - start);
+        writeView.clear().position(start);
+        source.limit(source.position() + firstPart);
+        writeView.put(source);
+        if (firstPart < length) {
+            writeView.clear();
+            source.limit(source.position() + length - firstPart);
+            writeView.put(source);
+        }
+    }
+
+    private void copyOut(long position, byte[] target) {
+        int start = (int) (position % capacityBytes);
+        int firstPart = Math.min(target.length, capacityBytes - start);
+        readView.clear().position(start);
+        readView.get(target, 0, firstPart);
+        if (firstPart < target.length) {
+            readView.clear();
+            readView.get(target, firstPart, target.length - firstPart);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The {@code MetricsRegistry} class collects the named counters, gauges and histograms of one server.
+ * Counters are {@link LongAdder}s that the server keeps a reference to and increments without any lookup; gauges
+ * are read only when the metrics are reported; histograms are {@link LatencyHistogram}s and are reported as their
+ * count, p50, p99, p99.9 and maximum.
+ * The registry can publish itself as a JMX MBean, every metric being a read-only attribute, and can print a text
+ * dump of all metrics at a fixed interval.
+ */
+public class MetricsRegistry {
+    public static final String JMX_DOMAIN = "RTSChat";
+
+    private final String name;
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private ObjectName objectName;
+    private ScheduledExecutorService reporter;
+
+    /**
+     * Constructs a new, empty {@code MetricsRegistry}.
+     *
+     * @param name The name of the server the metrics belong to, for example {@code TCPMultiServer:8080}.
+     */
+    public MetricsRegistry(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the counter with the given name, creating it on first use.
+     *
+     * @param metric The metric name.
+     * @return The counter.
+     */
+    public LongAdder counter(String metric) {
+        return counters.computeIfAbsent(metric, key -> new LongAdder());
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge of the same name.
+     *
+     * @param metric   The metric name.
+     * @param supplier The function reading the current value.
+     */
+    public void gauge(String metric, LongSupplier supplier) {
+        gauges.put(metric, supplier);
+    }
+
+    /**
+     * Returns the histogram with the given name, creating it on first use.
+     *
+     * @param metric The metric name.
+     * @return The histogram.
+     */
+    public LatencyHistogram histogram(String metric) {
+        return histograms.computeIfAbsent(metric, key -> new LatencyHistogram());
+    }
+
+    /**
+     * Reads every metric. Histograms are expanded into {@code .count}, {@code .p50}, {@code .p99}, {@code .p999}
+     * and {@code .max} entries.
+     *
+     * @return The current values, sorted by metric name.
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((metric, counter) -> values.put(metric, counter.sum()));
+        gauges.forEach((metric, gauge) -> values.put(metric, gauge.getAsLong()));
+        histograms.forEach((metric, histogram) -> {
+            values.put(metric + ".count", histogram.getCount());
+            values.put(metric + ".p50", histogram.getValueAtPercentile(50));
+            values.put(metric + ".p99", histogram.getValueAtPercentile(99));
+            values.put(metric + ".p999", histogram.getValueAtPercentile(99.9));
+            values.put(metric + ".max", histogram.getMax());
+        });
+        return values;
+    }
+
+    /**
+     * Formats every metric as one {@code name value} line, preceded by a header line naming the server.
+     *
+     * @return The text dump.
+     */
+    public String dump() {
+        StringBuilder text = new StringBuilder("--- metrics ").append(name).append(" ---");
+        snapshot().forEach((metric, value) -> text.append(System.lineSeparator()).append(metric).append(' ').append(value));
+        return text.toString();
+    }
+
+    /**
+     * Publishes the registry on the platform MBean server as {@code RTSChat:type=<type>,port=<port>}.
+     * A stale registration under the same name, left by a server that was not shut down, is replaced.
+     *
+     * @param type The server type, for example {@code TCPMultiServer}.
+     * @param port The server port.
+     */
+    public synchronized void registerMBean(String type, int port) {
+        unregisterMBean();
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName candidate = new ObjectName(JMX_DOMAIN + ":type=" + type + ",port=" + port);
+            if (mbeanServer.isRegistered(candidate)) {
+                mbeanServer.unregisterMBean(candidate);
+            }
+            mbeanServer.registerMBean(new MetricsMBean(), candidate);
+            objectName = candidate;
+        } catch (JMException e) {
+            Log.error("Failed to register metrics MBean for " + name + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the registry from the platform MBean server, if it was published.
+     */
+    public synchronized void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            Log.error("Failed to unregister metrics MBean for " + name + ": " + e.getMessage());
+        }
+        objectName = null;
+    }
+
+    /**
+     * Returns the name under which the registry is published.
+     *
+     * @return The JMX object name, or {@code null} if the registry is not published.
+     */
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+
+    /**
+     * Starts printing the text dump at a fixed interval on a daemon thread. Any previous reporter is stopped.
+     *
+     * @param periodSeconds The interval between dumps.
+     * @param out           The stream the dumps are printed to.
+     * @throws IllegalArgumentException If the interval is not positive.
+     */
+    public synchronized void startReporter(long periodSeconds, PrintStream out) {
+        if (periodSeconds <= 0) {
+            throw new IllegalArgumentException("Reporting interval must be positive: " + periodSeconds);
+        }
+        stopReporter();
+        reporter = Executors.newSingleThreadScheduledExecutor(ExecutionMode.PLATFORM.threadFactory("metrics-", true));
+        reporter.scheduleAtFixedRate(() -> out.println(dump()), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic text dump, if it was started.
+     */
+    public synchronized void stopReporter() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    /**
+     * Stops the reporter and removes the MBean.
+     */
+    public void close() {
+        stopReporter();
+        unregisterMBean();
+    }
+
+    /**
+     * Exposes the current snapshot of the registry as read-only {@code long} attributes.
+     */
+    private class MetricsMBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Long value = snapshot().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException("No metric named " + attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metric " + attribute.getName() + " is read-only");
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Long> values = snapshot();
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                Long value = values.get(attribute);
+                if (value != null) {
+                    list.add(new Attribute(attribute, value));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException("Metrics have no operations: " + actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            MBeanAttributeInfo[] attributes = snapshot().keySet().stream()
+                    .map(metric -> new MBeanAttributeInfo(metric, "long", metric, true, false, false))
+                    .toArray(MBeanAttributeInfo[]::new);
+            return new MBeanInfo(MetricsRegistry.class.getName(), "Metrics of " + name, attributes, null, null, null);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * NioChatServer is a non-blocking alternative to {@link TCPMultiServer}. Instead of one thread per client, it
+ * multiplexes every connection over a small, fixed set of {@link NioEventLoop}s, each driving its own selector.
+ * The wire protocol is the same line protocol: a nickname prompt, join/leave notices and
+ * {@code nickname: message} broadcasts, so existing clients work unchanged. As with {@link TCPMultiServer}, the
+ * bytes queued for one client are bounded by a high-water mark and a {@link SlowConsumerPolicy}.
+ */
+public class NioChatServer {
+    private static final int DEFAULT_PORT = 8080;
+
+    private final int port;
+    private final int ioThreads;
+    private final ConcurrentHashMap<String, NioConnection> clients = new ConcurrentHashMap<>();
+    private final WriteBatchStats writeBatches = new WriteBatchStats();
+    private volatile SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DROP_NEWEST;
+    private volatile long highWaterBytes = ClientWriter.DEFAULT_HIGH_WATER_BYTES;
+    private final SlowConsumerStats slowConsumers = new SlowConsumerStats();
+    private NioEventLoop[] loops = new NioEventLoop[0];
+    private ServerSocketChannel serverChannel;
+    private volatile boolean isRunning = true;
+
+    /**
+     * Constructor to initialize the server with a port number and one event loop per available core (at most 4).
+     *
+     * @param port The port number on which the server will listen for incoming connections.
+     * @throws IllegalArgumentException If the port number is not in the valid range (1-65535).
+     */
+    public NioChatServer(int port) {
+        this(port, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Constructor to initialize the server with a port number and an explicit number of event loops.
+     *
+     * @param port      The port number on which the server will listen for incoming connections.
+     * @param ioThreads The number of selector threads serving client connections.
+     * @throws IllegalArgumentException If the port is not in the valid range or {@code ioThreads} is not positive.
+     */
+    public NioChatServer(int port, int ioThreads) {
+        if (port <= 0 || port > 65535) {
+            throw new IllegalArgumentException("Invalid port number: " + port + ". Must be between 1 and 65535.");
+        }
+        if (ioThreads <= 0) {
+            throw new IllegalArgumentException("Number of I/O threads must be positive: " + ioThreads);
+        }
+        this.port = port;
+        this.ioThreads = ioThreads;
+    }
+
+    /**
+     * Starts the event loops and accepts client connections on the calling thread. Accepted channels are handed
+     * to the loops in round-robin order. The server runs until {@link #shutdown()} is called.
+     */
+    public void launch() {
+        Log.info("Starting the non-blocking server on port " + port + " with " + ioThreads + " I/O threads");
+
+        try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+            serverChannel = channel;
+            channel.bind(new InetSocketAddress(port));
+            startLoops();
+            Log.info("Server is listening on port " + port);
+
+            int next = 0;
+            while (isRunning) {
+                try {
+                    SocketChannel client = channel.accept();
+                    client.configureBlocking(false);
+                    client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    loops[next].register(new NioConnection(client, this, slowConsumerPolicy, highWaterBytes));
+                    next = (next + 1) % loops.length;
+                } catch (IOException e) {
+                    if (isRunning) {
+                        Log.error("Error accepting client connection: " + e.getMessage());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.error("Failed to start the server: " + e.getMessage());
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * Broadcasts a message to all connected clients except the given one. The message is encoded once and every
+     * recipient gets its own view of the same bytes.
+     *
+     * @param message The message to be broadcast to clients.
+     * @param exclude The connection that should not receive the message, or {@code null}.
+     */
+    public void broadcast(String message, NioConnection exclude) {
+        Log.message(message);
+
+        EncodedMessage encoded = EncodedMessage.of(message);
+        for (NioConnection connection : clients.values()) {
+            if (connection != exclude) {
+                connection.send(encoded);
+            }
+        }
+    }
+
+    /**
+     * Registers a client under the requested nickname. If the nickname is taken, the first free {@code name-2},
+     * {@code name-3}, ... is used instead, as in {@link ClientRegistry#reserve(String)}; each reservation is atomic.
+     *
+     * @param nickname   The nickname requested by the client.
+     * @param connection The client's connection.
+     * @return The nickname the client was registered under.
+     * @throws IllegalStateException If neither the name nor any of its suffixed variants is free.
+     */
+    public String addClient(String nickname, NioConnection connection) {
+        if (clients.putIfAbsent(nickname, connection) == null) {
+            return nickname;
+        }
+        for (int suffix = 2; suffix <= ClientRegistry.MAX_SUFFIX; suffix++) {
+            String candidate = nickname + "-" + suffix;
+            if (clients.putIfAbsent(candidate, connection) == null) {
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("No free nickname left for " + nickname);
+    }
+
+    /**
+     * Removes a client from the registry if it is still mapped to the given connection.
+     *
+     * @param nickname   The nickname of the client to be removed.
+     * @param connection The client's connection.
+     */
+    public void removeClient(String nickname, NioConnection connection) {
+        clients.remove(nickname, connection);
+    }
+
+    /**
+     * Checks if a given nickname is already taken by another client.
+     *
+     * @param nickname The nickname to check.
+     * @return {@code true} if the nickname is already taken, {@code false} otherwise.
+     */
+    public boolean isNicknameTaken(String nickname) {
+        return clients.containsKey(nickname);
+    }
+
+    /**
+     * Returns the number of clients that have completed the nickname handshake.
+     *
+     * @return The number of connected clients.
+     */
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Returns the write coalescing statistics of all connections.
+     *
+     * @return The number of gathering writes and the messages they completed.
+     */
+    public WriteBatchStats getWriteBatches() {
+        return writeBatches;
+    }
+
+    /**
+     * Sets how connections handle a client that stops reading. Once the bytes waiting to be written to a client
+     * would exceed the high-water mark, new messages are dropped, the oldest ones are dropped, or the client is sent
+     * a notice and disconnected. Applies to connections accepted afterwards.
+     *
+     * @param policy         The slow-consumer policy.
+     * @param highWaterBytes The maximum number of bytes waiting to be written per client.
+     * @throws IllegalArgumentException If the high-water mark is not positive.
+     */
+    public void setSlowConsumerPolicy(SlowConsumerPolicy policy, long highWaterBytes) {
+        if (highWaterBytes <= 0) {
+            throw new IllegalArgumentException("High-water mark must be positive: " + highWaterBytes);
+        }
+        this.slowConsumerPolicy = policy;
+        this.highWaterBytes = highWaterBytes;
+    }
+
+    /**
+     * Returns the actions taken against clients that fell behind.
+     *
+     * @return The slow-consumer statistics shared by all connections.
+     */
+    public SlowConsumerStats getSlowConsumerStats() {
+        return slowConsumers;
+    }
+
+    /**
+     * Stops accepting connections, stops the event loops and closes every client connection.
+     */
+    public synchronized void shutdown() {
+        if (!isRunning && loops.length == 0) {
+            return;
+        }
+        Log.info("Shutting down the server...");
+        isRunning = false;
+
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            Log.error("Failed to close server channel: " + e.getMessage());
+        }
+
+        for (NioEventLoop loop : loops) {
+            loop.shutdown();
+        }
+        loops = new NioEventLoop[0];
+        clients.clear();
+        Log.info("Write coalescing: " + writeBatches + ".");
+        Log.info("Server shutdown complete.");
+        Log.flush();
+    }
+
+    private void startLoops() throws IOException {
+        NioEventLoop[] started = new NioEventLoop[ioThreads];
+        for (int i = 0; i < ioThreads; i++) {
+            started[i] = new NioEventLoop();
+            Thread thread = new Thread(started[i], "nio-io-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        loops = started;
+    }
+
+    /**
+     * The main entry point for the non-blocking server.
+     *
+     * @param args Command-line arguments: the port number and the number of I/O threads (both optional).
+     */
+    public static void main(String[] args) {
+        int port = DEFAULT_PORT;
+        NioChatServer server;
+
+        try {
+            if (args.length > 0) {
+                port = Integer.parseInt(args[0]);
+            }
+            server = args.length > 1 ? new NioChatServer(port, Integer.parseInt(args[1])) : new NioChatServer(port);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number. Usage: java NioChatServer [port] [ioThreads]");
+            return;
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(server::shutdown));
+        server.launch();
+    }
+}
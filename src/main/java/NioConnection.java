@@ -0,0 +1,343 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code NioConnection} class holds the state of one non-blocking client connection of a {@link NioChatServer}.
+ * It speaks the same line protocol as {@link ConnectionThread}: the first line is the nickname, every following
+ * line is broadcast to the other clients as {@code nickname: message}. A client whose nickname has no free
+ * variant left is told so and disconnected.
+ * The outbound queue is bounded by the bytes not yet written: a message that would take them over the high-water
+ * mark is handled by the connection's {@link SlowConsumerPolicy}, like in a {@link ClientWriter}.
+ * All methods except {@link #send(EncodedMessage)} are only called from the owning {@link NioEventLoop} thread.
+ */
+public class NioConnection {
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    private static final int MAX_GATHERED_BUFFERS = 64;
+
+    private final SocketChannel channel;
+    private final NioChatServer server;
+    private final SlowConsumerPolicy slowConsumerPolicy;
+    private final long highWaterBytes;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer[] gathered = new ByteBuffer[MAX_GATHERED_BUFFERS];
+    private int gatheredCount;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean closing = new AtomicBoolean();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final LineDecoder lineDecoder = new LineDecoder(MAX_LINE_LENGTH);
+    private SelectionKey key;
+    private NioEventLoop loop;
+    private volatile boolean closed;
+    private volatile boolean graceExpired;
+    private volatile boolean behind;
+    private String nickname;
+
+    /**
+     * Constructs a new {@code NioConnection} for an accepted, non-blocking socket channel.
+     *
+     * @param channel The accepted client channel.
+     * @param server  The server that owns the client registry.
+     */
+    public NioConnection(SocketChannel channel, NioChatServer server) {
+        this(channel, server, SlowConsumerPolicy.DROP_NEWEST, ClientWriter.DEFAULT_HIGH_WATER_BYTES);
+    }
+
+    /**
+     * Constructs a new {@code NioConnection} for an accepted, non-blocking socket channel.
+     *
+     * @param channel            The accepted client channel.
+     * @param server             The server that owns the client registry.
+     * @param slowConsumerPolicy What to do with a message that would exceed the high-water mark.
+     * @param highWaterBytes     The maximum number of bytes waiting to be written.
+     */
+    public NioConnection(SocketChannel channel, NioChatServer server, SlowConsumerPolicy slowConsumerPolicy, long highWaterBytes) {
+        this.channel = channel;
+        this.server = server;
+        this.slowConsumerPolicy = slowConsumerPolicy;
+        this.highWaterBytes = highWaterBytes;
+    }
+
+    /**
+     * Registers the channel with the selector of its event loop and sends the nickname prompt.
+     *
+     * @param selector The selector of the owning loop.
+     * @param loop     The owning loop.
+     * @throws ClosedChannelException If the client disconnected before registration.
+     */
+    void register(Selector selector, NioEventLoop loop) throws ClosedChannelException {
+        this.loop = loop;
+        this.key = channel.register(selector, SelectionKey.OP_READ, this);
+        send(EncodedMessage.of("Enter your nickname (leave blank for a random one): "));
+    }
+
+    /**
+     * Queues a message for this client. The encoded bytes are shared with the other recipients; the connection
+     * only keeps its own read-only view to track write progress. A message is always accepted when nothing else is
+     * pending, even if it is larger than the high-water mark. Safe to call from any thread.
+     *
+     * @param message The encoded message to send.
+     */
+    public void send(EncodedMessage message) {
+        if (closed || closing.get()) {
+            return;
+        }
+        ByteBuffer buffer = message.buffer();
+        if (tryQueue(buffer)) {
+            return;
+        }
+
+        switch (slowConsumerPolicy) {
+            case DROP_OLDEST:
+                ByteBuffer oldest;
+                while (pendingBytes.get() + buffer.remaining() > highWaterBytes && (oldest = outbound.poll()) != null) {
+                    pendingBytes.addAndGet(-oldest.remaining());
+                    fellBehind(SlowConsumerPolicy.DROP_OLDEST);
+                }
+                if (!tryQueue(buffer)) {
+                    fellBehind(SlowConsumerPolicy.DROP_NEWEST);
+                }
+                break;
+            case DISCONNECT:
+                server.getSlowConsumerStats().record(SlowConsumerPolicy.DISCONNECT);
+                Log.warn("Disconnecting " + describe() + ": " + pendingBytes.get()
+                        + " bytes pending exceeded the high-water mark of " + highWaterBytes + " bytes.");
+                closeAfterNotice(ClientWriter.DISCONNECT_NOTICE);
+                break;
+            default:
+                fellBehind(SlowConsumerPolicy.DROP_NEWEST);
+                break;
+        }
+    }
+
+    private boolean tryQueue(ByteBuffer buffer) {
+        long size = buffer.remaining();
+        long pending = pendingBytes.addAndGet(size);
+        if (pending <= highWaterBytes || pending == size) {
+            outbound.add(buffer);
+            scheduleFlush();
+            return true;
+        }
+        pendingBytes.addAndGet(-size);
+        return false;
+    }
+
+    private void fellBehind(SlowConsumerPolicy action) {
+        server.getSlowConsumerStats().record(action);
+        if (!behind) {
+            behind = true;
+            Log.warn(describe() + " is falling behind with " + pendingBytes.get() + " bytes pending, applying "
+                    + action.name().toLowerCase(Locale.ROOT).replace('_', ' ') + ".");
+        } else if (Log.logger().isEnabled(LogLevel.DEBUG)) {
+            Log.debug("Slow consumer " + describe() + ": " + action.name().toLowerCase(Locale.ROOT).replace('_', ' ') + ".");
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true) && loop != null) {
+            loop.scheduleFlush(this);
+        }
+    }
+
+    /**
+     * Queues a last notice and closes the connection once it is written or, if the client does not read it, after
+     * {@link ClientWriter#DISCONNECT_GRACE_MILLIS}. Messages sent after the notice are discarded.
+     *
+     * @param notice The notice to send.
+     */
+    private void closeAfterNotice(String notice) {
+        if (!closing.compareAndSet(false, true)) {
+            return;
+        }
+        ByteBuffer discarded;
+        while ((discarded = outbound.poll()) != null) {
+            pendingBytes.addAndGet(-discarded.remaining());
+        }
+        ByteBuffer buffer = EncodedMessage.of(notice).buffer();
+        pendingBytes.addAndGet(buffer.remaining());
+        outbound.add(buffer);
+        scheduleFlush();
+        CompletableFuture.delayedExecutor(ClientWriter.DISCONNECT_GRACE_MILLIS, TimeUnit.MILLISECONDS).execute(() -> {
+            graceExpired = true;
+            if (loop != null) {
+                loop.scheduleFlush(this);
+            }
+        });
+    }
+
+    /**
+     * Reads whatever is available on the channel and handles every complete line.
+     */
+    void onReadable() {
+        try {
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                close();
+                return;
+            }
+
+            readBuffer.flip();
+            String line;
+            while (!closed && !closing.get() && (line = lineDecoder.next(readBuffer)) != null) {
+                handleLine(line);
+            }
+            readBuffer.clear();
+        } catch (IOException e) {
+            Log.warn("Connection with " + (nickname != null ? nickname : "unknown user") + " lost: " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Writes as much of the outbound queue as the socket accepts. Every message queued since the last flush is
+     * gathered into a single {@code write} call, so a burst of broadcasts costs one system call per client rather
+     * than one per message. If the socket buffer fills up, the connection subscribes to
+     * {@link SelectionKey#OP_WRITE} and resumes when the client has drained it.
+     */
+    void flush() {
+        flushScheduled.set(false);
+        if (closed || key == null) {
+            return;
+        }
+        if (graceExpired) {
+            close();
+            return;
+        }
+
+        try {
+            while (true) {
+                ByteBuffer next;
+                while (gatheredCount < gathered.length && (next = outbound.poll()) != null) {
+                    gathered[gatheredCount++] = next;
+                }
+                if (gatheredCount == 0) {
+                    break;
+                }
+                long bytes = channel.write(gathered, 0, gatheredCount);
+                int written = 0;
+                while (written < gatheredCount && !gathered[written].hasRemaining()) {
+                    written++;
+                }
+                server.getWriteBatches().record(written, bytes);
+                pendingBytes.addAndGet(-bytes);
+                System.arraycopy(gathered, written, gathered, 0, gatheredCount - written);
+                Arrays.fill(gathered, gatheredCount - written, gatheredCount, null);
+                gatheredCount -= written;
+                if (gatheredCount > 0) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            if (closing.get()) {
+                close();
+                return;
+            }
+            if (behind && outbound.isEmpty()) {
+                behind = false;
+                Log.info(describe() + " caught up.");
+            }
+            if ((key.interestOps() & SelectionKey.OP_WRITE) != 0) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            }
+        } catch (IOException e) {
+            Log.error("Failed to send message to " + (nickname != null ? nickname : "unknown user") + ": " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Closes the channel and, if the client had joined, removes it from the server and notifies the others.
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        outbound.clear();
+        pendingBytes.set(0);
+        Arrays.fill(gathered, null);
+        gatheredCount = 0;
+
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Log.error("Error closing client channel for " + (nickname != null ? nickname : "unknown user") + ": " + e.getMessage());
+        }
+
+        if (nickname != null) {
+            server.removeClient(nickname, this);
+            server.broadcast(nickname + " has left the chat.", this);
+            Log.info(nickname + " has disconnected.");
+        }
+    }
+
+    /**
+     * Returns the nickname of the client, or {@code null} if it has not sent one yet.
+     *
+     * @return The client's nickname.
+     */
+    public String getNickname() {
+        return nickname;
+    }
+
+    /**
+     * Returns the number of messages waiting to be written to this client.
+     *
+     * @return The outbound queue depth.
+     */
+    public int getQueueDepth() {
+        return outbound.size();
+    }
+
+    private void handleLine(String line) {
+        if (nickname != null) {
+            server.broadcast(nickname + ": " + line, this);
+            return;
+        }
+
+        String requested = line.trim().isEmpty() ? "User-" + remoteHost() : line;
+        try {
+            nickname = server.addClient(requested, this);
+        } catch (IllegalStateException e) {
+            Log.warn("Rejecting connection from " + remoteHost() + ": " + e.getMessage());
+            closeAfterNotice(e.getMessage() + ".");
+            return;
+        }
+        send(EncodedMessage.of("Connected as " + nickname + ". Type your message and press Enter to send. Press CTRL+D to exit."));
+        server.broadcast(nickname + " joined the chat.", this);
+        Log.info(nickname + " has connected.");
+    }
+
+    /**
+     * Returns the number of bytes waiting to be written to this client.
+     *
+     * @return The pending outbound bytes.
+     */
+    public long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    private String describe() {
+        return nickname != null ? nickname : "unknown user";
+    }
+
+    private String remoteHost() {
+        return channel.socket().getInetAddress().getHostAddress();
+    }
+}
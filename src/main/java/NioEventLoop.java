@@ -0,0 +1,146 @@
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The {@code NioEventLoop} class drives a single {@link Selector} on its own thread.
+ * Every {@link NioConnection} is pinned to exactly one loop for its whole lifetime, so all reads, writes and
+ * interest-set changes of a connection happen on the same thread and need no locking.
+ * Other threads hand work to the loop through lock-free queues and wake the selector at most once per batch.
+ */
+public class NioEventLoop implements Runnable {
+    private final Selector selector;
+    private final Queue<NioConnection> pendingRegistrations = new ConcurrentLinkedQueue<>();
+    private final Queue<NioConnection> pendingFlushes = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean(false);
+    private volatile boolean isRunning = true;
+
+    /**
+     * Creates a new event loop with its own selector.
+     *
+     * @throws IOException If the selector cannot be opened.
+     */
+    public NioEventLoop() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Hands a freshly accepted connection over to this loop. The channel is registered on the loop thread.
+     *
+     * @param connection The connection to register.
+     */
+    public void register(NioConnection connection) {
+        pendingRegistrations.add(connection);
+        wakeup();
+    }
+
+    /**
+     * Asks the loop to flush the outbound queue of a connection. Safe to call from any thread.
+     *
+     * @param connection The connection that has pending outbound data.
+     */
+    public void scheduleFlush(NioConnection connection) {
+        pendingFlushes.add(connection);
+        wakeup();
+    }
+
+    /**
+     * Runs the select loop until {@link #shutdown()} is called.
+     */
+    @Override
+    public void run() {
+        try {
+            while (isRunning) {
+                selector.select();
+                wakeupPending.set(false);
+
+                processRegistrations();
+                processFlushes();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    NioConnection connection = (NioConnection) key.attachment();
+
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isReadable()) {
+                        connection.onReadable();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.flush();
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (isRunning) {
+                Log.error("Event loop " + Thread.currentThread().getName() + " failed: " + e.getMessage());
+            }
+        } finally {
+            closeAll();
+        }
+    }
+
+    /**
+     * Stops the loop and closes every connection registered with it.
+     */
+    public void shutdown() {
+        isRunning = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Returns the number of connections currently registered with this loop.
+     *
+     * @return The number of registered connections.
+     */
+    public int getConnectionCount() {
+        return selector.isOpen() ? selector.keys().size() : 0;
+    }
+
+    private void wakeup() {
+        if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    private void processRegistrations() {
+        NioConnection connection;
+        while ((connection = pendingRegistrations.poll()) != null) {
+            try {
+                connection.register(selector, this);
+            } catch (IOException e) {
+                Log.error("Failed to register connection: " + e.getMessage());
+                connection.close();
+            }
+        }
+    }
+
+    private void processFlushes() {
+        NioConnection connection;
+        while ((connection = pendingFlushes.poll()) != null) {
+            connection.flush();
+        }
+    }
+
+    private void closeAll() {
+        if (!selector.isOpen()) {
+            return;
+        }
+        for (SelectionKey key : selector.keys()) {
+            ((NioConnection) key.attachment()).close();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            Log.error("Failed to close selector: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,203 @@
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code PeerTable} class keeps the UDP peers a {@link UDPServer} has heard from recently.
+ * A peer is added by its first datagram and refreshed by every following one. Peers that have been silent longer
+ * than the timeout are removed by an {@link IdleMonitor} on a {@link TimingWheel}, one timeout per peer, or, in a
+ * table without a wheel, by calling {@link #expire(long)}, which scans every peer. Peers are looked up in a
+ * {@link ConcurrentHashMap} and relayed to from an immutable array replaced by compare-and-set when a peer is
+ * added or expires, so a refresh and a relay allocate nothing.
+ */
+public class PeerTable {
+    private static final Peer[] EMPTY = new Peer[0];
+
+    private final long timeoutNanos;
+    private final TimingWheel wheel;
+    private final LongAdder expiredCount = new LongAdder();
+    private final ConcurrentHashMap<InetSocketAddress, Peer> peers = new ConcurrentHashMap<>();
+    private final AtomicReference<Peer[]> snapshot = new AtomicReference<>(EMPTY);
+
+    /**
+     * Constructs a new, empty {@code PeerTable} whose peers expire only when {@link #expire(long)} is called.
+     *
+     * @param timeoutNanos How long a peer may stay silent before it expires.
+     * @throws IllegalArgumentException If the timeout is not positive.
+     */
+    public PeerTable(long timeoutNanos) {
+        this(timeoutNanos, null);
+    }
+
+    /**
+     * Constructs a new, empty {@code PeerTable}.
+     *
+     * @param timeoutNanos How long a peer may stay silent before it expires.
+     * @param wheel        The wheel on which every peer's timeout is scheduled, on the {@link System#nanoTime()}
+     *                     clock, or {@code null} to expire peers with {@link #expire(long)}.
+     * @throws IllegalArgumentException If the timeout is not positive.
+     */
+    public PeerTable(long timeoutNanos, TimingWheel wheel) {
+        if (timeoutNanos <= 0) {
+            throw new IllegalArgumentException("Peer timeout must be positive: " + timeoutNanos);
+        }
+        this.timeoutNanos = timeoutNanos;
+        this.wheel = wheel;
+    }
+
+    /**
+     * Records that a datagram was received from an address, adding the peer if it is new.
+     *
+     * @param address The address of the peer.
+     * @param now     The current {@link System#nanoTime()}.
+     * @return The peer.
+     */
+    public Peer touch(InetSocketAddress address, long now) {
+        Peer peer = peers.get(address);
+        if (peer == null) {
+            Peer added = new Peer(address, now);
+            peer = peers.putIfAbsent(address, added);
+            if (peer == null) {
+                Peer[] current;
+                Peer[] next;
+                do {
+                    current = snapshot.get();
+                    next = Arrays.copyOf(current, current.length + 1);
+                    next[current.length] = added;
+                } while (!snapshot.compareAndSet(current, next));
+                if (wheel != null) {
+                    new IdleMonitor(wheel, added::getLastSeenNanos, timeoutNanos, 0, null, () -> remove(added)).start();
+                }
+                return added;
+            }
+        }
+        peer.lastSeenNanos = now;
+        return peer;
+    }
+
+    /**
+     * Removes the peers that have been silent for longer than the timeout.
+     *
+     * @param now The current {@link System#nanoTime()}.
+     * @return The number of peers removed.
+     */
+    public int expire(long now) {
+        int removed = 0;
+        for (Peer peer : snapshot.get()) {
+            if (now - peer.lastSeenNanos > timeoutNanos && remove(peer)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private boolean remove(Peer peer) {
+        if (!peers.remove(peer.address, peer)) {
+            return false;
+        }
+        Peer[] current;
+        do {
+            current = snapshot.get();
+        } while (!snapshot.compareAndSet(current, without(current, peer)));
+        expiredCount.increment();
+        return true;
+    }
+
+    /**
+     * Returns the number of peers removed for being silent since the table was created.
+     *
+     * @return The expired peer count.
+     */
+    public long getExpiredCount() {
+        return expiredCount.sum();
+    }
+
+    /**
+     * Returns the live peers at one point in time. The array must not be modified.
+     *
+     * @return The current peers.
+     */
+    public Peer[] snapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Returns the number of live peers.
+     *
+     * @return The peer count.
+     */
+    public int size() {
+        return snapshot.get().length;
+    }
+
+    private static Peer[] without(Peer[] peers, Peer removed) {
+        for (int i = 0; i < peers.length; i++) {
+            if (peers[i] == removed) {
+                Peer[] next = new Peer[peers.length - 1];
+                System.arraycopy(peers, 0, next, 0, i);
+                System.arraycopy(peers, i + 1, next, i, next.length - i);
+                return next;
+            }
+        }
+        return peers;
+    }
+
+    /**
+     * A UDP peer: its address, the prefix put in front of the messages it sends, and when it was last heard from.
+     */
+    public static final class Peer {
+        private final InetSocketAddress address;
+        private final byte[] prefix;
+        private volatile long lastSeenNanos;
+        private ReliableReceiver reliableReceiver;
+
+        Peer(InetSocketAddress address, long now) {
+            this.address = address;
+            this.prefix = (address.getAddress().getHostAddress() + ":" + address.getPort() + ": ").getBytes(StandardCharsets.UTF_8);
+            this.lastSeenNanos = now;
+        }
+
+        /**
+         * Returns the address of the peer.
+         *
+         * @return The peer's address.
+         */
+        public InetSocketAddress getAddress() {
+            return address;
+        }
+
+        /**
+         * Returns the UTF-8 prefix identifying the peer in relayed messages, {@code host:port: }.
+         *
+         * @return The prefix bytes; must not be modified.
+         */
+        byte[] getPrefix() {
+            return prefix;
+        }
+
+        /**
+         * Returns the receiving end of the reliable mode for this peer, created when the peer sends its first
+         * reliable datagram.
+         *
+         * @return The peer's reliable receiver.
+         */
+        synchronized ReliableReceiver getReliableReceiver() {
+            if (reliableReceiver == null) {
+                reliableReceiver = new ReliableReceiver();
+            }
+            return reliableReceiver;
+        }
+
+        /**
+         * Returns when a datagram was last received from the peer.
+         *
+         * @return The {@link System#nanoTime()} of the last datagram.
+         */
+        public long getLastSeenNanos() {
+            return lastSeenNanos;
+        }
+    }
+}
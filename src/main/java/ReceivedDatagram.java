@@ -0,0 +1,82 @@
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The {@code ReceivedDatagram} class is the datagram a {@link UDPWorker} has just received. Each worker reuses one
+ * instance over its own direct receive buffer, so receiving allocates nothing; the payload is only decoded to a
+ * {@code String} when {@link #text()} is called. An instance is only valid until its worker receives the next
+ * datagram.
+ */
+public class ReceivedDatagram {
+    private final ByteBuffer buffer;
+    private SocketAddress sender;
+    private String text;
+
+    /**
+     * Constructs a new {@code ReceivedDatagram} over a receive buffer.
+     *
+     * @param buffer The buffer the datagrams are received into, flipped before each {@link #reset(SocketAddress)}.
+     */
+    ReceivedDatagram(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Makes this instance describe the datagram now in the buffer.
+     *
+     * @param sender The address the datagram came from.
+     */
+    void reset(SocketAddress sender) {
+        this.sender = sender;
+        this.text = null;
+    }
+
+    /**
+     * Returns the address the datagram came from.
+     *
+     * @return The sender's address.
+     */
+    public SocketAddress getSender() {
+        return sender;
+    }
+
+    /**
+     * Returns the size of the payload.
+     *
+     * @return The payload length in bytes.
+     */
+    public int length() {
+        return buffer.remaining();
+    }
+
+    /**
+     * Returns a read-only view of the payload.
+     *
+     * @return The payload bytes, from position to limit.
+     */
+    public ByteBuffer payload() {
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Decodes the payload as UTF-8 text, the first time it is asked for.
+     *
+     * @return The payload text.
+     */
+    public String text() {
+        if (text == null) {
+            text = StandardCharsets.UTF_8.decode(buffer.duplicate()).toString();
+        }
+        return text;
+    }
+
+    /**
+     * Returns the receive buffer itself, for callers that only read it without moving its position.
+     *
+     * @return The receive buffer, positioned on the payload.
+     */
+    ByteBuffer buffer() {
+        return buffer;
+    }
+}
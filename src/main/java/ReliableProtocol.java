@@ -0,0 +1,92 @@
+import java.nio.ByteBuffer;
+
+/**
+ * The {@code ReliableProtocol} class defines the datagrams of the optional reliable UDP mode, in which a
+ * {@link ReliableSender} numbers every message and a {@link ReliableReceiver} acknowledges them selectively:
+ * <pre>
+ * DATA: +----------+------------------+--------------+---------+
+ *       | 0x01 (1) | sequence (4, BE) | base (4, BE) | payload |
+ *       +----------+------------------+--------------+---------+
+ * ACK:  +----------+--------------------------+------------------+
+ *       | 0x02 (1) | next expected (4, BE)    | selective (8, BE)|
+ *       +----------+--------------------------+------------------+
+ * </pre>
+ * An ACK confirms every sequence number below {@code next expected}; bit {@code i} of {@code selective} confirms
+ * {@code next expected + 1 + i}, received out of order. The {@code base} of a DATA datagram is the lowest sequence
+ * number the sender had not seen acknowledged when it built the datagram: everything below it was received. A
+ * receiver that expects less, because the server forgot the peer while it was silent, resumes from the base.
+ * The type bytes are control characters, which never start a plain chat message, so reliable and plain datagrams
+ * can share a port.
+ * <p>
+ * A datagram made of the single byte {@link #TYPE_HEARTBEAT} is a heartbeat: a client sends one while its user is
+ * silent, so the server keeps it as a peer.
+ */
+public final class ReliableProtocol {
+    public static final byte TYPE_DATA = 0x01;
+    public static final byte TYPE_ACK = 0x02;
+    public static final byte TYPE_HEARTBEAT = 0x03;
+    public static final int DATA_HEADER_LENGTH = 9;
+    public static final int ACK_LENGTH = 13;
+    public static final int MAX_WINDOW = 64;
+
+    private ReliableProtocol() {
+    }
+
+    /**
+     * Encodes a data datagram.
+     *
+     * @param sequence The sequence number of the message.
+     * @param base     The lowest sequence number not acknowledged yet, at most {@code sequence}.
+     * @param payload  The message.
+     * @return A new array holding the header and a copy of the payload.
+     */
+    public static byte[] encodeData(int sequence, int base, byte[] payload) {
+        ByteBuffer packet = ByteBuffer.allocate(DATA_HEADER_LENGTH + payload.length);
+        packet.put(TYPE_DATA).putInt(sequence).putInt(base).put(payload);
+        return packet.array();
+    }
+
+    /**
+     * Writes an acknowledgement into a buffer, which is cleared first and flipped afterwards.
+     *
+     * @param out          The buffer, at least {@link #ACK_LENGTH} bytes long.
+     * @param nextExpected The lowest sequence number not received yet.
+     * @param selective    The bitmap of sequence numbers received after {@code nextExpected}.
+     */
+    public static void writeAck(ByteBuffer out, int nextExpected, long selective) {
+        out.clear();
+        out.put(TYPE_ACK).putInt(nextExpected).putLong(selective);
+        out.flip();
+    }
+
+    /**
+     * Checks whether a received datagram is a reliable data datagram.
+     *
+     * @param packet The datagram, from position to limit; its position is not changed.
+     * @return {@code true} for a data datagram, {@code false} for a plain message.
+     */
+    public static boolean isData(ByteBuffer packet) {
+        return packet.remaining() >= DATA_HEADER_LENGTH && packet.get(packet.position()) == TYPE_DATA;
+    }
+
+    /**
+     * Checks whether a received datagram is a heartbeat.
+     *
+     * @param packet The datagram, from position to limit; its position is not changed.
+     * @return {@code true} for a heartbeat.
+     */
+    public static boolean isHeartbeat(ByteBuffer packet) {
+        return packet.remaining() == 1 && packet.get(packet.position()) == TYPE_HEARTBEAT;
+    }
+
+    /**
+     * Checks whether a received datagram is an acknowledgement.
+     *
+     * @param data   The array holding the datagram.
+     * @param length The length of the datagram.
+     * @return {@code true} for an acknowledgement.
+     */
+    public static boolean isAck(byte[] data, int length) {
+        return length == ACK_LENGTH && data[0] == TYPE_ACK;
+    }
+}
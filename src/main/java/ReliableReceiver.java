@@ -0,0 +1,101 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * The {@code ReliableReceiver} class is the receiving end of the reliable UDP mode for one peer. Messages are
+ * delivered in sequence order exactly once: a message arriving early is held until the gap before it is filled,
+ * and a message received before is counted as a duplicate and dropped. Only sequence numbers within
+ * {@link ReliableProtocol#MAX_WINDOW} of the next expected one are accepted, which bounds the held messages.
+ * A receiver created for a sender already past its first messages, such as one rebuilt after the server expired
+ * a silent peer, resumes from the base carried by the sender's datagrams instead of waiting for messages that were
+ * acknowledged long ago.
+ * The class is thread-safe.
+ */
+public class ReliableReceiver {
+    private final TreeMap<Integer, byte[]> ahead = new TreeMap<>();
+    private int nextExpected;
+    private long duplicates;
+
+    /**
+     * Accepts a data datagram and returns the messages that can now be delivered.
+     *
+     * @param sequence The sequence number of the datagram.
+     * @param base     The lowest sequence number the sender had not seen acknowledged; every message below it was
+     *                 received before.
+     * @param payload  The message, from position to limit; consumed only if it is held for later.
+     * @return The deliverable messages in order: empty, or the payload followed by any held messages it unblocks,
+     * preceded by the held messages skipped when resuming from the base.
+     */
+    public synchronized List<byte[]> receive(int sequence, int base, ByteBuffer payload) {
+        List<byte[]> deliverable = Collections.emptyList();
+        if (base > nextExpected && base <= sequence) {
+            deliverable = new ArrayList<>(ahead.headMap(base).values());
+            ahead.headMap(base).clear();
+            nextExpected = base;
+            drainAhead(deliverable);
+        }
+        if (sequence < nextExpected || ahead.containsKey(sequence)) {
+            duplicates++;
+            return deliverable;
+        }
+        if (sequence >= nextExpected + ReliableProtocol.MAX_WINDOW) {
+            return deliverable;
+        }
+        byte[] message = new byte[payload.remaining()];
+        payload.get(message);
+        if (sequence != nextExpected) {
+            ahead.put(sequence, message);
+            return deliverable;
+        }
+
+        if (deliverable.isEmpty()) {
+            deliverable = new ArrayList<>();
+        }
+        deliverable.add(message);
+        nextExpected++;
+        drainAhead(deliverable);
+        return deliverable;
+    }
+
+    private void drainAhead(List<byte[]> deliverable) {
+        byte[] held;
+        while ((held = ahead.remove(nextExpected)) != null) {
+            deliverable.add(held);
+            nextExpected++;
+        }
+    }
+
+    /**
+     * Writes the acknowledgement of everything received so far.
+     *
+     * @param out The buffer, at least {@link ReliableProtocol#ACK_LENGTH} bytes long; cleared and flipped.
+     */
+    public synchronized void writeAck(ByteBuffer out) {
+        long selective = 0;
+        for (int sequence : ahead.keySet()) {
+            selective |= 1L << (sequence - nextExpected - 1);
+        }
+        ReliableProtocol.writeAck(out, nextExpected, selective);
+    }
+
+    /**
+     * Returns the lowest sequence number not received yet.
+     *
+     * @return The next expected sequence number.
+     */
+    public synchronized int getNextExpected() {
+        return nextExpected;
+    }
+
+    /**
+     * Returns the number of datagrams dropped because their message was already received.
+     *
+     * @return The duplicate count.
+     */
+    public synchronized long getDuplicateCount() {
+        return duplicates;
+    }
+}
@@ -0,0 +1,284 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code ReliableSender} class is the sending end of the reliable UDP mode. Messages are numbered and up to a
+ * window of them may be unacknowledged at once, so the sender keeps the link busy instead of waiting for each
+ * acknowledgement. Acknowledgements are selective: a message received out of order is confirmed at once and never
+ * resent.
+ * <p>
+ * A message is resent when it has not been acknowledged within the retransmission timeout, computed from measured
+ * round-trip times as in RFC 6298 ({@code srtt + 4 * rttvar}). Round trips of resent messages are not measured, and
+ * every timeout doubles the retransmission timeout until an acknowledgement brings a new measurement.
+ * A daemon thread checks for timeouts every {@value #TICK_MILLIS} ms.
+ */
+public class ReliableSender implements Closeable {
+    public static final int DEFAULT_WINDOW = 32;
+    static final int TICK_MILLIS = 5;
+    static final long INITIAL_RTO_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    static final long MIN_RTO_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    static final long MAX_RTO_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    /**
+     * Sends an encoded datagram to the receiver.
+     */
+    @FunctionalInterface
+    public interface DatagramSink {
+        /**
+         * Sends a datagram.
+         *
+         * @param packet The datagram.
+         * @throws IOException If the datagram cannot be sent.
+         */
+        void send(byte[] packet) throws IOException;
+    }
+
+    private final DatagramSink sink;
+    private final int window;
+    private final TreeMap<Integer, Pending> pending = new TreeMap<>();
+    private final ScheduledExecutorService timer;
+    private int nextSequence;
+    private long smoothedRttNanos = -1;
+    private long rttVarianceNanos;
+    private long rtoNanos = INITIAL_RTO_NANOS;
+    private long sentCount;
+    private long sentBytes;
+    private long ackedCount;
+    private long ackedBytes;
+    private long retransmitCount;
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * Constructs a new {@code ReliableSender} and starts its retransmission timer.
+     *
+     * @param sink   Where datagrams are sent.
+     * @param window The maximum number of unacknowledged messages.
+     * @throws IllegalArgumentException If the window is not between 1 and {@link ReliableProtocol#MAX_WINDOW}.
+     */
+    public ReliableSender(DatagramSink sink, int window) {
+        if (window < 1 || window > ReliableProtocol.MAX_WINDOW) {
+            throw new IllegalArgumentException("Window must be between 1 and " + ReliableProtocol.MAX_WINDOW + ": " + window);
+        }
+        this.sink = sink;
+        this.window = window;
+        this.timer = Executors.newSingleThreadScheduledExecutor(ExecutionMode.PLATFORM.threadFactory("reliable-timer-", true));
+        timer.scheduleWithFixedDelay(this::retransmitQuietly, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends a message, waiting while the window is full.
+     *
+     * @param payload The message.
+     * @return The sequence number of the message.
+     * @throws IOException          If the datagram cannot be sent.
+     * @throws InterruptedException If the thread is interrupted while waiting for the window.
+     */
+    public synchronized int send(byte[] payload) throws IOException, InterruptedException {
+        while (pending.size() >= window) {
+            wait();
+        }
+        int sequence = nextSequence++;
+        int base = pending.isEmpty() ? sequence : pending.firstKey();
+        byte[] packet = ReliableProtocol.encodeData(sequence, base, payload);
+        pending.put(sequence, new Pending(packet, payload.length, System.nanoTime()));
+        sentCount++;
+        sentBytes += payload.length;
+        sink.send(packet);
+        return sequence;
+    }
+
+    /**
+     * Processes an acknowledgement datagram.
+     *
+     * @param ack    The array holding the datagram.
+     * @param length The length of the datagram.
+     */
+    public synchronized void onAck(byte[] ack, int length) {
+        if (!ReliableProtocol.isAck(ack, length)) {
+            return;
+        }
+        int nextExpected = ((ack[1] & 0xFF) << 24) | ((ack[2] & 0xFF) << 16) | ((ack[3] & 0xFF) << 8) | (ack[4] & 0xFF);
+        long selective = 0;
+        for (int i = 5; i < ReliableProtocol.ACK_LENGTH; i++) {
+            selective = (selective << 8) | (ack[i] & 0xFF);
+        }
+
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Integer, Pending>> entries = pending.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Integer, Pending> entry = entries.next();
+            int offset = entry.getKey() - nextExpected - 1;
+            if (entry.getKey() < nextExpected || (offset >= 0 && offset < 64 && (selective & (1L << offset)) != 0)) {
+                Pending acked = entry.getValue();
+                if (!acked.retransmitted) {
+                    sampleRtt(now - acked.sentNanos);
+                }
+                ackedCount++;
+                ackedBytes += acked.payloadLength;
+                entries.remove();
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Resends every message whose retransmission timeout has expired.
+     *
+     * @param now The current {@link System#nanoTime()}.
+     * @return The number of messages resent.
+     * @throws IOException If a datagram cannot be sent.
+     */
+    synchronized int retransmit(long now) throws IOException {
+        int resent = 0;
+        for (Pending message : pending.values()) {
+            if (now - message.sentNanos >= rtoNanos) {
+                message.retransmitted = true;
+                message.sentNanos = now;
+                sink.send(message.packet);
+                resent++;
+            }
+        }
+        if (resent > 0) {
+            retransmitCount += resent;
+            rtoNanos = Math.min(rtoNanos * 2, MAX_RTO_NANOS);
+        }
+        return resent;
+    }
+
+    /**
+     * Waits until every message sent so far has been acknowledged.
+     *
+     * @param timeout The maximum time to wait.
+     * @param unit    The unit of the timeout.
+     * @return {@code true} if everything was acknowledged, {@code false} if the timeout expired first.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public synchronized boolean awaitAcknowledged(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!pending.isEmpty()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of messages sent, not counting retransmissions.
+     *
+     * @return The sent count.
+     */
+    public synchronized long getSentCount() {
+        return sentCount;
+    }
+
+    /**
+     * Returns the number of messages acknowledged by the receiver.
+     *
+     * @return The acknowledged count.
+     */
+    public synchronized long getAckedCount() {
+        return ackedCount;
+    }
+
+    /**
+     * Returns the number of datagrams resent after a timeout.
+     *
+     * @return The retransmission count.
+     */
+    public synchronized long getRetransmitCount() {
+        return retransmitCount;
+    }
+
+    /**
+     * Returns the number of messages sent but not yet acknowledged.
+     *
+     * @return The number of messages in flight.
+     */
+    public synchronized int getInFlight() {
+        return pending.size();
+    }
+
+    /**
+     * Returns the current retransmission timeout.
+     *
+     * @return The timeout in nanoseconds.
+     */
+    public synchronized long getRtoNanos() {
+        return rtoNanos;
+    }
+
+    /**
+     * Returns the payload bytes acknowledged per second since the sender was created.
+     *
+     * @return The acknowledged throughput.
+     */
+    public synchronized double getThroughputBytesPerSecond() {
+        long elapsed = System.nanoTime() - startNanos;
+        return elapsed <= 0 ? 0 : ackedBytes * 1e9 / elapsed;
+    }
+
+    /**
+     * Returns a one-line summary of the counters.
+     *
+     * @return The sent, acknowledged and resent counts and the throughput.
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ROOT, "%d sent, %d acknowledged, %d retransmitted (%.1f%%), %.0f B/s",
+                sentCount, ackedCount, retransmitCount, sentCount == 0 ? 0.0 : 100.0 * retransmitCount / sentCount,
+                getThroughputBytesPerSecond());
+    }
+
+    /**
+     * Stops the retransmission timer. Messages still unacknowledged are not resent any more.
+     */
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    private void sampleRtt(long rttNanos) {
+        if (smoothedRttNanos < 0) {
+            smoothedRttNanos = rttNanos;
+            rttVarianceNanos = rttNanos / 2;
+        } else {
+            rttVarianceNanos = (3 * rttVarianceNanos + Math.abs(smoothedRttNanos - rttNanos)) / 4;
+            smoothedRttNanos = (7 * smoothedRttNanos + rttNanos) / 8;
+        }
+        rtoNanos = Math.max(MIN_RTO_NANOS, Math.min(MAX_RTO_NANOS, smoothedRttNanos + 4 * rttVarianceNanos));
+    }
+
+    private void retransmitQuietly() {
+        try {
+            retransmit(System.nanoTime());
+        } catch (IOException e) {
+            Log.warn("Failed to resend a datagram: " + e.getMessage());
+        }
+    }
+
+    /**
+     * A message waiting for its acknowledgement.
+     */
+    private static final class Pending {
+        private final byte[] packet;
+        private final int payloadLength;
+        private long sentNanos;
+        private boolean retransmitted;
+
+        private Pending(byte[] packet, int payloadLength, long sentNanos) {
+            this.packet = packet;
+            this.payloadLength = payloadLength;
+            this.sentNanos = sentNanos;
+        }
+    }
+}
@@ -1,6 +1,20 @@
 public class ServerFactory {
+    private final ExecutionMode executionMode;
+
+    public ServerFactory() {
+        this(ExecutionMode.PLATFORM);
+    }
+
+    public ServerFactory(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
     public TCPMultiServer createTCPServer(int port) {
-        return new TCPMultiServer(port);
+        return new TCPMultiServer(port, executionMode);
+    }
+
+    public NioChatServer createNioServer(int port) {
+        return new NioChatServer(port);
     }
 
     public UDPServer createUDPServer(int port) {
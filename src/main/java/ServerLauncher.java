@@ -4,7 +4,7 @@ import java.util.Set;
 
 /**
  * The {@code ServerLauncher} class serves as an entry point for launching either
- * a TCP or UDP server. It prompts the user to select the desired server mode (TCP/UDP)
+ * a TCP, non-blocking TCP (NIO) or UDP server. It prompts the user to select the desired server mode (TCP/NIO/UDP)
  * and a port number, validates the input, and then starts the appropriate server.
  */
 public class ServerLauncher {
@@ -17,14 +17,15 @@ public class ServerLauncher {
     public void run() {
         Set<String> validModes = new HashSet<>();
         validModes.add("TCP");
+        validModes.add("NIO");
         validModes.add("UDP");
 
         Scanner scanner = new Scanner(System.in);
-        System.out.println("Select Server Mode (TCP/UDP):");
+        System.out.println("Select Server Mode (TCP/NIO/UDP):");
         String mode = scanner.nextLine().trim().toUpperCase();
 
         if (!validModes.contains(mode)) {
-            System.err.println("Invalid mode selected. Please choose either TCP or UDP.");
+            System.err.println("Invalid mode selected. Please choose TCP, NIO or UDP.");
             return;
         }
 
@@ -49,6 +50,9 @@ public class ServerLauncher {
             if ("TCP".equals(mode)) {
                 System.out.println("Launching TCP Multi-Server on port " + port + "...");
                 serverFactory.createTCPServer(port).launch();
+            } else if ("NIO".equals(mode)) {
+                System.out.println("Launching non-blocking TCP Server on port " + port + "...");
+                serverFactory.createNioServer(port).launch();
             } else if ("UDP".equals(mode)) {
                 System.out.println("Launching UDP Server on port " + port + "...");
                 serverFactory.createUDPServer(port).launch();
@@ -60,8 +64,23 @@ public class ServerLauncher {
         }
     }
 
+    /**
+     * Entry point. Pass {@code --virtual-threads} to run TCP connection handlers on virtual threads (Java 21+).
+     *
+     * @param args Command-line arguments.
+     */
     public static void main(String[] args) {
-        ServerLauncher launcher = new ServerLauncher(new ServerFactory());
+        ExecutionMode executionMode = ExecutionMode.PLATFORM;
+        for (String arg : args) {
+            if ("--virtual-threads".equals(arg) || "-v".equals(arg)) {
+                executionMode = ExecutionMode.VIRTUAL;
+            } else {
+                System.err.println("Unknown option: " + arg + ". Usage: java ServerLauncher [--virtual-threads]");
+                return;
+            }
+        }
+
+        ServerLauncher launcher = new ServerLauncher(new ServerFactory(executionMode));
         launcher.run();
     }
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+/**
+ * The {@code SlowConsumerPolicy} enum lists what a {@link ClientWriter} does with a new message when its client
+ * has fallen so far behind that the message would take the pending outbound bytes over the high-water mark.
+ */
+public enum SlowConsumerPolicy {
+    /**
+     * Discard the new message; the client misses the most recent messages.
+     */
+    DROP_NEWEST,
+    /**
+     * Discard the oldest pending messages until the new one fits; the client misses older messages.
+     */
+    DROP_OLDEST,
+    /**
+     * Discard everything pending, send the client a notice and close its connection.
+     */
+    DISCONNECT
+}
@@ -0,0 +1,59 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code SlowConsumerStats} class counts the actions taken against clients that fell behind: messages dropped
+ * under {@link SlowConsumerPolicy#DROP_NEWEST} or {@link SlowConsumerPolicy#DROP_OLDEST} and clients disconnected
+ * under {@link SlowConsumerPolicy#DISCONNECT}. One instance is shared by all connections of a server; recording is
+ * lock-free.
+ */
+public class SlowConsumerStats {
+    private final LongAdder droppedNewest = new LongAdder();
+    private final LongAdder droppedOldest = new LongAdder();
+    private final LongAdder disconnects = new LongAdder();
+
+    /**
+     * Records one action.
+     *
+     * @param action The policy that was applied.
+     */
+    public void record(SlowConsumerPolicy action) {
+        switch (action) {
+            case DROP_NEWEST:
+                droppedNewest.increment();
+                break;
+            case DROP_OLDEST:
+                droppedOldest.increment();
+                break;
+            default:
+                disconnects.increment();
+                break;
+        }
+    }
+
+    /**
+     * Returns the number of new messages dropped.
+     *
+     * @return The count of {@link SlowConsumerPolicy#DROP_NEWEST} actions.
+     */
+    public long getDroppedNewest() {
+        return droppedNewest.sum();
+    }
+
+    /**
+     * Returns the number of pending messages dropped to make room for newer ones.
+     *
+     * @return The count of {@link SlowConsumerPolicy#DROP_OLDEST} actions.
+     */
+    public long getDroppedOldest() {
+        return droppedOldest.sum();
+    }
+
+    /**
+     * Returns the number of clients disconnected for falling behind.
+     *
+     * @return The count of {@link SlowConsumerPolicy#DISCONNECT} actions.
+     */
+    public long getDisconnects() {
+        return disconnects.sum();
+    }
+}
@@ -1,20 +1,33 @@
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.UUID;
 
 /**
  * TCPClient is a command-line application that implements a TCP client capable of connecting to a server,
  * sending messages, and receiving responses. It uses the JCommander library for parsing command-line arguments.
+ * With {@code --load-users}, it runs headless as a {@link LoadGenerator} instead of reading from the console.
+ * With {@code --binary}, it negotiates the length-prefixed {@link FrameCodec} protocol instead of sending text lines.
+ * With {@code --compress}, it also offers compression: if the server accepts, messages longer than the threshold
+ * are sent deflated by a {@link FrameCompressor}, and compressed frames from the server are inflated on receipt.
+ * A {@code /msg <nickname> <text>} line sends a private message; in binary mode it travels as a
+ * {@link FrameCodec#TYPE_DIRECT} frame, in text mode as the command line itself.
+ * A background thread prints what the server sends, such as chat lines, direct messages and their delivery
+ * confirmations or errors, and answers its {@link ConnectionThread#PING} heartbeats, so an idle but connected user
+ * is not disconnected.
  */
 public class TCPClient {
 
@@ -28,15 +41,30 @@ public class TCPClient {
 
     private final String serverAddress;
     private final int serverPort;
+    private final WireProtocol protocol;
+    private boolean compression;
+    private FrameCompressor compressor;
 
     /**
-     * Constructs a TCPClient instance with the specified server address and port.
+     * Constructs a TCPClient instance with the specified server address and port, sending text lines.
      *
      * @param serverAddress The address of the server to connect to.
      * @param serverPort    The port of the server to connect to.
      * @throws IllegalArgumentException If the server address is invalid or the port is out of range.
      */
     public TCPClient(String serverAddress, int serverPort) {
+        this(serverAddress, serverPort, WireProtocol.TEXT);
+    }
+
+    /**
+     * Constructs a TCPClient instance with the specified server address, port and protocol.
+     *
+     * @param serverAddress The address of the server to connect to.
+     * @param serverPort    The port of the server to connect to.
+     * @param protocol      The protocol to speak with the server.
+     * @throws IllegalArgumentException If the server address is invalid or the port is out of range.
+     */
+    public TCPClient(String serverAddress, int serverPort, WireProtocol protocol) {
         if (serverAddress == null || serverAddress.trim().isEmpty()) {
             throw new IllegalArgumentException("Server address cannot be null or empty.");
         }
@@ -51,6 +79,21 @@ public class TCPClient {
 
         this.serverAddress = serverAddress;
         this.serverPort = serverPort;
+        this.protocol = protocol;
+    }
+
+    /**
+     * Makes the client offer compressed frames when it connects.
+     *
+     * @param compression {@code true} to offer compression.
+     * @throws IllegalArgumentException If compression is requested by a client that does not speak the binary
+     *                                  protocol.
+     */
+    public void setCompression(boolean compression) {
+        if (compression && protocol != WireProtocol.BINARY) {
+            throw new IllegalArgumentException("Compression needs binary framing");
+        }
+        this.compression = compression;
     }
 
     /**
@@ -87,27 +130,114 @@ public class TCPClient {
     public void start() {
         try (Socket socket = createSocket(serverAddress, serverPort);
              BufferedReader userInput = createUserInputReader();
-             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
-             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true)) {
+             InputStream in = socket.getInputStream();
+             OutputStream rawOut = socket.getOutputStream();
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(rawOut, StandardCharsets.UTF_8), true)) {
+
+            if (protocol == WireProtocol.BINARY) {
+                FrameCodec.readLine(in);
+                out.println(compression ? FrameCodec.UPGRADE_REQUEST_DEFLATE : FrameCodec.UPGRADE_REQUEST);
+                String answer = FrameCodec.readLine(in);
+                if (compression && FrameCodec.UPGRADE_ACCEPTED_DEFLATE.equals(answer)) {
+                    compressor = new FrameCompressor(FrameCompressor.DEFAULT_THRESHOLD);
+                } else if (!FrameCodec.UPGRADE_ACCEPTED.equals(answer)) {
+                    System.err.println("The server does not support binary framing.");
+                    return;
+                } else if (compression) {
+                    System.err.println("The server does not accept compression; sending uncompressed frames.");
+                }
+            }
 
             System.out.println("Enter your nickname (leave blank for a random one): ");
             String nickname = userInput.readLine();
             if (nickname == null || nickname.trim().isEmpty()) {
                 nickname = "User-" + UUID.randomUUID().toString().substring(0, 8);
             }
-            out.println(nickname);
+            send(nickname, out, rawOut);
+            startServerReader(in, out, rawOut);
 
             System.out.println("Connected as " + nickname + ". Type your message and press Enter to send. Press CTRL+D to exit.");
 
             String inputLine;
             while ((inputLine = userInput.readLine()) != null) {
                 System.out.println("Hexadecimal representation: " + toHex(inputLine));
-                out.println(inputLine);
+                send(inputLine, out, rawOut);
             }
 
         } catch (IOException e) {
             System.err.println("Error connecting to the server: " + e.getMessage());
+        } finally {
+            closeCompressor();
+        }
+    }
+
+    private synchronized void closeCompressor() {
+        if (compressor != null) {
+            compressor.close();
+            compressor = null;
+        }
+    }
+
+    /**
+     * Starts a daemon thread printing the server's messages and answering heartbeats until the connection ends.
+     */
+    private void startServerReader(InputStream in, PrintWriter out, OutputStream rawOut) {
+        Thread reader = new Thread(() -> {
+            try {
+                if (protocol == WireProtocol.BINARY) {
+                    try (FrameDecoder frames = new FrameDecoder()) {
+                        InputStream frameInput = new BufferedInputStream(in);
+                        while (frames.read(frameInput)) {
+                            if (frames.getType() == FrameCodec.TYPE_TEXT) {
+                                handleServerMessage(frames.text(), out, rawOut);
+                            }
+                        }
+                    }
+                } else {
+                    BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                    String line;
+                    while ((line = lines.readLine()) != null) {
+                        handleServerMessage(line, out, rawOut);
+                    }
+                }
+            } catch (IOException e) {
+                // The connection was closed.
+            }
+        }, "server-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void handleServerMessage(String message, PrintWriter out, OutputStream rawOut) throws IOException {
+        if (ConnectionThread.PING.equals(message)) {
+            send(ConnectionThread.PONG, out, rawOut);
+        } else {
+            System.out.println(message);
+        }
+    }
+
+    private synchronized void send(String message, PrintWriter out, OutputStream rawOut) throws IOException {
+        if (protocol != WireProtocol.BINARY) {
+            out.println(message);
+            return;
         }
+        byte type = FrameCodec.TYPE_TEXT;
+        byte[] payload;
+        String[] direct = message.startsWith(ConnectionThread.DIRECT_MESSAGE + " ")
+                ? message.substring(ConnectionThread.DIRECT_MESSAGE.length()).trim().split("\\s+", 2)
+                : null;
+        if (direct != null && direct.length == 2) {
+            type = FrameCodec.TYPE_DIRECT;
+            payload = FrameCodec.directPayload(direct[0], direct[1]);
+        } else {
+            payload = message.getBytes(StandardCharsets.UTF_8);
+        }
+        if (compressor != null) {
+            rawOut.write(compressor.encode(type, payload, 0, payload.length));
+        } else {
+            rawOut.write(FrameCodec.encode(type, (byte) 0, payload, 0, payload.length));
+        }
+        rawOut.flush();
     }
 
     /**
@@ -123,6 +253,24 @@ public class TCPClient {
 
         @Parameter(names = {"-h", "--help"}, help = true, description = "Display help message")
         private boolean help = false;
+
+        @Parameter(names = {"-b", "--binary"}, description = "Use length-prefixed binary frames instead of text lines")
+        private boolean binary = false;
+
+        @Parameter(names = {"-z", "--compress"}, description = "Offer deflate compression of large messages (implies --binary)")
+        private boolean compress = false;
+
+        @Parameter(names = "--load-users", description = "Run headless with this many simulated users instead of reading the console")
+        private int loadUsers = 0;
+
+        @Parameter(names = "--load-rate", description = "Messages per second sent by each simulated user")
+        private double loadRate = 1.0;
+
+        @Parameter(names = "--load-duration", description = "Seconds the simulated users keep sending")
+        private int loadDuration = 30;
+
+        @Parameter(names = "--load-summary", description = "File the JSON summary of a load run is written to")
+        private String loadSummary = "load-summary.json";
     }
 
     /**
@@ -146,7 +294,14 @@ public class TCPClient {
                 return;
             }
 
-            TCPClient client = new TCPClient(jArgs.serverAddress, jArgs.serverPort);
+            TCPClient client = new TCPClient(jArgs.serverAddress, jArgs.serverPort,
+                    jArgs.binary || jArgs.compress ? WireProtocol.BINARY : WireProtocol.TEXT);
+            client.setCompression(jArgs.compress);
+            if (jArgs.loadUsers > 0) {
+                new LoadGenerator(client.getServerAddress(), client.getServerPort(), jArgs.loadUsers,
+                        jArgs.loadRate, jArgs.loadDuration, Path.of(jArgs.loadSummary)).run();
+                return;
+            }
             client.start();
 
         } catch (Exception e) {
@@ -1,19 +1,116 @@
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
 
 /**
  * TCPMultiServer is a multi-threaded server that listens on a specified port and accepts client connections.
  * Each client connection is handled by a separate thread, allowing multiple clients to interact simultaneously.
  * This server broadcasts messages to all clients except the one sending the message and manages client connections.
+ * Clients are kept in a lock-free {@link ClientRegistry}: nicknames are reserved atomically, and joins, leaves and
+ * broadcasts never wait for each other.
+ * Outbound messages are not written by the sender's thread: every client has a {@link ClientWriter} with a bounded
+ * queue, so a slow reader delays only its own messages. Each broadcast is encoded to bytes once and the same
+ * {@link EncodedMessage} is queued for every recipient.
+ * Connection handlers and writers run on platform threads or, with {@link ExecutionMode#VIRTUAL}, on virtual threads.
+ * Chat lines are delivered within a {@link ChatRoom}: every client starts in the lobby and can switch rooms, and a
+ * room broadcast only visits the room's own members. Each room keeps an off-heap {@link MessageHistory} of its
+ * recent messages, replayed to clients when they join.
+ * Clients speak newline-terminated text or, after negotiating it, length-prefixed {@link FrameCodec} frames.
+ * Binary clients may also negotiate compression: payloads above a threshold are deflated, and each broadcast is
+ * compressed once and the same compressed frame is sent to every such recipient.
+ * Connection, traffic, queue and fan-out metrics are kept in a {@link MetricsRegistry}, published over JMX while
+ * the server runs. Logging goes through the asynchronous {@link Log}, so console output never delays delivery.
+ * With a {@link CommitLog} attached, every broadcast is also appended to a durable, memory-mapped log on disk.
+ * With a {@link ClusterNode} attached, the server is one node of a cluster: broadcasts are forwarded to the other
+ * nodes and nicknames are unique across all of them.
+ * With an idle timeout set, every client is watched by an {@link IdleMonitor} on a shared {@link TimingWheel}: idle
+ * clients are sent heartbeats and silent ones are disconnected, so peers that vanished without closing their
+ * connection do not hold a thread and a queue forever.
+ * Admission is controlled right at accept: a global and a per-address connection cap and a {@link TokenBucket} on
+ * the accept rate turn connections away before a thread is started for them. Once connected, each client can be
+ * held to a message rate and a byte rate by its own token buckets; a client over its limits is not disconnected but
+ * read more slowly, so TCP flow control pushes back on it and its flood cannot monopolize the fan-out.
  */
 public class TCPMultiServer {
+    public static final int DEFAULT_HISTORY_MESSAGES = 50;
+    public static final int DEFAULT_HISTORY_BYTES = 64 * 1024;
+    private static final Pattern ROOM_NAME = Pattern.compile("[A-Za-z0-9_-]{1,32}");
+
     private final int port;
-    private final ConcurrentHashMap<String, Socket> clients = new ConcurrentHashMap<>();
+    private final ExecutionMode executionMode;
+    private final ThreadFactory connectionThreads;
+    private final ThreadFactory writerThreads;
+    private final ClientRegistry clients = new ClientRegistry();
+    private final ConcurrentHashMap<String, ChatRoom> rooms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ChatRoom> memberships = new ConcurrentHashMap<>();
     private volatile boolean isRunning = true;
+    private final LongAdder encodedMessageCount = new LongAdder();
+    private final LongAdder encodedByteCount = new LongAdder();
+    private int outboundQueueCapacity = ClientWriter.DEFAULT_QUEUE_CAPACITY;
+    private volatile long maxHoldNanos;
+    private volatile SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DROP_NEWEST;
+    private volatile long highWaterBytes = ClientWriter.DEFAULT_HIGH_WATER_BYTES;
+    private final SlowConsumerStats slowConsumers = new SlowConsumerStats();
+    private final CompressionStats compression = new CompressionStats();
+    private volatile boolean compressionEnabled = true;
+    private volatile int compressionThreshold = FrameCompressor.DEFAULT_THRESHOLD;
+    private volatile int historyMessages = DEFAULT_HISTORY_MESSAGES;
+    private volatile int historyBytes = DEFAULT_HISTORY_BYTES;
+    private final Map<WireProtocol, WriteBatchStats> writeBatches = new EnumMap<>(WireProtocol.class);
+    private final MetricsRegistry metrics;
+    private final LongAdder connectionsAccepted;
+    private final LongAdder connectionsClosed;
+    private final Map<WireProtocol, LongAdder> messagesIn = new EnumMap<>(WireProtocol.class);
+    private final Map<WireProtocol, LongAdder> bytesIn = new EnumMap<>(WireProtocol.class);
+    private final LongAdder droppedByClosedWriters = new LongAdder();
+    private final LatencyHistogram fanoutNanos;
+    private final LongAdder commitLogAppends;
+    private final LongAdder commitLogFailures;
+    private final TimingWheel timingWheel = new TimingWheel();
+    private final LongAdder heartbeatsSent;
+    private final LongAdder connectionsReaped;
+    private volatile long heartbeatNanos;
+    private volatile long idleTimeoutNanos;
+    private volatile CommitLog commitLog;
+    private volatile ClusterNode cluster;
+    private volatile double messagesPerSecond;
+    private volatile int messageBurst;
+    private volatile long bytesPerSecond;
+    private volatile long byteBurst;
+    private volatile int maxConnections;
+    private volatile int maxConnectionsPerAddress;
+    private volatile TokenBucket acceptBucket;
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final ConcurrentHashMap<InetAddress, Integer> connectionsByAddress = new ConcurrentHashMap<>();
+    private final LongAdder rejectedFull;
+    private final LongAdder rejectedAddress;
+    private final LongAdder rejectedRate;
+    private final LongAdder messagesThrottled;
+    private final LongAdder throttledNanos;
+    private final LongAdder directMessages;
 
     /**
      * Constructor to initialize the server with a specified port number.
@@ -22,96 +119,873 @@ public class TCPMultiServer {
      * @throws IllegalArgumentException If the port number is not in the valid range (1-65535).
      */
     public TCPMultiServer(int port) {
+        this(port, ExecutionMode.PLATFORM);
+    }
+
+    /**
+     * Constructor to initialize the server with a specified port number and execution mode.
+     *
+     * @param port          The port number on which the server will listen for incoming connections.
+     * @param executionMode The kind of thread running connection handlers and client writers.
+     * @throws IllegalArgumentException      If the port number is not in the valid range (1-65535).
+     * @throws UnsupportedOperationException If virtual threads are requested on a JVM without them.
+     */
+    public TCPMultiServer(int port, ExecutionMode executionMode) {
         if (port <= 0 || port > 65535) {
             throw new IllegalArgumentException("Invalid port number: " + port + ". Must be between 1 and 65535.");
         }
         this.port = port;
+        this.executionMode = executionMode;
+        this.connectionThreads = executionMode.threadFactory("connection-", false);
+        this.writerThreads = executionMode.threadFactory("writer-", true);
+        this.rooms.put(ChatRoom.DEFAULT_ROOM, newRoom(ChatRoom.DEFAULT_ROOM));
+
+        this.metrics = new MetricsRegistry("TCPMultiServer:" + port);
+        this.connectionsAccepted = metrics.counter("connections.accepted");
+        this.connectionsClosed = metrics.counter("connections.closed");
+        for (WireProtocol protocol : WireProtocol.values()) {
+            String suffix = "." + protocol.name().toLowerCase(Locale.ROOT);
+            WriteBatchStats batches = new WriteBatchStats();
+            writeBatches.put(protocol, batches);
+            messagesIn.put(protocol, metrics.counter("messages.in" + suffix));
+            bytesIn.put(protocol, metrics.counter("bytes.in" + suffix));
+            metrics.gauge("messages.out" + suffix, batches::getMessageCount);
+            metrics.gauge("bytes.out" + suffix, batches::getByteCount);
+            metrics.gauge("flushes" + suffix, batches::getFlushCount);
+        }
+        metrics.gauge("sends.dropped", this::getDroppedCount);
+        metrics.gauge("clients.connected", clients::size);
+        metrics.gauge("rooms", rooms::size);
+        metrics.gauge("log.dropped", Log.logger()::getDroppedCount);
+        metrics.gauge("queue.depth", () -> sumOverWriters(ClientWriter::getQueueDepth));
+        metrics.gauge("queue.bytes", () -> sumOverWriters(ClientWriter::getPendingBytes));
+        metrics.gauge("slow.dropped.newest", slowConsumers::getDroppedNewest);
+        metrics.gauge("slow.dropped.oldest", slowConsumers::getDroppedOldest);
+        metrics.gauge("slow.disconnects", slowConsumers::getDisconnects);
+        metrics.gauge("compression.deflates", compression::getDeflateCount);
+        metrics.gauge("compression.bytes.raw", compression::getRawBytes);
+        metrics.gauge("compression.bytes.compressed", compression::getCompressedBytes);
+        metrics.gauge("compression.bytes.saved", compression::getSavedBytes);
+        this.fanoutNanos = metrics.histogram("broadcast.fanout.nanos");
+        this.commitLogAppends = metrics.counter("commitlog.appends");
+        this.commitLogFailures = metrics.counter("commitlog.failures");
+        this.heartbeatsSent = metrics.counter("heartbeats.sent");
+        this.connectionsReaped = metrics.counter("connections.reaped");
+        metrics.gauge("timeouts.pending", timingWheel::getPendingCount);
+        metrics.gauge("connections.open", openConnections::get);
+        this.rejectedFull = metrics.counter("connections.rejected.full");
+        this.rejectedAddress = metrics.counter("connections.rejected.address");
+        this.rejectedRate = metrics.counter("connections.rejected.rate");
+        this.messagesThrottled = metrics.counter("messages.throttled");
+        this.throttledNanos = metrics.counter("throttle.nanos");
+        this.directMessages = metrics.counter("messages.direct");
     }
 
     /**
      * Starts the server and begins accepting client connections. Each client connection is handled by a new
-     * {@link ConnectionThread}. The server runs continuously until it is stopped.
+     * {@link ConnectionThread}, run on a thread of the configured {@link ExecutionMode}, unless the connection limits
+     * turn it away first. The server runs continuously until it is stopped.
      */
     public void launch() {
-        System.out.println("Starting the multi-threaded server on port " + port);
+        Log.info("Starting the multi-threaded server on port " + port + " using " + executionMode.name().toLowerCase() + " threads");
 
         try (ServerSocket serverSocket = new ServerSocket(port)) {
-            System.out.println("Server is listening on port " + port);
+            Log.info("Server is listening on port " + port);
+            metrics.registerMBean("TCPMultiServer", port);
+            if (idleTimeoutNanos > 0) {
+                timingWheel.start("tcp-timing-wheel-" + port);
+            }
+            ClusterNode node = cluster;
+            if (node != null) {
+                node.start();
+            }
 
             while (isRunning) {
                 try {
                     Socket clientSocket = serverSocket.accept();
-                    new ConnectionThread(clientSocket, this).start();
+                    String rejection = admit(clientSocket.getInetAddress());
+                    if (rejection != null) {
+                        reject(clientSocket, rejection);
+                        continue;
+                    }
+                    connectionsAccepted.increment();
+                    try {
+                        // Writers coalesce their own batches, so Nagle's algorithm would only add delay.
+                        clientSocket.setTcpNoDelay(true);
+                        connectionThreads.newThread(new ConnectionThread(clientSocket, this)).start();
+                    } catch (IOException | RuntimeException | OutOfMemoryError e) {
+                        // The connection was admitted but has no thread to release its slot, so release it here.
+                        Log.error("Failed to start a connection thread: " + e);
+                        connectionClosed(clientSocket);
+                        try {
+                            clientSocket.close();
+                        } catch (IOException closeFailure) {
+                            Log.error("Failed to close client socket: " + closeFailure.getMessage());
+                        }
+                    }
                 } catch (IOException e) {
                     if (isRunning) {
-                        System.err.println("Error accepting client connection: " + e.getMessage());
+                        Log.error("Error accepting client connection: " + e.getMessage());
                     }
                 }
             }
         } catch (IOException e) {
-            System.err.println("Failed to start the server: " + e.getMessage());
+            Log.error("Failed to start the server: " + e.getMessage());
         } finally {
             shutdown();
         }
     }
 
+    /**
+     * Decides whether a connection just accepted may proceed and, if so, counts it as open. Only the accept thread
+     * calls this, so a check and the increment that follows it cannot race with another admission.
+     *
+     * @param address The address of the client.
+     * @return {@code null} if the connection is admitted, otherwise the reason it is turned away.
+     */
+    private String admit(InetAddress address) {
+        TokenBucket bucket = acceptBucket;
+        if (bucket != null && !bucket.tryAcquire(1, System.nanoTime())) {
+            rejectedRate.increment();
+            return "Too many connection attempts, try again later.";
+        }
+        int limit = maxConnections;
+        if (limit > 0 && openConnections.get() >= limit) {
+            rejectedFull.increment();
+            return "Server is full, try again later.";
+        }
+        int perAddress = maxConnectionsPerAddress;
+        if (perAddress > 0 && connectionsByAddress.getOrDefault(address, 0) >= perAddress) {
+            rejectedAddress.increment();
+            return "Too many connections from your address.";
+        }
+        openConnections.incrementAndGet();
+        connectionsByAddress.merge(address, 1, Integer::sum);
+        return null;
+    }
+
+    private void reject(Socket clientSocket, String reason) {
+        Log.debug("Rejected connection from " + clientSocket.getInetAddress().getHostAddress() + ": " + reason);
+        try (Socket socket = clientSocket) {
+            // A fresh socket's send buffer takes one short line without blocking the accept thread.
+            OutputStream out = socket.getOutputStream();
+            out.write((reason + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            // The client is turned away either way.
+        }
+    }
+
     /**
      * Broadcasts a message to all connected clients except the specified one.
-     * The message is sent to the output stream of each client socket.
+     * The message is encoded once and the encoded bytes are placed in each recipient's outbound queue; the writers
+     * deliver it asynchronously. Recipients that fell behind are handled by the {@link SlowConsumerPolicy}.
      *
      * @param message    The message to be broadcast to clients.
      * @param excludeUser The nickname of the user whose message should not be broadcasted.
      */
-    public synchronized void broadcast(String message, String excludeUser) {
-        System.out.println(message);
+    public void broadcast(String message, String excludeUser) {
+        deliverToAll(message, excludeUser);
+        ClusterNode node = cluster;
+        if (node != null) {
+            node.forward("", message);
+        }
+    }
 
-        clients.forEach((nickname, socket) -> {
-            if (!nickname.equals(excludeUser)) {
-                try {
-                    new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8).println(message);
-                } catch (IOException e) {
-                    System.err.println("Failed to send message to " + nickname + ": " + e.getMessage());
+    private void deliverToAll(String message, String excludeUser) {
+        Log.message(message);
+        persist(message);
+
+        long start = System.nanoTime();
+        clients.broadcast(encode(message), clients.idOf(excludeUser));
+        fanoutNanos.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Broadcasts a message to the members of one room except the specified one. Only the room's membership index is
+     * visited, so the cost is proportional to the size of the room.
+     *
+     * @param roomName    The name of the room.
+     * @param message     The message to be broadcast to the room.
+     * @param excludeUser The nickname of the user whose message should not be broadcasted.
+     */
+    public void broadcastToRoom(String roomName, String message, String excludeUser) {
+        deliverToRoom(roomName, message, excludeUser);
+        ClusterNode node = cluster;
+        if (node != null) {
+            node.forward(roomName, message);
+        }
+    }
+
+    /**
+     * Delivers a message forwarded by another node of the cluster to the local clients, without forwarding it again.
+     *
+     * @param roomName The room the message was broadcast to, or {@code ""} for all clients.
+     * @param message  The message.
+     */
+    public void deliverFromCluster(String roomName, String message) {
+        if (roomName.isEmpty()) {
+            deliverToAll(message, null);
+        } else {
+            deliverToRoom(roomName, message, null);
+        }
+    }
+
+    private void deliverToRoom(String roomName, String message, String excludeUser) {
+        ChatRoom room = rooms.get(roomName);
+        if (room == null) {
+            return;
+        }
+        if (Log.isMessageLoggingEnabled()) {
+            Log.message("[#" + roomName + "] " + message);
+        }
+        if (commitLog != null) {
+            persist("[#" + roomName + "] " + message);
+        }
+        long start = System.nanoTime();
+        room.broadcast(encode(message), clients.idOf(excludeUser));
+        fanoutNanos.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Sends a message to a single client.
+     *
+     * @param nickname The nickname of the recipient.
+     * @param message  The message to send.
+     * @return {@code true} if the message was queued, {@code false} if the client is unknown or its queue is full.
+     */
+    public boolean sendTo(String nickname, String message) {
+        ClientWriter writer = clients.get(nickname);
+        return writer != null && writer.send(encode(message));
+    }
+
+    /**
+     * Sends a private message from one client to another. The recipient is found with a single registry lookup and
+     * the message is queued for its connection only, so it costs one write whatever the number of clients. Direct
+     * messages are neither logged, persisted nor forwarded to the cluster.
+     *
+     * @param sender    The nickname of the sending client.
+     * @param recipient The nickname of the recipient.
+     * @param text      The message.
+     * @return {@code true} if the message was queued, {@code false} if the recipient is not connected to this server
+     * or its queue is full.
+     */
+    public boolean sendDirect(String sender, String recipient, String text) {
+        ClientWriter writer = clients.get(recipient);
+        if (writer == null || !writer.send(encode("[from " + sender + "] " + text))) {
+            return false;
+        }
+        directMessages.increment();
+        return true;
+    }
+
+    /**
+     * Checks whether a client is connected to this server. Unlike {@link #isNicknameTaken(String)}, a nickname
+     * only reserved by a client still connecting, or held for a client of another node, does not count.
+     *
+     * @param nickname The nickname to check.
+     * @return {@code true} if a client with that nickname is registered.
+     */
+    public boolean isConnected(String nickname) {
+        return clients.get(nickname) != null;
+    }
+
+    /**
+     * Moves a client into a room, leaving its current room. The room is created on first join, and rooms other
+     * than the lobby are removed when their last member leaves.
+     *
+     * @param nickname The nickname of the client.
+     * @param roomName The name of the room to join.
+     * @return The joined room, or {@code null} if the client is not connected.
+     * @throws IllegalArgumentException If the room name is not valid.
+     */
+    public ChatRoom joinRoom(String nickname, String roomName) {
+        if (!isValidRoomName(roomName)) {
+            throw new IllegalArgumentException("Invalid room name: " + roomName);
+        }
+        ClientWriter writer = clients.get(nickname);
+        if (writer == null) {
+            return null;
+        }
+
+        leaveRoom(nickname);
+        ChatRoom room = rooms.compute(roomName, (name, existing) -> {
+            ChatRoom target = existing != null ? existing : newRoom(name);
+            target.join(nickname, writer);
+            return target;
+        });
+        memberships.put(nickname, room);
+        return room;
+    }
+
+    /**
+     * Returns the name of the room a client is in.
+     *
+     * @param nickname The nickname of the client.
+     * @return The room name, or {@code null} if the client is not connected.
+     */
+    public String getRoomOf(String nickname) {
+        ChatRoom room = memberships.get(nickname);
+        return room != null ? room.getName() : null;
+    }
+
+    /**
+     * Returns the rooms that currently exist, sorted by name.
+     *
+     * @return The rooms, each reporting its member and message counts.
+     */
+    public List<ChatRoom> getRooms() {
+        List<ChatRoom> snapshot = new ArrayList<>(rooms.values());
+        snapshot.sort(Comparator.comparing(ChatRoom::getName));
+        return snapshot;
+    }
+
+    /**
+     * Checks whether a string can be used as a room name: 1 to 32 letters, digits, '_' or '-'.
+     *
+     * @param roomName The name to check.
+     * @return {@code true} if the name is valid, {@code false} otherwise.
+     */
+    public static boolean isValidRoomName(String roomName) {
+        return roomName != null && ROOM_NAME.matcher(roomName).matches();
+    }
+
+    /**
+     * Reserves a nickname for a client that is completing the handshake. The check and the reservation are one
+     * atomic step: if the name is taken, the first free {@code name-2}, {@code name-3}, ... is reserved instead.
+     * The reservation is released by {@link #removeClient(String)}.
+     *
+     * @param requested The nickname the client asked for.
+     * @return The nickname reserved for the client.
+     * @throws IllegalStateException If no variant of the name is free.
+     */
+    public String reserveNickname(String requested) {
+        ClusterNode node = cluster;
+        if (node == null) {
+            return clients.reserve(requested);
+        }
+
+        // Names denied by the cluster stay reserved until a free one is found, so reserve() moves on to the next.
+        List<String> denied = new ArrayList<>();
+        try {
+            while (true) {
+                String candidate = clients.reserve(requested);
+                denied.add(candidate);
+                if (node.claim(candidate)) {
+                    denied.remove(candidate);
+                    return candidate;
                 }
             }
-        });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while claiming a nickname for " + requested);
+        } finally {
+            for (String name : denied) {
+                if (!node.isRemoteNickname(name)) {
+                    clients.release(name);
+                }
+            }
+        }
     }
 
     /**
-     * Adds a new client to the server's list of active clients.
-     * The client's nickname and associated socket are added to the clients map.
+     * Reserves a nickname on behalf of a client of another cluster node.
+     *
+     * @param nickname The nickname.
+     * @return {@code true} if the nickname was free here and is now held, {@code false} if it is taken.
+     */
+    public boolean holdNickname(String nickname) {
+        return clients.reserveExactly(nickname);
+    }
+
+    /**
+     * Releases a nickname held for a client of another cluster node.
+     *
+     * @param nickname The nickname.
+     */
+    public void releaseNickname(String nickname) {
+        if (clients.get(nickname) == null) {
+            clients.release(nickname);
+        }
+    }
+
+    /**
+     * Returns the nicknames of the clients connected to this server.
+     *
+     * @return The nicknames, in no particular order.
+     */
+    public List<String> getNicknames() {
+        List<String> nicknames = new ArrayList<>();
+        for (ClientWriter writer : clients.snapshot()) {
+            nicknames.add(writer.getNickname());
+        }
+        return nicknames;
+    }
+
+    /**
+     * Adds a new text client to the server's list of active clients.
+     *
+     * @param nickname The nickname of the client.
+     * @param socket   The client's socket connection.
+     */
+    public void addClient(String nickname, Socket socket) {
+        addClient(nickname, socket, WireProtocol.TEXT);
+    }
+
+    /**
+     * Adds a new uncompressed client to the server's list of active clients.
      *
      * @param nickname The nickname of the client.
      * @param socket   The client's socket connection.
+     * @param protocol The protocol the client negotiated.
+     */
+    public void addClient(String nickname, Socket socket, WireProtocol protocol) {
+        addClient(nickname, socket, protocol, false);
+    }
+
+    /**
+     * Adds a new client to the server's list of active clients.
+     * A {@link ClientWriter} is started for the socket and registered under the client's nickname,
+     * and the client joins the lobby.
+     *
+     * @param nickname   The nickname of the client.
+     * @param socket     The client's socket connection.
+     * @param protocol   The protocol the client negotiated.
+     * @param compressed {@code true} if the client negotiated compressed binary frames.
+     * @throws IllegalStateException If a client is already registered under the nickname.
      */
-    public synchronized void addClient(String nickname, Socket socket) {
-        clients.put(nickname, socket);
+    public void addClient(String nickname, Socket socket, WireProtocol protocol, boolean compressed) {
+        ClientWriter writer = new ClientWriter(nickname, socket, outboundQueueCapacity, writerThreads, protocol,
+                maxHoldNanos, writeBatches.get(protocol), slowConsumerPolicy, highWaterBytes, slowConsumers);
+        if (compressed) {
+            writer.setCompression(new FrameCompressor(compressionThreshold, compression), compression);
+        }
+        clients.register(writer);
+        writer.start();
+        joinRoom(nickname, ChatRoom.DEFAULT_ROOM);
     }
 
     /**
      * Removes a client from the server's list of active clients.
-     * The client's socket is closed, and the client is removed from the clients map.
+     * The client's socket is closed, the client is removed from the registry and its nickname is released.
      *
      * @param nickname The nickname of the client to be removed.
      */
-    public synchronized void removeClient(String nickname) {
-        Socket socket = clients.remove(nickname);
-        if (socket != null) {
+    public void removeClient(String nickname) {
+        leaveRoom(nickname);
+        ClientWriter writer = clients.release(nickname);
+        ClusterNode node = cluster;
+        if (node != null) {
+            node.release(nickname);
+        }
+        if (writer != null) {
+            writer.close();
+            droppedByClosedWriters.add(writer.getDroppedCount());
             try {
-                socket.close();
+                writer.getSocket().close();
             } catch (IOException e) {
-                System.err.println("Failed to close socket for " + nickname + ": " + e.getMessage());
+                Log.error("Failed to close socket for " + nickname + ": " + e.getMessage());
             }
         }
     }
 
     /**
-     * Checks if a given nickname is already taken by another client.
+     * Checks if a given nickname is already taken by another client or reserved by one still connecting.
      *
      * @param nickname The nickname to check.
      * @return {@code true} if the nickname is already taken, {@code false} otherwise.
      */
-    public synchronized boolean isNicknameTaken(String nickname) {
-        return clients.containsKey(nickname);
+    public boolean isNicknameTaken(String nickname) {
+        return clients.isTaken(nickname);
+    }
+
+    /**
+     * Returns the number of messages waiting in the outbound queue of a client.
+     *
+     * @param nickname The nickname of the client.
+     * @return The queue depth, or {@code 0} if no such client is connected.
+     */
+    public int getQueueDepth(String nickname) {
+        ClientWriter writer = clients.get(nickname);
+        return writer != null ? writer.getQueueDepth() : 0;
+    }
+
+    /**
+     * Returns a snapshot of the outbound queue depth of every connected client.
+     *
+     * @return A map from nickname to the number of messages waiting to be written.
+     */
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new HashMap<>();
+        for (ClientWriter writer : clients.snapshot()) {
+            depths.put(writer.getNickname(), writer.getQueueDepth());
+        }
+        return depths;
+    }
+
+    /**
+     * Returns the number of messages encoded by {@link #broadcast(String, String)}. Exactly one encoding happens per
+     * broadcast, whatever the number of recipients.
+     *
+     * @return The number of encoded messages.
+     */
+    public long getEncodedMessageCount() {
+        return encodedMessageCount.sum();
+    }
+
+    /**
+     * Returns the total number of bytes produced by message encoding. Divided by {@link #getEncodedMessageCount()},
+     * this is the payload allocation per broadcast message, which does not grow with the number of recipients.
+     *
+     * @return The number of encoded bytes.
+     */
+    public long getEncodedByteCount() {
+        return encodedByteCount.sum();
+    }
+
+    /**
+     * Sets the capacity of the outbound queue created for each newly connected client.
+     *
+     * @param outboundQueueCapacity The maximum number of messages waiting to be written per client.
+     * @throws IllegalArgumentException If the capacity is not positive.
+     */
+    public void setOutboundQueueCapacity(int outboundQueueCapacity) {
+        if (outboundQueueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + outboundQueueCapacity);
+        }
+        this.outboundQueueCapacity = outboundQueueCapacity;
+    }
+
+    /**
+     * Sets what the writer of each newly connected client does when the client falls behind: once the bytes waiting
+     * to be written would exceed the high-water mark, new messages are dropped, the oldest ones are dropped, or the
+     * client is sent a notice and disconnected.
+     *
+     * @param policy         The slow-consumer policy.
+     * @param highWaterBytes The maximum number of bytes waiting to be written per client.
+     * @throws IllegalArgumentException If the high-water mark is not positive.
+     */
+    public void setSlowConsumerPolicy(SlowConsumerPolicy policy, long highWaterBytes) {
+        if (highWaterBytes <= 0) {
+            throw new IllegalArgumentException("High-water mark must be positive: " + highWaterBytes);
+        }
+        this.slowConsumerPolicy = policy;
+        this.highWaterBytes = highWaterBytes;
+    }
+
+    /**
+     * Returns the actions taken against clients that fell behind.
+     *
+     * @return The slow-consumer statistics shared by all client writers.
+     */
+    public SlowConsumerStats getSlowConsumerStats() {
+        return slowConsumers;
+    }
+
+    /**
+     * Sets whether binary clients may negotiate compressed frames, and the smallest payload worth compressing.
+     * Clients that connected earlier keep what they negotiated.
+     *
+     * @param enabled   {@code true} to accept compression when a client offers it.
+     * @param threshold The smallest payload, in bytes, that is deflated; shorter ones are sent raw.
+     * @throws IllegalArgumentException If the threshold is negative.
+     */
+    public void setCompression(boolean enabled, int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Compression threshold cannot be negative: " + threshold);
+        }
+        this.compressionEnabled = enabled;
+        this.compressionThreshold = threshold;
+    }
+
+    /**
+     * Checks whether binary clients may negotiate compressed frames.
+     *
+     * @return {@code true} if compression is accepted.
+     */
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    /**
+     * Returns the work and the savings of compression.
+     *
+     * @return The compression statistics shared by all client writers.
+     */
+    public CompressionStats getCompressionStats() {
+        return compression;
+    }
+
+    /**
+     * Enables heartbeats and idle timeouts for the clients connecting from now on. A client that has sent nothing
+     * for the heartbeat interval is sent {@link ConnectionThread#PING}, and again every interval while it stays
+     * silent; a client that has sent nothing for the idle timeout is disconnected. Call this before
+     * {@link #launch()}.
+     *
+     * @param heartbeatSeconds   The heartbeat interval, or {@code 0} for no heartbeats.
+     * @param idleTimeoutSeconds The idle timeout, or {@code 0} to never disconnect idle clients.
+     * @throws IllegalArgumentException If a value is negative, or heartbeats are enabled without an idle timeout
+     *                                  longer than the heartbeat interval.
+     */
+    public void setHeartbeat(long heartbeatSeconds, long idleTimeoutSeconds) {
+        if (heartbeatSeconds < 0 || idleTimeoutSeconds < 0) {
+            throw new IllegalArgumentException("Heartbeat interval and idle timeout cannot be negative");
+        }
+        if (heartbeatSeconds > 0 && idleTimeoutSeconds <= heartbeatSeconds) {
+            throw new IllegalArgumentException("Idle timeout must be longer than the heartbeat interval: "
+                    + idleTimeoutSeconds + " <= " + heartbeatSeconds);
+        }
+        this.heartbeatNanos = TimeUnit.SECONDS.toNanos(heartbeatSeconds);
+        this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(idleTimeoutSeconds);
+    }
+
+    /**
+     * Starts watching a connected client for inactivity, if idle timeouts are enabled.
+     *
+     * @param nickname     The nickname of the client.
+     * @param lastActivity Returns the {@link System#nanoTime()} at which the client last sent something.
+     * @return The monitor, to cancel when the client disconnects, or {@code null} if idle timeouts are disabled.
+     */
+    public IdleMonitor monitorIdle(String nickname, LongSupplier lastActivity) {
+        long timeout = idleTimeoutNanos;
+        if (timeout <= 0) {
+            return null;
+        }
+        long heartbeat = heartbeatNanos;
+        IdleMonitor monitor = new IdleMonitor(timingWheel, lastActivity, timeout, heartbeat,
+                heartbeat > 0 ? () -> {
+                    if (sendTo(nickname, ConnectionThread.PING)) {
+                        heartbeatsSent.increment();
+                    }
+                } : null,
+                () -> reap(nickname));
+        monitor.start();
+        return monitor;
+    }
+
+    private void reap(String nickname) {
+        ClientWriter writer = clients.get(nickname);
+        if (writer == null) {
+            return;
+        }
+        connectionsReaped.increment();
+        Log.info(nickname + " has been idle for " + TimeUnit.NANOSECONDS.toSeconds(idleTimeoutNanos) + " s, disconnecting.");
+        try {
+            writer.getSocket().close();
+        } catch (IOException e) {
+            Log.error("Failed to close socket for " + nickname + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sets how long the writer of each newly connected client may hold the first message of a batch while waiting
+     * for more messages to flush with it. With {@code 0}, the default, a batch holds only what is already queued.
+     *
+     * @param maxHoldMicros The latency budget of a batch in microseconds.
+     * @throws IllegalArgumentException If the hold time is negative.
+     */
+    public void setMaxHoldMicros(long maxHoldMicros) {
+        if (maxHoldMicros < 0) {
+            throw new IllegalArgumentException("Maximum hold time cannot be negative: " + maxHoldMicros);
+        }
+        this.maxHoldNanos = TimeUnit.MICROSECONDS.toNanos(maxHoldMicros);
+    }
+
+    /**
+     * Sets the history kept by each room and replayed to members when they join. Rooms created from now on use the
+     * new limits, and so does the lobby if nobody is in it, so call this before {@link #launch()}.
+     *
+     * @param messages The number of messages kept per room, or {@code 0} to keep no history.
+     * @param bytes    The size of each room's off-heap history buffer.
+     * @throws IllegalArgumentException If the message count is negative or the size is not positive.
+     */
+    public void setHistoryCapacity(int messages, int bytes) {
+        if (messages < 0) {
+            throw new IllegalArgumentException("History size cannot be negative: " + messages);
+        }
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("History capacity must be positive: " + bytes);
+        }
+        this.historyMessages = messages;
+        this.historyBytes = bytes;
+        rooms.computeIfPresent(ChatRoom.DEFAULT_ROOM, (name, lobby) -> lobby.isEmpty() ? newRoom(name) : lobby);
+    }
+
+    /**
+     * Attaches a commit log to which every broadcast is appended from now on. The server closes it on shutdown.
+     *
+     * @param commitLog The commit log, or {@code null} to stop persisting messages.
+     */
+    public void setCommitLog(CommitLog commitLog) {
+        this.commitLog = commitLog;
+    }
+
+    /**
+     * Makes this server a node of a cluster. The node starts listening for its peers when the server is launched
+     * and is closed on shutdown.
+     *
+     * @param cluster The cluster node, or {@code null} to run standalone.
+     */
+    public void setCluster(ClusterNode cluster) {
+        this.cluster = cluster;
+    }
+
+    /**
+     * Returns the cluster node of this server.
+     *
+     * @return The cluster node, or {@code null} if the server runs standalone.
+     */
+    public ClusterNode getCluster() {
+        return cluster;
+    }
+
+    /**
+     * Returns the write coalescing statistics of the client writers speaking a protocol.
+     *
+     * @param protocol The protocol.
+     * @return The number of flushes and the messages and bytes they carried.
+     */
+    public WriteBatchStats getWriteBatches(WireProtocol protocol) {
+        return writeBatches.get(protocol);
+    }
+
+    /**
+     * Records a message received from a client.
+     *
+     * @param protocol The protocol the client speaks.
+     * @param bytes    The size of the message on the wire.
+     */
+    public void recordInbound(WireProtocol protocol, int bytes) {
+        messagesIn.get(protocol).increment();
+        bytesIn.get(protocol).add(bytes);
+    }
+
+    /**
+     * Records that a client connection has ended, whether or not the client completed the nickname handshake, and
+     * frees its place under the connection limits.
+     *
+     * @param clientSocket The socket of the connection.
+     */
+    public void connectionClosed(Socket clientSocket) {
+        connectionsClosed.increment();
+        openConnections.decrementAndGet();
+        connectionsByAddress.computeIfPresent(clientSocket.getInetAddress(), (address, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * Limits the rate of messages each newly connected client may send. A client over the limit is not
+     * disconnected: the server stops reading from it until the rate is back under the limit.
+     *
+     * @param messagesPerSecond The sustained message rate, or {@code 0} for no limit.
+     * @param burst             The number of messages a client may send at once after being quiet.
+     * @throws IllegalArgumentException If the rate is negative, or a limit is set with a burst that is not positive.
+     */
+    public void setMessageRateLimit(double messagesPerSecond, int burst) {
+        checkRateLimit(messagesPerSecond, burst);
+        this.messagesPerSecond = messagesPerSecond;
+        this.messageBurst = burst;
+    }
+
+    /**
+     * Limits the rate of bytes each newly connected client may send, counted as they arrive on the wire. A client
+     * over the limit is read more slowly, like one over the message rate.
+     *
+     * @param bytesPerSecond The sustained byte rate, or {@code 0} for no limit.
+     * @param burst          The number of bytes a client may send at once after being quiet.
+     * @throws IllegalArgumentException If the rate is negative, or a limit is set with a burst that is not positive.
+     */
+    public void setByteRateLimit(long bytesPerSecond, long burst) {
+        checkRateLimit(bytesPerSecond, burst);
+        this.bytesPerSecond = bytesPerSecond;
+        this.byteBurst = burst;
+    }
+
+    /**
+     * Caps the number of open connections, counting those still in the nickname handshake. A connection over a cap
+     * is sent a one-line reason and closed as soon as it is accepted.
+     *
+     * @param maxConnections           The maximum number of open connections, or {@code 0} for no limit.
+     * @param maxConnectionsPerAddress The maximum number of open connections from one IP address, or {@code 0} for
+     *                                 no limit.
+     * @throws IllegalArgumentException If a limit is negative.
+     */
+    public void setConnectionLimits(int maxConnections, int maxConnectionsPerAddress) {
+        if (maxConnections < 0 || maxConnectionsPerAddress < 0) {
+            throw new IllegalArgumentException("Connection limits cannot be negative");
+        }
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerAddress = maxConnectionsPerAddress;
+    }
+
+    /**
+     * Limits the rate at which connections are accepted. A connection over the rate is sent a one-line reason and
+     * closed as soon as it is accepted, before any thread is started for it.
+     *
+     * @param acceptsPerSecond The sustained accept rate, or {@code 0} for no limit.
+     * @param burst            The number of connections accepted at once after a quiet period.
+     * @throws IllegalArgumentException If the rate is negative, or a limit is set with a burst that is not positive.
+     */
+    public void setAcceptRateLimit(double acceptsPerSecond, int burst) {
+        checkRateLimit(acceptsPerSecond, burst);
+        this.acceptBucket = acceptsPerSecond > 0 ? new TokenBucket(acceptsPerSecond, burst, System.nanoTime()) : null;
+    }
+
+    private static void checkRateLimit(double rate, long burst) {
+        if (rate < 0) {
+            throw new IllegalArgumentException("Rate limit cannot be negative: " + rate);
+        }
+        if (rate > 0 && burst <= 0) {
+            throw new IllegalArgumentException("Burst must be positive: " + burst);
+        }
+    }
+
+    /**
+     * Creates the bucket holding a newly connected client to the message rate limit.
+     *
+     * @return The bucket, owned by the client's connection thread, or {@code null} if messages are not limited.
+     */
+    public TokenBucket newMessageBucket() {
+        double rate = messagesPerSecond;
+        return rate > 0 ? new TokenBucket(rate, messageBurst, System.nanoTime()) : null;
+    }
+
+    /**
+     * Creates the bucket holding a newly connected client to the byte rate limit.
+     *
+     * @return The bucket, owned by the client's connection thread, or {@code null} if bytes are not limited.
+     */
+    public TokenBucket newByteBucket() {
+        long rate = bytesPerSecond;
+        return rate > 0 ? new TokenBucket(rate, byteBurst, System.nanoTime()) : null;
+    }
+
+    /**
+     * Records that a client's connection thread paused reading because the client went over its rate limits.
+     *
+     * @param nanos How long the thread pauses.
+     */
+    public void recordThrottle(long nanos) {
+        messagesThrottled.increment();
+        throttledNanos.add(nanos);
+    }
+
+    /**
+     * Returns the number of messages dropped because a recipient's outbound queue was full, including those of
+     * clients that have since disconnected.
+     *
+     * @return The number of dropped sends.
+     */
+    public long getDroppedCount() {
+        return droppedByClosedWriters.sum() + sumOverWriters(ClientWriter::getDroppedCount);
+    }
+
+    /**
+     * Returns the metrics of this server.
+     *
+     * @return The metrics registry.
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
     }
 
     /**
@@ -119,40 +993,262 @@ public class TCPMultiServer {
      * This method is invoked during server shutdown to cleanly terminate all resources.
      */
     public synchronized void shutdown() {
-        System.out.println("Shutting down the server...");
+        Log.info("Shutting down the server...");
         isRunning = false;
+        timingWheel.close();
+        ClusterNode node = cluster;
+        if (node != null) {
+            node.close();
+        }
 
-        clients.forEach((nickname, socket) -> {
+        for (ClientWriter writer : clients.snapshot()) {
+            writer.close();
             try {
-                socket.close();
+                writer.getSocket().close();
             } catch (IOException e) {
-                System.err.println("Failed to close client socket for " + nickname + ": " + e.getMessage());
+                Log.error("Failed to close client socket for " + writer.getNickname() + ": " + e.getMessage());
             }
-        });
+        }
 
         clients.clear();
-        System.out.println("Server shutdown complete.");
+        memberships.clear();
+        rooms.clear();
+        rooms.put(ChatRoom.DEFAULT_ROOM, newRoom(ChatRoom.DEFAULT_ROOM));
+        writeBatches.forEach((protocol, batches) ->
+                Log.info("Write coalescing (" + protocol.name().toLowerCase(Locale.ROOT) + "): " + batches + "."));
+        metrics.close();
+        CommitLog log = commitLog;
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                Log.error("Failed to close the commit log: " + e.getMessage());
+            }
+        }
+        Log.info("Server shutdown complete.");
+        Log.flush();
+    }
+
+    private EncodedMessage encode(String message) {
+        EncodedMessage encoded = EncodedMessage.of(message);
+        encodedMessageCount.increment();
+        encodedByteCount.add(encoded.length());
+        return encoded;
+    }
+
+    private void persist(String message) {
+        CommitLog log = commitLog;
+        if (log == null) {
+            return;
+        }
+        try {
+            log.append(message);
+            commitLogAppends.increment();
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            commitLogFailures.increment();
+            Log.error("Failed to append to the commit log: " + e.getMessage());
+        }
+    }
+
+    private ChatRoom newRoom(String name) {
+        int messages = historyMessages;
+        return new ChatRoom(name, messages > 0 ? new MessageHistory(messages, historyBytes) : null);
+    }
+
+    private long sumOverWriters(ToLongFunction<ClientWriter> value) {
+        long sum = 0;
+        for (ClientWriter writer : clients.snapshot()) {
+            sum += value.applyAsLong(writer);
+        }
+        return sum;
+    }
+
+    private void leaveRoom(String nickname) {
+        ChatRoom room = memberships.remove(nickname);
+        if (room != null) {
+            rooms.computeIfPresent(room.getName(), (name, existing) -> {
+                existing.part(nickname);
+                return existing.isEmpty() && !ChatRoom.DEFAULT_ROOM.equals(name) ? null : existing;
+            });
+        }
+    }
+
+    /**
+     * Returns the kind of thread running connection handlers and client writers.
+     *
+     * @return The execution mode.
+     */
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Represents the command-line arguments for the multi-threaded server.
+     */
+    public static class Args {
+        @Parameter(description = "[port]")
+        private List<String> positional = new ArrayList<>();
+
+        @Parameter(names = {"-v", "--virtual-threads"}, description = "Run each connection on a virtual thread (Java 21+)")
+        private boolean virtualThreads = false;
+
+        @Parameter(names = "--log-level", description = "Minimum level of log entries: DEBUG, INFO, WARN, ERROR or OFF")
+        private LogLevel logLevel = LogLevel.INFO;
+
+        @Parameter(names = "--no-message-log", description = "Do not log every broadcast chat line")
+        private boolean noMessageLog = false;
+
+        @Parameter(names = "--history", description = "Number of recent messages per room replayed to joining clients (0 to disable)")
+        private int historyMessages = DEFAULT_HISTORY_MESSAGES;
+
+        @Parameter(names = "--history-bytes", description = "Size in bytes of each room's off-heap history buffer")
+        private int historyBytes = DEFAULT_HISTORY_BYTES;
+
+        @Parameter(names = "--metrics-interval", description = "Seconds between metrics dumps on the console (0 to disable)")
+        private long metricsIntervalSeconds = 60;
+
+        @Parameter(names = "--max-hold-micros", description = "How long a client's writer may wait for more messages before flushing a batch")
+        private long maxHoldMicros = 0;
+
+        @Parameter(names = "--slow-consumer-policy", description = "What to do when a client falls behind: DROP_NEWEST, DROP_OLDEST or DISCONNECT")
+        private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DROP_NEWEST;
+
+        @Parameter(names = "--high-water-bytes", description = "Bytes waiting to be written to a client before the slow-consumer policy applies")
+        private long highWaterBytes = ClientWriter.DEFAULT_HIGH_WATER_BYTES;
+
+        @Parameter(names = "--no-compression", description = "Refuse compressed frames when binary clients offer them")
+        private boolean noCompression = false;
+
+        @Parameter(names = "--compression-threshold", description = "Smallest payload in bytes that is deflated for clients that negotiated compression")
+        private int compressionThreshold = FrameCompressor.DEFAULT_THRESHOLD;
+
+        @Parameter(names = "--heartbeat", description = "Seconds of client silence before the server sends a /ping (0 to disable)")
+        private long heartbeatSeconds = 0;
+
+        @Parameter(names = "--idle-timeout", description = "Seconds of client silence before the connection is closed (0 to disable)")
+        private long idleTimeoutSeconds = 0;
+
+        @Parameter(names = "--max-messages-per-second", description = "Sustained message rate allowed per client (0 for no limit)")
+        private double messagesPerSecond = 0;
+
+        @Parameter(names = "--message-burst", description = "Messages a client may send at once before the message rate applies")
+        private int messageBurst = 20;
+
+        @Parameter(names = "--max-bytes-per-second", description = "Sustained byte rate allowed per client (0 for no limit)")
+        private long bytesPerSecond = 0;
+
+        @Parameter(names = "--byte-burst", description = "Bytes a client may send at once before the byte rate applies")
+        private long byteBurst = 64 * 1024;
+
+        @Parameter(names = "--max-connections", description = "Maximum number of open connections (0 for no limit)")
+        private int maxConnections = 0;
+
+        @Parameter(names = "--max-connections-per-ip", description = "Maximum number of open connections from one IP address (0 for no limit)")
+        private int maxConnectionsPerAddress = 0;
+
+        @Parameter(names = "--max-accepts-per-second", description = "Sustained rate of accepted connections (0 for no limit)")
+        private double acceptsPerSecond = 0;
+
+        @Parameter(names = "--accept-burst", description = "Connections accepted at once before the accept rate applies")
+        private int acceptBurst = 50;
+
+        @Parameter(names = "--node-id", description = "ID of this node in a cluster (defaults to host:port)")
+        private String nodeId;
+
+        @Parameter(names = "--cluster-port", description = "Port on which other cluster nodes connect (cluster mode is disabled if not set)")
+        private int clusterPort = 0;
+
+        @Parameter(names = "--peer", description = "Cluster address host:port of another node; repeat for every peer")
+        private List<String> peers = new ArrayList<>();
+
+        @Parameter(names = "--commit-log", description = "Directory of the durable message log (disabled if not set)")
+        private String commitLogDirectory;
+
+        @Parameter(names = "--segment-bytes", description = "Size in bytes of each commit log segment file")
+        private int segmentBytes = CommitLog.DEFAULT_SEGMENT_BYTES;
+
+        @Parameter(names = "--segment-minutes", description = "Time window covered by each commit log segment")
+        private long segmentMinutes = TimeUnit.MILLISECONDS.toMinutes(CommitLog.DEFAULT_SEGMENT_WINDOW_MILLIS);
+
+        @Parameter(names = "--fsync-interval-ms", description = "Milliseconds between commit log flushes to disk (0 to flush every message)")
+        private long fsyncIntervalMillis = CommitLog.DEFAULT_FSYNC_INTERVAL_MILLIS;
+
+        @Parameter(names = "--retention-hours", description = "Hours commit log segments are kept (0 to keep them all)")
+        private long retentionHours = TimeUnit.MILLISECONDS.toHours(CommitLog.DEFAULT_RETENTION_MILLIS);
+
+        @Parameter(names = {"-h", "--help"}, help = true, description = "Display help message")
+        private boolean help = false;
     }
 
     /**
      * The main entry point for the server program.
-     * It reads the port number from the command-line arguments, validates it, and starts the server.
+     * It reads the port number and options from the command-line arguments, validates them, and starts the server.
      *
-     * @param args Command-line arguments where the first argument is the port number (optional).
+     * @param args Command-line arguments: the port number (optional) followed by options.
      */
     public static void main(String[] args) {
+        Args jArgs = new Args();
+        JCommander commander = JCommander.newBuilder()
+                .addObject(jArgs)
+                .programName("TCPMultiServer")
+                .build();
         int port = 8080;
 
         try {
-            if (args.length > 0) {
-                port = Integer.parseInt(args[0]);
+            commander.parse(args);
+            if (jArgs.help) {
+                commander.usage();
+                return;
+            }
+            if (!jArgs.positional.isEmpty()) {
+                port = Integer.parseInt(jArgs.positional.get(0));
             }
         } catch (NumberFormatException e) {
             System.err.println("Invalid port number. Please provide a valid integer between 1 and 65535.");
             return;
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            commander.usage();
+            return;
         }
 
-        TCPMultiServer server = new TCPMultiServer(port);
+        TCPMultiServer server;
+        try {
+            server = new TCPMultiServer(port, jArgs.virtualThreads ? ExecutionMode.VIRTUAL : ExecutionMode.PLATFORM);
+            server.setMaxHoldMicros(jArgs.maxHoldMicros);
+            server.setSlowConsumerPolicy(jArgs.slowConsumerPolicy, jArgs.highWaterBytes);
+            server.setCompression(!jArgs.noCompression, jArgs.compressionThreshold);
+            server.setHeartbeat(jArgs.heartbeatSeconds, jArgs.idleTimeoutSeconds);
+            server.setMessageRateLimit(jArgs.messagesPerSecond, jArgs.messageBurst);
+            server.setByteRateLimit(jArgs.bytesPerSecond, jArgs.byteBurst);
+            server.setConnectionLimits(jArgs.maxConnections, jArgs.maxConnectionsPerAddress);
+            server.setAcceptRateLimit(jArgs.acceptsPerSecond, jArgs.acceptBurst);
+            server.setHistoryCapacity(jArgs.historyMessages, jArgs.historyBytes);
+            Log.logger().setLevel(jArgs.logLevel);
+            Log.logger().setMessageLogging(!jArgs.noMessageLog);
+            if (jArgs.metricsIntervalSeconds > 0) {
+                server.getMetrics().startReporter(jArgs.metricsIntervalSeconds, System.out);
+            }
+            if (jArgs.commitLogDirectory != null) {
+                server.setCommitLog(new CommitLog(Paths.get(jArgs.commitLogDirectory), jArgs.segmentBytes,
+                        TimeUnit.MINUTES.toMillis(jArgs.segmentMinutes), jArgs.fsyncIntervalMillis,
+                        TimeUnit.HOURS.toMillis(jArgs.retentionHours)));
+            }
+            if (jArgs.clusterPort > 0) {
+                List<InetSocketAddress> peers = new ArrayList<>();
+                for (String peer : jArgs.peers) {
+                    peers.add(ClusterNode.parseAddress(peer));
+                }
+                String nodeId = jArgs.nodeId != null ? jArgs.nodeId : ClusterNode.defaultNodeId(port);
+                server.setCluster(new ClusterNode(server, nodeId, jArgs.clusterPort, peers));
+            }
+        } catch (IllegalArgumentException | UnsupportedOperationException e) {
+            System.err.println(e.getMessage());
+            return;
+        } catch (IOException e) {
+            System.err.println("Failed to open the commit log: " + e.getMessage());
+            return;
+        }
         Runtime.getRuntime().addShutdownHook(new Thread(server::shutdown));
         server.launch();
     }
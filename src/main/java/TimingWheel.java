@@ -0,0 +1,297 @@
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * The {@code TimingWheel} class is a hashed timing wheel: a ring of buckets, each holding the timeouts due in one
+ * tick, advanced by a single thread. Scheduling and cancelling a timeout are O(1) and lock-free from any thread:
+ * new timeouts and cancellations are queued and moved into or out of their bucket by the wheel thread on its next
+ * tick. A timeout more than one revolution away is placed in its bucket with a count of remaining rounds.
+ * Expired tasks run on the wheel thread and must therefore be short, such as queueing a message or closing a socket.
+ * Timeouts fire up to one tick late, never early.
+ */
+public class TimingWheel implements AutoCloseable {
+    public static final long DEFAULT_TICK_MILLIS = 100;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    private final long tickNanos;
+    private final int mask;
+    private final Bucket[] buckets;
+    private final LongSupplier clock;
+    private final long startNanos;
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+    private long currentTick;
+    private volatile boolean isRunning;
+    private Thread thread;
+
+    /**
+     * Constructs a new {@code TimingWheel} with the default tick of 100 ms and 512 buckets.
+     */
+    public TimingWheel() {
+        this(TimeUnit.MILLISECONDS.toNanos(DEFAULT_TICK_MILLIS), DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * Constructs a new {@code TimingWheel}. The wheel does not advance before {@link #start(String)}.
+     *
+     * @param tickNanos The duration of one tick, the resolution of the timeouts.
+     * @param wheelSize The number of buckets, rounded up to a power of two.
+     * @throws IllegalArgumentException If the tick or the wheel size is not positive.
+     */
+    public TimingWheel(long tickNanos, int wheelSize) {
+        this(tickNanos, wheelSize, System::nanoTime);
+    }
+
+    TimingWheel(long tickNanos, int wheelSize, LongSupplier clock) {
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive: " + tickNanos);
+        }
+        if (wheelSize <= 0 || wheelSize > 1 << 20) {
+            throw new IllegalArgumentException("Wheel size must be between 1 and 2^20: " + wheelSize);
+        }
+        int size = wheelSize == 1 ? 1 : Integer.highestOneBit(wheelSize - 1) << 1;
+        this.tickNanos = tickNanos;
+        this.mask = size - 1;
+        this.buckets = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new Bucket();
+        }
+        this.clock = clock;
+        this.startNanos = clock.getAsLong();
+    }
+
+    /**
+     * Starts the thread advancing the wheel.
+     *
+     * @param name The name of the thread.
+     */
+    public synchronized void start(String name) {
+        if (isRunning) {
+            return;
+        }
+        isRunning = true;
+        thread = ExecutionMode.PLATFORM.threadFactory("timing-wheel-", true).newThread(() -> {
+            while (isRunning) {
+                LockSupport.parkNanos(tickNanos);
+                tick(clock.getAsLong());
+            }
+        });
+        thread.setName(name);
+        thread.start();
+    }
+
+    /**
+     * Schedules a task to run once the delay has elapsed.
+     *
+     * @param task       The task, run on the wheel thread.
+     * @param delayNanos The delay in nanoseconds; a negative delay counts as zero.
+     * @return The timeout, which can be cancelled.
+     */
+    public Timeout schedule(Runnable task, long delayNanos) {
+        Timeout timeout = new Timeout(this, task, clock.getAsLong() + Math.max(0, delayNanos));
+        pendingCount.incrementAndGet();
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Advances the wheel to the given time: places the newly scheduled timeouts, removes the cancelled ones and
+     * runs every task that is due. Called by the wheel thread, or directly by tests of a wheel never started.
+     *
+     * @param now The current time of the wheel's clock.
+     */
+    synchronized void tick(long now) {
+        long targetTick = (now - startNanos) / tickNanos;
+        while (currentTick <= targetTick) {
+            transferScheduled();
+            removeCancelled();
+            expire(buckets[(int) (currentTick & mask)]);
+            currentTick++;
+        }
+    }
+
+    private void transferScheduled() {
+        Timeout timeout;
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK && (timeout = scheduled.poll()) != null; i++) {
+            if (timeout.state.get() != Timeout.PENDING) {
+                continue;
+            }
+            long dueTick = Math.max((timeout.deadlineNanos - startNanos + tickNanos - 1) / tickNanos, currentTick);
+            timeout.remainingRounds = (dueTick - currentTick) / buckets.length;
+            buckets[(int) (dueTick & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void expire(Bucket bucket) {
+        Timeout timeout = bucket.head;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.remainingRounds <= 0) {
+                bucket.remove(timeout);
+                if (timeout.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+                    pendingCount.decrementAndGet();
+                    expiredCount.incrementAndGet();
+                    try {
+                        timeout.task.run();
+                    } catch (RuntimeException e) {
+                        Log.error("Timeout task failed: " + e);
+                    }
+                }
+            } else {
+                timeout.remainingRounds--;
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * Returns the number of timeouts scheduled and neither expired nor cancelled.
+     *
+     * @return The pending timeout count.
+     */
+    public long getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Returns the number of timeouts that have expired since the wheel was created.
+     *
+     * @return The expired timeout count.
+     */
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    /**
+     * Returns the clock of the wheel.
+     *
+     * @return The current time as seen by the wheel, in nanoseconds.
+     */
+    public long now() {
+        return clock.getAsLong();
+    }
+
+    /**
+     * Stops the wheel thread. Pending timeouts never fire.
+     */
+    @Override
+    public synchronized void close() {
+        isRunning = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * A scheduled task. It sits in the linked list of one bucket from the tick after it was scheduled until it
+     * expires or is cancelled.
+     */
+    public static final class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final TimingWheel wheel;
+        private final Runnable task;
+        private final long deadlineNanos;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout previous;
+        private Timeout next;
+
+        private Timeout(TimingWheel wheel, Runnable task, long deadlineNanos) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Cancels the timeout, unless it has already expired.
+         *
+         * @return {@code true} if the timeout was pending and will never fire.
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            wheel.pendingCount.decrementAndGet();
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        /**
+         * Checks whether the task has run.
+         *
+         * @return {@code true} once the timeout has expired.
+         */
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        /**
+         * Checks whether the timeout was cancelled.
+         *
+         * @return {@code true} once the timeout has been cancelled.
+         */
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+    }
+
+    /**
+     * The doubly linked list of the timeouts due in one slot of the wheel. Only the wheel thread touches it.
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.previous = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            if (timeout.previous == null) {
+                head = timeout.next;
+            } else {
+                timeout.previous.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.previous;
+            } else {
+                timeout.next.previous = timeout.previous;
+            }
+            timeout.bucket = null;
+            timeout.previous = null;
+            timeout.next = null;
+        }
+    }
+}
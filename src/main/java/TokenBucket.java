@@ -0,0 +1,86 @@
+/**
+ * The {@code TokenBucket} class limits the rate of an activity: the bucket holds up to {@code capacity} tokens,
+ * refills at a fixed rate, and every unit of the activity (a message, a byte, a connection) takes one token.
+ * A full bucket lets a burst of {@code capacity} units through at once; past that, the activity is held to the
+ * refill rate. The bucket is refilled lazily from the clock passed to each call, so it needs no timer thread.
+ * A bucket is not thread-safe: each one belongs to a single thread, such as a connection's reader or the acceptor.
+ */
+public class TokenBucket {
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private final double tokensPerNano;
+    private final long capacity;
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * Constructs a new, full {@code TokenBucket}.
+     *
+     * @param tokensPerSecond The refill rate.
+     * @param capacity        The maximum number of tokens, the largest burst let through at once.
+     * @param now             The current time in nanoseconds.
+     * @throws IllegalArgumentException If the rate or the capacity is not positive.
+     */
+    public TokenBucket(double tokensPerSecond, long capacity, long now) {
+        if (!(tokensPerSecond > 0)) {
+            throw new IllegalArgumentException("Token rate must be positive: " + tokensPerSecond);
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Bucket capacity must be positive: " + capacity);
+        }
+        this.tokensPerNano = tokensPerSecond / NANOS_PER_SECOND;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefillNanos = now;
+    }
+
+    /**
+     * Takes tokens if the bucket holds enough of them.
+     *
+     * @param count The number of tokens to take.
+     * @param now   The current time in nanoseconds.
+     * @return {@code true} if the tokens were taken, {@code false} if the bucket is left untouched.
+     */
+    public boolean tryAcquire(long count, long now) {
+        refill(now);
+        if (tokens < count) {
+            return false;
+        }
+        tokens -= count;
+        return true;
+    }
+
+    /**
+     * Takes tokens whether or not the bucket holds enough of them, going into debt if needed, and returns how long
+     * the caller should wait for the debt to be repaid. Unlike {@link #tryAcquire(long, long)}, this lets a unit
+     * larger than the capacity through, at the price of a proportionally longer wait.
+     *
+     * @param count The number of tokens to take.
+     * @param now   The current time in nanoseconds.
+     * @return The wait in nanoseconds, {@code 0} if the bucket held enough tokens.
+     */
+    public long reserve(long count, long now) {
+        refill(now);
+        tokens -= count;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+    }
+
+    /**
+     * Returns the number of tokens available.
+     *
+     * @param now The current time in nanoseconds.
+     * @return The available tokens, negative while a reservation is being repaid.
+     */
+    public double available(long now) {
+        refill(now);
+        return tokens;
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefillNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+            lastRefillNanos = now;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 import java.net.*;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The UDPClient class sends messages to a UDP server using DatagramPackets.
@@ -8,7 +9,12 @@ import java.nio.charset.StandardCharsets;
  * and exits when the user types "exit".
  *
  * The client reads input from the console, validates the server address and port, and sends the messages
- * in UTF-8 encoding to the server.
+ * in UTF-8 encoding to the server. A background thread prints the messages of other clients that the server
+ * relays back, each prefixed with the address of its sender.
+ * In reliable mode, messages are sent through a {@link ReliableSender}: they are numbered, acknowledged by the
+ * server and resent until they arrive, and the client reports the delivery and retransmission counts on exit.
+ * With heartbeats enabled, the client also sends a one-byte heartbeat datagram at a fixed interval so the server
+ * does not expire it while its user is silent.
  */
 public class UDPClient {
     public String getServerAddress() {
@@ -21,6 +27,9 @@ public class UDPClient {
 
     private final String serverAddress;
     private final int serverPort;
+    private boolean reliable;
+    private long heartbeatSeconds;
+    private LossSimulator lossSimulator = LossSimulator.NONE;
 
     /**
      * Constructor that initializes the UDPClient with the server address and port.
@@ -44,6 +53,73 @@ public class UDPClient {
         this.serverPort = serverPort;
     }
 
+    /**
+     * Enables or disables the reliable mode.
+     *
+     * @param reliable {@code true} to have every message acknowledged and resent until it arrives
+     */
+    public void setReliable(boolean reliable) {
+        this.reliable = reliable;
+    }
+
+    /**
+     * Checks whether the reliable mode is enabled.
+     *
+     * @return {@code true} in reliable mode
+     */
+    public boolean isReliable() {
+        return reliable;
+    }
+
+    /**
+     * Sets the simulator deciding which outgoing datagrams are lost, for tests on loopback.
+     *
+     * @param lossSimulator the simulator, or {@link LossSimulator#NONE}
+     */
+    public void setLossSimulator(LossSimulator lossSimulator) {
+        this.lossSimulator = lossSimulator;
+    }
+
+    /**
+     * Sets how often a heartbeat datagram is sent, so the server keeps this client as a peer while its user is
+     * silent.
+     *
+     * @param heartbeatSeconds the interval between heartbeats, or {@code 0} for no heartbeats
+     * @throws IllegalArgumentException if the interval is negative
+     */
+    public void setHeartbeatSeconds(long heartbeatSeconds) {
+        if (heartbeatSeconds < 0) {
+            throw new IllegalArgumentException("Heartbeat interval cannot be negative.");
+        }
+        this.heartbeatSeconds = heartbeatSeconds;
+    }
+
+    /**
+     * Starts a daemon thread sending a heartbeat datagram to the server at a fixed interval until the socket is
+     * closed.
+     *
+     * @param socket the socket the client sends from
+     * @param server the address of the server
+     * @param intervalMillis the interval between heartbeats in milliseconds
+     * @return the heartbeat thread
+     */
+    Thread startHeartbeat(DatagramSocket socket, SocketAddress server, long intervalMillis) {
+        Thread heartbeat = new Thread(() -> {
+            DatagramPacket packet = new DatagramPacket(new byte[]{ReliableProtocol.TYPE_HEARTBEAT}, 1, server);
+            try {
+                while (!socket.isClosed()) {
+                    Thread.sleep(intervalMillis);
+                    socket.send(packet);
+                }
+            } catch (IOException | InterruptedException e) {
+                // The socket was closed when the client exited.
+            }
+        }, "udp-client-heartbeat");
+        heartbeat.setDaemon(true);
+        heartbeat.start();
+        return heartbeat;
+    }
+
     /**
      * Helper method to validate the format of an IP address.
      * This checks if the provided string is a valid IP address using InetAddress.
@@ -68,45 +144,139 @@ public class UDPClient {
      * @throws IOException if there is an error while sending the DatagramPacket
      */
     public void launch() throws IOException {
-        DatagramSocket socket = new DatagramSocket();
-        InetAddress serverInetAddress = InetAddress.getByName(serverAddress);
-        Console console = System.console();
+        try (DatagramSocket socket = new DatagramSocket()) {
+            InetAddress serverInetAddress = InetAddress.getByName(serverAddress);
+            Console console = System.console();
 
-        System.out.println("Server address: " + serverAddress);
+            System.out.println("Server address: " + serverAddress);
 
-        if (console == null) {
-            System.err.println("No console available");
-            return;
-        }
+            if (console == null) {
+                System.err.println("No console available");
+                return;
+            }
+            ReliableSender sender = reliable ? openReliableSender(socket, new InetSocketAddress(serverInetAddress, serverPort)) : null;
+            startReceiver(socket, System.out, sender);
+            if (heartbeatSeconds > 0) {
+                startHeartbeat(socket, new InetSocketAddress(serverInetAddress, serverPort), TimeUnit.SECONDS.toMillis(heartbeatSeconds));
+            }
 
-        String userInput;
-        while (true) {
-            userInput = console.readLine();
+            String userInput;
+            while (true) {
+                userInput = console.readLine();
 
-            if ("exit".equalsIgnoreCase(userInput)) {
-                System.out.println("Exiting client.");
-                break;
-            }
+                if (userInput == null || "exit".equalsIgnoreCase(userInput)) {
+                    System.out.println("Exiting client.");
+                    break;
+                }
 
-            byte[] buffer = userInput.getBytes(StandardCharsets.UTF_8);
+                byte[] buffer = userInput.getBytes(StandardCharsets.UTF_8);
 
-            DatagramPacket packet = new DatagramPacket(buffer, buffer.length, serverInetAddress, serverPort);
-            socket.send(packet);
+                if (sender != null) {
+                    try {
+                        System.out.println("Message " + sender.send(buffer) + " sent to server.");
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    continue;
+                }
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length, serverInetAddress, serverPort);
+                socket.send(packet);
 
-            System.out.println("Message sent to server.");
+                System.out.println("Message sent to server.");
+            }
+            if (sender != null) {
+                finishReliable(sender);
+            }
         }
     }
 
+    /**
+     * Creates the sending end of the reliable mode over the client's socket. Datagrams chosen by the loss
+     * simulator are silently not sent.
+     *
+     * @param socket the socket the client sends from
+     * @param server the address of the server
+     * @return the started sender
+     */
+    ReliableSender openReliableSender(DatagramSocket socket, InetSocketAddress server) {
+        LossSimulator loss = lossSimulator;
+        return new ReliableSender(packet -> {
+            if (!loss.drop()) {
+                socket.send(new DatagramPacket(packet, packet.length, server));
+            }
+        }, ReliableSender.DEFAULT_WINDOW);
+    }
+
+    private void finishReliable(ReliableSender sender) {
+        try {
+            if (!sender.awaitAcknowledged(5, TimeUnit.SECONDS)) {
+                System.err.println(sender.getInFlight() + " message(s) were not acknowledged.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            sender.close();
+        }
+        System.out.println("Reliable delivery: " + sender + ".");
+    }
+
+    /**
+     * Starts a daemon thread printing every datagram received on the socket, which are the messages the server
+     * relays from other clients. The thread ends when the socket is closed.
+     *
+     * @param socket The socket the client sends from.
+     * @param out    The stream the messages are printed to.
+     * @return The started thread.
+     */
+    Thread startReceiver(DatagramSocket socket, PrintStream out) {
+        return startReceiver(socket, out, null);
+    }
+
+    /**
+     * Starts a daemon thread printing every relayed message received on the socket and passing acknowledgements
+     * to the reliable sender. The thread ends when the socket is closed.
+     *
+     * @param socket The socket the client sends from.
+     * @param out    The stream the messages are printed to.
+     * @param sender The sender acknowledgements are passed to, or {@code null} outside reliable mode.
+     * @return The started thread.
+     */
+    Thread startReceiver(DatagramSocket socket, PrintStream out, ReliableSender sender) {
+        Thread receiver = new Thread(() -> {
+            byte[] buffer = new byte[UDPServer.MAX_UDP_PAYLOAD];
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                while (true) {
+                    packet.setLength(buffer.length);
+                    socket.receive(packet);
+                    if (sender != null && ReliableProtocol.isAck(packet.getData(), packet.getLength())) {
+                        sender.onAck(packet.getData(), packet.getLength());
+                        continue;
+                    }
+                    out.println(new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8));
+                }
+            } catch (IOException e) {
+                // The socket was closed when the client exited.
+            }
+        }, "udp-client-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+        return receiver;
+    }
+
     /**
      * Main method to run the UDP client. This expects the server address and port as command-line arguments.
      * If the arguments are invalid, it displays the usage and exits.
      *
-     * @param args command-line arguments: server address and port number
+     * @param args command-line arguments: server address and port number, optionally followed by {@code --reliable}
+     *             and {@code --heartbeat <seconds>}
      * @throws IOException if there is an issue creating or sending the DatagramPacket
      */
     public static void main(String[] args) throws IOException {
-        if (args.length != 2) {
-            System.out.println("Usage: java UDPClient <serverAddress> <serverPort>");
+        String usage = "Usage: java UDPClient <serverAddress> <serverPort> [--reliable] [--heartbeat <seconds>]";
+        if (args.length < 2) {
+            System.out.println(usage);
             return;
         }
 
@@ -114,6 +284,16 @@ public class UDPClient {
         int serverPort = Integer.valueOf(args[1]);
 
         UDPClient client = new UDPClient(serverAddress, serverPort);
+        for (int i = 2; i < args.length; i++) {
+            if ("--reliable".equals(args[i])) {
+                client.setReliable(true);
+            } else if ("--heartbeat".equals(args[i]) && i + 1 < args.length) {
+                client.setHeartbeatSeconds(Long.parseLong(args[++i]));
+            } else {
+                System.out.println(usage);
+                return;
+            }
+        }
         client.launch();
     }
 }
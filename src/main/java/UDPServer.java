@@ -1,6 +1,19 @@
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+
 import java.io.IOException;
 import java.net.*;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * The UDPServer class listens for incoming UDP packets on a specified port.
@@ -9,11 +22,34 @@ import java.nio.charset.StandardCharsets;
  *
  * The server binds to a specified port and listens for UDP packets, printing out the received message and
  * client details (IP address and port). The default port is 8000 if no port is provided.
+ * Received datagrams and bytes are counted in a {@link MetricsRegistry}, published over JMX while the server runs.
+ * With a {@link CommitLog} attached, the payload of every datagram is appended to it as received.
+ * Every sender becomes a peer in a {@link PeerTable}, and each message is relayed to all other peers heard from
+ * within the peer timeout, prefixed with the sender's address, so UDP clients can chat with each other.
+ * Clients may use the reliable mode of {@link ReliableProtocol}, in which every message is acknowledged and
+ * delivered once, in order.
+ * Datagrams are received by one or more {@link UDPWorker}s; several workers either share one channel or each bind
+ * their own with {@code SO_REUSEPORT}, so ingestion scales with the number of cores.
+ * Silent peers expire on a {@link TimingWheel}, with one O(1) timeout per peer instead of a periodic scan of the
+ * whole table; clients keep themselves alive while their user is silent by sending heartbeat datagrams.
  */
 public class UDPServer {
     private final int port;
-    private static final int BUFFER_SIZE = 1024;
+    public static final int MAX_UDP_PAYLOAD = 65507;
+    public static final long DEFAULT_PEER_TIMEOUT_SECONDS = 60;
     private static final int DEFAULT_PORT = 8000;
+    private final MetricsRegistry metrics;
+    private final LongAdder messagesIn;
+    private final LongAdder bytesIn;
+    private final LongAdder commitLogFailures;
+    private final LongAdder heartbeatsIn;
+    private final TimingWheel timingWheel = new TimingWheel();
+    private volatile CommitLog commitLog;
+    private volatile List<DatagramChannel> channels = Collections.emptyList();
+    private int workers = 1;
+    private int maxDatagramSize = MAX_UDP_PAYLOAD;
+    private volatile LossSimulator lossSimulator = LossSimulator.NONE;
+    private volatile PeerTable peers = new PeerTable(TimeUnit.SECONDS.toNanos(DEFAULT_PEER_TIMEOUT_SECONDS), timingWheel);
 
     /**
      * Getter for the port field.
@@ -34,37 +70,243 @@ public class UDPServer {
             throw new IllegalArgumentException("Port number must be between 1 and 65535");
         }
         this.port = port;
+        this.metrics = new MetricsRegistry("UDPServer:" + port);
+        this.messagesIn = metrics.counter("messages.in.udp");
+        this.bytesIn = metrics.counter("bytes.in.udp");
+        this.commitLogFailures = metrics.counter("commitlog.failures");
+        this.heartbeatsIn = metrics.counter("heartbeats.in.udp");
+        metrics.gauge("peers", () -> peers.size());
+        metrics.gauge("peers.expired", () -> peers.getExpiredCount());
+        metrics.gauge("timeouts.pending", timingWheel::getPendingCount);
     }
 
     /**
      * Default constructor which sets the port to 8000.
      */
     public UDPServer() {
-        this.port = DEFAULT_PORT;
+        this(DEFAULT_PORT);
+    }
+
+    /**
+     * Returns the metrics of this server.
+     *
+     * @return The metrics registry.
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Attaches a commit log to which every received datagram is appended from now on.
+     *
+     * @param commitLog The commit log, or {@code null} to stop persisting datagrams.
+     */
+    public void setCommitLog(CommitLog commitLog) {
+        this.commitLog = commitLog;
+    }
+
+    /**
+     * Sets the number of receive workers. With more than one worker, each one gets its own channel bound to the
+     * port with {@code SO_REUSEPORT}, so the kernel spreads datagrams across them; where that option is not
+     * available, all workers receive from one shared channel. Call this before {@link #launch()}.
+     *
+     * @param workers The number of workers.
+     * @throws IllegalArgumentException If the number of workers is not positive.
+     */
+    public void setWorkers(int workers) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Number of workers must be positive: " + workers);
+        }
+        this.workers = workers;
+    }
+
+    /**
+     * Returns the number of receive workers.
+     *
+     * @return The number of workers.
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Sets the largest datagram the server accepts. Each worker receives into a direct buffer of this size;
+     * longer datagrams are dropped and counted in {@code datagrams.truncated.udp}. Call this before
+     * {@link #launch()}.
+     *
+     * @param maxDatagramSize The maximum payload size in bytes.
+     * @throws IllegalArgumentException If the size is not between 1 and {@value #MAX_UDP_PAYLOAD}.
+     */
+    public void setMaxDatagramSize(int maxDatagramSize) {
+        if (maxDatagramSize < 1 || maxDatagramSize > MAX_UDP_PAYLOAD) {
+            throw new IllegalArgumentException("Maximum datagram size must be between 1 and " + MAX_UDP_PAYLOAD + ": " + maxDatagramSize);
+        }
+        this.maxDatagramSize = maxDatagramSize;
+    }
+
+    /**
+     * Sets how long a peer may stay silent before it stops receiving relayed messages. Call this before
+     * {@link #launch()}; it starts a new, empty peer table.
+     *
+     * @param seconds The peer timeout.
+     * @throws IllegalArgumentException If the timeout is not positive.
+     */
+    public void setPeerTimeoutSeconds(long seconds) {
+        this.peers = new PeerTable(TimeUnit.SECONDS.toNanos(seconds), timingWheel);
+    }
+
+    /**
+     * Sets the simulator deciding which acknowledgements of the reliable mode are lost, for tests on loopback.
+     *
+     * @param lossSimulator The simulator, or {@link LossSimulator#NONE}.
+     */
+    public void setLossSimulator(LossSimulator lossSimulator) {
+        this.lossSimulator = lossSimulator;
+    }
+
+    /**
+     * Returns the simulator deciding which acknowledgements are lost.
+     *
+     * @return The loss simulator.
+     */
+    public LossSimulator getLossSimulator() {
+        return lossSimulator;
     }
 
     /**
-     * Launches the UDP server, binding it to the specified port. The server listens indefinitely for UDP packets.
-     * When a packet is received, the server prints the message along with the client's address and port.
+     * Returns the table of peers messages are relayed to.
      *
-     * @throws IOException if there is an error receiving the packet or binding to the port
+     * @return The peer table.
+     */
+    public PeerTable getPeers() {
+        return peers;
+    }
+
+    /**
+     * Launches the UDP server, binding it to the specified port, and blocks until {@link #shutdown()} is called or
+     * the calling thread is interrupted. Datagrams are received and processed by the configured number of
+     * {@link UDPWorker}s, each on its own thread.
+     *
+     * @throws IOException if there is an error binding to the port
      */
     public void launch() throws IOException {
-        DatagramSocket socket = new DatagramSocket(this.port);
-        byte[] buffer = new byte[BUFFER_SIZE];
-        System.out.println("UDP Server started on port " + socket.getLocalPort());
+        List<DatagramChannel> opened = openChannels();
+        channels = opened;
+        ExecutorService pool = Executors.newFixedThreadPool(workers, ExecutionMode.PLATFORM.threadFactory("udp-worker-", false));
+        List<UDPWorker> started = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            UDPWorker worker = new UDPWorker(i, opened.get(i % opened.size()), maxDatagramSize, this);
+            started.add(worker);
+            pool.execute(worker);
+        }
+        ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor(ExecutionMode.PLATFORM.threadFactory("udp-timers-", true));
+        timers.scheduleAtFixedRate(() -> started.forEach(UDPWorker::sample), 1, 1, TimeUnit.SECONDS);
+        timingWheel.start("udp-timing-wheel-" + port);
+        Log.info("UDP Server started on port " + port + " with " + workers + " worker(s) on " + opened.size() + " channel(s)");
+        metrics.registerMBean("UDPServer", port);
 
-        while (true) {
-            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-            socket.receive(packet);
-            System.out.println("UDP" + packet.getData());
+        pool.shutdown();
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Workers run until their channel is closed.
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            shutdown();
+            pool.shutdownNow();
+            timers.shutdownNow();
+            timingWheel.close();
+            metrics.close();
+            CommitLog log = commitLog;
+            if (log != null) {
+                log.close();
+            }
+        }
+    }
 
-            String receivedMessage = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
+    /**
+     * Stops the server by closing its channels; the workers and {@link #launch()} then return.
+     */
+    public void shutdown() {
+        List<DatagramChannel> open = channels;
+        for (DatagramChannel channel : open) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Log.error("Failed to close UDP channel: " + e.getMessage());
+            }
+        }
+    }
 
-            InetAddress clientAddress = packet.getAddress();
-            int clientPort = packet.getPort();
+    /**
+     * Records a heartbeat datagram: refreshes its sender in the peer table without relaying anything.
+     *
+     * @param sender The address the heartbeat came from.
+     */
+    void heartbeat(InetSocketAddress sender) {
+        peers.touch(sender, System.nanoTime());
+        heartbeatsIn.increment();
+    }
 
-            System.out.println("Received from " + clientAddress + ":" + clientPort + " - " + receivedMessage);
+    /**
+     * Processes one received datagram: refreshes its sender in the peer table, counts it, appends it to the commit
+     * log and logs it. The payload is only decoded if chat lines are logged.
+     *
+     * @param datagram The datagram; only valid during the call.
+     * @return The peer that sent the datagram, to relay it to the others.
+     */
+    PeerTable.Peer process(ReceivedDatagram datagram) {
+        PeerTable.Peer sender = peers.touch((InetSocketAddress) datagram.getSender(), System.nanoTime());
+        messagesIn.increment();
+        bytesIn.add(datagram.length());
+        persist(datagram.buffer());
+
+        if (Log.isMessageLoggingEnabled()) {
+            Log.message("Received from " + datagram.getSender() + " - " + datagram.text());
+        }
+        return sender;
+    }
+
+    private List<DatagramChannel> openChannels() throws IOException {
+        List<DatagramChannel> opened = new ArrayList<>();
+        boolean shard = workers > 1 && supportsReusePort();
+        try {
+            for (int i = 0; i < (shard ? workers : 1); i++) {
+                DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+                opened.add(channel);
+                if (shard) {
+                    channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                }
+                channel.bind(new InetSocketAddress(port));
+            }
+        } catch (IOException e) {
+            for (DatagramChannel channel : opened) {
+                channel.close();
+            }
+            throw e;
+        }
+        return opened;
+    }
+
+    private static boolean supportsReusePort() {
+        try (DatagramChannel probe = DatagramChannel.open(StandardProtocolFamily.INET)) {
+            return probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void persist(ByteBuffer payload) {
+        CommitLog log = commitLog;
+        if (log == null) {
+            return;
+        }
+        try {
+            log.append(payload);
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            commitLogFailures.increment();
+            Log.error("Failed to append to the commit log: " + e.getMessage());
         }
     }
 
@@ -80,23 +322,65 @@ public class UDPServer {
                 '}';
     }
 
+    /**
+     * Represents the command-line arguments for the UDP server.
+     */
+    public static class Args {
+        @Parameter(description = "[port]")
+        private List<String> positional = new ArrayList<>();
+
+        @Parameter(names = {"-w", "--workers"}, description = "Number of receive workers, each with its own SO_REUSEPORT channel where supported")
+        private int workers = 1;
+
+        @Parameter(names = "--max-datagram", description = "Largest datagram accepted, in bytes; longer ones are dropped and counted")
+        private int maxDatagramSize = MAX_UDP_PAYLOAD;
+
+        @Parameter(names = "--peer-timeout", description = "Seconds a silent peer keeps receiving relayed messages")
+        private long peerTimeoutSeconds = DEFAULT_PEER_TIMEOUT_SECONDS;
+
+        @Parameter(names = "--commit-log", description = "Directory of the durable message log (disabled if not set)")
+        private String commitLogDirectory;
+
+        @Parameter(names = {"-h", "--help"}, help = true, description = "Display help message")
+        private boolean help = false;
+    }
+
     /**
      * The main method that starts the UDP server.
      * The server listens on the provided port or on the default port if no port is provided.
      *
-     * @param args command-line arguments: the first argument is the port number (optional)
+     * @param args command-line arguments: the port number (optional) followed by options
      * @throws IOException if there is an error while launching or receiving packets
      */
     public static void main(String[] args) throws IOException {
-        if (args.length == 0) {
-            UDPServer server = new UDPServer();
-            System.out.println(server);
-            server.launch();
+        Args jArgs = new Args();
+        JCommander commander = JCommander.newBuilder()
+                .addObject(jArgs)
+                .programName("UDPServer")
+                .build();
+        UDPServer server;
+        try {
+            commander.parse(args);
+            if (jArgs.help) {
+                commander.usage();
+                return;
+            }
+            server = jArgs.positional.isEmpty() ? new UDPServer() : new UDPServer(Integer.parseInt(jArgs.positional.get(0)));
+            server.setWorkers(jArgs.workers);
+            server.setMaxDatagramSize(jArgs.maxDatagramSize);
+            server.setPeerTimeoutSeconds(jArgs.peerTimeoutSeconds);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            commander.usage();
+            return;
         }
-        else {
-            UDPServer server = new UDPServer(Integer.valueOf(args[0]));
-            System.out.println(server);
-            server.launch();
+        if (jArgs.commitLogDirectory != null) {
+            server.setCommitLog(new CommitLog(Paths.get(jArgs.commitLogDirectory)));
         }
+        System.out.println(server);
+        server.launch();
     }
 }
@@ -0,0 +1,204 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code UDPWorker} class is one receive loop of a {@link UDPServer}. It blocks on a {@link DatagramChannel},
+ * either its own one bound with {@code SO_REUSEPORT} or one shared with the other workers, and processes every
+ * datagram it receives on its own thread.
+ * Datagrams are received into one direct buffer, one byte larger than the maximum datagram size so that a longer
+ * datagram, which the channel would silently truncate, is detected, counted and dropped. The worker hands the
+ * server the same {@link ReceivedDatagram} every time, so the steady-state receive loop allocates nothing.
+ * Each worker counts its own packets and bytes, so the load of every core can be followed separately.
+ * <p>
+ * Every message is relayed to the other live peers of the server's {@link PeerTable}: the sender's prefix and the
+ * payload are copied once into a second direct buffer, which is then sent to each peer in turn.
+ * <p>
+ * Datagrams of the reliable mode ({@link ReliableProtocol}) go through the sender's {@link ReliableReceiver}
+ * first: every one is acknowledged, duplicates are dropped and the messages are processed in sequence order.
+ */
+public class UDPWorker implements Runnable {
+    private static final int MAX_PREFIX_BYTES = 64;
+
+    private final int index;
+    private final DatagramChannel channel;
+    private final ByteBuffer buffer;
+    private final ByteBuffer relayBuffer;
+    private final ByteBuffer ackBuffer = ByteBuffer.allocateDirect(ReliableProtocol.ACK_LENGTH);
+    private final ReceivedDatagram datagram;
+    private final int maxDatagramSize;
+    private final UDPServer server;
+    private final LongAdder packets;
+    private final LongAdder bytes;
+    private final LongAdder truncated;
+    private final LongAdder relayed;
+    private final LongAdder relayedBytes;
+    private final LongAdder relayFailures;
+    private final LongAdder reliableDuplicates;
+    private final LongAdder acksSent;
+    private long sampledPackets;
+    private long sampledNanos = System.nanoTime();
+    private volatile long packetsPerSecond;
+
+    /**
+     * Constructs a new {@code UDPWorker}.
+     *
+     * @param index           The number of the worker, used in metric names.
+     * @param channel         The channel to receive from.
+     * @param maxDatagramSize The largest datagram accepted; longer ones are dropped.
+     * @param server          The server processing the datagrams.
+     */
+    public UDPWorker(int index, DatagramChannel channel, int maxDatagramSize, UDPServer server) {
+        this.index = index;
+        this.channel = channel;
+        this.maxDatagramSize = maxDatagramSize;
+        this.buffer = ByteBuffer.allocateDirect(maxDatagramSize + 1);
+        this.relayBuffer = ByteBuffer.allocateDirect(maxDatagramSize + MAX_PREFIX_BYTES);
+        this.datagram = new ReceivedDatagram(buffer);
+        this.server = server;
+        this.packets = server.getMetrics().counter("messages.in.udp.worker" + index);
+        this.bytes = server.getMetrics().counter("bytes.in.udp.worker" + index);
+        this.truncated = server.getMetrics().counter("datagrams.truncated.udp");
+        this.relayed = server.getMetrics().counter("messages.out.udp");
+        this.relayedBytes = server.getMetrics().counter("bytes.out.udp");
+        this.relayFailures = server.getMetrics().counter("relay.failures.udp");
+        this.reliableDuplicates = server.getMetrics().counter("reliable.duplicates.udp");
+        this.acksSent = server.getMetrics().counter("acks.out.udp");
+        server.getMetrics().gauge("packets.per.second.udp.worker" + index, this::getPacketsPerSecond);
+    }
+
+    /**
+     * Receives and processes datagrams until the channel is closed.
+     */
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                buffer.clear();
+                SocketAddress sender = channel.receive(buffer);
+                buffer.flip();
+                packets.increment();
+                bytes.add(buffer.remaining());
+                if (buffer.remaining() > maxDatagramSize) {
+                    truncated.increment();
+                    Log.debug("Dropped a datagram from " + sender + " longer than " + maxDatagramSize + " bytes");
+                    continue;
+                }
+                if (ReliableProtocol.isHeartbeat(buffer)) {
+                    server.heartbeat((InetSocketAddress) sender);
+                    continue;
+                }
+                if (ReliableProtocol.isData(buffer)) {
+                    receiveReliable(sender);
+                    continue;
+                }
+                datagram.reset(sender);
+                relay(server.process(datagram));
+            }
+        } catch (AsynchronousCloseException e) {
+            // The server is shutting down.
+        } catch (IOException e) {
+            Log.error("UDP worker " + index + " stopped: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Processes the messages the reliable datagram just received makes deliverable, then acknowledges it, so an
+     * acknowledged message has been logged and relayed.
+     *
+     * @param sender The address the datagram came from.
+     * @throws IOException If the channel fails.
+     */
+    private void receiveReliable(SocketAddress sender) throws IOException {
+        PeerTable.Peer peer = server.getPeers().touch((InetSocketAddress) sender, System.nanoTime());
+        ReliableReceiver receiver = peer.getReliableReceiver();
+        int sequence = buffer.getInt(buffer.position() + 1);
+        int base = buffer.getInt(buffer.position() + 5);
+        buffer.position(buffer.position() + ReliableProtocol.DATA_HEADER_LENGTH);
+        long duplicatesBefore = receiver.getDuplicateCount();
+        List<byte[]> messages = receiver.receive(sequence, base, buffer);
+        reliableDuplicates.add(receiver.getDuplicateCount() - duplicatesBefore);
+
+        for (byte[] message : messages) {
+            buffer.clear();
+            buffer.put(message).flip();
+            datagram.reset(sender);
+            relay(server.process(datagram));
+        }
+
+        receiver.writeAck(ackBuffer);
+        if (!server.getLossSimulator().drop()) {
+            channel.send(ackBuffer, sender);
+            acksSent.increment();
+        }
+    }
+
+    /**
+     * Sends the datagram just received to every live peer except its sender, prefixed with the sender's address.
+     *
+     * @param from The peer the datagram came from.
+     */
+    private void relay(PeerTable.Peer from) {
+        PeerTable.Peer[] peers = server.getPeers().snapshot();
+        if (peers.length < 2) {
+            return;
+        }
+        byte[] prefix = from.getPrefix();
+        relayBuffer.clear();
+        relayBuffer.put(prefix, 0, Math.min(prefix.length, MAX_PREFIX_BYTES));
+        relayBuffer.put(buffer);
+        relayBuffer.flip();
+        for (PeerTable.Peer peer : peers) {
+            if (peer == from) {
+                continue;
+            }
+            try {
+                relayBuffer.rewind();
+                relayedBytes.add(channel.send(relayBuffer, peer.getAddress()));
+                relayed.increment();
+            } catch (AsynchronousCloseException e) {
+                return;
+            } catch (IOException e) {
+                relayFailures.increment();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of datagrams this worker has received.
+     *
+     * @return The packet count.
+     */
+    public long getPacketCount() {
+        return packets.sum();
+    }
+
+    /**
+     * Returns the receive rate measured over the last sampling interval.
+     *
+     * @return The number of packets per second.
+     */
+    public long getPacketsPerSecond() {
+        return packetsPerSecond;
+    }
+
+    /**
+     * Updates the receive rate from the packets counted since the previous sample.
+     * Called periodically by the server.
+     */
+    void sample() {
+        long now = System.nanoTime();
+        long count = packets.sum();
+        long elapsed = now - sampledNanos;
+        if (elapsed > 0) {
+            packetsPerSecond = (count - sampledPackets) * 1_000_000_000L / elapsed;
+        }
+        sampledPackets = count;
+        sampledNanos = now;
+    }
+}
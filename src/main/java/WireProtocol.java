@@ -0,0 +1,48 @@
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The {@code WireProtocol} enum lists the formats a {@link TCPMultiServer} client can speak: newline-terminated
+ * text lines, as typed in telnet, or length-prefixed {@link FrameCodec} frames.
+ */
+public enum WireProtocol {
+    TEXT {
+        @Override
+        public void write(EncodedMessage message, OutputStream out) throws IOException {
+            message.writeTo(out);
+        }
+
+        @Override
+        public int length(EncodedMessage message) {
+            return message.length();
+        }
+    },
+    BINARY {
+        @Override
+        public void write(EncodedMessage message, OutputStream out) throws IOException {
+            message.writeFrameTo(out);
+        }
+
+        @Override
+        public int length(EncodedMessage message) {
+            return message.frameLength();
+        }
+    };
+
+    /**
+     * Writes a message to a client speaking this protocol.
+     *
+     * @param message The encoded message.
+     * @param out     The client's stream.
+     * @throws IOException If the stream fails.
+     */
+    public abstract void write(EncodedMessage message, OutputStream out) throws IOException;
+
+    /**
+     * Returns the number of bytes {@link #write(EncodedMessage, OutputStream)} sends for a message.
+     *
+     * @param message The encoded message.
+     * @return The number of bytes on the wire.
+     */
+    public abstract int length(EncodedMessage message);
+}
@@ -0,0 +1,72 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code WriteBatchStats} class counts how many messages and bytes are coalesced into each flush to a client
+ * socket. One instance is shared by all connections of a server that speak the same protocol; recording is
+ * lock-free.
+ */
+public class WriteBatchStats {
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder messageCount = new LongAdder();
+    private final LongAdder byteCount = new LongAdder();
+
+    /**
+     * Records one flush.
+     *
+     * @param messages The number of messages written by the flush.
+     * @param bytes    The number of bytes written by the flush.
+     */
+    public void record(int messages, long bytes) {
+        flushCount.increment();
+        messageCount.add(messages);
+        byteCount.add(bytes);
+    }
+
+    /**
+     * Returns the number of flushes recorded.
+     *
+     * @return The flush count.
+     */
+    public long getFlushCount() {
+        return flushCount.sum();
+    }
+
+    /**
+     * Returns the number of messages written by all recorded flushes.
+     *
+     * @return The message count.
+     */
+    public long getMessageCount() {
+        return messageCount.sum();
+    }
+
+    /**
+     * Returns the number of bytes written by all recorded flushes.
+     *
+     * @return The byte count.
+     */
+    public long getByteCount() {
+        return byteCount.sum();
+    }
+
+    /**
+     * Returns the average number of messages per flush.
+     *
+     * @return The average batch size, or {@code 0} if nothing was flushed.
+     */
+    public double getAverageBatchSize() {
+        long flushes = flushCount.sum();
+        return flushes == 0 ? 0 : (double) messageCount.sum() / flushes;
+    }
+
+    /**
+     * Returns a one-line summary of the batching achieved.
+     *
+     * @return The flush and message counts with the average batch size.
+     */
+    @Override
+    public String toString() {
+        return String.format(java.util.Locale.ROOT, "%d messages in %d flushes (%.2f per flush)",
+                getMessageCount(), getFlushCount(), getAverageBatchSize());
+    }
+}
@@ -0,0 +1,94 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncLoggerTest {
+
+    @Test
+    void testEntriesAreWrittenInOrderToTheirStream() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        PrintStream outStream = new PrintStream(out, true, StandardCharsets.UTF_8);
+        PrintStream errStream = new PrintStream(err, true, StandardCharsets.UTF_8);
+        AsyncLogger logger = new AsyncLogger(64, () -> outStream, () -> errStream);
+        try {
+            logger.log(LogLevel.DEBUG, "hidden");
+            logger.log(LogLevel.INFO, "first");
+            logger.message("Alice: hi");
+            logger.log(LogLevel.ERROR, "broken");
+            logger.log(LogLevel.INFO, "second");
+            assertTrue(logger.flush(2, TimeUnit.SECONDS));
+        } finally {
+            logger.close();
+        }
+
+        String n = System.lineSeparator();
+        assertEquals("first" + n + "Alice: hi" + n + "second" + n, out.toString(StandardCharsets.UTF_8));
+        assertEquals("broken" + n, err.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testLevelsAndMessageSwitch() {
+        AsyncLogger logger = new AsyncLogger(16, () -> new PrintStream(OutputStream.nullOutputStream()),
+                () -> new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            assertFalse(logger.log(LogLevel.DEBUG, "filtered"), "DEBUG is below the default INFO level.");
+            logger.setMessageLogging(false);
+            assertFalse(logger.isMessageLoggingEnabled());
+            assertFalse(logger.message("Alice: hi"), "Per-message logging can be switched off.");
+            assertTrue(logger.log(LogLevel.INFO, "still logged"));
+
+            logger.setLevel(LogLevel.OFF);
+            assertFalse(logger.log(LogLevel.ERROR, "off"));
+            assertEquals(0, logger.getDroppedCount(), "Filtered entries are not drops.");
+        } finally {
+            logger.close();
+        }
+        assertThrows(IllegalArgumentException.class, () -> new AsyncLogger(0));
+    }
+
+    @Test
+    void testFullBufferDropsInsteadOfBlocking() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PrintStream stalled = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        AsyncLogger logger = new AsyncLogger(8, () -> stalled, () -> stalled);
+        try {
+            logger.log(LogLevel.INFO, "stalls the drainer");
+            assertTrue(writing.await(2, TimeUnit.SECONDS));
+
+            long start = System.nanoTime();
+            int queued = 0;
+            for (int i = 0; i < 20; i++) {
+                if (logger.log(LogLevel.INFO, "entry " + i)) {
+                    queued++;
+                }
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertEquals(8, queued, "Only the buffer capacity should be accepted while the drainer is stalled.");
+            assertEquals(12, logger.getDroppedCount());
+            assertTrue(elapsedMillis < 500, "Logging must not block: " + elapsedMillis + " ms");
+        } finally {
+            release.countDown();
+            logger.close();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import org.junit.jupiter.api.Test;
+
+import java.net.Socket;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ChatRoomTest {
+
+    @Test
+    void testBroadcastReachesMembersExceptSender() {
+        ChatRoom room = new ChatRoom("dev");
+        ClientWriter alice = new ClientWriter("Alice", mock(Socket.class), 16);
+        ClientWriter bob = new ClientWriter("Bob", mock(Socket.class), 16);
+        ClientRegistry registry = new ClientRegistry();
+        registry.register(alice);
+        registry.register(bob);
+        room.join("Alice", alice);
+        room.join("Bob", bob);
+
+        assertEquals(1, room.broadcast(EncodedMessage.of("Alice: hi"), alice.getClientId()));
+
+        assertEquals(0, alice.getQueueDepth(), "The sender should not receive its own message.");
+        assertEquals(1, bob.getQueueDepth());
+        assertEquals(1, room.getMessageCount());
+
+        room.part("Bob");
+        assertEquals(0, room.broadcast(EncodedMessage.of("Alice: anyone?"), alice.getClientId()),
+                "A member who left is no longer a recipient.");
+    }
+
+    @Test
+    void testMembershipCounts() {
+        ChatRoom room = new ChatRoom("dev");
+        room.join("Alice", new ClientWriter("Alice", mock(Socket.class), 16));
+        room.join("Bob", new ClientWriter("Bob", mock(Socket.class), 16));
+        assertEquals(2, room.getMemberCount());
+        assertTrue(room.contains("Alice"));
+
+        room.part("Alice");
+        room.part("Bob");
+        assertTrue(room.isEmpty());
+        assertEquals("#dev (0 members, 0 messages)", room.toString());
+    }
+
+    @Test
+    void testConcurrentJoinsPartsAndBroadcasts() throws InterruptedException {
+        ChatRoom room = new ChatRoom("dev", new MessageHistory(8, 4096));
+        ClientRegistry registry = new ClientRegistry();
+        ClientWriter resident = new ClientWriter("Resident", mock(Socket.class), 4096);
+        registry.register(resident);
+        room.join("Resident", resident);
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            String nickname = "Member" + t;
+            ClientWriter writer = new ClientWriter(nickname, mock(Socket.class), 4096);
+            registry.register(writer);
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 200; i++) {
+                    room.join(nickname, writer);
+                    room.broadcast(EncodedMessage.of(nickname + ": " + i), writer.getClientId());
+                    room.part(nickname);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, room.getMemberCount(), "Every member who left is gone, and only them.");
+        assertTrue(room.contains("Resident"));
+        assertEquals(800, room.getMessageCount());
+        assertEquals(800, resident.getQueueDepth(), "A member who stays receives every message exactly once.");
+    }
+}
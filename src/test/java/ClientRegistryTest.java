@@ -0,0 +1,149 @@
+import org.junit.jupiter.api.Test;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ClientRegistryTest {
+
+    @Test
+    void testReserveAppendsASuffixWhenTheNameIsTaken() {
+        ClientRegistry registry = new ClientRegistry();
+        assertEquals("Alice", registry.reserve("Alice"));
+        assertEquals("Alice-2", registry.reserve("Alice"));
+        assertEquals("Alice-3", registry.reserve("Alice"));
+        assertTrue(registry.isTaken("Alice-2"));
+
+        registry.release("Alice");
+        assertFalse(registry.isTaken("Alice"));
+        assertEquals("Alice", registry.reserve("Alice"), "A released name can be reserved again.");
+    }
+
+    @Test
+    void testReserveExactlyNeverPicksAnotherName() {
+        ClientRegistry registry = new ClientRegistry();
+        assertTrue(registry.reserveExactly("Alice"));
+        assertFalse(registry.reserveExactly("Alice"));
+        assertFalse(registry.isTaken("Alice-2"));
+        assertEquals("Alice-2", registry.reserve("Alice"), "A name held exactly is skipped by reserve().");
+    }
+
+    @Test
+    void testConcurrentReservationsNeverShareAName() throws InterruptedException {
+        ClientRegistry registry = new ClientRegistry();
+        Set<String> granted = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < 50; j++) {
+                    granted.add(registry.reserve("Bob"));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400, granted.size(), "Every reservation must yield a distinct nickname.");
+    }
+
+    @Test
+    void testSnapshotTracksRegistrationsAndReleases() {
+        ClientRegistry registry = new ClientRegistry();
+        ClientWriter alice = new ClientWriter("Alice", mock(Socket.class), 16);
+        ClientWriter bob = new ClientWriter("Bob", mock(Socket.class), 16);
+        registry.register(alice);
+        registry.register(bob);
+
+        ClientWriter[] before = registry.snapshot();
+        ClientWriter duplicate = new ClientWriter("Alice", mock(Socket.class), 16);
+        assertThrows(IllegalStateException.class, () -> registry.register(duplicate),
+                "A live writer is never replaced by another one with the same name.");
+        assertSame(bob, registry.release("Bob"));
+
+        assertEquals(2, before.length, "An earlier snapshot is not affected by later changes.");
+        assertArrayEquals(new ClientWriter[]{alice}, registry.snapshot());
+        assertSame(alice, registry.get("Alice"));
+        assertNull(registry.get("Bob"));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    void testReleaseRacingWithRegisterLeavesNoGhostRecipient() {
+        ClientRegistry registry = new ClientRegistry();
+        // Releases the client in the window between its writer being indexed and being published for broadcasts.
+        ClientWriter alice = new ClientWriter("Alice", mock(Socket.class), 16) {
+            private boolean released;
+
+            @Override
+            void setClientId(int clientId) {
+                super.setClientId(clientId);
+                if (!released) {
+                    released = true;
+                    assertSame(this, registry.release("Alice"));
+                }
+            }
+        };
+
+        registry.register(alice);
+
+        assertNull(registry.get("Alice"));
+        assertEquals(0, registry.size(), "A released client must not stay in the broadcast snapshot.");
+        assertEquals(0, registry.broadcast(EncodedMessage.of("anyone?"), ClientRegistry.NO_ID));
+    }
+
+    @Test
+    void testClientIdsAreCompactAndReused() {
+        ClientRegistry registry = new ClientRegistry();
+        ClientWriter alice = new ClientWriter("Alice", mock(Socket.class), 16);
+        ClientWriter bob = new ClientWriter("Bob", mock(Socket.class), 16);
+        ClientWriter carol = new ClientWriter("Carol", mock(Socket.class), 16);
+        assertEquals(ClientRegistry.NO_ID, alice.getClientId());
+        registry.register(alice);
+        registry.register(bob);
+        registry.register(carol);
+        assertArrayEquals(new int[]{0, 1, 2}, new int[]{alice.getClientId(), bob.getClientId(), carol.getClientId()});
+        assertSame(bob, registry.get(1));
+        assertEquals(1, registry.idOf("Bob"));
+
+        registry.release("Bob");
+        assertNull(registry.get(1));
+        assertEquals(ClientRegistry.NO_ID, registry.idOf("Bob"));
+        assertEquals(ClientRegistry.NO_ID, registry.idOf(null));
+
+        ClientWriter dave = new ClientWriter("Dave", mock(Socket.class), 16);
+        registry.register(dave);
+        assertEquals(1, dave.getClientId(), "The lowest free ID is handed out again.");
+        assertSame(dave, registry.get(1));
+        assertNull(registry.get(3));
+        assertNull(registry.get(ClientRegistry.NO_ID));
+    }
+
+    @Test
+    void testBroadcastSkipsTheExcludedId() {
+        ClientRegistry registry = new ClientRegistry();
+        ClientWriter alice = new ClientWriter("Alice", mock(Socket.class), 16);
+        ClientWriter bob = new ClientWriter("Bob", mock(Socket.class), 16);
+        registry.register(alice);
+        registry.register(bob);
+
+        assertEquals(1, registry.broadcast(EncodedMessage.of("Alice: hi"), registry.idOf("Alice")));
+        assertEquals(0, alice.getQueueDepth());
+        assertEquals(1, bob.getQueueDepth());
+        assertEquals(2, registry.broadcast(EncodedMessage.of("Server notice"), ClientRegistry.NO_ID));
+    }
+}
@@ -0,0 +1,331 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ClientWriterTest {
+
+    @Test
+    void testInvalidQueueCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new ClientWriter("Alice", mock(Socket.class), 0));
+    }
+
+    @Test
+    void testMessagesAreWrittenInOrder() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Socket socketMock = mock(Socket.class);
+        when(socketMock.getOutputStream()).thenReturn(output);
+
+        ClientWriter writer = new ClientWriter("Alice", socketMock, 16);
+        writer.start();
+        assertTrue(writer.send(EncodedMessage.of("first")));
+        assertTrue(writer.send(EncodedMessage.of("second")));
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (writer.getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        writer.close();
+
+        assertEquals("first\nsecond\n", output.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testStalledClientDoesNotBlockSender() throws Exception {
+        CountDownLatch writeStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        OutputStream stalledStream = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                writeStarted.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        };
+        Socket socketMock = mock(Socket.class);
+        when(socketMock.getOutputStream()).thenReturn(stalledStream);
+
+        ClientWriter writer = new ClientWriter("Slow", socketMock, 4);
+        writer.start();
+        writer.send(EncodedMessage.of("blocked in write"));
+        assertTrue(writeStarted.await(2, TimeUnit.SECONDS), "Writer should start writing the first message.");
+
+        long start = System.nanoTime();
+        int accepted = 0;
+        for (int i = 0; i < 10; i++) {
+            if (writer.send(EncodedMessage.of("message " + i))) {
+                accepted++;
+            }
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(4, accepted, "Only the queue capacity should be accepted while the client is stalled.");
+        assertEquals(4, writer.getQueueDepth());
+        assertEquals(6, writer.getDroppedCount());
+        assertTrue(elapsedMillis < 500, "Sending to a stalled client must not block: " + elapsedMillis + " ms");
+
+        release.countDown();
+        writer.close();
+    }
+
+    @Test
+    void testQueuedMessagesAreFlushedTogether() throws Exception {
+        CountDownLatch writeStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        int[] writes = {0};
+        OutputStream countingStream = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public synchronized void write(byte[] b, int off, int len) throws IOException {
+                writeStarted.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                writes[0]++;
+                received.write(b, off, len);
+            }
+        };
+        Socket socketMock = mock(Socket.class);
+        when(socketMock.getOutputStream()).thenReturn(countingStream);
+
+        WriteBatchStats stats = new WriteBatchStats();
+        ClientWriter writer = new ClientWriter("Alice", socketMock, 64, ExecutionMode.PLATFORM.threadFactory("writer-", true),
+                WireProtocol.TEXT, 0, stats);
+        writer.start();
+        writer.send(EncodedMessage.of("first"));
+        assertTrue(writeStarted.await(2, TimeUnit.SECONDS), "Writer should start writing the first message.");
+        for (int i = 0; i < 10; i++) {
+            writer.send(EncodedMessage.of("queued " + i));
+        }
+        release.countDown();
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (stats.getMessageCount() < 11 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        writer.close();
+
+        assertEquals(2, stats.getFlushCount(), "The ten queued messages should be flushed as one batch.");
+        assertEquals(5.5, stats.getAverageBatchSize(), 0.001);
+        synchronized (countingStream) {
+            assertEquals(2, writes[0], "Each batch should reach the socket in a single write.");
+            assertTrue(received.toString(StandardCharsets.UTF_8).endsWith("queued 9\n"));
+        }
+    }
+
+    @Test
+    void testMaxHoldWaitsForMoreMessages() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Socket socketMock = mock(Socket.class);
+        when(socketMock.getOutputStream()).thenReturn(output);
+
+        WriteBatchStats stats = new WriteBatchStats();
+        ClientWriter writer = new ClientWriter("Alice", socketMock, 16, ExecutionMode.PLATFORM.threadFactory("writer-", true),
+                WireProtocol.TEXT, TimeUnit.MILLISECONDS.toNanos(500), stats);
+        writer.start();
+        for (int i = 0; i < 3; i++) {
+            writer.send(EncodedMessage.of("message " + i));
+            Thread.sleep(20);
+        }
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (stats.getFlushCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        writer.close();
+
+        assertEquals(1, stats.getFlushCount(), "Messages arriving within the hold time should share one flush.");
+        assertEquals(3, stats.getMessageCount());
+        assertThrows(IllegalArgumentException.class, () -> new ClientWriter("Bob", socketMock, 16,
+                ExecutionMode.PLATFORM.threadFactory("writer-", true), WireProtocol.TEXT, -1, stats));
+    }
+
+    @Test
+    void testDropNewestKeepsPendingBytesUnderHighWaterMark() throws Exception {
+        StalledStream stream = new StalledStream();
+        SlowConsumerStats stats = new SlowConsumerStats();
+        ClientWriter writer = slowConsumerWriter(stream, SlowConsumerPolicy.DROP_NEWEST, 20, stats);
+        writer.start();
+        writer.send(EncodedMessage.of("blocked"));
+        assertTrue(stream.writeStarted.await(2, TimeUnit.SECONDS), "Writer should start writing the first message.");
+
+        for (int i = 0; i < 10; i++) {
+            writer.send(EncodedMessage.of("m" + i));
+        }
+
+        assertEquals(8 + 4 * 3, writer.getPendingBytes());
+        assertEquals(6, stats.getDroppedNewest());
+        assertEquals(6, writer.getDroppedCount());
+
+        stream.release.countDown();
+        awaitDrained(writer);
+        writer.close();
+        assertEquals("blocked\nm0\nm1\nm2\nm3\n", stream.written());
+        assertEquals(0, writer.getPendingBytes());
+    }
+
+    @Test
+    void testDropOldestKeepsMostRecentMessages() throws Exception {
+        StalledStream stream = new StalledStream();
+        SlowConsumerStats stats = new SlowConsumerStats();
+        ClientWriter writer = slowConsumerWriter(stream, SlowConsumerPolicy.DROP_OLDEST, 20, stats);
+        writer.start();
+        writer.send(EncodedMessage.of("blocked"));
+        assertTrue(stream.writeStarted.await(2, TimeUnit.SECONDS), "Writer should start writing the first message.");
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(writer.send(EncodedMessage.of("m" + i)));
+        }
+
+        assertEquals(6, stats.getDroppedOldest());
+        assertEquals(0, stats.getDroppedNewest());
+
+        stream.release.countDown();
+        awaitDrained(writer);
+        writer.close();
+        assertEquals("blocked\nm6\nm7\nm8\nm9\n", stream.written());
+    }
+
+    @Test
+    void testMessageTooLongForAFrameClosesTheConnection() throws Exception {
+        Socket socketMock = mock(Socket.class);
+        when(socketMock.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+        CountDownLatch closed = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            closed.countDown();
+            return null;
+        }).when(socketMock).close();
+        ClientWriter writer = new ClientWriter("Alice", socketMock, 16, ExecutionMode.PLATFORM.threadFactory("writer-", true),
+                WireProtocol.BINARY);
+        writer.start();
+
+        assertTrue(writer.send(EncodedMessage.of("x".repeat(FrameCodec.MAX_PAYLOAD_LENGTH + 1))));
+
+        assertTrue(closed.await(2, TimeUnit.SECONDS), "A writer that cannot encode a message disconnects its client.");
+        writer.close();
+    }
+
+    @Test
+    void testDisconnectSendsNoticeAndClosesSocket() throws Exception {
+        StalledStream stream = new StalledStream();
+        Socket socketMock = mock(Socket.class);
+        when(socketMock.getOutputStream()).thenReturn(stream);
+        // Socket.close() is synchronized, so verify(..., timeout(...)) would hold the monitor the writer needs.
+        CountDownLatch closed = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            closed.countDown();
+            return null;
+        }).when(socketMock).close();
+        SlowConsumerStats stats = new SlowConsumerStats();
+        ClientWriter writer = new ClientWriter("Slow", socketMock, 16, ExecutionMode.PLATFORM.threadFactory("writer-", true),
+                WireProtocol.TEXT, 0, new WriteBatchStats(), SlowConsumerPolicy.DISCONNECT, 20, stats);
+        writer.start();
+        writer.send(EncodedMessage.of("blocked"));
+        assertTrue(stream.writeStarted.await(2, TimeUnit.SECONDS), "Writer should start writing the first message.");
+
+        int accepted = 0;
+        for (int i = 0; i < 10; i++) {
+            if (writer.send(EncodedMessage.of("m" + i))) {
+                accepted++;
+            }
+        }
+
+        assertEquals(4, accepted);
+        assertTrue(writer.isDisconnecting());
+        assertEquals(1, stats.getDisconnects());
+
+        stream.release.countDown();
+        assertTrue(closed.await(2, TimeUnit.SECONDS), "The socket should be closed once the notice is written.");
+        assertEquals("blocked\n" + ClientWriter.DISCONNECT_NOTICE + "\n", stream.written());
+        writer.close();
+    }
+
+    @Test
+    void testMessageLargerThanHighWaterMarkIsAcceptedWhenIdle() throws Exception {
+        StalledStream stream = new StalledStream();
+        stream.release.countDown();
+        ClientWriter writer = slowConsumerWriter(stream, SlowConsumerPolicy.DISCONNECT, 4, new SlowConsumerStats());
+        writer.start();
+
+        assertTrue(writer.send(EncodedMessage.of("longer than four bytes")));
+        awaitDrained(writer);
+        writer.close();
+
+        assertFalse(writer.isDisconnecting());
+        assertEquals("longer than four bytes\n", stream.written());
+        assertThrows(IllegalArgumentException.class,
+                () -> slowConsumerWriter(stream, SlowConsumerPolicy.DROP_NEWEST, 0, new SlowConsumerStats()));
+    }
+
+    private static ClientWriter slowConsumerWriter(OutputStream stream, SlowConsumerPolicy policy, long highWaterBytes,
+                                                   SlowConsumerStats stats) throws IOException {
+        Socket socketMock = mock(Socket.class);
+        when(socketMock.getOutputStream()).thenReturn(stream);
+        return new ClientWriter("Slow", socketMock, 16, ExecutionMode.PLATFORM.threadFactory("writer-", true),
+                WireProtocol.TEXT, 0, new WriteBatchStats(), policy, highWaterBytes, stats);
+    }
+
+    private static void awaitDrained(ClientWriter writer) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (writer.getPendingBytes() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * An output stream that blocks the first write until released, then records everything written.
+     */
+    private static final class StalledStream extends OutputStream {
+        private final CountDownLatch writeStarted = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            writeStarted.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            synchronized (written) {
+                written.write(b, off, len);
+            }
+        }
+
+        private String written() {
+            synchronized (written) {
+                return written.toString(StandardCharsets.UTF_8);
+            }
+        }
+    }
+}
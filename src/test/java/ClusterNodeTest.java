@@ -0,0 +1,235 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterNodeTest {
+
+    @Test
+    void testInvalidConfiguration() {
+        TCPMultiServer server = new TCPMultiServer(9130);
+        assertThrows(IllegalArgumentException.class, () -> new ClusterNode(server, "", 9140, List.of()));
+        assertThrows(IllegalArgumentException.class, () -> new ClusterNode(server, "a", 0, List.of()));
+        assertThrows(IllegalArgumentException.class, () -> ClusterNode.parseAddress("localhost"));
+        assertThrows(IllegalArgumentException.class, () -> ClusterNode.parseAddress("localhost:x"));
+        assertEquals(9140, ClusterNode.parseAddress("127.0.0.1:9140").getPort());
+        server.shutdown();
+    }
+
+    @Test
+    void testBroadcastReachesEveryNodeExactlyOnce() throws Exception {
+        TCPMultiServer[] nodes = startCluster(3, 9131, 9141);
+        try (Socket alice = new Socket("localhost", 9131);
+             Socket bob = new Socket("localhost", 9132);
+             Socket carol = new Socket("localhost", 9133)) {
+            Scanner aliceIn = login(nodes[0], alice, "Alice");
+            Scanner bobIn = login(nodes[1], bob, "Bob");
+            Scanner carolIn = login(nodes[2], carol, "Carol");
+            PrintWriter aliceOut = new PrintWriter(alice.getOutputStream(), true);
+
+            aliceOut.println("hello");
+            aliceOut.println("second");
+            for (Scanner in : List.of(bobIn, carolIn)) {
+                String line;
+                while (!(line = in.nextLine()).equals("Alice: hello")) {
+                    assertFalse(line.startsWith("Alice:"), "Unexpected line before the first message: " + line);
+                }
+                assertEquals("Alice: second", in.nextLine(), "Each message arrives exactly once, in order.");
+            }
+
+            new PrintWriter(carol.getOutputStream(), true).println("from node 2");
+            String line;
+            while (!(line = aliceIn.nextLine()).equals("Carol: from node 2")) {
+                assertFalse(line.startsWith("Carol:"), "Unexpected line: " + line);
+            }
+
+            for (TCPMultiServer node : nodes) {
+                Map<String, Long> metrics = node.getMetrics().snapshot();
+                assertEquals(0L, metrics.get("cluster.duplicates"));
+                assertEquals(0L, metrics.get("cluster.loops"));
+                assertEquals(2L, metrics.get("cluster.links"));
+            }
+            assertTrue(nodes[0].getMetrics().snapshot().get("flushes.cluster") > 0);
+        } finally {
+            stopCluster(nodes);
+        }
+    }
+
+    @Test
+    void testConcurrentBroadcastsAllReachEveryNode() throws Exception {
+        TCPMultiServer[] nodes = startCluster(3, 9137, 9147);
+        int senders = 4;
+        int perSender = 250;
+        try {
+            Thread[] threads = new Thread[senders];
+            for (int t = 0; t < senders; t++) {
+                int sender = t;
+                threads[t] = new Thread(() -> {
+                    for (int i = 0; i < perSender; i++) {
+                        nodes[0].broadcastToRoom(ChatRoom.DEFAULT_ROOM, "sender " + sender + " message " + i, null);
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            for (int i = 1; i < nodes.length; i++) {
+                long deadline = System.currentTimeMillis() + 5000;
+                while (nodes[i].getMetrics().snapshot().get("cluster.received") < senders * perSender
+                        && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                Map<String, Long> metrics = nodes[i].getMetrics().snapshot();
+                assertEquals((long) senders * perSender, metrics.get("cluster.received"),
+                        "Every message broadcast concurrently on one node is delivered on node-" + i + ".");
+                assertEquals(0L, metrics.get("cluster.duplicates"));
+            }
+        } finally {
+            stopCluster(nodes);
+        }
+    }
+
+    @Test
+    void testNicknamesAreUniqueAcrossTheCluster() throws Exception {
+        TCPMultiServer[] nodes = startCluster(2, 9134, 9144);
+        try (Socket first = new Socket("localhost", 9134);
+             Socket second = new Socket("localhost", 9135)) {
+            login(nodes[0], first, "Alice");
+
+            second.setSoTimeout(5000);
+            Scanner in = new Scanner(second.getInputStream(), StandardCharsets.UTF_8);
+            in.nextLine();
+            new PrintWriter(second.getOutputStream(), true).println("Alice");
+            assertTrue(in.nextLine().startsWith("Connected as Alice-2."), "The name is taken on the other node.");
+            assertTrue(nodes[1].getCluster().isRemoteNickname("Alice"));
+
+            nodes[0].shutdown();
+            long deadline = System.currentTimeMillis() + 2000;
+            while (nodes[1].isNicknameTaken("Alice") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertFalse(nodes[1].isNicknameTaken("Alice"), "Names held for a node are released when its link goes down.");
+            assertTrue(nodes[1].isNicknameTaken("Alice-2"));
+        } finally {
+            stopCluster(nodes);
+        }
+    }
+
+    @Test
+    void testDuplicateAndLoopedMessagesAreDropped() throws Exception {
+        TCPMultiServer server = new TCPMultiServer(9136);
+        server.setCluster(new ClusterNode(server, "local", 9146, List.of()));
+        Thread serverThread = new Thread(server::launch);
+        serverThread.start();
+        Thread.sleep(1000);
+
+        try (Socket client = new Socket("localhost", 9136);
+             Socket peer = new Socket("localhost", 9146)) {
+            Scanner clientIn = login(server, client, "Dave");
+            OutputStream peerOut = peer.getOutputStream();
+            DataInputStream peerIn = new DataInputStream(new BufferedInputStream(peer.getInputStream()));
+            peerOut.write(ClusterProtocol.hello("remote"));
+            peerOut.flush();
+            ClusterProtocol.Frame hello = ClusterProtocol.read(peerIn);
+            assertEquals(ClusterProtocol.TYPE_HELLO, hello.getType());
+            assertEquals("local", hello.nextString());
+
+            byte[] first = ClusterProtocol.message("remote", 1, 1, "", "from afar");
+            peerOut.write(first);
+            peerOut.write(first);
+            peerOut.write(ClusterProtocol.message("local", 1, 5, "", "looped"));
+            peerOut.write(ClusterProtocol.message("remote", 1, 2, ChatRoom.DEFAULT_ROOM, "next"));
+            peerOut.flush();
+            assertEquals("from afar", clientIn.nextLine());
+            assertEquals("next", clientIn.nextLine());
+
+            peerOut.write(ClusterProtocol.message("remote", 1, 4, "", "overtaking"));
+            peerOut.write(ClusterProtocol.message("remote", 1, 3, "", "overtaken"));
+            peerOut.write(ClusterProtocol.message("remote", 1, 3, "", "overtaken"));
+            peerOut.flush();
+            assertEquals("overtaking", clientIn.nextLine());
+            assertEquals("overtaken", clientIn.nextLine(), "A message overtaken by a later one is still delivered.");
+
+            Map<String, Long> metrics = server.getMetrics().snapshot();
+            assertEquals(4L, metrics.get("cluster.received"));
+            assertEquals(2L, metrics.get("cluster.duplicates"));
+            assertEquals(1L, metrics.get("cluster.loops"));
+
+            peerOut.write(ClusterProtocol.claim(7, "Dave"));
+            peerOut.write(ClusterProtocol.claim(8, "Erin"));
+            peerOut.flush();
+            ClusterProtocol.Frame denied = ClusterProtocol.read(peerIn);
+            assertEquals(ClusterProtocol.TYPE_DENY, denied.getType());
+            assertEquals(7, denied.nextLong());
+            ClusterProtocol.Frame granted = ClusterProtocol.read(peerIn);
+            assertEquals(ClusterProtocol.TYPE_GRANT, granted.getType());
+            assertEquals(8, granted.nextLong());
+            assertEquals("Erin-2", server.reserveNickname("Erin"));
+
+            peerOut.write(ClusterProtocol.release("Erin"));
+            peerOut.flush();
+            long deadline = System.currentTimeMillis() + 2000;
+            while (server.isNicknameTaken("Erin") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertFalse(server.isNicknameTaken("Erin"));
+        } finally {
+            server.shutdown();
+            serverThread.interrupt();
+        }
+    }
+
+    private static TCPMultiServer[] startCluster(int size, int basePort, int baseClusterPort) throws Exception {
+        TCPMultiServer[] nodes = new TCPMultiServer[size];
+        for (int i = 0; i < size; i++) {
+            List<InetSocketAddress> peers = new ArrayList<>();
+            for (int j = 0; j < size; j++) {
+                if (j != i) {
+                    peers.add(ClusterNode.parseAddress("127.0.0.1:" + (baseClusterPort + j)));
+                }
+            }
+            nodes[i] = new TCPMultiServer(basePort + i);
+            nodes[i].setCluster(new ClusterNode(nodes[i], "node-" + i, baseClusterPort + i, peers));
+            new Thread(nodes[i]::launch).start();
+        }
+        long deadline = System.currentTimeMillis() + 10_000;
+        for (TCPMultiServer node : nodes) {
+            while (node.getCluster().getConnectedLinkCount() < size - 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(size - 1, node.getCluster().getConnectedLinkCount(), "Every node links to every peer.");
+        }
+        return nodes;
+    }
+
+    private static void stopCluster(TCPMultiServer[] nodes) {
+        for (TCPMultiServer node : nodes) {
+            node.shutdown();
+        }
+    }
+
+    private static Scanner login(TCPMultiServer server, Socket socket, String nickname) throws Exception {
+        socket.setSoTimeout(5000);
+        Scanner in = new Scanner(socket.getInputStream(), StandardCharsets.UTF_8);
+        in.nextLine();
+        new PrintWriter(socket.getOutputStream(), true).println(nickname);
+        in.nextLine();
+        while (server.getRoomOf(nickname) == null) {
+            Thread.sleep(10);
+        }
+        return in;
+    }
+}
@@ -0,0 +1,57 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterProtocolTest {
+
+    @Test
+    void testFramesRoundTrip() throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(ClusterProtocol.hello("node-1"));
+        stream.write(ClusterProtocol.message("node-1", 42, 7, "lobby", "Alice: héllo"));
+        stream.write(ClusterProtocol.claim(3, "Bob"));
+        stream.write(ClusterProtocol.answer(3, false));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(stream.toByteArray()));
+
+        ClusterProtocol.Frame hello = ClusterProtocol.read(in);
+        assertEquals(ClusterProtocol.TYPE_HELLO, hello.getType());
+        assertEquals("node-1", hello.nextString());
+
+        ClusterProtocol.Frame message = ClusterProtocol.read(in);
+        assertEquals(ClusterProtocol.TYPE_MESSAGE, message.getType());
+        assertEquals("node-1", message.nextString());
+        assertEquals(42, message.nextLong());
+        assertEquals(7, message.nextLong());
+        assertEquals("lobby", message.nextString());
+        assertEquals("Alice: héllo", message.nextString());
+
+        ClusterProtocol.Frame claim = ClusterProtocol.read(in);
+        assertEquals(ClusterProtocol.TYPE_CLAIM, claim.getType());
+        assertEquals(3, claim.nextLong());
+        assertEquals("Bob", claim.nextString());
+
+        ClusterProtocol.Frame answer = ClusterProtocol.read(in);
+        assertEquals(ClusterProtocol.TYPE_DENY, answer.getType());
+        assertEquals(3, answer.nextLong());
+        assertNull(ClusterProtocol.read(in), "The stream ends between frames.");
+    }
+
+    @Test
+    void testMalformedFramesAreRejected() {
+        byte[] tooLong = ByteBuffer.allocate(5).putInt(ClusterProtocol.MAX_FRAME_LENGTH + 1).put(ClusterProtocol.TYPE_HELLO).array();
+        assertThrows(IOException.class, () -> ClusterProtocol.read(new DataInputStream(new ByteArrayInputStream(tooLong))));
+
+        byte[] badString = ByteBuffer.allocate(9).putInt(5).put(ClusterProtocol.TYPE_HELLO).putInt(100).array();
+        assertThrows(IOException.class, () -> ClusterProtocol.read(new DataInputStream(new ByteArrayInputStream(badString))).nextString());
+
+        byte[] truncated = ClusterProtocol.answer(1, true);
+        assertThrows(IOException.class, () -> ClusterProtocol.read(
+                new DataInputStream(new ByteArrayInputStream(truncated, 0, truncated.length - 1))));
+    }
+}
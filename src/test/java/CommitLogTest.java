@@ -0,0 +1,153 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommitLogTest {
+    private static final long HOUR = 3_600_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testReadsBackRecordsFromAnyOffsetAcrossSegments() throws IOException {
+        try (CommitLog log = new CommitLog(directory, 4096, HOUR, 0, 0, () -> 1000)) {
+            for (int i = 0; i < 500; i++) {
+                assertEquals(i, log.append("message " + i));
+            }
+            assertTrue(log.getSegmentCount() > 1, "Full segments roll over to new files.");
+
+            List<CommitLog.LogRecord> records = log.read(123, 3);
+            assertEquals(3, records.size());
+            assertEquals(123, records.get(0).getOffset());
+            assertEquals("message 123", records.get(0).text());
+            assertEquals("message 125", records.get(2).text());
+            assertEquals(1000, records.get(0).getTimestamp());
+            assertEquals(500, log.read(0, 1000).size());
+            assertEquals("message 499", log.read(499, 10).get(0).text());
+            assertTrue(log.read(500, 10).isEmpty());
+        }
+    }
+
+    @Test
+    void testReopeningResumesAfterTheLastRecord() throws IOException {
+        try (CommitLog log = new CommitLog(directory, 4096, HOUR, 0, 0, () -> 1000)) {
+            for (int i = 0; i < 300; i++) {
+                log.append("message " + i);
+            }
+        }
+        try (CommitLog log = new CommitLog(directory, 4096, HOUR, 0, 0, () -> 1000)) {
+            assertEquals(300, log.getNextOffset());
+            assertEquals(300, log.append("after restart"));
+            assertEquals("message 150", log.read(150, 1).get(0).text());
+            assertEquals("after restart", log.read(300, 1).get(0).text());
+        }
+    }
+
+    @Test
+    void testRecoveryDiscardsATornRecord() throws IOException {
+        try (CommitLog log = new CommitLog(directory, 4096, HOUR, 0, 0, () -> 1000)) {
+            log.append("first");
+            log.append("second");
+            log.append("third");
+        }
+        Path segment = segmentFiles().get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            int third = 16 + (16 + 5) + (16 + 6);
+            file.seek(third + 16);
+            file.write('X');
+        }
+
+        try (CommitLog log = new CommitLog(directory, 4096, HOUR, 0, 0, () -> 1000)) {
+            assertEquals(2, log.getNextOffset(), "The record with a bad checksum and everything after it are dropped.");
+            assertEquals(2, log.append("replacement"));
+            List<CommitLog.LogRecord> records = log.read(0, 10);
+            assertEquals(3, records.size());
+            assertEquals("second", records.get(1).text());
+            assertEquals("replacement", records.get(2).text());
+        }
+    }
+
+    @Test
+    void testRollsSegmentsPerTimeWindowAndDeletesExpiredOnes() throws IOException {
+        long[] now = {0};
+        try (CommitLog log = new CommitLog(directory, 4096, HOUR, 0, 3 * HOUR, () -> now[0])) {
+            for (int hour = 0; hour < 4; hour++) {
+                now[0] = hour * HOUR;
+                log.append("hour " + hour);
+            }
+            assertEquals(4, log.getSegmentCount(), "Each time window gets its own segment.");
+
+            now[0] = 5 * HOUR;
+            log.sync();
+            assertEquals(2, log.getSegmentCount(), "Segments whose window ended three hours ago are deleted.");
+            assertEquals(2, log.getFirstOffset());
+            assertEquals("hour 2", log.read(0, 1).get(0).text());
+            assertEquals(2, segmentFiles().size());
+        }
+    }
+
+    @Test
+    void testGroupCommitFlushesInTheBackground() throws IOException {
+        try (CommitLog log = new CommitLog(directory, 4096, HOUR, 10, 0)) {
+            log.append("buffered");
+            assertEquals("buffered", log.read(0, 1).get(0).text());
+        }
+        try (CommitLog log = new CommitLog(directory, 4096, HOUR, 10, 0)) {
+            assertEquals(1, log.getNextOffset());
+        }
+    }
+
+    @Test
+    void testConcurrentAppendsSurviveBackgroundFlushes() throws Exception {
+        int threads = 4;
+        int perThread = 2000;
+        try (CommitLog log = new CommitLog(directory, 16 * 1024, HOUR, 1, 0)) {
+            Thread[] writers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                int writer = t;
+                writers[t] = new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        try {
+                            log.append("writer " + writer + " message " + i);
+                        } catch (IOException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                });
+                writers[t].start();
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        }
+        try (CommitLog log = new CommitLog(directory, 16 * 1024, HOUR, 1, 0)) {
+            assertEquals(threads * perThread, log.getNextOffset(), "Every record appended during a flush is kept.");
+            assertEquals(threads * perThread, log.read(0, Integer.MAX_VALUE).size());
+        }
+    }
+
+    @Test
+    void testRejectsInvalidSettingsAndOversizedRecords() throws IOException {
+        assertThrows(IllegalArgumentException.class, () -> new CommitLog(directory, 100, HOUR, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new CommitLog(directory, 4096, 0, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new CommitLog(directory, 4096, HOUR, -1, 0));
+        try (CommitLog log = new CommitLog(directory, 1024, HOUR, 0, 0)) {
+            assertThrows(IllegalArgumentException.class, () -> log.append("x".repeat(1024)));
+        }
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".log")).sorted().collect(Collectors.toList());
+        }
+    }
+}
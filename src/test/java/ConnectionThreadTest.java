@@ -24,6 +24,8 @@ class ConnectionThreadTest {
 
     private ConnectionThread connectionThread;
 
+    private Thread thread;
+
     @BeforeEach
     void setUp() throws IOException {
         MockitoAnnotations.openMocks(this);
@@ -39,8 +41,9 @@ class ConnectionThreadTest {
         when(socketMock.getOutputStream()).thenReturn(new ByteArrayOutputStream()); // For output stream
 
         // Mock server behavior
-        when(serverMock.isNicknameTaken("TestUser")).thenReturn(false);  // Assume nickname is available
+        when(serverMock.reserveNickname("TestUser")).thenReturn("TestUser");  // Assume nickname is available
         connectionThread = new ConnectionThread(socketMock, serverMock);
+        thread = new Thread(connectionThread);
     }
 
     @Test
@@ -49,13 +52,13 @@ class ConnectionThreadTest {
         when(readerMock.readLine()).thenReturn("TestUser").thenReturn(null); // Client sends nickname and then disconnects
 
         // Start the connection thread
-        connectionThread.start();
+        thread.start();
 
         // Sleep briefly to allow the thread to complete its work (you can adjust timing)
         Thread.sleep(1000);
 
         // Verify that the addClient method was called on the server with the correct parameters
-        verify(serverMock).addClient(eq("TestUser"), eq(socketMock));
+        verify(serverMock).addClient(eq("TestUser"), eq(socketMock), eq(WireProtocol.TEXT), eq(false));
 
         // Verify that the broadcast method was called when the client joined
         verify(serverMock).broadcast("TestUser joined the chat.", "TestUser");
@@ -73,7 +76,7 @@ class ConnectionThreadTest {
         when(readerMock.readLine()).thenReturn("TestUser").thenReturn(null); // Nickname followed by disconnection
 
         // Start the connection thread
-        connectionThread.start();
+        thread.start();
 
         // Sleep briefly to allow the thread to complete its work
         Thread.sleep(1000);
@@ -89,7 +92,7 @@ class ConnectionThreadTest {
         when(readerMock.readLine()).thenThrow(new IOException("Simulated connection error"));
 
         // Start the connection thread
-        connectionThread.start();
+        thread.start();
 
         // Sleep briefly to allow the thread to handle the exception
         Thread.sleep(1000);
@@ -100,6 +103,6 @@ class ConnectionThreadTest {
 
     @AfterEach
     void tearDown() {
-        connectionThread.interrupt();  // Ensure that the thread is interrupted after the test
+        thread.interrupt();  // Ensure that the thread is interrupted after the test
     }
 }
@@ -0,0 +1,40 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExecutionModeTest {
+
+    @Test
+    void testPlatformThreadFactory() throws InterruptedException {
+        ThreadFactory factory = ExecutionMode.PLATFORM.threadFactory("worker-", true);
+        CountDownLatch ran = new CountDownLatch(1);
+
+        Thread first = factory.newThread(ran::countDown);
+        Thread second = factory.newThread(() -> { });
+
+        assertEquals("worker-0", first.getName());
+        assertEquals("worker-1", second.getName());
+        assertTrue(first.isDaemon(), "Platform threads should honour the daemon flag.");
+
+        first.start();
+        assertTrue(ran.await(1, TimeUnit.SECONDS), "Task should run on the created thread.");
+    }
+
+    @Test
+    void testVirtualThreadFactory() throws Exception {
+        if (!ExecutionMode.isVirtualThreadSupported()) {
+            assertThrows(UnsupportedOperationException.class, () -> ExecutionMode.VIRTUAL.threadFactory("vt-", true),
+                    "Virtual threads should be rejected on JVMs without them.");
+            assertThrows(UnsupportedOperationException.class, () -> new TCPMultiServer(9110, ExecutionMode.VIRTUAL));
+            return;
+        }
+
+        Thread thread = ExecutionMode.VIRTUAL.threadFactory("vt-", true).newThread(() -> { });
+        assertEquals("vt-0", thread.getName());
+        assertTrue((Boolean) Thread.class.getMethod("isVirtual").invoke(thread), "Thread should be virtual.");
+    }
+}
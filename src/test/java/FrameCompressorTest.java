@@ -0,0 +1,103 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameCompressorTest {
+
+    private static String stackTrace() {
+        StringBuilder trace = new StringBuilder("java.lang.IllegalStateException: boom");
+        for (int i = 0; i < 40; i++) {
+            trace.append("\n\tat com.example.service.Handler.process(Handler.java:").append(100 + i).append(')');
+        }
+        return trace.toString();
+    }
+
+    @Test
+    void testLargePayloadIsCompressedAndDecodesBack() throws IOException {
+        CompressionStats stats = new CompressionStats();
+        byte[] payload = stackTrace().getBytes(StandardCharsets.UTF_8);
+        byte[] frame;
+        try (FrameCompressor compressor = new FrameCompressor(256, stats)) {
+            frame = compressor.encode(FrameCodec.TYPE_TEXT, payload, 0, payload.length);
+            compressor.encode(FrameCodec.TYPE_TEXT, payload, 0, payload.length);
+        }
+
+        assertEquals(FrameCodec.FLAG_DEFLATE, frame[5]);
+        assertTrue(frame.length < payload.length / 4, "A stack trace compresses well, got " + frame.length + " bytes");
+        assertEquals(2, stats.getDeflateCount(), "The deflater is reused for every frame.");
+        assertEquals(2L * payload.length, stats.getRawBytes());
+
+        try (FrameDecoder decoder = new FrameDecoder()) {
+            ByteArrayInputStream in = new ByteArrayInputStream(frame);
+            assertTrue(decoder.read(in));
+            assertEquals(stackTrace(), decoder.text());
+            assertEquals(payload.length, decoder.getPayloadLength());
+            assertEquals(frame.length, decoder.getFrameLength(), "The frame length is the size on the wire.");
+        }
+    }
+
+    @Test
+    void testShortAndIncompressiblePayloadsAreSentRaw() throws IOException {
+        CompressionStats stats = new CompressionStats();
+        byte[] noise = new byte[4096];
+        new Random(42).nextBytes(noise);
+        byte[] chat = "alice: hello".getBytes(StandardCharsets.UTF_8);
+        try (FrameCompressor compressor = new FrameCompressor(256, stats)) {
+            byte[] shortFrame = compressor.encode(FrameCodec.TYPE_TEXT, chat, 0, chat.length);
+            assertEquals(0, shortFrame[5]);
+            assertEquals(FrameCodec.HEADER_LENGTH + chat.length, shortFrame.length);
+            assertEquals(0, stats.getDeflateCount(), "A payload under the threshold is never deflated.");
+
+            byte[] noiseFrame = compressor.encode(FrameCodec.TYPE_TEXT, noise, 0, noise.length);
+            assertEquals(0, noiseFrame[5], "A payload that does not shrink is sent raw.");
+            assertEquals(FrameCodec.HEADER_LENGTH + noise.length, noiseFrame.length);
+        }
+        assertThrows(IllegalArgumentException.class, () -> new FrameCompressor(-1));
+    }
+
+    @Test
+    void testBroadcastIsCompressedOnceForAllRecipients() throws IOException {
+        CompressionStats stats = new CompressionStats();
+        EncodedMessage message = EncodedMessage.of(stackTrace());
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        try (FrameCompressor one = new FrameCompressor(256, stats);
+             FrameCompressor other = new FrameCompressor(256, stats)) {
+            int written = message.writeCompressedFrameTo(first, one);
+            message.writeCompressedFrameTo(second, other);
+            assertEquals(first.size(), written);
+        }
+
+        assertEquals(1, stats.getDeflateCount(), "The compressed frame is cached on the message.");
+        assertArrayEquals(first.toByteArray(), second.toByteArray());
+        assertTrue(first.size() < message.frameLength());
+    }
+
+    @Test
+    void testMultiLineMessageCompressesEachLineOnItsOwn() throws IOException {
+        String longLine = stackTrace().replace('\n', ' ');
+        byte[] lines = ("short\n" + longLine + "\n").getBytes(StandardCharsets.UTF_8);
+        EncodedMessage history = EncodedMessage.ofLines(lines, new int[]{6, lines.length});
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FrameCompressor compressor = new FrameCompressor(256)) {
+            history.writeCompressedFrameTo(out, compressor);
+        }
+
+        try (FrameDecoder decoder = new FrameDecoder()) {
+            ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+            assertTrue(decoder.read(in));
+            assertEquals(0, decoder.getFlags());
+            assertEquals("short", decoder.text());
+            assertTrue(decoder.read(in));
+            assertEquals(FrameCodec.FLAG_DEFLATE, decoder.getFlags());
+            assertEquals(longLine, decoder.text());
+            assertFalse(decoder.read(in));
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameDecoderTest {
+
+    @Test
+    void testDecodesConsecutiveFramesIntoReusedBuffer() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FrameCodec.writeText(out, "first line\nsecond line");
+        FrameCodec.writeText(out, "héllo");
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+
+        FrameDecoder decoder = new FrameDecoder();
+        assertTrue(decoder.read(in));
+        assertEquals(FrameCodec.TYPE_TEXT, decoder.getType());
+        assertEquals(0, decoder.getFlags());
+        assertEquals("first line\nsecond line", decoder.text(), "Payloads may contain line breaks.");
+        byte[] buffer = decoder.getPayload();
+
+        assertTrue(decoder.read(in));
+        assertEquals("héllo", decoder.text());
+        assertEquals(6, decoder.getPayloadLength());
+        assertSame(buffer, decoder.getPayload(), "The payload buffer should be reused.");
+
+        assertFalse(decoder.read(in), "A clean end of stream between frames is not an error.");
+    }
+
+    @Test
+    void testRejectsTruncatedAndOversizedFrames() {
+        byte[] frame = FrameCodec.encode(FrameCodec.TYPE_TEXT, (byte) 0, "hello".getBytes(StandardCharsets.UTF_8), 0, 5);
+        ByteArrayInputStream truncated = new ByteArrayInputStream(frame, 0, frame.length - 1);
+        assertThrows(EOFException.class, () -> new FrameDecoder().read(truncated));
+
+        assertThrows(IOException.class, () -> new FrameDecoder(4).read(new ByteArrayInputStream(frame)));
+        assertThrows(IllegalArgumentException.class, () -> new FrameDecoder(0));
+    }
+
+    @Test
+    void testHandshakeLineDoesNotReadAhead() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("/binary\r\n".getBytes(StandardCharsets.UTF_8));
+        FrameCodec.writeText(out, "Alice");
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+
+        assertEquals(FrameCodec.UPGRADE_REQUEST, FrameCodec.readLine(in));
+        FrameDecoder decoder = new FrameDecoder();
+        assertTrue(decoder.read(in));
+        assertEquals("Alice", decoder.text());
+        assertNull(FrameCodec.readLine(in));
+    }
+
+    @Test
+    void testRejectsCompressedPayloadsThatInflatePastTheLimitOrAreCorrupt() throws IOException {
+        byte[] zeros = new byte[64 * 1024];
+        byte[] bomb;
+        try (FrameCompressor compressor = new FrameCompressor(0)) {
+            bomb = compressor.encode(FrameCodec.TYPE_TEXT, zeros, 0, zeros.length);
+        }
+        assertTrue(bomb.length < 1024, "64 KiB of zeros deflate to a small frame.");
+        try (FrameDecoder decoder = new FrameDecoder(4096)) {
+            IOException e = assertThrows(IOException.class, () -> decoder.read(new ByteArrayInputStream(bomb)));
+            assertTrue(e.getMessage().contains("exceeds 4096 bytes"));
+        }
+
+        byte[] garbage = FrameCodec.encode(FrameCodec.TYPE_TEXT, FrameCodec.FLAG_DEFLATE, new byte[]{1, 2, 3, 4}, 0, 4);
+        try (FrameDecoder decoder = new FrameDecoder()) {
+            assertThrows(IOException.class, () -> decoder.read(new ByteArrayInputStream(garbage)));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdleMonitorTest {
+
+    @Test
+    void testSilentConnectionGetsHeartbeatsThenExpires() {
+        long[] clock = {0};
+        TimingWheel wheel = new TimingWheel(10, 16, () -> clock[0]);
+        int[] heartbeats = {0};
+        int[] expiries = {0};
+        new IdleMonitor(wheel, () -> 0, 250, 100, () -> heartbeats[0]++, () -> expiries[0]++).start();
+
+        wheel.tick(clock[0] = 100);
+        assertEquals(1, heartbeats[0]);
+        wheel.tick(clock[0] = 200);
+        assertEquals(2, heartbeats[0], "The heartbeat is repeated while the silence lasts.");
+        assertEquals(0, expiries[0]);
+        wheel.tick(clock[0] = 250);
+        assertEquals(1, expiries[0]);
+        wheel.tick(clock[0] = 1000);
+        assertEquals(2, heartbeats[0], "An expired connection is no longer watched.");
+        assertEquals(1, expiries[0]);
+        assertEquals(0, wheel.getPendingCount());
+    }
+
+    @Test
+    void testActiveConnectionIsRecheckedWithoutHeartbeat() {
+        long[] clock = {0};
+        long[] lastActivity = {0};
+        TimingWheel wheel = new TimingWheel(10, 16, () -> clock[0]);
+        int[] heartbeats = {0};
+        int[] expiries = {0};
+        IdleMonitor monitor = new IdleMonitor(wheel, () -> lastActivity[0], 250, 100, () -> heartbeats[0]++, () -> expiries[0]++);
+        monitor.start();
+
+        for (long now = 50; now <= 1000; now += 50) {
+            lastActivity[0] = now;
+            wheel.tick(clock[0] = now);
+        }
+        assertEquals(0, heartbeats[0]);
+        assertEquals(0, expiries[0]);
+        assertEquals(1, wheel.getPendingCount(), "A monitor holds a single timeout at a time.");
+
+        monitor.cancel();
+        wheel.tick(clock[0] = 5000);
+        assertEquals(0, expiries[0]);
+        assertEquals(0, wheel.getPendingCount());
+        assertThrows(IllegalArgumentException.class, () -> new IdleMonitor(wheel, () -> 0, 0, 0, null, () -> { }));
+    }
+}
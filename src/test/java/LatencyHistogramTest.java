@@ -0,0 +1,51 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testEmptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0.0, histogram.getMean());
+    }
+
+    @Test
+    void testPercentilesWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000_000L, histogram.getMax());
+        assertWithin(50_000_000L, histogram.getValueAtPercentile(50));
+        assertWithin(99_000_000L, histogram.getValueAtPercentile(99));
+        assertWithin(99_900_000L, histogram.getValueAtPercentile(99.9));
+        assertEquals(50_000_500.0, histogram.getMean(), 1.0);
+    }
+
+    @Test
+    void testBucketBoundariesCoverWholeRange() {
+        for (long value : new long[]{0, 31, 32, 33, 1000, 1L << 40, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.indexFor(value);
+            assertTrue(LatencyHistogram.lowestValueIn(index) <= value, "Bucket should start at or below " + value);
+        }
+    }
+
+    @Test
+    void testResetAndInvalidPercentile() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(42);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertThrows(IllegalArgumentException.class, () -> histogram.getValueAtPercentile(101));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertEquals(expected, actual, expected * 0.032, "Value should be within histogram precision.");
+    }
+}
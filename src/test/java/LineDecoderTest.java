@@ -0,0 +1,46 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineDecoderTest {
+
+    @Test
+    void testSplitsLinesAndStripsCarriageReturn() throws IOException {
+        LineDecoder decoder = new LineDecoder(64);
+        ByteBuffer input = ByteBuffer.wrap("first\r\nsecond\n".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("first", decoder.next(input));
+        assertEquals("second", decoder.next(input));
+        assertNull(decoder.next(input), "No complete line should remain.");
+    }
+
+    @Test
+    void testFinishReturnsTheUnterminatedLastLine() throws IOException {
+        LineDecoder decoder = new LineDecoder(64);
+
+        assertNull(decoder.next(ByteBuffer.wrap("last".getBytes(StandardCharsets.UTF_8))));
+        assertEquals("last", decoder.finish());
+        assertNull(decoder.finish(), "Nothing is left once the line was returned.");
+    }
+
+    @Test
+    void testKeepsPartialLineAcrossReads() throws IOException {
+        LineDecoder decoder = new LineDecoder(64);
+        byte[] bytes = "héllo\n".getBytes(StandardCharsets.UTF_8);
+
+        assertNull(decoder.next(ByteBuffer.wrap(bytes, 0, 2)), "A line split inside a character is incomplete.");
+        assertEquals(2, decoder.getBufferedLength());
+        assertEquals("héllo", decoder.next(ByteBuffer.wrap(bytes, 2, bytes.length - 2)));
+    }
+
+    @Test
+    void testRejectsOverlongLine() {
+        LineDecoder decoder = new LineDecoder(4);
+        assertThrows(IOException.class, () -> decoder.next(ByteBuffer.wrap("12345\n".getBytes(StandardCharsets.US_ASCII))));
+        assertThrows(IllegalArgumentException.class, () -> new LineDecoder(0));
+    }
+}
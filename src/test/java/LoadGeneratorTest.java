@@ -0,0 +1,74 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadGeneratorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new LoadGenerator("localhost", 9120, 0, 1, 1, null));
+        assertThrows(IllegalArgumentException.class, () -> new LoadGenerator("localhost", 9120, 1, 0, 1, null));
+        assertThrows(IllegalArgumentException.class, () -> new LoadGenerator("localhost", 9120, 1, 1, 0, null));
+    }
+
+    @Test
+    void testLoadRunAgainstMultiServer() throws Exception {
+        int testPort = 9121;
+        TCPMultiServer server = new TCPMultiServer(testPort);
+        Thread serverThread = new Thread(server::launch);
+        serverThread.start();
+        Thread.sleep(1000);
+
+        Path summaryFile = tempDir.resolve("summary.json");
+        try {
+            LoadGenerator generator = new LoadGenerator("localhost", testPort, 3, 20, 1, summaryFile);
+            String summary = generator.run();
+
+            assertTrue(generator.getLatencies().getCount() > 0, "Users should receive each other's messages.");
+            assertEquals(summary, Files.readString(summaryFile, StandardCharsets.UTF_8).trim());
+            assertTrue(summary.contains("\"p99\""), "Summary should contain latency percentiles: " + summary);
+            assertTrue(summary.contains("\"deliveryThroughput\""), "Summary should contain throughput: " + summary);
+        } finally {
+            server.shutdown();
+            serverThread.join(2000);
+        }
+    }
+
+    @Test
+    void testElapsedTimeIsMeasuredWhenTheRunIsCutShort() throws Exception {
+        int testPort = 9122;
+        TCPMultiServer server = new TCPMultiServer(testPort);
+        Thread serverThread = new Thread(server::launch);
+        serverThread.start();
+        Thread.sleep(1000);
+
+        LoadGenerator generator = new LoadGenerator("localhost", testPort, 2, 20, 60, null);
+        assertEquals(0, generator.elapsedSeconds(), "Nothing has been sent yet.");
+        Thread runner = new Thread(() -> {
+            try {
+                generator.run();
+            } catch (Exception e) {
+                // Interrupted below, like a run stopped with Ctrl-C.
+            }
+        });
+        try {
+            runner.start();
+            Thread.sleep(1500);
+            double elapsed = generator.elapsedSeconds();
+            assertTrue(elapsed > 0.5 && elapsed < 10, "A run cut short reports the time it actually ran: " + elapsed);
+        } finally {
+            runner.interrupt();
+            runner.join(5000);
+            server.shutdown();
+            serverThread.join(2000);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageHistoryTest {
+
+    @Test
+    void testReplaysMostRecentMessagesOldestFirst() {
+        MessageHistory history = new MessageHistory(3, 1024);
+        assertNull(history.replay(3), "An empty history has nothing to replay.");
+        for (int i = 1; i <= 5; i++) {
+            history.append(EncodedMessage.of("message " + i));
+        }
+
+        assertEquals(3, history.size());
+        EncodedMessage replay = history.replay(10);
+        assertEquals("message 3\nmessage 4\nmessage 5", replay.text());
+        assertEquals(3, replay.lineCount());
+        assertEquals("message 5", history.replay(1).text());
+    }
+
+    @Test
+    void testEvictsByBytesAcrossTheEndOfTheBuffer() {
+        MessageHistory history = new MessageHistory(100, 16);
+        history.append(EncodedMessage.of("abcde"));
+        history.append(EncodedMessage.of("fghij"));
+        history.append(EncodedMessage.of("klmno"));
+        assertEquals(2, history.size(), "The oldest message makes room for the newest.");
+        assertEquals(12, history.usedBytes());
+        assertEquals("fghij\nklmno", history.replay(5).text(), "A message wrapping around the buffer is read back whole.");
+
+        history.append(EncodedMessage.of("this line is longer than the buffer"));
+        assertEquals(2, history.size(), "A message larger than the buffer is not kept.");
+        assertThrows(IllegalArgumentException.class, () -> new MessageHistory(0, 16));
+        assertThrows(IllegalArgumentException.class, () -> new MessageHistory(1, 0));
+    }
+
+    @Test
+    void testReplayIsOneFramePerMessageForBinaryClients() throws IOException {
+        MessageHistory history = new MessageHistory(4, 256);
+        history.append(EncodedMessage.of("Alice: hi"));
+        history.append(EncodedMessage.of("Bob: hello"));
+
+        EncodedMessage replay = history.replay(4);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        replay.writeFrameTo(out);
+        assertEquals(replay.frameLength(), out.size());
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        FrameDecoder frames = new FrameDecoder();
+        assertTrue(frames.read(in));
+        assertEquals("Alice: hi", frames.text());
+        assertTrue(frames.read(in));
+        assertEquals("Bob: hello", frames.text());
+        assertFalse(frames.read(in));
+
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        replay.writeTo(text);
+        assertEquals("Alice: hi\nBob: hello\n", text.toString(StandardCharsets.UTF_8));
+    }
+}
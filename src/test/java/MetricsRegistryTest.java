@@ -0,0 +1,71 @@
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsRegistryTest {
+
+    @Test
+    void testSnapshotContainsEveryKindOfMetric() {
+        MetricsRegistry metrics = new MetricsRegistry("test");
+        metrics.counter("messages.in.text").add(3);
+        assertSame(metrics.counter("messages.in.text"), metrics.counter("messages.in.text"), "Counters are created once.");
+        AtomicLong clients = new AtomicLong(7);
+        metrics.gauge("clients.connected", clients::get);
+        metrics.histogram("broadcast.fanout.nanos").record(1000);
+
+        clients.set(8);
+        Map<String, Long> snapshot = metrics.snapshot();
+        assertEquals(3L, snapshot.get("messages.in.text"));
+        assertEquals(8L, snapshot.get("clients.connected"), "Gauges are read when the snapshot is taken.");
+        assertEquals(1L, snapshot.get("broadcast.fanout.nanos.count"));
+        assertEquals(1000L, snapshot.get("broadcast.fanout.nanos.max"));
+
+        String dump = metrics.dump();
+        assertTrue(dump.startsWith("--- metrics test ---"));
+        assertTrue(dump.contains(System.lineSeparator() + "messages.in.text 3"));
+    }
+
+    @Test
+    void testMBeanExposesMetricsAsAttributes() throws Exception {
+        MetricsRegistry metrics = new MetricsRegistry("test");
+        metrics.counter("connections.accepted").increment();
+        metrics.registerMBean("Test", 9999);
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("RTSChat:type=Test,port=9999");
+        try {
+            assertEquals(name, metrics.getObjectName());
+            assertEquals(1L, mbeanServer.getAttribute(name, "connections.accepted"));
+            assertEquals(1, mbeanServer.getMBeanInfo(name).getAttributes().length);
+        } finally {
+            metrics.close();
+        }
+        assertFalse(mbeanServer.isRegistered(name), "Closing the registry removes the MBean.");
+    }
+
+    @Test
+    void testReporterPrintsDumpPeriodically() throws Exception {
+        MetricsRegistry metrics = new MetricsRegistry("test");
+        metrics.counter("sends.dropped").add(2);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        metrics.startReporter(1, new PrintStream(output, true, StandardCharsets.UTF_8));
+        try {
+            long deadline = System.currentTimeMillis() + 3000;
+            while (output.size() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+        } finally {
+            metrics.close();
+        }
+        assertTrue(output.toString(StandardCharsets.UTF_8).contains("sends.dropped 2"));
+        assertThrows(IllegalArgumentException.class, () -> metrics.startReporter(0, System.out));
+    }
+}
@@ -0,0 +1,109 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NioChatServerTest {
+
+    @Test
+    void testServerInitializationWithInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new NioChatServer(0));
+        assertThrows(IllegalArgumentException.class, () -> new NioChatServer(70000));
+        assertThrows(IllegalArgumentException.class, () -> new NioChatServer(9201, 0));
+    }
+
+    @Test
+    void testNicknameHandshakeAndBroadcast() throws Exception {
+        int testPort = 9202;
+        NioChatServer server = new NioChatServer(testPort, 2);
+        Thread serverThread = new Thread(server::launch);
+        serverThread.start();
+        Thread.sleep(1000);
+
+        try (Socket alice = new Socket("localhost", testPort);
+             Socket bob = new Socket("localhost", testPort)) {
+            BufferedReader aliceIn = reader(alice);
+            PrintWriter aliceOut = writer(alice);
+            BufferedReader bobIn = reader(bob);
+            PrintWriter bobOut = writer(bob);
+
+            assertEquals("Enter your nickname (leave blank for a random one): ", aliceIn.readLine());
+            aliceOut.println("Alice");
+            assertTrue(aliceIn.readLine().startsWith("Connected as Alice."), "Alice should be registered.");
+
+            assertEquals("Enter your nickname (leave blank for a random one): ", bobIn.readLine());
+            bobOut.println("Alice");
+            String bobGreeting = bobIn.readLine();
+            assertTrue(bobGreeting.startsWith("Connected as Alice-2."), "Duplicate nickname should get a suffix: " + bobGreeting);
+            String bobNickname = bobGreeting.substring("Connected as ".length(), bobGreeting.indexOf('.'));
+
+            assertEquals(bobNickname + " joined the chat.", aliceIn.readLine());
+
+            bobOut.println("héllo");
+            assertEquals(bobNickname + ": héllo", aliceIn.readLine());
+            assertEquals(2, server.getClientCount());
+        } finally {
+            server.shutdown();
+            serverThread.join(2000);
+        }
+    }
+
+    @Test
+    void testDuplicateNicknamesGetSequentialSuffixesUntilNoneIsLeft() {
+        NioChatServer server = new NioChatServer(9204, 1);
+        NioConnection connection = new NioConnection(null, server);
+
+        assertEquals("Alice", server.addClient("Alice", connection));
+        assertEquals("Alice-2", server.addClient("Alice", connection));
+        assertEquals("Alice-3", server.addClient("Alice", connection));
+        for (int suffix = 4; suffix <= ClientRegistry.MAX_SUFFIX; suffix++) {
+            server.addClient("Alice-" + suffix, connection);
+        }
+        assertThrows(IllegalStateException.class, () -> server.addClient("Alice", connection),
+                "The search for a free name must stop instead of spinning on the event loop.");
+    }
+
+    @Test
+    void testLeaveNoticeOnDisconnect() throws Exception {
+        int testPort = 9203;
+        NioChatServer server = new NioChatServer(testPort, 1);
+        Thread serverThread = new Thread(server::launch);
+        serverThread.start();
+        Thread.sleep(1000);
+
+        try (Socket alice = new Socket("localhost", testPort)) {
+            BufferedReader aliceIn = reader(alice);
+            aliceIn.readLine();
+            writer(alice).println("Alice");
+            aliceIn.readLine();
+
+            try (Socket bob = new Socket("localhost", testPort)) {
+                BufferedReader bobIn = reader(bob);
+                bobIn.readLine();
+                writer(bob).println("Bob");
+                bobIn.readLine();
+                assertEquals("Bob joined the chat.", aliceIn.readLine());
+            }
+
+            assertEquals("Bob has left the chat.", aliceIn.readLine());
+        } finally {
+            server.shutdown();
+            serverThread.join(2000);
+        }
+    }
+
+    private static BufferedReader reader(Socket socket) throws IOException {
+        socket.setSoTimeout(5000);
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    private static PrintWriter writer(Socket socket) throws IOException {
+        return new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,58 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NioConnectionTest {
+    private static final String MESSAGE = "x".repeat(59);
+
+    @Test
+    void testDropNewestOnceTheHighWaterMarkIsReached() {
+        NioChatServer server = new NioChatServer(9205, 1);
+        NioConnection connection = new NioConnection(null, server, SlowConsumerPolicy.DROP_NEWEST, 100);
+
+        connection.send(EncodedMessage.of(MESSAGE));
+        connection.send(EncodedMessage.of(MESSAGE));
+
+        assertEquals(1, connection.getQueueDepth(), "A message over the high-water mark is dropped.");
+        assertEquals(60, connection.getPendingBytes());
+        assertEquals(1, server.getSlowConsumerStats().getDroppedNewest());
+    }
+
+    @Test
+    void testFirstMessageIsAcceptedEvenAboveTheHighWaterMark() {
+        NioChatServer server = new NioChatServer(9205, 1);
+        NioConnection connection = new NioConnection(null, server, SlowConsumerPolicy.DROP_NEWEST, 10);
+
+        connection.send(EncodedMessage.of(MESSAGE));
+
+        assertEquals(1, connection.getQueueDepth());
+        assertEquals(0, server.getSlowConsumerStats().getDroppedNewest());
+    }
+
+    @Test
+    void testDropOldestMakesRoomForTheNewMessage() {
+        NioChatServer server = new NioChatServer(9205, 1);
+        NioConnection connection = new NioConnection(null, server, SlowConsumerPolicy.DROP_OLDEST, 100);
+
+        connection.send(EncodedMessage.of(MESSAGE));
+        connection.send(EncodedMessage.of(MESSAGE));
+
+        assertEquals(1, connection.getQueueDepth());
+        assertEquals(60, connection.getPendingBytes(), "The pending bytes only count the newest message.");
+        assertEquals(1, server.getSlowConsumerStats().getDroppedOldest());
+    }
+
+    @Test
+    void testDisconnectDiscardsPendingMessagesAndQueuesTheNotice() {
+        NioChatServer server = new NioChatServer(9205, 1);
+        NioConnection connection = new NioConnection(null, server, SlowConsumerPolicy.DISCONNECT, 100);
+
+        connection.send(EncodedMessage.of(MESSAGE));
+        connection.send(EncodedMessage.of(MESSAGE));
+        connection.send(EncodedMessage.of("ignored"));
+
+        assertEquals(1, connection.getQueueDepth(), "Only the disconnect notice is left to write.");
+        assertEquals(EncodedMessage.of(ClientWriter.DISCONNECT_NOTICE).length(), connection.getPendingBytes());
+        assertEquals(1, server.getSlowConsumerStats().getDisconnects());
+    }
+}
@@ -0,0 +1,62 @@
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PeerTableTest {
+
+    @Test
+    void testTouchAddsAndRefreshesPeers() {
+        PeerTable table = new PeerTable(1000);
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 5000);
+
+        PeerTable.Peer peer = table.touch(address, 0);
+        assertSame(peer, table.touch(new InetSocketAddress(InetAddress.getLoopbackAddress(), 5000), 500),
+                "A known address refreshes the existing peer.");
+        assertEquals(500, peer.getLastSeenNanos());
+        assertEquals(1, table.size());
+        assertEquals("127.0.0.1:5000: ", new String(peer.getPrefix()));
+    }
+
+    @Test
+    void testExpireRemovesSilentPeersOnly() {
+        PeerTable table = new PeerTable(1000);
+        InetSocketAddress quiet = new InetSocketAddress(InetAddress.getLoopbackAddress(), 5000);
+        InetSocketAddress active = new InetSocketAddress(InetAddress.getLoopbackAddress(), 5001);
+        table.touch(quiet, 0);
+        table.touch(active, 0);
+        table.touch(active, 1500);
+
+        PeerTable.Peer[] before = table.snapshot();
+        assertEquals(1, table.expire(2000));
+        assertEquals(2, before.length, "An earlier snapshot is not affected by expiry.");
+        assertEquals(1, table.size());
+        assertEquals(active, table.snapshot()[0].getAddress());
+
+        assertNotSame(before[0], table.touch(quiet, 2100), "An expired peer comes back as a new peer.");
+        assertEquals(2, table.size());
+        assertThrows(IllegalArgumentException.class, () -> new PeerTable(0));
+    }
+
+    @Test
+    void testTimingWheelExpiresSilentPeers() {
+        long[] clock = {0};
+        TimingWheel wheel = new TimingWheel(10, 16, () -> clock[0]);
+        PeerTable table = new PeerTable(100, wheel);
+        InetSocketAddress quiet = new InetSocketAddress(InetAddress.getLoopbackAddress(), 5000);
+        InetSocketAddress active = new InetSocketAddress(InetAddress.getLoopbackAddress(), 5001);
+        table.touch(quiet, 0);
+        table.touch(active, 0);
+
+        for (long now = 30; now <= 150; now += 30) {
+            table.touch(active, now);
+            wheel.tick(clock[0] = now);
+        }
+        assertEquals(1, table.size());
+        assertEquals(active, table.snapshot()[0].getAddress());
+        assertEquals(1, table.getExpiredCount());
+        assertEquals(1, wheel.getPendingCount(), "The remaining peer keeps a single timeout.");
+    }
+}
@@ -0,0 +1,73 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReliableReceiverTest {
+
+    @Test
+    void testDeliversInOrderAndHoldsEarlyMessages() {
+        ReliableReceiver receiver = new ReliableReceiver();
+        assertEquals(List.of("zero"), texts(receiver.receive(0, 0, payload("zero"))));
+        assertTrue(receiver.receive(2, 0, payload("two")).isEmpty(), "A message after a gap is held.");
+        assertTrue(receiver.receive(3, 0, payload("three")).isEmpty());
+
+        assertEquals(List.of("one", "two", "three"), texts(receiver.receive(1, 0, payload("one"))));
+        assertEquals(4, receiver.getNextExpected());
+    }
+
+    @Test
+    void testDropsDuplicates() {
+        ReliableReceiver receiver = new ReliableReceiver();
+        receiver.receive(0, 0, payload("zero"));
+        receiver.receive(2, 0, payload("two"));
+
+        assertTrue(receiver.receive(0, 0, payload("zero")).isEmpty());
+        assertTrue(receiver.receive(2, 0, payload("two")).isEmpty());
+        assertEquals(2, receiver.getDuplicateCount());
+        assertTrue(receiver.receive(1 + ReliableProtocol.MAX_WINDOW, 0, payload("far")).isEmpty(), "Messages beyond the window are ignored.");
+        assertEquals(2, receiver.getDuplicateCount());
+    }
+
+    @Test
+    void testAckCarriesSelectiveBitmap() {
+        ReliableReceiver receiver = new ReliableReceiver();
+        receiver.receive(0, 0, payload("zero"));
+        receiver.receive(2, 0, payload("two"));
+        receiver.receive(4, 0, payload("four"));
+
+        ByteBuffer ack = ByteBuffer.allocate(ReliableProtocol.ACK_LENGTH);
+        receiver.writeAck(ack);
+        assertEquals(ReliableProtocol.TYPE_ACK, ack.get());
+        assertEquals(1, ack.getInt(), "Everything below 1 was received.");
+        assertEquals(0b101L, ack.getLong(), "2 and 4 were received out of order.");
+    }
+
+    @Test
+    void testResumesFromTheSendersBase() {
+        ReliableReceiver receiver = new ReliableReceiver();
+        assertEquals(List.of("one"), texts(receiver.receive(1, 1, payload("one"))),
+                "A receiver that lost its state resumes where the sender's acknowledged messages end.");
+        assertEquals(2, receiver.getNextExpected());
+        assertEquals(List.of("hundred"), texts(receiver.receive(100, 100, payload("hundred"))),
+                "A base far beyond the window is followed too.");
+
+        assertTrue(receiver.receive(103, 101, payload("hundred three")).isEmpty());
+        assertEquals(List.of("hundred three", "hundred four"), texts(receiver.receive(104, 103, payload("hundred four"))),
+                "Held messages are delivered when the base moves past the gap before them.");
+        assertEquals(105, receiver.getNextExpected());
+        assertTrue(receiver.receive(102, 101, payload("late")).isEmpty(), "A stale base never moves the receiver back.");
+    }
+
+    private static ByteBuffer payload(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> texts(List<byte[]> messages) {
+        return messages.stream().map(bytes -> new String(bytes, StandardCharsets.UTF_8)).collect(Collectors.toList());
+    }
+}
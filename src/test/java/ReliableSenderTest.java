@@ -0,0 +1,77 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReliableSenderTest {
+
+    @Test
+    void testSelectiveAckReleasesOnlyConfirmedMessages() throws Exception {
+        List<byte[]> sent = new ArrayList<>();
+        try (ReliableSender sender = new ReliableSender(sent::add, 8)) {
+            for (int i = 0; i < 4; i++) {
+                assertEquals(i, sender.send(new byte[]{(byte) i}));
+            }
+            assertEquals(4, sent.size());
+            assertEquals(4, sender.getInFlight());
+
+            sender.onAck(ack(1, 0b10L), ReliableProtocol.ACK_LENGTH);
+            assertEquals(2, sender.getInFlight(), "0 is acknowledged cumulatively and 3 selectively.");
+            assertEquals(2, sender.getAckedCount());
+
+            int resent = sender.retransmit(System.nanoTime() + TimeUnit.SECONDS.toNanos(5));
+            assertEquals(2, resent, "Only the unacknowledged messages 1 and 2 are resent.");
+            assertEquals(1, ByteBuffer.wrap(sent.get(4), 1, 4).getInt());
+            assertEquals(2, ByteBuffer.wrap(sent.get(5), 1, 4).getInt());
+            assertEquals(2, sender.getRetransmitCount());
+        }
+    }
+
+    @Test
+    void testWindowBlocksUntilAcknowledged() throws Exception {
+        try (ReliableSender sender = new ReliableSender(packet -> { }, 2)) {
+            sender.send(new byte[1]);
+            sender.send(new byte[1]);
+            Thread third = new Thread(() -> {
+                try {
+                    sender.send(new byte[1]);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            third.start();
+            third.join(200);
+            assertTrue(third.isAlive(), "A full window blocks the next send.");
+
+            sender.onAck(ack(1, 0), ReliableProtocol.ACK_LENGTH);
+            third.join(1000);
+            assertFalse(third.isAlive());
+            assertEquals(3, sender.getSentCount());
+        }
+    }
+
+    @Test
+    void testRtoFollowsMeasuredRoundTripsAndBacksOff() throws Exception {
+        try (ReliableSender sender = new ReliableSender(packet -> { }, 8)) {
+            assertEquals(ReliableSender.INITIAL_RTO_NANOS, sender.getRtoNanos());
+            sender.send(new byte[1]);
+            sender.onAck(ack(1, 0), ReliableProtocol.ACK_LENGTH);
+            assertEquals(ReliableSender.MIN_RTO_NANOS, sender.getRtoNanos(), "A fast loopback round trip gives the minimum timeout.");
+
+            sender.send(new byte[1]);
+            sender.retransmit(System.nanoTime() + TimeUnit.SECONDS.toNanos(1));
+            assertEquals(2 * ReliableSender.MIN_RTO_NANOS, sender.getRtoNanos(), "A timeout doubles the retransmission timeout.");
+            assertThrows(IllegalArgumentException.class, () -> new ReliableSender(packet -> { }, ReliableProtocol.MAX_WINDOW + 1));
+        }
+    }
+
+    private static byte[] ack(int nextExpected, long selective) {
+        ByteBuffer ack = ByteBuffer.allocate(ReliableProtocol.ACK_LENGTH);
+        ReliableProtocol.writeAck(ack, nextExpected, selective);
+        return ack.array();
+    }
+}
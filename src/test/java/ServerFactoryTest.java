@@ -37,4 +37,11 @@ class ServerFactoryTest {
 
         assertEquals(port, actualPort, "UDP server should be created with the specified port.");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testCreateTCPServerUsesExecutionMode() {
+        ServerFactory factory = new ServerFactory();
+        assertEquals(ExecutionMode.PLATFORM, factory.createTCPServer(8080).getExecutionMode(),
+                "Default factory should create platform-thread servers.");
+    }
+}
@@ -25,6 +25,12 @@ class TCPClientTest {
         assertEquals(9090, client.getServerPort(), "Server port should be 9090.");
     }
 
+    @Test
+    void testCompressionNeedsBinaryFraming() {
+        assertThrows(IllegalArgumentException.class, () -> new TCPClient("127.0.0.1", 8080).setCompression(true));
+        assertDoesNotThrow(() -> new TCPClient("127.0.0.1", 8080, WireProtocol.BINARY).setCompression(true));
+    }
+
     @Test
     void testNullAddress() {
         assertThrows(IllegalArgumentException.class, () -> new TCPClient(null, 8080), "Null address should throw IllegalArgumentException.");
@@ -103,6 +109,95 @@ class TCPClientTest {
         }
     }
 
+    @Test
+    void testStartInBinaryModeSendsFrames() throws IOException {
+        Socket socketMock = mock(Socket.class);
+        ByteArrayOutputStream byteOutStream = new ByteArrayOutputStream();
+        BufferedReader userInputMock = mock(BufferedReader.class);
+        String handshake = "Enter your nickname (leave blank for a random one): \n" + FrameCodec.UPGRADE_ACCEPTED + "\n";
+
+        when(userInputMock.readLine()).thenReturn("BinaryNick", "hi", null);
+        when(socketMock.getOutputStream()).thenReturn(byteOutStream);
+        when(socketMock.getInputStream()).thenReturn(new ByteArrayInputStream(handshake.getBytes(StandardCharsets.UTF_8)));
+
+        TCPClient client = spy(new TCPClient("localhost", 8000, WireProtocol.BINARY));
+        doReturn(userInputMock).when(client).createUserInputReader();
+        doReturn(socketMock).when(client).createSocket("localhost", 8000);
+
+        client.start();
+
+        ByteArrayInputStream sent = new ByteArrayInputStream(byteOutStream.toByteArray());
+        assertEquals(FrameCodec.UPGRADE_REQUEST, FrameCodec.readLine(sent));
+        FrameDecoder frames = new FrameDecoder();
+        assertTrue(frames.read(sent));
+        assertEquals("BinaryNick", frames.text());
+        assertTrue(frames.read(sent));
+        assertEquals("hi", frames.text());
+        assertFalse(frames.read(sent));
+    }
+
+    @Test
+    void testDirectMessageIsSentAsADirectFrame() throws IOException {
+        Socket socketMock = mock(Socket.class);
+        ByteArrayOutputStream byteOutStream = new ByteArrayOutputStream();
+        BufferedReader userInputMock = mock(BufferedReader.class);
+        String handshake = "Enter your nickname (leave blank for a random one): \n" + FrameCodec.UPGRADE_ACCEPTED + "\n";
+
+        when(userInputMock.readLine()).thenReturn("BinaryNick", "/msg Bob see you  later", null);
+        when(socketMock.getOutputStream()).thenReturn(byteOutStream);
+        when(socketMock.getInputStream()).thenReturn(new ByteArrayInputStream(handshake.getBytes(StandardCharsets.UTF_8)));
+
+        TCPClient client = spy(new TCPClient("localhost", 8000, WireProtocol.BINARY));
+        doReturn(userInputMock).when(client).createUserInputReader();
+        doReturn(socketMock).when(client).createSocket("localhost", 8000);
+
+        client.start();
+
+        ByteArrayInputStream sent = new ByteArrayInputStream(byteOutStream.toByteArray());
+        FrameCodec.readLine(sent);
+        FrameDecoder frames = new FrameDecoder();
+        assertTrue(frames.read(sent));
+        assertEquals(FrameCodec.TYPE_TEXT, frames.getType());
+        assertTrue(frames.read(sent));
+        assertEquals(FrameCodec.TYPE_DIRECT, frames.getType());
+        assertEquals("Bob\nsee you  later", frames.text());
+    }
+
+    @Test
+    void testServerRepliesArePrinted() throws Exception {
+        Socket socketMock = mock(Socket.class);
+        BufferedReader userInputMock = mock(BufferedReader.class);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        received.write(("Enter your nickname (leave blank for a random one): \n" + FrameCodec.UPGRADE_ACCEPTED + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        FrameCodec.writeText(received, "[to Bob] see you later");
+        FrameCodec.writeText(received, ConnectionThread.PING);
+
+        when(userInputMock.readLine()).thenReturn("BinaryNick", (String) null);
+        when(socketMock.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+        when(socketMock.getInputStream()).thenReturn(new ByteArrayInputStream(received.toByteArray()));
+
+        TCPClient client = spy(new TCPClient("localhost", 8000, WireProtocol.BINARY));
+        doReturn(userInputMock).when(client).createUserInputReader();
+        doReturn(socketMock).when(client).createSocket("localhost", 8000);
+
+        PrintStream originalOut = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed, true, StandardCharsets.UTF_8));
+        try {
+            client.start();
+            long deadline = System.currentTimeMillis() + 2000;
+            while (!printed.toString(StandardCharsets.UTF_8).contains("[to Bob]") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            System.setOut(originalOut);
+        }
+        String output = printed.toString(StandardCharsets.UTF_8);
+        assertTrue(output.contains("[to Bob] see you later"), "Delivery confirmations reach the user.");
+        assertFalse(output.contains(ConnectionThread.PING), "Heartbeats are answered, not printed.");
+    }
+
     @Test
     void testToHexWithSpecialCharacters() {
         assertEquals("2122232425", TCPClient.toHex("!\"#$%"), "Hex representation of '!\"#$%' should be '2122232425'.");
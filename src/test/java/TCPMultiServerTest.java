@@ -1,11 +1,24 @@
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.*;
 
 class TCPMultiServerTest {
 
@@ -82,4 +95,575 @@ class TCPMultiServerTest {
 
         serverThread.interrupt();
     }
-}
+
+    @Test
+    void testQueueDepthIsReportedPerClient() throws Exception {
+        int testPort = 9092;
+        TCPMultiServer server = new TCPMultiServer(testPort);
+
+        Thread serverThread = new Thread(server::launch);
+        serverThread.start();
+
+        Thread.sleep(1000);
+
+        try (Socket clientSocket = new Socket("localhost", testPort)) {
+            Scanner in = new Scanner(clientSocket.getInputStream());
+            in.nextLine();
+            new PrintWriter(clientSocket.getOutputStream(), true).println("Alice");
+            in.nextLine();
+
+            Thread.sleep(200);
+            assertEquals(0, server.getQueueDepth("Alice"), "An idle client should have an empty queue.");
+            assertTrue(server.getQueueDepths().containsKey("Alice"), "Connected clients should be reported.");
+            assertEquals(0, server.getQueueDepth("Nobody"), "Unknown clients should report an empty queue.");
+        } finally {
+            server.shutdown();
+            serverThread.interrupt();
+        }
+    }
+
+    @Test
+    void testBroadcastEncodesOncePerMessage() throws IOException {
+        TCPMultiServer server = new TCPMultiServer(9094);
+        for (int i = 0; i < 50; i++) {
+            server.addClient("User" + i, mockSocket(new ByteArrayOutputStream()));
+        }
+
+        String message = "User0: hello everyone";
+        for (int i = 0; i < 10; i++) {
+            server.broadcast(message, "User0");
+        }
+
+        assertEquals(10, server.getEncodedMessageCount(), "Each broadcast should be encoded exactly once.");
+        assertEquals(10L * (message.length() + 1), server.getEncodedByteCount());
+        server.shutdown();
+    }
+
+    @Test
+    void testBroadcastsAreAppendedToTheCommitLog(@TempDir Path directory) throws IOException {
+        TCPMultiServer server = new TCPMultiServer(9099);
+        server.setCommitLog(new CommitLog(directory, 64 * 1024, 3_600_000, 0, 0));
+        server.addClient("Alice", mockSocket(new ByteArrayOutputStream()));
+
+        server.broadcast("Server: welcome", null);
+        server.broadcastToRoom(ChatRoom.DEFAULT_ROOM, "Alice: hello", null);
+        server.shutdown();
+
+        try (CommitLog log = new CommitLog(directory, 64 * 1024, 3_600_000, 0, 0)) {
+            List<CommitLog.LogRecord> records = log.read(0, 10);
+            assertEquals(2, records.size(), "Broadcasts persisted before shutdown survive a restart.");
+            assertEquals("Server: welcome", records.get(0).text());
+            assertEquals("[#lobby] Alice: hello", records.get(1).text());
+        }
+    }
+
+    @Test
+    void testBroadcastAllocationDoesNotGrowWithRecipients() throws IOException {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "Allocation counters are not available.");
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+
+        long fewRecipients = allocatedBytesPerBroadcast(threadBean, 1);
+        long manyRecipients = allocatedBytesPerBroadcast(threadBean, 500);
+
+        assertTrue(manyRecipients < fewRecipients + 256,
+                "Allocation per broadcast should not depend on fan-out: " + fewRecipients + " B vs " + manyRecipients + " B");
+    }
+
+    @Test
+    void testRoomBroadcastOnlyReachesMembers() throws Exception {
+        int testPort = 9096;
+        TCPMultiServer server = new TCPMultiServer(testPort);
+
+        Thread serverThread = new Thread(server::launch);
+        serverThread.start();
+
+        Thread.sleep(1000);
+
+        try (Socket alice = new Socket("localhost", testPort);
+             Socket bob = new Socket("localhost", testPort);
+             Socket carol = new Socket("localhost", testPort)) {
+            Scanner aliceIn = login(server, alice, "Alice");
+            Scanner bobIn = login(server, bob, "Bob");
+            Scanner carolIn = login(server, carol, "Carol");
+            assertEquals("Bob joined the chat.", aliceIn.nextLine());
+            assertEquals("Carol joined the chat.", aliceIn.nextLine());
+            assertEquals("Carol joined the chat.", bobIn.nextLine());
+
+            PrintWriter aliceOut = new PrintWriter(alice.getOutputStream(), true);
+            PrintWriter bobOut = new PrintWriter(bob.getOutputStream(), true);
+            aliceOut.println("/join dev");
+            assertEquals("You are now in #dev (1 members).", aliceIn.nextLine());
+            assertEquals("Alice left #lobby.", bobIn.nextLine());
+            assertEquals("Alice left #lobby.", carolIn.nextLine());
+
+            bobOut.println("/join dev");
+            assertEquals("Bob left #lobby.", carolIn.nextLine());
+            assertEquals("Bob joined #dev.", aliceIn.nextLine());
+            assertEquals("Alice joined #dev.", bobIn.nextLine(), "Joining a room replays its history.");
+            assertEquals("You are now in #dev (2 members).", bobIn.nextLine());
+
+            aliceOut.println("only for dev");
+            assertEquals("Alice: only for dev", bobIn.nextLine());
+
+            new PrintWriter(carol.getOutputStream(), true).println("/rooms");
+            assertEquals("#dev (2 members, 3 messages)", carolIn.nextLine());
+            assertEquals("#lobby (1 members, 2 messages)", carolIn.nextLine());
+            assertEquals("dev", server.getRoomOf("Alice"));
+        } finally {
+            server.shutdown();
+            serverThread.interrupt();
+        }
+    }
+
+    @Test
+    void testLateJoinerReceivesRoomHistory() throws Exception {
+        int testPort = 9098;
+        TCPMultiServer server = new TCPMultiServer(testPort);
+        server.setHistoryCapacity(2, 1024);
+
+        Thread serverThread = new Thread(server::launch);
+        serverThread.start();
+
+        Thread.sleep(1000);
+
+        try (Socket alice = new Socket("localhost", testPort);
+             Socket bob = new Socket("localhost", testPort)) {
+            login(server, alice, "Alice");
+            PrintWriter aliceOut = new PrintWriter(alice.getOutputStream(), true);
+            aliceOut.println("one");
+            aliceOut.println("two");
+            aliceOut.println("three");
+            while (server.getRooms().get(0).getMessageCount() < 3) {
+                Thread.sleep(10);
+            }
+
+            Scanner bobIn = login(server, bob, "Bob");
+            assertEquals("Alice: two", bobIn.nextLine(), "Only the last two messages are kept.");
+            assertEquals("Alice: three", bobIn.nextLine());
+
+            aliceOut.println("live");
+            assertEquals("Alice: live", bobIn.nextLine());
+        } finally {
+            server.shutdown();
+            serverThread.interrupt();
+        }
+    }
+
+    @Test
+    void testBinaryAndTextClientsShareARoom() throws Exception {
+        int testPort = 9097;
+        TCPMultiServer server = new TCPMultiServer(testPort);
+
+        Thread serverThread = new Thread(server::launch);
+        serverThread.start();
+
+        Thread.sleep(1000);
+
+        try (Socket binary = new Socket("localhost", testPort);
+             Socket text = new Socket("localhost", testPort)) {
+            binary.setSoTimeout(5000);
+            InputStream binaryIn = binary.getInputStream();
+            OutputStream binaryOut = binary.getOutputStream();
+            FrameCodec.readLine(binaryIn);
+            binaryOut.write((FrameCodec.UPGRADE_REQUEST + "\n").getBytes(StandardCharsets.UTF_8));
+            assertEquals(FrameCodec.UPGRADE_ACCEPTED, FrameCodec.readLine(binaryIn));
+            FrameCodec.writeText(binaryOut, "Bin");
+            FrameDecoder frames = new FrameDecoder();
+            assertTrue(frames.read(binaryIn));
+            assertTrue(frames.text().startsWith("Connected as Bin."));
+            while (server.getRoomOf("Bin") == null) {
+                Thread.sleep(10);
+            }
+
+            Scanner textIn = login(server, text, "Txt");
+            assertTrue(frames.read(binaryIn));
+            assertEquals("Txt joined the chat.", frames.text());
+
+            FrameCodec.writeText(binaryOut, "two\nlines");
+            binaryOut.flush();
+            assertEquals("Bin: two", textIn.nextLine());
+            assertEquals("lines", textIn.nextLine());
+
+            new PrintWriter(text.getOutputStream(), true).println("hello binary");
+            assertTrue(frames.read(binaryIn));
+            assertEquals(FrameCodec.TYPE_TEXT, frames.getType());
+            assertEquals("Txt: hello binary", frames.text());
+
+            java.util.Map<String, Long> metrics = server.getMetrics().snapshot();
+            assertEquals(2L, metrics.get("connections.accepted"));
+            assertEquals(2L, metrics.get("clients.connected"));
+            assertEquals(1L, metrics.get("messages.in.binary"));
+            assertEquals(1L, metrics.get("messages.in.text"));
+            assertEquals(6L + "two\nlines".length(), metrics.get("bytes.in.binary"));
+            assertEquals((long) "hello binary\n".length(), metrics.get("bytes.in.text"));
+            assertTrue(metrics.get("broadcast.fanout.nanos.count") >= 2);
+        } finally {
+            server.shutdown();
+            serverThread.interrupt();
+        }
+    }
+
+    @Test
+    void testIdleClientIsPingedThenReaped() throws Exception {
+        int testPort = 9150;
+        TCPMultiServer server = new TCPMultiServer(testPort);
+        server.setHeartbeat(1, 3);
+        assertThrows(IllegalArgumentException.class, () -> server.setHeartbeat(2, 2));
+
+        Thread serverThread = new Thread(server::launch);
+        serverThread.start();
+
+        Thread.sleep(1000);
+
+        try (Socket active = new Socket("localhost", testPort);
+             Socket quiet = new Socket("localhost", testPort)) {
+            Scanner activeIn = login(server, active, "Active");
+            PrintWriter activeOut = new PrintWriter(active.getOutputStream(), true);
+            Thread responder = new Thread(() -> {
+                while (activeIn.hasNextLine()) {
+                    if (ConnectionThread.PING.equals(activeIn.nextLine())) {
+                        activeOut.println(ConnectionThread.PONG);
+                    }
+                }
+            });
+            responder.setDaemon(true);
+            responder.start();
+
+            Scanner quietIn = login(server, quiet, "Quiet");
+            assertEquals(ConnectionThread.PING, quietIn.nextLine(), "A silent client is sent a heartbeat.");
+            long deadline = System.currentTimeMillis() + 5000;
+            while (server.getRoomOf("Quiet") != null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+
+            assertNull(server.getRoomOf("Quiet"), "A client silent for the idle timeout is disconnected.");
+            assertNotNull(server.getRoomOf("Active"), "A client answering heartbeats stays connected.");
+            java.util.Map<String, Long> metrics = server.getMetrics().snapshot();
+            assertEquals(1L, metrics.get("connections.reaped"));
+            assertTrue(metrics.get("heartbeats.sent") >= 2);
+        } finally {
+            server.shutdown();
+            serverThread.interrupt();
+        }
+    }
+
+    @Test
+    void testFloodingClientIsThrottledWithoutLosingMessages() throws Exception {
+        int testPort = 9151;
+        TCPMultiServer server = new TCPMultiServer(testPort);
+        server.setMessageRateLimit(20, 2);
+        assertThrows(IllegalArgumentException.class, () -> server.setMessageRateLimit(5, 0));
+
+        Thread serverThread = new Thread(server::launch);
+        serverThread.start();
+
+        Thread.sleep(1000);
+
+        try (Socket reader = new Socket("localhost", testPort);
+             Socket flooder = new Socket("localhost", testPort)) {
+            Scanner readerIn = login(server, reader, "Reader");
+            login(server, flooder, "Flooder");
+            assertEquals("Flooder joined the chat.", readerIn.nextLine());
+
+            long start = System.nanoTime();
+            PrintWriter flooderOut = new PrintWriter(flooder.getOutputStream(), true);
+            for (int i = 0; i < 12; i++) {
+                flooderOut.println("line " + i);
+            }
+            for (int i = 0; i < 12; i++) {
+                assertEquals("Flooder: line " + i, readerIn.nextLine(), "Throttled messages are delayed, not dropped.");
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertTrue(elapsedMillis >= 450, "12 messages at 20/s after a burst of 2 take about 500 ms, took " + elapsedMillis);
+            java.util.Map<String, Long> metrics = server.getMetrics().snapshot();
+            assertTrue(metrics.get("messages.throttled") >= 9);
+            assertTrue(metrics.get("throttle.nanos") > 0);
+        } finally {
+            server.shutdown();
+            serverThread.interrupt();
+        }
+    }
+
+    @Test
+    void testConnectionsOverTheLimitsAreRejectedAtAccept() throws Exception {
+        int testPort = 9152;
+        TCPMultiServer server = new TCPMultiServer(testPort);
+        server.setConnectionLimits(1, 0);
+
+        Thread serverThread = new Thread(server::launch);
+        serverThread.start();
+
+        Thread.sleep(1000);
+
+        try {
+            try (Socket first = new Socket("localhost", testPort)) {
+                login(server, first, "First");
+                assertEquals("Server is full, try again later.", rejection(testPort));
+            }
+            awaitMetric(server, "connections.open", 0);
+
+            server.setConnectionLimits(0, 1);
+            try (Socket second = new Socket("localhost", testPort)) {
+                login(server, second, "Second");
+                assertEquals("Too many connections from your address.", rejection(testPort));
+
+                server.setAcceptRateLimit(0.01, 1);
+                assertEquals("Too many connections from your address.", rejection(testPort));
+                assertEquals("Too many connection attempts, try again later.", rejection(testPort));
+            }
+
+            java.util.Map<String, Long> metrics = server.getMetrics().snapshot();
+            assertEquals(1L, metrics.get("connections.rejected.full"));
+            assertEquals(2L, metrics.get("connections.rejected.address"));
+            assertEquals(1L, metrics.get("connections.rejected.rate"));
+            assertEquals(2L, metrics.get("connections.accepted"), "Rejected connections never reach a connection thread.");
+        } finally {
+            server.shutdown();
+            serverThread.interrupt();
+        }
+    }
+
+    @Test
+    void testCompressedClientsShareOneDeflatePerBroadcast() throws Exception {
+        int testPort = 9153;
+        TCPMultiServer server = new TCPMultiServer(testPort);
+
+        Thread serverThread = new Thread(server::launch);
+        serverThread.start();
+
+        Thread.sleep(1000);
+
+        StringBuilder trace = new StringBuilder("java.lang.IllegalStateException: boom");
+        for (int i = 0; i < 40; i++) {
+            trace.append(" at com.example.service.Handler.process(Handler.java:").append(100 + i).append(')');
+        }
+        String pasted = trace.toString();
+
+        try (Socket first = new Socket("localhost", testPort);
+             Socket second = new Socket("localhost", testPort);
+             Socket text = new Socket("localhost", testPort)) {
+            FrameDecoder firstFrames = loginCompressed(server, first, "Zip1");
+            FrameDecoder secondFrames = loginCompressed(server, second, "Zip2");
+            Scanner textIn = login(server, text, "Txt");
+            assertTrue(firstFrames.read(first.getInputStream()));
+            assertEquals("Zip2 joined the chat.", firstFrames.text());
+            assertTrue(firstFrames.read(first.getInputStream()));
+            assertEquals("Txt joined the chat.", firstFrames.text());
+            assertTrue(secondFrames.read(second.getInputStream()));
+            assertEquals("Txt joined the chat.", secondFrames.text());
+
+            new PrintWriter(text.getOutputStream(), true).println(pasted);
+            assertTrue(firstFrames.read(first.getInputStream()));
+            assertEquals(FrameCodec.FLAG_DEFLATE, firstFrames.getFlags());
+            assertEquals("Txt: " + pasted, firstFrames.text());
+            assertTrue(secondFrames.read(second.getInputStream()));
+            assertEquals("Txt: " + pasted, secondFrames.text());
+
+            try (FrameCompressor compressor = new FrameCompressor(FrameCompressor.DEFAULT_THRESHOLD)) {
+                byte[] payload = pasted.getBytes(StandardCharsets.UTF_8);
+                byte[] frame = compressor.encode(FrameCodec.TYPE_TEXT, payload, 0, payload.length);
+                assertEquals(FrameCodec.FLAG_DEFLATE, frame[5]);
+                first.getOutputStream().write(frame);
+            }
+            assertEquals("Zip1: " + pasted, textIn.nextLine(), "A compressed frame from a client is inflated.");
+
+            CompressionStats stats = server.getCompressionStats();
+            assertTrue(secondFrames.read(second.getInputStream()));
+            assertEquals("Zip1: " + pasted, secondFrames.text());
+            assertEquals(2, stats.getDeflateCount(), "Each broadcast is deflated once, not once per recipient.");
+            assertTrue(stats.getSavedBytes() > 3L * pasted.length() / 2);
+            assertTrue(server.getMetrics().snapshot().get("compression.bytes.saved") > 0);
+            firstFrames.close();
+            secondFrames.close();
+        } finally {
+            server.shutdown();
+            serverThread.interrupt();
+        }
+    }
+
+    @Test
+    void testDirectMessagesReachOnlyTheRecipient() throws Exception {
+        int testPort = 9154;
+        TCPMultiServer server = new TCPMultiServer(testPort);
+
+        Thread serverThread = new Thread(server::launch);
+        serverThread.start();
+
+        Thread.sleep(1000);
+
+        try (Socket alice = new Socket("localhost", testPort);
+             Socket bob = new Socket("localhost", testPort);
+             Socket carol = new Socket("localhost", testPort)) {
+            Scanner aliceIn = login(server, alice, "Alice");
+            Scanner bobIn = login(server, bob, "Bob");
+            assertEquals("Bob joined the chat.", aliceIn.nextLine());
+
+            carol.setSoTimeout(5000);
+            InputStream carolIn = carol.getInputStream();
+            OutputStream carolOut = carol.getOutputStream();
+            FrameCodec.readLine(carolIn);
+            carolOut.write((FrameCodec.UPGRADE_REQUEST + "\n").getBytes(StandardCharsets.UTF_8));
+            assertEquals(FrameCodec.UPGRADE_ACCEPTED, FrameCodec.readLine(carolIn));
+            FrameCodec.writeText(carolOut, "Carol");
+            FrameDecoder frames = new FrameDecoder();
+            assertTrue(frames.read(carolIn));
+            assertEquals("Carol joined the chat.", aliceIn.nextLine());
+            assertEquals("Carol joined the chat.", bobIn.nextLine());
+
+            PrintWriter aliceOut = new PrintWriter(alice.getOutputStream(), true);
+            aliceOut.println("/msg Bob psst, over here");
+            assertEquals("[from Alice] psst, over here", bobIn.nextLine());
+            assertEquals("[to Bob] psst, over here", aliceIn.nextLine(), "The sender is told the message went out.");
+
+            byte[] payload = FrameCodec.directPayload("Alice", "hi from binary");
+            carolOut.write(FrameCodec.encode(FrameCodec.TYPE_DIRECT, (byte) 0, payload, 0, payload.length));
+            carolOut.flush();
+            assertEquals("[from Carol] hi from binary", aliceIn.nextLine());
+            assertTrue(frames.read(carolIn));
+            assertEquals("[to Alice] hi from binary", frames.text());
+
+            aliceOut.println("/msg Nobody hello?");
+            assertEquals("Message to Nobody not delivered: Nobody is not connected to this server.", aliceIn.nextLine());
+            aliceOut.println("/msg Bob");
+            assertEquals("Usage: /msg <nickname> <message>", aliceIn.nextLine());
+
+            new PrintWriter(bob.getOutputStream(), true).println("in public");
+            assertEquals("Bob: in public", aliceIn.nextLine());
+            assertTrue(frames.read(carolIn));
+            assertEquals("Bob: in public", frames.text(), "Direct messages to others never reach a bystander.");
+            assertEquals(2L, server.getMetrics().snapshot().get("messages.direct"));
+        } finally {
+            server.shutdown();
+            serverThread.interrupt();
+        }
+    }
+
+    @Test
+    void testOverlongLineDisconnectsOnlyItsSender() throws Exception {
+        int testPort = 9155;
+        TCPMultiServer server = new TCPMultiServer(testPort);
+
+        Thread serverThread = new Thread(server::launch);
+        serverThread.start();
+
+        Thread.sleep(1000);
+
+        try (Socket alice = new Socket("localhost", testPort);
+             Socket bob = new Socket("localhost", testPort);
+             Socket carol = new Socket("localhost", testPort)) {
+            Scanner aliceIn = login(server, alice, "Alice");
+            login(server, bob, "Bob");
+            assertEquals("Bob joined the chat.", aliceIn.nextLine());
+            FrameDecoder carolFrames = loginCompressed(server, carol, "Carol");
+            assertEquals("Carol joined the chat.", aliceIn.nextLine());
+
+            PrintWriter bobOut = new PrintWriter(bob.getOutputStream(), true);
+            bobOut.println("x".repeat(ConnectionThread.MAX_MESSAGE_LENGTH + 1));
+            assertEquals("Bob has left the chat.", aliceIn.nextLine());
+            assertTrue(carolFrames.read(carol.getInputStream()));
+            assertEquals("Bob has left the chat.", carolFrames.text());
+
+            new PrintWriter(alice.getOutputStream(), true).println("still here");
+            assertTrue(carolFrames.read(carol.getInputStream()));
+            assertEquals("Alice: still here", carolFrames.text(), "Binary recipients keep receiving messages.");
+        } finally {
+            server.shutdown();
+            serverThread.interrupt();
+        }
+    }
+
+    private static FrameDecoder loginCompressed(TCPMultiServer server, Socket socket, String nickname) throws Exception {
+        socket.setSoTimeout(5000);
+        InputStream in = socket.getInputStream();
+        OutputStream out = socket.getOutputStream();
+        FrameCodec.readLine(in);
+        out.write((FrameCodec.UPGRADE_REQUEST_DEFLATE + "\n").getBytes(StandardCharsets.UTF_8));
+        assertEquals(FrameCodec.UPGRADE_ACCEPTED_DEFLATE, FrameCodec.readLine(in));
+        FrameCodec.writeText(out, nickname);
+        FrameDecoder frames = new FrameDecoder();
+        assertTrue(frames.read(in));
+        assertTrue(frames.text().startsWith("Connected as " + nickname + "."));
+        while (server.getRoomOf(nickname) == null) {
+            Thread.sleep(10);
+        }
+        return frames;
+    }
+
+    private static String rejection(int port) throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            Scanner in = new Scanner(socket.getInputStream(), StandardCharsets.UTF_8);
+            String reason = in.nextLine();
+            assertFalse(in.hasNextLine(), "A rejected connection is closed after the reason.");
+            return reason;
+        }
+    }
+
+    private static void awaitMetric(TCPMultiServer server, String name, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getMetrics().snapshot().get(name) != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, server.getMetrics().snapshot().get(name));
+    }
+
+    private static Scanner login(TCPMultiServer server, Socket socket, String nickname) throws Exception {
+        socket.setSoTimeout(5000);
+        Scanner in = new Scanner(socket.getInputStream(), StandardCharsets.UTF_8);
+        in.nextLine();
+        new PrintWriter(socket.getOutputStream(), true).println(nickname);
+        in.nextLine();
+        while (server.getRoomOf(nickname) == null) {
+            Thread.sleep(10);
+        }
+        return in;
+    }
+
+    private static long allocatedBytesPerBroadcast(com.sun.management.ThreadMXBean threadBean, int recipients) throws IOException {
+        TCPMultiServer server = new TCPMultiServer(9095);
+        server.setOutboundQueueCapacity(4096);
+        // Writers stall on their first message, so queue locks are never contended while measuring.
+        CountDownLatch release = new CountDownLatch(1);
+        OutputStream stalledSink = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        };
+        for (int i = 0; i < recipients; i++) {
+            server.addClient("User" + i, mockSocket(stalledSink));
+        }
+
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            String message = "sender: a message of typical chat length";
+            for (int i = 0; i < 200; i++) {
+                server.broadcast(message, "sender");
+            }
+            long threadId = Thread.currentThread().getId();
+            long before = threadBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 1000; i++) {
+                server.broadcast(message, "sender");
+            }
+            return (threadBean.getThreadAllocatedBytes(threadId) - before) / 1000;
+        } finally {
+            System.setOut(originalOut);
+            release.countDown();
+            server.shutdown();
+        }
+    }
+
+    private static Socket mockSocket(OutputStream outputStream) throws IOException {
+        Socket socket = mock(Socket.class);
+        when(socket.getOutputStream()).thenReturn(outputStream);
+        return socket;
+    }
+}
\ No newline at end of file
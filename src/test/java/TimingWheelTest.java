@@ -0,0 +1,82 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    @Test
+    void testTimeoutsFireInOrderAndNeverEarly() {
+        long[] clock = {0};
+        TimingWheel wheel = new TimingWheel(10, 8, () -> clock[0]);
+        List<String> fired = new ArrayList<>();
+        wheel.schedule(() -> fired.add("late"), 45);
+        wheel.schedule(() -> fired.add("early"), 15);
+
+        wheel.tick(clock[0] = 10);
+        assertTrue(fired.isEmpty(), "A timeout never fires before its deadline.");
+        wheel.tick(clock[0] = 20);
+        assertEquals(List.of("early"), fired);
+        wheel.tick(clock[0] = 40);
+        assertEquals(List.of("early"), fired);
+        wheel.tick(clock[0] = 50);
+        assertEquals(List.of("early", "late"), fired);
+        assertEquals(0, wheel.getPendingCount());
+        assertEquals(2, wheel.getExpiredCount());
+    }
+
+    @Test
+    void testTimeoutBeyondOneRevolutionWaitsForItsRound() {
+        long[] clock = {0};
+        TimingWheel wheel = new TimingWheel(10, 4, () -> clock[0]);
+        TimingWheel.Timeout timeout = wheel.schedule(() -> { }, 100);
+
+        wheel.tick(clock[0] = 20);
+        wheel.tick(clock[0] = 60);
+        assertFalse(timeout.isExpired(), "The timeout shares its bucket with earlier ticks but is rounds away.");
+        wheel.tick(clock[0] = 90);
+        assertFalse(timeout.isExpired());
+        wheel.tick(clock[0] = 100);
+        assertTrue(timeout.isExpired());
+    }
+
+    @Test
+    void testCancelledTimeoutNeverFires() {
+        long[] clock = {0};
+        TimingWheel wheel = new TimingWheel(10, 8, () -> clock[0]);
+        int[] runs = {0};
+        TimingWheel.Timeout beforePlacement = wheel.schedule(() -> runs[0]++, 30);
+        TimingWheel.Timeout afterPlacement = wheel.schedule(() -> runs[0]++, 30);
+        assertEquals(2, wheel.getPendingCount());
+
+        assertTrue(beforePlacement.cancel());
+        wheel.tick(clock[0] = 10);
+        assertTrue(afterPlacement.cancel());
+        assertFalse(afterPlacement.cancel(), "A timeout is cancelled only once.");
+        wheel.tick(clock[0] = 100);
+
+        assertEquals(0, runs[0]);
+        assertTrue(beforePlacement.isCancelled());
+        assertEquals(0, wheel.getPendingCount());
+        assertEquals(0, wheel.getExpiredCount());
+    }
+
+    @Test
+    void testStartedWheelRunsTasksOnItsThread() throws InterruptedException {
+        try (TimingWheel wheel = new TimingWheel(TimeUnit.MILLISECONDS.toNanos(10), 16)) {
+            wheel.start("test-wheel");
+            CountDownLatch fired = new CountDownLatch(1);
+            long start = System.nanoTime();
+            wheel.schedule(fired::countDown, TimeUnit.MILLISECONDS.toNanos(50));
+
+            assertTrue(fired.await(5, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel(0, 8));
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel(10, 0));
+    }
+}
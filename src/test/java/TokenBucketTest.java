@@ -0,0 +1,39 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void testBurstThenSustainedRate() {
+        TokenBucket bucket = new TokenBucket(10, 3, 0);
+
+        assertTrue(bucket.tryAcquire(1, 0));
+        assertTrue(bucket.tryAcquire(2, 0));
+        assertFalse(bucket.tryAcquire(1, 0), "The burst is limited to the capacity.");
+        assertFalse(bucket.tryAcquire(1, SECOND / 20), "Half a token is not enough.");
+        assertTrue(bucket.tryAcquire(1, SECOND / 10));
+        assertEquals(3, bucket.available(10 * SECOND), "An idle bucket refills up to its capacity only.");
+    }
+
+    @Test
+    void testReserveGoesIntoDebtAndReportsTheWait() {
+        TokenBucket bucket = new TokenBucket(100, 50, 0);
+
+        assertEquals(0, bucket.reserve(50, 0));
+        assertEquals(SECOND, bucket.reserve(100, 0), "A unit larger than the capacity waits for its tokens.");
+        assertEquals(-100, bucket.available(0));
+        assertFalse(bucket.tryAcquire(1, SECOND / 2));
+        assertEquals(0, bucket.reserve(1, SECOND + SECOND / 100));
+    }
+
+    @Test
+    void testInvalidSettingsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(Double.NaN, 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1, 0, 0));
+    }
+}
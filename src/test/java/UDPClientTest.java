@@ -1,8 +1,14 @@
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Console;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -93,4 +99,27 @@ class UDPClientTest {
         assertDoesNotThrow(client::launch);
         verify(client, atLeastOnce()).launch();
     }
-}
\ No newline at end of file
+
+    @Test
+    void testReceiverPrintsRelayedMessages() throws Exception {
+        UDPClient client = new UDPClient("127.0.0.1", 8080);
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        try (DatagramSocket server = new DatagramSocket()) {
+            Thread receiver = client.startReceiver(socket, new PrintStream(printed, true, StandardCharsets.UTF_8));
+            byte[] relayed = "127.0.0.1:5000: hello".getBytes(StandardCharsets.UTF_8);
+            server.send(new DatagramPacket(relayed, relayed.length, InetAddress.getLoopbackAddress(), socket.getLocalPort()));
+
+            long deadline = System.currentTimeMillis() + 2000;
+            while (!printed.toString(StandardCharsets.UTF_8).contains("hello") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(printed.toString(StandardCharsets.UTF_8).contains("127.0.0.1:5000: hello"));
+            socket.close();
+            receiver.join(1000);
+            assertFalse(receiver.isAlive(), "The receiver stops when the socket is closed.");
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -2,10 +2,14 @@ import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.io.TempDir;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.net.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -120,6 +124,131 @@ class UDPServerTest {
         }
     }
 
+    @Test
+    void testWorkersShareTheReceiveLoad() throws Exception {
+        UDPServer server = new UDPServer(9190);
+        server.setWorkers(4);
+        assertThrows(IllegalArgumentException.class, () -> server.setWorkers(0));
+        Thread launcher = new Thread(() -> {
+            try {
+                server.launch();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        launcher.start();
+        TimeUnit.MILLISECONDS.sleep(500);
+
+        try (DatagramSocket sender = new DatagramSocket()) {
+            for (int i = 0; i < 200; i++) {
+                byte[] payload = ("Worker test " + i).getBytes(StandardCharsets.UTF_8);
+                sender.send(new DatagramPacket(payload, payload.length, InetAddress.getLoopbackAddress(), 9190));
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getMetrics().snapshot().get("messages.in.udp") < 200 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        Map<String, Long> metrics = server.getMetrics().snapshot();
+        assertEquals(200, metrics.get("messages.in.udp"));
+        long perWorker = 0;
+        for (int i = 0; i < 4; i++) {
+            perWorker += metrics.get("messages.in.udp.worker" + i);
+        }
+        assertEquals(200, perWorker, "Every datagram is counted by exactly one worker.");
+
+        server.shutdown();
+        launcher.join(5000);
+        assertFalse(launcher.isAlive(), "launch() should return once the server is shut down.");
+    }
+
+    @Test
+    void testMessagesAreRelayedToOtherPeers() throws Exception {
+        UDPServer server = new UDPServer(9193);
+        Thread launcher = new Thread(() -> {
+            try {
+                server.launch();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        launcher.start();
+        TimeUnit.MILLISECONDS.sleep(500);
+
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 9193);
+        try (DatagramSocket alice = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+             DatagramSocket bob = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            alice.setSoTimeout(2000);
+            bob.setSoTimeout(2000);
+            send(alice, "Alice is here", address);
+            TimeUnit.MILLISECONDS.sleep(200);
+            send(bob, "hello", address);
+
+            assertEquals("127.0.0.1:" + bob.getLocalPort() + ": hello", receive(alice));
+            send(alice, "hi Bob", address);
+            assertEquals("127.0.0.1:" + alice.getLocalPort() + ": hi Bob", receive(bob),
+                    "Bob receives Alice's reply but never his own message.");
+            assertEquals(2, server.getPeers().size());
+        } finally {
+            server.shutdown();
+            launcher.join(5000);
+        }
+    }
+
+    @Test
+    void testReliableModeDeliversEveryMessageOnceInOrderUnderLoss(@TempDir Path directory) throws Exception {
+        UDPServer server = new UDPServer(9194);
+        server.setLossSimulator(new LossSimulator(0.2, 42));
+        CommitLog log = new CommitLog(directory, 64 * 1024, 3_600_000, 0, 0);
+        server.setCommitLog(log);
+        Thread launcher = new Thread(() -> {
+            try {
+                server.launch();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        launcher.start();
+        TimeUnit.MILLISECONDS.sleep(500);
+
+        UDPClient client = new UDPClient("127.0.0.1", 9194);
+        client.setLossSimulator(new LossSimulator(0.2, 7));
+        try (DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            ReliableSender sender = client.openReliableSender(socket, new InetSocketAddress(InetAddress.getLoopbackAddress(), 9194));
+            client.startReceiver(socket, new PrintStream(new ByteArrayOutputStream()), sender);
+            for (int i = 0; i < 300; i++) {
+                sender.send(("reliable " + i).getBytes(StandardCharsets.UTF_8));
+            }
+            assertTrue(sender.awaitAcknowledged(10, TimeUnit.SECONDS), "Every message should be acknowledged: " + sender);
+            sender.close();
+
+            assertTrue(sender.getRetransmitCount() > 0, "Lost datagrams must have been resent.");
+            assertEquals(300, sender.getAckedCount());
+            assertEquals(300, server.getMetrics().snapshot().get("messages.in.udp"), "Each message is processed exactly once.");
+            assertTrue(server.getMetrics().snapshot().get("reliable.duplicates.udp") <= sender.getRetransmitCount(),
+                    "Only retransmissions can arrive as duplicates.");
+            List<CommitLog.LogRecord> records = log.read(0, 1000);
+            for (int i = 0; i < 300; i++) {
+                assertEquals("reliable " + i, records.get(i).text(), "Messages are processed in order.");
+            }
+        } finally {
+            server.shutdown();
+            launcher.join(5000);
+        }
+    }
+
+    private static void send(DatagramSocket socket, String message, InetSocketAddress address) throws Exception {
+        byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+        socket.send(new DatagramPacket(payload, payload.length, address));
+    }
+
+    private static String receive(DatagramSocket socket) throws Exception {
+        DatagramPacket packet = new DatagramPacket(new byte[1024], 1024);
+        socket.receive(packet);
+        return new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
+    }
+
     /**
      * Helper method to send a UDP message to the server.
      *
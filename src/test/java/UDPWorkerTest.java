@@ -0,0 +1,145 @@
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class UDPWorkerTest {
+
+    @Test
+    void testOversizedDatagramsAreCountedAndDropped() throws Exception {
+        UDPServer server = new UDPServer(9191);
+        DatagramChannel receiver = DatagramChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        try (DatagramChannel sender = DatagramChannel.open()) {
+            Thread thread = new Thread(new UDPWorker(0, receiver, 16, server));
+            thread.start();
+
+            sender.send(ByteBuffer.wrap(new byte[16]), receiver.getLocalAddress());
+            sender.send(ByteBuffer.wrap(new byte[17]), receiver.getLocalAddress());
+            awaitPackets(server, 2);
+
+            assertEquals(1, server.getMetrics().snapshot().get("datagrams.truncated.udp"));
+            assertEquals(1, server.getMetrics().snapshot().get("messages.in.udp"), "Only the datagram that fit is processed.");
+            receiver.close();
+            thread.join(1000);
+            assertFalse(thread.isAlive(), "Closing the channel stops the worker.");
+        } finally {
+            receiver.close();
+        }
+    }
+
+    @Test
+    void testHeartbeatRefreshesPeerWithoutRelaying() throws Exception {
+        UDPServer server = new UDPServer(9195);
+        DatagramChannel receiver = DatagramChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        try (DatagramChannel sender = DatagramChannel.open()) {
+            Thread thread = new Thread(new UDPWorker(0, receiver, 16, server));
+            thread.start();
+
+            sender.send(ByteBuffer.wrap(new byte[]{ReliableProtocol.TYPE_HEARTBEAT}), receiver.getLocalAddress());
+            long deadline = System.currentTimeMillis() + 5000;
+            while (server.getMetrics().snapshot().get("heartbeats.in.udp") < 1 && System.currentTimeMillis() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(1);
+            }
+
+            assertEquals(1, server.getMetrics().snapshot().get("heartbeats.in.udp"));
+            assertEquals(1, server.getMetrics().snapshot().get("peers"), "A heartbeat registers its sender as a peer.");
+            assertEquals(0, server.getMetrics().snapshot().get("messages.in.udp"), "A heartbeat is not a chat message.");
+            receiver.close();
+            thread.join(1000);
+        } finally {
+            receiver.close();
+        }
+    }
+
+    @Test
+    void testReliableSenderIsResynchronizedAfterItsPeerExpires() throws Exception {
+        UDPServer server = new UDPServer(9196);
+        DatagramChannel receiver = DatagramChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        try (DatagramChannel sender = DatagramChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            sender.socket().setSoTimeout(5000);
+            Thread thread = new Thread(new UDPWorker(0, receiver, 1024, server));
+            thread.start();
+
+            assertEquals(1, sendReliable(sender, receiver, server, 0, 0, "before"));
+            assertEquals(1, server.getPeers().expire(System.nanoTime() + TimeUnit.HOURS.toNanos(1)));
+            assertEquals(2, sendReliable(sender, receiver, server, 1, 1, "after a pause"),
+                    "A peer forgotten while silent picks up from the sender's base.");
+            assertEquals(1, server.getPeers().expire(System.nanoTime() + TimeUnit.HOURS.toNanos(1)));
+            assertEquals(101, sendReliable(sender, receiver, server, 100, 100, "far ahead"));
+            assertEquals(3, server.getMetrics().snapshot().get("messages.in.udp"), "Every acknowledged message was processed.");
+            receiver.close();
+            thread.join(1000);
+        } finally {
+            receiver.close();
+        }
+    }
+
+    private static int sendReliable(DatagramChannel sender, DatagramChannel receiver, UDPServer server,
+                                    int sequence, int base, String text) throws Exception {
+        long processed = server.getMetrics().snapshot().get("messages.in.udp");
+        sender.send(ByteBuffer.wrap(ReliableProtocol.encodeData(sequence, base, text.getBytes())), receiver.getLocalAddress());
+        byte[] ack = new byte[ReliableProtocol.ACK_LENGTH];
+        sender.socket().receive(new DatagramPacket(ack, ack.length));
+        assertEquals(processed + 1, server.getMetrics().snapshot().get("messages.in.udp"), "The message is processed before it is acknowledged.");
+        ByteBuffer fields = ByteBuffer.wrap(ack, 1, ReliableProtocol.ACK_LENGTH - 1);
+        int nextExpected = fields.getInt();
+        assertEquals(0, fields.getLong(), "Nothing is held out of order.");
+        return nextExpected;
+    }
+
+    @Test
+    void testSteadyStateReceiveAllocatesAlmostNothing() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "Allocation counters are not available.");
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+
+        UDPServer server = new UDPServer(9192);
+        boolean messageLogging = Log.isMessageLoggingEnabled();
+        Log.logger().setMessageLogging(false);
+        DatagramChannel receiver = DatagramChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        try (DatagramChannel sender = DatagramChannel.open()) {
+            Thread thread = new Thread(new UDPWorker(0, receiver, 1024, server));
+            thread.start();
+            ByteBuffer payload = ByteBuffer.wrap("a chat line of a typical length".getBytes());
+
+            sendBatches(sender, payload, receiver, server, 0, 20_000);
+            long before = threadBean.getThreadAllocatedBytes(thread.getId());
+            sendBatches(sender, payload, receiver, server, 20_000, 10_000);
+            long perPacket = (threadBean.getThreadAllocatedBytes(thread.getId()) - before) / 10_000;
+
+            assertTrue(perPacket < 16, "Receiving should allocate close to nothing, got " + perPacket + " B per packet");
+            receiver.close();
+            thread.join(1000);
+        } finally {
+            receiver.close();
+            Log.logger().setMessageLogging(messageLogging);
+        }
+    }
+
+    private static void sendBatches(DatagramChannel sender, ByteBuffer payload, DatagramChannel receiver, UDPServer server,
+                                    long alreadySent, int count) throws Exception {
+        for (int i = 0; i < count; i += 100) {
+            for (int j = 0; j < 100; j++) {
+                sender.send(payload.duplicate(), receiver.getLocalAddress());
+            }
+            awaitPackets(server, alreadySent + i + 100);
+        }
+    }
+
+    private static void awaitPackets(UDPServer server, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getMetrics().snapshot().get("messages.in.udp.worker0") < expected && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        assertEquals(expected, server.getMetrics().snapshot().get("messages.in.udp.worker0"));
+    }
+}